@@ -0,0 +1,247 @@
+// 中文注释：任务依赖配置弹窗（上游任务结束且状态满足后立即触发本任务）
+
+import {useEffect, useMemo, useState} from 'react';
+import {api} from '@/utils/api';
+
+// ========= 类型定义（与后端保持一致） =========
+type DevCronJobDep = {
+    id?: number;
+    devCronJobId: number;
+    upstreamJobId: number;
+    triggerOnStatus: string;             // 逗号分隔，例如 SUCCESS 或 SUCCESS,FAIL
+    disabled?: boolean;
+    upstreamJobName?: string;            // 展示字段
+};
+
+type JobOption = {
+    id?: number;
+    jobName: string;
+};
+
+const ALL_STATUS = ['SUCCESS', 'FAIL', 'TIMEOUT', 'ERROR', 'CANCELLED'] as const;
+type StatusKey = typeof ALL_STATUS[number];
+
+export default function DepConfigModal({
+                                           jobId,
+                                           jobs,
+                                           onClose
+                                       }: {
+    jobId: number;
+    jobs: JobOption[];
+    onClose: () => void;
+}) {
+    // ============ ESC 关闭 ============
+    useEffect(() => {
+        const handler = (e: KeyboardEvent) => {
+            if (e.key === 'Escape') {
+                e.preventDefault();
+                onClose();
+            }
+        };
+        window.addEventListener('keydown', handler);
+        return () => window.removeEventListener('keydown', handler);
+    }, [onClose]);
+
+    const empty: DevCronJobDep = {devCronJobId: jobId, upstreamJobId: 0, triggerOnStatus: 'SUCCESS', disabled: false};
+    const [editing, setEditing] = useState<DevCronJobDep>(empty);
+    const isEdit = useMemo(() => !!editing.id, [editing.id]);
+
+    const [list, setList] = useState<DevCronJobDep[]>([]);
+    const [loadingList, setLoadingList] = useState(false);
+    const [saving, setSaving] = useState(false);
+
+    const loadList = async () => {
+        setLoadingList(true);
+        try {
+            const data = await api.get<DevCronJobDep[]>(`/api/cronJobDep/listByJobId/${jobId}`);
+            setList(Array.isArray(data) ? data : []);
+        } finally {
+            setLoadingList(false);
+        }
+    };
+
+    useEffect(() => {
+        loadList();
+    }, [jobId]);
+
+    // 可选上游：排除自身与已配置的
+    const options = useMemo(
+        () => jobs.filter(j => j.id != null && j.id !== jobId && !list.some(d => d.upstreamJobId === j.id)),
+        [jobs, jobId, list]
+    );
+
+    const statusSet = useMemo<Set<string>>(
+        () => new Set((editing.triggerOnStatus || '').split(',').map(s => s.trim()).filter(Boolean)),
+        [editing.triggerOnStatus]
+    );
+    const toggleStatus = (key: StatusKey) => {
+        const s = new Set(statusSet);
+        if (s.has(key)) s.delete(key); else s.add(key);
+        setEditing({...editing, triggerOnStatus: Array.from(s).join(',')});
+    };
+
+    const canSave = useMemo(() => {
+        const hasStatus = statusSet.size > 0;
+        if (isEdit) return hasStatus;
+        return editing.upstreamJobId > 0 && hasStatus;
+    }, [isEdit, editing.upstreamJobId, statusSet]);
+
+    const save = async () => {
+        if (!canSave || saving) return;
+        setSaving(true);
+        try {
+            await api.post('/api/cronJobDep/save', {
+                id: editing.id,
+                devCronJobId: jobId,
+                upstreamJobId: editing.upstreamJobId,
+                triggerOnStatus: editing.triggerOnStatus,
+                disabled: !!editing.disabled,
+            });
+            await loadList();
+            if (!isEdit) setEditing(empty);
+        } finally {
+            setSaving(false);
+        }
+    };
+
+    return (
+        <div className="fixed inset-0 z-50 flex items-center justify-center bg-black/45">
+            <div className="w-[860px] max-w-[96vw] bg-white rounded-2xl shadow-2xl p-4">
+                {/* 标题栏 */}
+                <div className="flex items-center justify-between mb-4">
+                    <div className="font-semibold">{isEdit ? '编辑上游依赖' : '新增上游依赖'}</div>
+                    <div className="flex items-center gap-2">
+                        <button
+                            onClick={save}
+                            disabled={!canSave || saving}
+                            className={`px-3.5 py-2 rounded-lg text-white text-sm transition
+              ${(!canSave || saving) ? 'bg-gray-300 cursor-not-allowed' : 'bg-blue-600 hover:bg-blue-700'}`}
+                        >
+                            {saving ? '保存中…' : '保存'}
+                        </button>
+                        <button
+                            onClick={onClose}
+                            className="w-8 h-8 rounded-lg border border-gray-200 bg-white hover:bg-gray-50"
+                        >×</button>
+                    </div>
+                </div>
+
+                {/* 上半区：编辑表单 */}
+                <section className="bg-gray-50 border border-gray-200 rounded-2xl p-4 mb-4">
+                    <div className="grid grid-cols-1 md:grid-cols-2 gap-4 items-start">
+                        <div className="min-w-0">
+                            <div className="text-xs text-gray-500 mb-2">上游任务</div>
+                            {isEdit ? (
+                                <div className="p-3 rounded-xl border border-gray-200 bg-white text-sm font-medium text-gray-800">
+                                    {editing.upstreamJobName || 'ID: ' + editing.upstreamJobId}
+                                </div>
+                            ) : (
+                                <select
+                                    value={editing.upstreamJobId || 0}
+                                    onChange={e => setEditing({...editing, upstreamJobId: Number(e.target.value)})}
+                                    className="w-full px-3 py-2 rounded-lg border border-gray-300 focus:outline-none focus:ring-2 focus:ring-blue-500"
+                                >
+                                    <option value={0}>请选择上游任务</option>
+                                    {options.map(j => (
+                                        <option key={j.id} value={j.id}>{j.jobName}</option>
+                                    ))}
+                                </select>
+                            )}
+                        </div>
+
+                        <div className="min-w-0">
+                            <div className="text-xs text-gray-500 mb-2">是否启用</div>
+                            <select
+                                value={editing.disabled ? '1' : '0'}
+                                onChange={e => setEditing({...editing, disabled: e.target.value === '1'})}
+                                className="w-full px-3 py-2 rounded-lg border border-gray-300 focus:outline-none focus:ring-2 focus:ring-blue-500"
+                            >
+                                <option value="0">启用</option>
+                                <option value="1">禁用</option>
+                            </select>
+                        </div>
+
+                        <div className="md:col-span-2">
+                            <div className="text-xs text-gray-500 mb-2">上游结束状态（满足其一即可；有多个上游时全部满足才触发）</div>
+                            <div className="flex flex-wrap gap-2">
+                                {ALL_STATUS.map(k => (
+                                    <button
+                                        key={k}
+                                        type="button"
+                                        onClick={() => toggleStatus(k)}
+                                        className={`px-3 py-1 rounded-full text-xs border transition select-none cursor-pointer ${statusSet.has(k)
+                                            ? 'bg-blue-50 text-blue-700 border-blue-200 hover:bg-blue-100'
+                                            : 'bg-white text-gray-600 border-gray-200 hover:bg-gray-50'}`}
+                                    >
+                                        {k}
+                                    </button>
+                                ))}
+                            </div>
+                            {isEdit && (
+                                <div className="mt-3">
+                                    <button
+                                        onClick={() => setEditing(empty)}
+                                        className="text-xs px-2.5 py-1.5 rounded-lg border bg-white border-gray-200 hover:bg-gray-50"
+                                    >
+                                        新增另一个上游
+                                    </button>
+                                </div>
+                            )}
+                        </div>
+                    </div>
+                </section>
+
+                {/* 下半区：已配置的上游 */}
+                <section className="bg-white border border-gray-200 rounded-2xl">
+                    <div className="grid grid-cols-12 text-xs text-gray-500 px-3 py-2 border-b border-gray-200">
+                        <div className="col-span-4">上游任务</div>
+                        <div className="col-span-4">触发状态</div>
+                        <div className="col-span-2 text-center">启用</div>
+                        <div className="col-span-2 text-center">操作</div>
+                    </div>
+                    <div className="min-h-[200px] max-h-[320px] overflow-y-auto rounded-b-2xl">
+                        {loadingList ? (
+                            <div className="h-[200px] flex items-center justify-center text-sm text-gray-400">加载中…</div>
+                        ) : list.length === 0 ? (
+                            <div className="h-[200px] flex items-center justify-center text-sm text-gray-500">
+                                暂无上游依赖，仅按 Cron 触发
+                            </div>
+                        ) : (
+                            <div className="divide-y divide-gray-100">
+                                {list.map(row => (
+                                    <div key={row.id} className="grid grid-cols-12 items-center px-3 py-3 hover:bg-gray-50 transition">
+                                        <div className="col-span-4 text-sm font-medium text-gray-800 truncate">
+                                            {row.upstreamJobName || '—'}
+                                        </div>
+                                        <div className="col-span-4 flex flex-wrap gap-1.5">
+                                            {(row.triggerOnStatus || '').split(',').filter(Boolean).map(s => (
+                                                <span key={`${row.id}-${s}`}
+                                                      className="text-[11px] px-2 py-0.5 rounded-full bg-indigo-50 text-indigo-700 border border-indigo-100">
+                                                    {s}
+                                                </span>
+                                            ))}
+                                        </div>
+                                        <div className="col-span-2 text-center">
+                                            <span className={`inline-flex items-center justify-center text-[11px] px-2 py-0.5 rounded-full border
+                        ${row.disabled ? 'bg-gray-100 text-gray-500 border-gray-200' : 'bg-emerald-50 text-emerald-700 border-emerald-100'}`}>
+                                                {row.disabled ? '禁用' : '启用'}
+                                            </span>
+                                        </div>
+                                        <div className="col-span-2 text-center">
+                                            <button
+                                                onClick={() => setEditing({...row, disabled: !!row.disabled})}
+                                                className="px-3 py-1.5 rounded-lg border text-sm bg-white border-gray-200 hover:bg-gray-50"
+                                            >
+                                                编辑
+                                            </button>
+                                        </div>
+                                    </div>
+                                ))}
+                            </div>
+                        )}
+                    </div>
+                </section>
+            </div>
+        </div>
+    );
+}
@@ -2,7 +2,7 @@
 // - 全屏半透明背景 + 居中黑色面板
 // - 右上角关闭按钮、Esc 关闭
 // - 等宽字体、长文本可滚动
-// - API：showGeekOverlay(title, content), hideGeekOverlay()
+// - API：showGeekOverlay(title, content, onClose?), hideGeekOverlay()
 
 let overlayRoot: HTMLDivElement | null = null;
 
@@ -100,8 +100,12 @@ function buildPanel(title: string, content: string) {
     return panel;
 }
 
-export function showGeekOverlay(title: string, content: string) {
+// 中文注释：当前弹窗关闭时的回调（如中断执行）
+let overlayOnClose: (() => void) | null = null;
+
+export function showGeekOverlay(title: string, content: string, onClose?: () => void) {
     ensureOverlayRoot();
+    overlayOnClose = onClose || null;
 
     // 清空旧内容
     overlayRoot!.innerHTML = '';
@@ -125,4 +129,7 @@ export function hideGeekOverlay() {
     if (!overlayRoot) return;
     overlayRoot.style.display = 'none';
     overlayRoot.innerHTML = '';
+    const cb = overlayOnClose;
+    overlayOnClose = null;
+    if (cb) cb();
 }
\ No newline at end of file
@@ -7,6 +7,7 @@ import LabeledInput from '@/components/LabeledInput';
 import LabeledTextArea from '@/components/LabeledTextArea';
 import LabeledSelect from '@/components/LabeledSelect'; // ★ 新增：统一风格的下拉
 import NotifyConfigModal from '@/components/NotifyConfigModal';
+import DepConfigModal from '@/components/DepConfigModal';
 
 // ======== 类型定义 ========
 type Server = { id: number; name?: string; host?: string; port?: number; };
@@ -20,13 +21,40 @@ type JobItem = {
     jobType?: 'SHELL' | 'SQL';         // ★ 新增：任务类型（必选）
     scriptName: string;
     serverId?: number;                 // SHELL 使用
+    targetType?: TargetType;           // SHELL 目标方式：指定服务器 / 按标签选择服务器
+    targetLabels?: string;             // 按标签时的选择器，逗号分隔，!x 表示排除
+    fanOutWidth?: number;              // 按标签时同时执行的服务器数
+    batchSize?: number;                // 按标签时每批服务器数（整批成功才执行下一批）
     databaseId?: number;               // SQL 使用（★ 新增）
     argsText?: string;
     timeoutSec?: number;
     disabled?: boolean;
     descText?: string;
+    overlapPolicy?: OverlapPolicy;     // 上一次未结束时新触发的处理方式
+    misfirePolicy?: MisfirePolicy;     // 重启/恢复或调度卡顿后错过的触发的处理方式
     nextRunTime?: string | number;
     status?: 'RUNNING' | 'PAUSED' | 'READY' | 'DISABLED';
+    inFlight?: number;                 // 在途执行数
+    skippedFires?: number;             // 因上一次未结束而跳过的触发次数
+    ownerNode?: string;                // 分片模式下任务所属节点
+};
+
+type TargetType = 'SERVER' | 'LABEL';
+
+type OverlapPolicy = 'SKIP_IF_RUNNING' | 'QUEUE_ONE' | 'ALLOW';
+
+const OVERLAP_POLICY_LABEL: Record<OverlapPolicy, string> = {
+    SKIP_IF_RUNNING: '跳过',
+    QUEUE_ONE: '排队一次',
+    ALLOW: '允许并发',
+};
+
+type MisfirePolicy = 'SKIP' | 'FIRE_ONCE' | 'FIRE_ALL';
+
+const MISFIRE_POLICY_LABEL: Record<MisfirePolicy, string> = {
+    SKIP: '跳过',
+    FIRE_ONCE: '补跑一次',
+    FIRE_ALL: '全部补跑',
 };
 
 // 定时任务执行日志（保持不动）
@@ -45,8 +73,17 @@ type DevCronJobLog = {
     status?: 'SUCCESS' | 'FAIL' | 'TIMEOUT' | 'ERROR' | string;
     outputText?: string | null;
     errorText?: string | null;
+    parentLogId?: number | null;       // 按标签执行时指向汇总日志
+    outputLines?: number | null;       // 总行数/字节数（预览只保留头部+尾部）
+    outputBytes?: number | null;
+    errorLines?: number | null;
+    errorBytes?: number | null;
 };
 
+// 输出总量说明，如 "（共 1200 行 / 35812 字节）"
+const fmtTotal = (lines?: number | null, bytes?: number | null) =>
+    lines != null && bytes != null ? `（共 ${lines} 行 / ${bytes} 字节）` : '';
+
 // 表单初始值（jobType 无默认，必须选）
 const emptyForm: JobItem = {
     jobName: '',
@@ -54,11 +91,14 @@ const emptyForm: JobItem = {
     jobType: undefined,   // ★ 必须选择
     scriptName: '',
     serverId: undefined,
+    targetType: 'SERVER',
     databaseId: undefined,
     argsText: '',
     timeoutSec: 300,
     disabled: false,
     descText: '',
+    overlapPolicy: 'SKIP_IF_RUNNING',
+    misfirePolicy: 'SKIP',
 };
 
 export default function HutoolCronJobs() {
@@ -82,6 +122,7 @@ export default function HutoolCronJobs() {
     const [logJob, setLogJob] = useState<JobItem | null>(null);
     const [logs, setLogs] = useState<DevCronJobLog[]>([]);
     const [notifyModalJobId, setNotifyModalJobId] = useState<number | null>(null);
+    const [depModalJobId, setDepModalJobId] = useState<number | null>(null);
 
     // ========= 工具：时间格式化 =========
     const fmtTime = (s?: string | number) => {
@@ -105,6 +146,7 @@ export default function HutoolCronJobs() {
             case 'FAIL':    return 'bg-rose-50 text-rose-700';
             case 'TIMEOUT': return 'bg-amber-50 text-amber-700';
             case 'ERROR':   return 'bg-gray-100 text-gray-600';
+            case 'CANCELLED': return 'bg-slate-100 text-slate-600';
             default:        return 'bg-gray-100 text-gray-600';
         }
     };
@@ -170,11 +212,17 @@ export default function HutoolCronJobs() {
             jobType: row.jobType, // ★ 带回 jobType
             scriptName: row.scriptName ?? '',
             serverId: row.serverId,
+            targetType: row.targetType ?? 'SERVER',
+            targetLabels: row.targetLabels ?? '',
+            fanOutWidth: row.fanOutWidth,
+            batchSize: row.batchSize,
             databaseId: row.databaseId,
             argsText: row.argsText ?? '',
             timeoutSec: row.timeoutSec ?? 300,
             disabled: row.disabled === true,
             descText: row.descText ?? '',
+            overlapPolicy: row.overlapPolicy ?? 'SKIP_IF_RUNNING',
+            misfirePolicy: row.misfirePolicy ?? 'SKIP',
         });
         setVisible(true);
     };
@@ -194,7 +242,11 @@ export default function HutoolCronJobs() {
         if (!v.jobType) return '任务类型必须选择（SHELL / SQL）';
         if (!v.scriptName?.trim()) return '脚本名称不能为空';
         if (v.jobType === 'SHELL') {
-            if (!v.serverId || v.serverId <= 0) return '请选择目标服务器';
+            if (v.targetType === 'LABEL') {
+                if (!v.targetLabels?.trim()) return '请填写服务器标签';
+                if (v.fanOutWidth != null && (v.fanOutWidth < 1 || v.fanOutWidth > 1000)) return '并行宽度需在 1~1000';
+                if (v.batchSize != null && (v.batchSize < 1 || v.batchSize > 10000)) return '每批服务器数需在 1~10000';
+            } else if (!v.serverId || v.serverId <= 0) return '请选择目标服务器';
         } else if (v.jobType === 'SQL') {
             if (!v.databaseId || v.databaseId <= 0) return '请选择目标数据库';
         }
@@ -211,12 +263,18 @@ export default function HutoolCronJobs() {
             cronExpr: form.cronExpr.trim(),
             jobType: form.jobType,                    // ★ 传 jobType
             scriptName: form.scriptName.trim(),
-            serverId: form.jobType === 'SHELL' ? Number(form.serverId) : undefined,   // ★ SHELL 用 serverId
+            serverId: form.jobType === 'SHELL' && form.targetType !== 'LABEL' ? Number(form.serverId) : undefined,   // ★ SHELL 用 serverId
+            targetType: form.jobType === 'SHELL' ? (form.targetType ?? 'SERVER') : 'SERVER',
+            targetLabels: form.jobType === 'SHELL' && form.targetType === 'LABEL' ? form.targetLabels?.trim() : undefined,
+            fanOutWidth: form.targetType === 'LABEL' ? form.fanOutWidth : undefined,
+            batchSize: form.targetType === 'LABEL' ? form.batchSize : undefined,
             databaseId: form.jobType === 'SQL' ? Number(form.databaseId) : undefined, // ★ SQL 用 databaseId
             argsText: form.argsText?.trim() || undefined,
             timeoutSec: form.timeoutSec ?? 300,
             disabled: form.disabled,
             descText: form.descText?.trim() || undefined,
+            overlapPolicy: form.overlapPolicy ?? 'SKIP_IF_RUNNING',
+            misfirePolicy: form.misfirePolicy ?? 'SKIP',
         };
         await api.post('/api/cron/job/save', payload);
         setVisible(false);
@@ -233,10 +291,20 @@ export default function HutoolCronJobs() {
             `[meta] script=${row.scriptName}`,
             row.jobType === 'SQL'
                 ? `[meta] databaseId=${row.databaseId ?? '-'}`
-                : `[meta] serverId=${row.serverId ?? '-'}`,
+                : row.targetType === 'LABEL'
+                    ? `[meta] labels=${row.targetLabels ?? '-'}`
+                    : `[meta] serverId=${row.serverId ?? '-'}`,
             `[meta] cron=${row.cronExpr}`, ''
         ].join('\n');
-        showGeekOverlay(title, init + '\n');
+        // 中文注释：关闭弹窗时断开 SSE，并取消尚未结束的执行
+        let runId: string | null = null;
+        let ended = false;
+        showGeekOverlay(title, init + '\n', () => {
+            if (ended) return;
+            ended = true;
+            try { es.close(); } catch {}
+            if (runId) api.post(`/api/cron/run/cancel/${runId}`, {}).catch(() => {});
+        });
 
         const es = new EventSource(`/api/cron/job/runOnce/${row.id}/stream`);
         const append = (line: string) => {
@@ -248,20 +316,35 @@ export default function HutoolCronJobs() {
                 (pre as HTMLPreElement).scrollTop = (pre as HTMLPreElement).scrollHeight;
             }
         };
-        es.addEventListener('meta', (e: any) => append(`[meta] ${e.data}`));
+        es.addEventListener('meta', (e: any) => {
+            const m = /^runId=(\d+)$/.exec(String(e.data));
+            if (m) runId = m[1];
+            append(`[meta] ${e.data}`);
+        });
         es.addEventListener('stdout', (e: any) => append(e.data));
-        es.addEventListener('stderr', (e: any) => append(`[ERR] ${e.data}`));
+        // 中文注释：后端会把同一时间窗口内的多行合并为一个事件，逐行加前缀
+        es.addEventListener('stderr', (e: any) => append(String(e.data).split('\n').map((l) => `[ERR] ${l}`).join('\n')));
         es.addEventListener('end', (e: any) => {
             append(`\n[done] exit=${e.data}`);
+            ended = true;
             es.close();
             loadAll();
         });
         es.onerror = () => {
             append('\n[error] 连接中断');
+            ended = true;
             try { es.close(); } catch {}
         };
     };
 
+    // ========= 取消运行中的执行（运行ID 即日志ID） =========
+    const cancelRun = async (logId?: number) => {
+        if (!logId) return;
+        if (!confirm(`确定取消执行 #${logId}？`)) return;
+        await api.post(`/api/cron/run/cancel/${logId}`, {});
+        if (logJob) await openLogs(logJob);
+    };
+
     // ========= 任务控制 =========
     const pause = async (id?: number) => { if (!id) return; await api.post(`/api/cron/job/pause/${id}`, {}); await loadAll(); };
     const resume = async (id?: number) => { if (!id) return; await api.post(`/api/cron/job/resume/${id}`, {}); await loadAll(); };
@@ -357,8 +440,15 @@ export default function HutoolCronJobs() {
                                     <span>脚本：{row.scriptName}</span>
                                     {row.jobType === 'SQL'
                                         ? <span>数据库ID：{row.databaseId ?? '-'}</span>
-                                        : <span>服务器ID：{row.serverId ?? '-'}</span>}
+                                        : row.targetType === 'LABEL'
+                                            ? <span>标签：{row.targetLabels}（并行 {row.fanOutWidth ?? '默认'}{row.batchSize ? `，每批 ${row.batchSize}` : ''}）</span>
+                                            : <span>服务器ID：{row.serverId ?? '-'}</span>}
                                     <span>超时：{row.timeoutSec ?? 300}s</span>
+                                    <span>重叠：{OVERLAP_POLICY_LABEL[row.overlapPolicy ?? 'SKIP_IF_RUNNING']}</span>
+                                    <span>错过：{MISFIRE_POLICY_LABEL[row.misfirePolicy ?? 'SKIP']}</span>
+                                    {(row.inFlight ?? 0) > 0 && <span className="text-blue-600">在途：{row.inFlight}</span>}
+                                    {(row.skippedFires ?? 0) > 0 && <span className="text-amber-600">已跳过：{row.skippedFires} 次</span>}
+                                    {row.ownerNode && <span>节点：{row.ownerNode}</span>}
                                 </div>
 
                                 {/* 时间信息与描述 */}
@@ -381,6 +471,9 @@ export default function HutoolCronJobs() {
                                     <button onClick={() => openNotifyConfig(row.id)}
                                         className="px-3 py-1.5 rounded-lg text-white text-sm bg-amber-600 hover:bg-amber-700">通知配置
                                     </button>
+                                    <button onClick={() => row.id && setDepModalJobId(row.id)}
+                                        className="px-3 py-1.5 rounded-lg text-white text-sm bg-violet-600 hover:bg-violet-700">上游依赖
+                                    </button>
                                     <button onClick={() => pause(row.id)}
                                             className="px-3 py-1.5 rounded-lg border text-sm bg-white border-gray-200 hover:bg-gray-50">暂停
                                     </button>
@@ -431,6 +524,9 @@ export default function HutoolCronJobs() {
                                             <span className="text-gray-500">脚本: {log.scriptName || '—'}</span>
                                             <span className="text-gray-500">退出码: {log.exitCode ?? '—'}</span>
                                             <span className="text-gray-500">耗时: {fmtDur(log.durationMs)}</span>
+                                            {log.status === 'RUNNING' && (
+                                                <button onClick={() => cancelRun(log.id)} className="ml-auto px-2 py-0.5 rounded-md border text-xs bg-white border-rose-200 text-rose-700 hover:bg-rose-50">取消执行</button>
+                                            )}
                                         </div>
                                         <div className="mt-1 text-xs text-gray-500 space-x-3">
                                             <span>创建: {fmtTime(log.createTime)}</span>
@@ -441,11 +537,11 @@ export default function HutoolCronJobs() {
                                             <div className="mt-1 text-xs text-gray-600">参数：<code className="px-1 border rounded">{log.argsText}</code></div>
                                         )}
                                         <details className="mt-2 group">
-                                            <summary className="cursor-pointer select-none text-sm text-gray-700 group-open:mb-1">标准输出（output）</summary>
+                                            <summary className="cursor-pointer select-none text-sm text-gray-700 group-open:mb-1">标准输出（output）{fmtTotal(log.outputLines, log.outputBytes)}</summary>
                                             <pre className="whitespace-pre-wrap text-xs bg-white border border-gray-200 rounded-lg p-2 overflow-auto max-h-64">{log.outputText || ''}</pre>
                                         </details>
                                         <details className="mt-2 group">
-                                            <summary className="cursor-pointer select-none text-sm text-gray-700 group-open:mb-1">错误输出（error）</summary>
+                                            <summary className="cursor-pointer select-none text-sm text-gray-700 group-open:mb-1">错误输出（error）{fmtTotal(log.errorLines, log.errorBytes)}</summary>
                                             <pre className="whitespace-pre-wrap text-xs bg-white border border-gray-200 rounded-lg p-2 overflow-auto max-h-64 text-rose-700">{log.errorText || ''}</pre>
                                         </details>
                                         <details className="mt-2 group">
@@ -509,6 +605,7 @@ export default function HutoolCronJobs() {
                                             jobType: (v as 'SHELL' | 'SQL'),
                                             scriptName: '',
                                             serverId: undefined,
+                                            targetType: 'SERVER',
                                             databaseId: undefined,
                                         }));
                                     }}
@@ -554,6 +651,13 @@ export default function HutoolCronJobs() {
                                             ))}
                                         </select>
                                     </>
+                                ) : form.targetType === 'LABEL' ? (
+                                    <LabeledInput
+                                        label="服务器标签（逗号分隔，全部满足；!x 排除）"
+                                        value={form.targetLabels || ''}
+                                        onChange={(v) => setForm({ ...form, targetLabels: v })}
+                                        placeholder="prod,web,!canary"
+                                    />
                                 ) : (
                                     <>
                                         <label className="block mb-2 text-xs text-gray-500">目标服务器</label>
@@ -572,6 +676,41 @@ export default function HutoolCronJobs() {
                                 )}
                             </div>
 
+                            {/* SHELL：指定服务器或按标签选择一组服务器 */}
+                            {form.jobType === 'SHELL' && (
+                                <>
+                                    <div>
+                                        <label className="block mb-2 text-xs text-gray-500">目标方式</label>
+                                        <select
+                                            value={form.targetType ?? 'SERVER'}
+                                            onChange={(e) => setForm({ ...form, targetType: e.target.value as TargetType })}
+                                            className="w-full px-3 py-2 rounded-lg border border-gray-300 focus:outline-none focus:ring-2 focus:ring-blue-500"
+                                        >
+                                            <option value="SERVER">指定服务器</option>
+                                            <option value="LABEL">按标签（每台各执行一次）</option>
+                                        </select>
+                                    </div>
+                                    {form.targetType === 'LABEL' ? (
+                                        <div className="grid grid-cols-2 gap-4">
+                                            <LabeledInput
+                                                label="并行宽度"
+                                                type="number"
+                                                value={form.fanOutWidth ?? ''}
+                                                onChange={(v) => setForm({ ...form, fanOutWidth: Number(v) || undefined })}
+                                                placeholder="默认"
+                                            />
+                                            <LabeledInput
+                                                label="每批服务器数"
+                                                type="number"
+                                                value={form.batchSize ?? ''}
+                                                onChange={(v) => setForm({ ...form, batchSize: Number(v) || undefined })}
+                                                placeholder="不分批"
+                                            />
+                                        </div>
+                                    ) : <div />}
+                                </>
+                            )}
+
                             {/* 其它字段 */}
                             <div className="md:col-span-2">
                                 <LabeledInput
@@ -603,6 +742,32 @@ export default function HutoolCronJobs() {
                                 </select>
                             </div>
 
+                            <div>
+                                <label className="block mb-2 text-xs text-gray-500">上一次未结束时</label>
+                                <select
+                                    value={form.overlapPolicy ?? 'SKIP_IF_RUNNING'}
+                                    onChange={(e) => setForm({ ...form, overlapPolicy: e.target.value as OverlapPolicy })}
+                                    className="w-full px-3 py-2 rounded-lg border border-gray-300 focus:outline-none focus:ring-2 focus:ring-blue-500"
+                                >
+                                    <option value="SKIP_IF_RUNNING">跳过本次触发</option>
+                                    <option value="QUEUE_ONE">排队一次（结束后立即执行）</option>
+                                    <option value="ALLOW">允许并发执行</option>
+                                </select>
+                            </div>
+
+                            <div>
+                                <label className="block mb-2 text-xs text-gray-500">错过的触发（重启/暂停调度器期间）</label>
+                                <select
+                                    value={form.misfirePolicy ?? 'SKIP'}
+                                    onChange={(e) => setForm({ ...form, misfirePolicy: e.target.value as MisfirePolicy })}
+                                    className="w-full px-3 py-2 rounded-lg border border-gray-300 focus:outline-none focus:ring-2 focus:ring-blue-500"
+                                >
+                                    <option value="SKIP">跳过，只记录</option>
+                                    <option value="FIRE_ONCE">恢复后补跑一次</option>
+                                    <option value="FIRE_ALL">逐次补跑（有上限）</option>
+                                </select>
+                            </div>
+
                             <div className="md:col-span-2">
                                 <LabeledTextArea
                                     label="描述"
@@ -641,6 +806,14 @@ export default function HutoolCronJobs() {
                 />
             )}
 
+            {depModalJobId != null && (
+                <DepConfigModal
+                    jobId={depModalJobId}
+                    jobs={list}
+                    onClose={() => setDepModalJobId(null)}
+                />
+            )}
+
         </div>
     );
 }
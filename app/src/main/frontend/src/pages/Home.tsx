@@ -77,6 +77,8 @@ export default function Home() {
                 return 'bg-amber-50 text-amber-700';
             case 'ERROR':
                 return 'bg-gray-100 text-gray-600';
+            case 'CANCELLED':
+                return 'bg-slate-100 text-slate-600';
             default:
                 return 'bg-gray-100 text-gray-600';
         }
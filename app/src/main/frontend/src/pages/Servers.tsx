@@ -18,6 +18,9 @@ type Server = {
     passphraseEnc?: string;    // 私钥口令
     commandAllowList?: string; // 命令白名单（正则，多行）
     defaultTestCmd?: string;   // 默认测试命令
+    labels?: string;           // 标签（逗号分隔）
+    outputCharset?: string;    // 输出字符集（为空按 UTF-8）
+    maxConcurrentRuns?: number | null; // 最大同时运行任务数（为空取默认值）
 };
 
 // 中文注释：表单初始值
@@ -79,6 +82,9 @@ export default function Servers() {
             passphraseEnc: s.passphraseEnc ?? '',
             commandAllowList: s.commandAllowList ?? '',
             defaultTestCmd: s.defaultTestCmd ?? 'echo ping',
+            labels: s.labels ?? '',
+            outputCharset: s.outputCharset ?? '',
+            maxConcurrentRuns: s.maxConcurrentRuns ?? null,
         });
         setVisible(true);
     };
@@ -356,6 +362,24 @@ export default function Servers() {
                                     placeholder="echo ping"
                                 />
                             </div>
+
+                            {/* 标签 */}
+                            <div>
+                                <LabeledInput label="标签（逗号分隔，按标签执行的任务据此选择服务器）" value={form.labels ?? ''}
+                                              onChange={(v) => setForm({ ...form, labels: v })} placeholder="prod,web" />
+                            </div>
+
+                            {/* 字符集 */}
+                            <div>
+                                <LabeledInput label="输出字符集（为空按 UTF-8）" value={form.outputCharset ?? ''}
+                                              onChange={(v) => setForm({ ...form, outputCharset: v })} placeholder="GBK" />
+                            </div>
+
+                            {/* 并发上限 */}
+                            <div>
+                                <LabeledInput label="最大同时运行任务数（为空取默认值）" type="number" value={form.maxConcurrentRuns ?? ''}
+                                              onChange={(v) => setForm({ ...form, maxConcurrentRuns: v === '' ? null : (v as any) })} />
+                            </div>
                         </div>
 
                         {/* 底部按钮 */}
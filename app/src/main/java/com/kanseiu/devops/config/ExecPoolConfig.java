@@ -1,12 +1,25 @@
 package com.kanseiu.devops.config;
 
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
+import java.util.concurrent.ThreadFactory;
+
 // 线程池
+@Slf4j
 @Configuration
 public class ExecPoolConfig {
 
+    // 执行线程模式：platform（默认，固定大小线程池）/ virtual（虚拟线程，需 JDK 21+ 运行）
+    @Value("${devops.exec.thread-mode:platform}")
+    private String threadMode;
+
+    // 虚拟线程模式下每个线程池同时存在的最大线程数
+    @Value("${devops.exec.virtual-max-threads:10000}")
+    private int virtualMaxThreads;
+
     // 执行ssh
     @Bean("sshExecPool")
     public org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor sshExecPool() {
@@ -15,6 +28,20 @@ public class ExecPoolConfig {
         ex.setCorePoolSize(4);
         ex.setMaxPoolSize(16);
         ex.setQueueCapacity(100);
+        applyThreadMode(ex);
+        ex.initialize();
+        return ex;
+    }
+
+    // SSH 输出投递（stdout/stderr 按行回调、完成通知），与任务启动线程分开，任务再多也不会饿死输出投递
+    @Bean("sshIoPool")
+    public org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor sshIoPool() {
+        var ex = new org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor();
+        ex.setThreadNamePrefix("ssh-io-");
+        ex.setCorePoolSize(4);
+        ex.setMaxPoolSize(16);
+        ex.setQueueCapacity(10000);
+        applyThreadMode(ex);
         ex.initialize();
         return ex;
     }
@@ -27,7 +54,122 @@ public class ExecPoolConfig {
         ex.setCorePoolSize(4);
         ex.setMaxPoolSize(16);
         ex.setQueueCapacity(100);
+        applyThreadMode(ex);
+        ex.initialize();
+        return ex;
+    }
+
+    // 取消超时的 SQL（Statement.cancel 可能需要另开连接发 KILL QUERY，不能放在定时器线程上）
+    @Bean("dbCancelPool")
+    public org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor dbCancelPool() {
+        var ex = new org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor();
+        ex.setThreadNamePrefix("db-cancel-");
+        ex.setCorePoolSize(1);
+        ex.setMaxPoolSize(4);
+        ex.setQueueCapacity(1000);
+        ex.initialize();
+        return ex;
+    }
+
+    // 执行日志批量落库（定时刷新）；满了直接拒绝，不在调用线程（定时器）上写库，内容留在缓冲中下次再刷
+    @Bean("logFlushPool")
+    public org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor logFlushPool() {
+        var ex = new org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor();
+        ex.setThreadNamePrefix("log-flush-");
+        ex.setCorePoolSize(2);
+        ex.setMaxPoolSize(2);
+        ex.setQueueCapacity(1000);
+        ex.setRejectedExecutionHandler(new java.util.concurrent.ThreadPoolExecutor.AbortPolicy());
+        ex.initialize();
+        return ex;
+    }
+
+    // 执行回调分发（写库、SSE、指标等输出端的异步消费）
+    @Bean("execSinkPool")
+    public org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor execSinkPool() {
+        var ex = new org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor();
+        ex.setThreadNamePrefix("exec-sink-");
+        ex.setCorePoolSize(4);
+        ex.setMaxPoolSize(16);
+        ex.setQueueCapacity(1000);
+        ex.initialize();
+        return ex;
+    }
+
+    // SSE 推送（实时日志订阅者发送），满了由调用方断开订阅者，不阻塞执行线程
+    @Bean("ssePushPool")
+    public org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor ssePushPool() {
+        var ex = new org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor();
+        ex.setThreadNamePrefix("sse-push-");
+        ex.setCorePoolSize(2);
+        ex.setMaxPoolSize(8);
+        ex.setQueueCapacity(1000);
+        ex.initialize();
+        return ex;
+    }
+
+    // 共享定时器：连接池巡检、超时控制等轻量定时动作，不允许执行阻塞任务
+    @Bean("execTimer")
+    public org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler execTimer() {
+        var ex = new org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler();
+        ex.setThreadNamePrefix("exec-timer-");
+        ex.setPoolSize(2);
+        ex.setRemoveOnCancelPolicy(true);
         ex.initialize();
         return ex;
     }
-}
\ No newline at end of file
+
+    // 集群定时器：选主续约、分片心跳（各一条小的 UPDATE），单线程独占，不被对账等慢操作拖过租约有效期
+    @Bean("clusterTimer")
+    public org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler clusterTimer() {
+        var ex = new org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler();
+        ex.setThreadNamePrefix("cluster-timer-");
+        ex.setPoolSize(1);
+        ex.setRemoveOnCancelPolicy(true);
+        ex.initialize();
+        return ex;
+    }
+
+    // 调度维护：定时对账、成为主节点/重新分片后的对账与补跑（读写库、注册任务），单线程串行
+    @Bean("cronMaintTimer")
+    public org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler cronMaintTimer() {
+        var ex = new org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler();
+        ex.setThreadNamePrefix("cron-maint-");
+        ex.setPoolSize(1);
+        ex.setRemoveOnCancelPolicy(true);
+        ex.initialize();
+        return ex;
+    }
+
+    /**
+     * 虚拟线程模式：每个任务一个虚拟线程（同时最多 virtualMaxThreads 个），不排队
+     * 通过反射创建虚拟线程工厂，代码仍可在 JDK 11/17 上编译；运行时不支持则退回平台线程池
+     */
+    private void applyThreadMode(org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor ex) {
+        if (!"virtual".equalsIgnoreCase(threadMode)) {
+            return;
+        }
+        ThreadFactory factory = virtualThreadFactory(ex.getThreadNamePrefix());
+        if (factory == null) {
+            log.warn("[线程池] 当前 JDK 不支持虚拟线程，{} 仍使用平台线程", ex.getThreadNamePrefix());
+            return;
+        }
+        ex.setThreadFactory(factory);
+        ex.setCorePoolSize(0);
+        ex.setMaxPoolSize(virtualMaxThreads);
+        ex.setQueueCapacity(0);
+        log.info("[线程池] {} 使用虚拟线程", ex.getThreadNamePrefix());
+    }
+
+    // Thread.ofVirtual().name(prefix, 0).factory()，JDK 21 以下返回 null
+    private static ThreadFactory virtualThreadFactory(String prefix) {
+        try {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, prefix, 0L);
+            return (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package com.kanseiu.devops.constant;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+// 调度集群模式
+@Getter
+@AllArgsConstructor
+public enum ClusterModeEnum {
+
+    STANDALONE("单机", "不选主，本节点执行全部定时任务"),
+    LEADER("选主", "多个节点通过数据库租约选出一个主节点，只有主节点执行定时任务"),
+    SHARD("分片", "多个节点定时心跳，按存活节点对任务ID做一致性哈希，每个节点只注册、执行自己的分片")
+    ;
+
+    public final String modeName;
+
+    public final String modeDesc;
+
+    public static ClusterModeEnum of(String name) {
+        for (ClusterModeEnum m : values()) {
+            if (m.name().equalsIgnoreCase(name)) {
+                return m;
+            }
+        }
+        throw new IllegalArgumentException("不支持的集群模式：" + name);
+    }
+}
@@ -10,8 +10,21 @@ public enum JobLogStatus {
     SUCCESS,
     FAIL,
     TIMEOUT,
-    ERROR;
+    ERROR,
+    CANCELLED;   // 被手动取消或执行端断开（由运行状态决定，不从退出码推断）
 
+    // 取消退出码（128 + SIGINT）
+    public static final int CANCELLED_EXIT_CODE = 130;
+
+    // 超时退出码（与 timeout 命令一致）
+    public static final int TIMEOUT_EXIT_CODE = 124;
+
+    // 执行结束（onEnd）时的状态：超时、成功、失败；取消由 JobRunCallback 按运行状态给出
+    public static JobLogStatus fromEnd(int exitCode) {
+        return exitCode == TIMEOUT_EXIT_CODE ? TIMEOUT : fromExit(exitCode);
+    }
+
+    // 脚本自己以 130 退出也是失败
     public static JobLogStatus fromExit(int exitCode) {
         return exitCode == 0 ? SUCCESS : FAIL;
     }
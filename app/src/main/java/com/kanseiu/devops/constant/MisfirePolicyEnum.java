@@ -0,0 +1,32 @@
+package com.kanseiu.devops.constant;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+// 定时任务错过触发（重启、调度器停止、调度线程卡顿等）后的处理策略
+@Getter
+@AllArgsConstructor
+public enum MisfirePolicyEnum {
+
+    SKIP("跳过", "只记录错过的次数，不补跑"),
+    FIRE_ONCE("补跑一次", "恢复后立即补跑一次；运行中卡顿错过的触发由本次触发代替"),
+    FIRE_ALL("全部补跑", "按错过的次数逐次补跑（有上限），上一次结束后再跑下一次")
+    ;
+
+    public final String policyName;
+
+    public final String policyDesc;
+
+    // 为空默认跳过
+    public static MisfirePolicyEnum of(String name) {
+        if (name == null || name.isBlank()) {
+            return SKIP;
+        }
+        for (MisfirePolicyEnum p : values()) {
+            if (p.name().equals(name)) {
+                return p;
+            }
+        }
+        throw new IllegalArgumentException("不支持的错过触发策略：" + name);
+    }
+}
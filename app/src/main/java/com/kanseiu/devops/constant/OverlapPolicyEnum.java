@@ -0,0 +1,32 @@
+package com.kanseiu.devops.constant;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+// 定时任务上一次执行未结束时，新触发的处理策略
+@Getter
+@AllArgsConstructor
+public enum OverlapPolicyEnum {
+
+    SKIP_IF_RUNNING("跳过", "上一次未结束则跳过本次触发"),
+    QUEUE_ONE("排队一次", "上一次未结束则排队，结束后立即执行；最多排队一次，多余的触发跳过"),
+    ALLOW("允许并发", "每次触发都执行")
+    ;
+
+    public final String policyName;
+
+    public final String policyDesc;
+
+    // 为空默认跳过
+    public static OverlapPolicyEnum of(String name) {
+        if (name == null || name.isBlank()) {
+            return SKIP_IF_RUNNING;
+        }
+        for (OverlapPolicyEnum p : values()) {
+            if (p.name().equals(name)) {
+                return p;
+            }
+        }
+        throw new IllegalArgumentException("不支持的重叠策略：" + name);
+    }
+}
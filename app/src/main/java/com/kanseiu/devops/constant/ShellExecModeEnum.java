@@ -0,0 +1,32 @@
+package com.kanseiu.devops.constant;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+// SHELL 脚本的执行方式
+@Getter
+@AllArgsConstructor
+public enum ShellExecModeEnum {
+
+    AUTO("自动", "小脚本且不读 stdin、不依赖自身路径的用 STDIN，其余用 FILE"),
+    STDIN("标准输入", "脚本内容经 exec 通道的 stdin 交给 bash，只开一个通道"),
+    FILE("文件", "脚本缓存在远端文件中，bash 执行该文件"),
+    ;
+
+    public final String modeName;
+
+    public final String modeDesc;
+
+    // 配置值不区分大小写，为空默认自动
+    public static ShellExecModeEnum of(String name) {
+        if (name == null || name.isBlank()) {
+            return AUTO;
+        }
+        for (ShellExecModeEnum m : values()) {
+            if (m.name().equalsIgnoreCase(name.trim())) {
+                return m;
+            }
+        }
+        throw new IllegalArgumentException("不支持的执行方式：" + name);
+    }
+}
@@ -0,0 +1,31 @@
+package com.kanseiu.devops.constant;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+// SHELL 任务的执行目标
+@Getter
+@AllArgsConstructor
+public enum TargetTypeEnum {
+
+    SERVER("单台服务器", "在 serverId 指定的服务器上执行"),
+    LABEL("标签选择", "在标签匹配的所有服务器上并行执行，汇总为一条日志"),
+    ;
+
+    public final String typeName;
+
+    public final String typeDesc;
+
+    // 为空默认单台服务器
+    public static TargetTypeEnum of(String name) {
+        if (name == null || name.isBlank()) {
+            return SERVER;
+        }
+        for (TargetTypeEnum t : values()) {
+            if (t.name().equals(name)) {
+                return t;
+            }
+        }
+        throw new IllegalArgumentException("不支持的执行目标：" + name);
+    }
+}
@@ -2,12 +2,17 @@ package com.kanseiu.devops.controller;
 
 import cn.hutool.extra.spring.SpringUtil;
 import com.kanseiu.devops.constant.JobTypeEnum;
+import com.kanseiu.devops.cron.CronRegistrar;
 import com.kanseiu.devops.cron.CronScheduler;
+import com.kanseiu.devops.cron.NextFireIndex;
 import com.kanseiu.devops.model.R;
 import com.kanseiu.devops.model.entity.DevCronJob;
 import com.kanseiu.devops.service.business.DevCronJobService;
 import com.kanseiu.devops.service.handler.DevScriptExecService;
 import com.kanseiu.devops.service.callback.SseCallback;
+import com.kanseiu.devops.service.metrics.ExecMetrics;
+import com.kanseiu.devops.service.run.JobRunRegistry;
+import com.kanseiu.devops.service.sse.SseWriterFactory;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
@@ -29,6 +34,21 @@ public class DevCronJobController {
     @Resource
     private CronScheduler cronScheduler;
 
+    @Resource
+    private ExecMetrics execMetrics;
+
+    @Resource
+    private SseWriterFactory sseWriterFactory;
+
+    @Resource
+    private JobRunRegistry jobRunRegistry;
+
+    @Resource
+    private NextFireIndex nextFireIndex;
+
+    @Resource
+    private CronRegistrar cronRegistrar;
+
     // 任务列表
     @GetMapping("/jobs")
     public R<List<DevCronJob>> list() {
@@ -52,8 +72,7 @@ public class DevCronJobController {
     // 从数据库重载任务
     @GetMapping("/reload")
     public R<?> reload() {
-        devCronJobService.reloadAll();
-        return R.ok();
+        return R.ok(devCronJobService.reloadAll());
     }
 
     // 执行一次定时任务，并将结果流式输出到浏览器
@@ -78,17 +97,18 @@ public class DevCronJobController {
         String execBeanName = JobTypeEnum.getExecBeanNameByType(job.getJobType());
         DevScriptExecService scriptExecService = SpringUtil.getBean(execBeanName, DevScriptExecService.class);
 
-        // 异步执行，逐行回调
-        scriptExecService.execute(job, new SseCallback(emitter));
+        // 异步执行，逐行回调（同时写执行日志）
+        SseCallback sseCallback = new SseCallback(sseWriterFactory.create(emitter));
+        scriptExecService.execute(job, sseCallback);
 
-        // 4) 客户端断开处理（可选：中断执行）
+        // 4) 客户端断开/超时：中断执行（已结束的运行不受影响）
         emitter.onTimeout(() -> {
+            sseCallback.cancelRun("SSE 超时");
             try { emitter.send(SseEmitter.event().name("stderr").data("[timeout] SSE 超时")); } catch (IOException ignored) {}
             emitter.complete();
         });
-        emitter.onCompletion(() -> {
-            // TODO：如需“点×关闭弹窗时中断执行”，可在这里设置标志并让 liveExecService 停止任务
-        });
+        emitter.onError(e -> sseCallback.cancelRun("浏览器连接断开"));
+        emitter.onCompletion(() -> sseCallback.cancelRun("浏览器连接关闭"));
 
         return emitter;
     }
@@ -115,6 +135,33 @@ public class DevCronJobController {
         return R.ok(cronScheduler.status());
     }
 
+    // 执行指标
+    @GetMapping("/metrics")
+    public R<Map<String, Object>> metrics() {
+        return R.ok(execMetrics.stats());
+    }
+
+    // 即将触发的已注册任务（按下次触发时间升序）
+    @GetMapping("/upcoming")
+    public R<List<Map<String, Object>>> upcoming(@RequestParam(value = "limit", defaultValue = "20") Integer limit) {
+        return R.ok(nextFireIndex.upcoming(Math.max(1, Math.min(limit, 500)), cronRegistrar::isRegistered));
+    }
+
+    // 运行中的任务（手动执行与定时执行）
+    @GetMapping("/runs")
+    public R<List<Map<String, Object>>> runs() {
+        return R.ok(jobRunRegistry.list());
+    }
+
+    // 取消运行中的任务（运行ID 即执行日志ID）
+    @PostMapping("/run/cancel/{runId}")
+    public R<?> cancel(@PathVariable("runId") Long runId) {
+        if (!jobRunRegistry.cancel(runId, "手动取消")) {
+            return R.error("任务未在运行：runId=" + runId);
+        }
+        return R.ok(null, "已请求取消");
+    }
+
     // 暂停单个任务
     @PostMapping("/job/pause/{id}")
     public R<?> pause(@PathVariable("id") Long id) {
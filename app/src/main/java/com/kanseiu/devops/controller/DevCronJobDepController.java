@@ -0,0 +1,40 @@
+package com.kanseiu.devops.controller;
+
+
+import com.kanseiu.devops.model.R;
+import com.kanseiu.devops.model.entity.DevCronJobDep;
+import com.kanseiu.devops.service.business.DevCronJobDepService;
+import org.springframework.web.bind.annotation.*;
+
+import javax.annotation.Resource;
+import java.util.List;
+import java.util.Objects;
+
+@RestController
+@RequestMapping("/api/cronJobDep")
+public class DevCronJobDepController {
+
+    @Resource
+    private DevCronJobDepService devCronJobDepService;
+
+    // jobId对应的上游依赖列表
+    @GetMapping("/listByJobId/{jobId}")
+    public R<List<DevCronJobDep>> listByJobId(@PathVariable("jobId") Long jobId) {
+        return R.ok(devCronJobDepService.listByJobId(jobId));
+    }
+
+    // 保存（新增/更新）
+    @PostMapping("save")
+    public R<?> save(@RequestBody DevCronJobDep request) {
+        if(Objects.isNull(request.getId())) {
+            // 新增
+            devCronJobDepService.add(request);
+        } else {
+            // 更新
+            devCronJobDepService.update(request);
+        }
+        return R.ok();
+    }
+
+
+}
@@ -4,14 +4,25 @@ import com.baomidou.mybatisplus.core.toolkit.Wrappers;
 import com.kanseiu.devops.framework.mail.service.MailService;
 import com.kanseiu.devops.model.R;
 import com.kanseiu.devops.model.entity.DevCronJobLog;
+import com.kanseiu.devops.model.entity.DevCronJobLogChunk;
+import com.kanseiu.devops.model.response.DevCronJobLogChunkResp;
 import com.kanseiu.devops.model.response.DevCronJobLogResp;
+import com.kanseiu.devops.service.business.DevCronJobLogChunkService;
 import com.kanseiu.devops.service.business.DevCronJobLogService;
+import com.kanseiu.devops.service.joblog.DevCronJobLogBuffer;
+import com.kanseiu.devops.service.joblog.JobLogLiveHub;
 import com.kanseiu.devops.service.renderer.DevCronJobLogHtmlRenderer;
 import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import javax.annotation.Resource;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
+import java.util.Map;
 
 // 定时任务执行日志
 @RestController
@@ -24,16 +35,35 @@ public class DevCronJobLogController {
     @Resource
     private MailService mailService;
 
-    // 根据定时任务ID，获取最新的10条执行记录
+    @Resource
+    private DevCronJobLogBuffer devCronJobLogBuffer;
+
+    @Resource
+    private DevCronJobLogChunkService devCronJobLogChunkService;
+
+    @Resource
+    private JobLogLiveHub jobLogLiveHub;
+
+    // 根据定时任务ID，获取最新的10条执行记录（按标签执行的只列汇总日志）
     @GetMapping("{jobId}")
     public R<List<DevCronJobLog>> byJobId(@PathVariable("jobId") Long jobId) {
         List<DevCronJobLog> list = devCronJobLogService.list(Wrappers.<DevCronJobLog>lambdaQuery().
                 eq(DevCronJobLog::getJobId, jobId)
+                .isNull(DevCronJobLog::getParentLogId)
                 .orderByDesc(DevCronJobLog::getId)
                 .last("LIMIT 10"));
         return R.ok(list);
     }
 
+    // 按标签执行的汇总日志下，每台服务器的执行记录
+    @GetMapping("children/{parentId}")
+    public R<List<DevCronJobLog>> children(@PathVariable("parentId") Long parentId) {
+        List<DevCronJobLog> list = devCronJobLogService.list(Wrappers.<DevCronJobLog>lambdaQuery().
+                eq(DevCronJobLog::getParentLogId, parentId)
+                .orderByAsc(DevCronJobLog::getId));
+        return R.ok(list);
+    }
+
     // 根据定时任务日志ID，获取详情
     @GetMapping("detail/{id}")
     public R<DevCronJobLog> detail(@PathVariable("id") Long id) {
@@ -41,12 +71,60 @@ public class DevCronJobLogController {
         return R.ok(devCronJobLog);
     }
 
+    // 分页读取完整输出（按分块序号，从 afterSeq 之后开始）
+    @GetMapping("detail/{id}/chunks")
+    public R<DevCronJobLogChunkResp> detailChunks(@PathVariable("id") Long id,
+                                                  @RequestParam(value = "stream", defaultValue = DevCronJobLogChunk.STREAM_OUT) String stream,
+                                                  @RequestParam(value = "afterSeq", defaultValue = "0") Integer afterSeq,
+                                                  @RequestParam(value = "limit", defaultValue = "20") Integer limit) {
+        return R.ok(devCronJobLogChunkService.page(id, stream, afterSeq, limit));
+    }
+
+    // 流式输出完整日志（纯文本），被裁剪的部分以标记代替
+    @GetMapping("detail/{id}/raw")
+    public ResponseEntity<StreamingResponseBody> detailRaw(@PathVariable("id") Long id,
+                                                           @RequestParam(value = "stream", defaultValue = DevCronJobLogChunk.STREAM_OUT) String stream) {
+        StreamingResponseBody body = os -> devCronJobLogChunkService.writeTo(id, stream, os);
+        return ResponseEntity.ok()
+                .contentType(new MediaType(MediaType.TEXT_PLAIN, StandardCharsets.UTF_8))
+                .body(body);
+    }
+
+    // 实时跟随正在运行的任务输出：先回放最近的输出，再推送新输出
+    @GetMapping(value = "live/{id}", produces = "text/event-stream")
+    public SseEmitter live(@PathVariable("id") Long id,
+                           @RequestHeader(value = "Last-Event-ID", required = false) Long lastEventId) {
+        SseEmitter emitter = new SseEmitter(30 * 60 * 1000L);
+        if (!jobLogLiveHub.subscribe(id, emitter, lastEventId)) {
+            // 未在运行：告知前端改为查看详情
+            DevCronJobLog log = devCronJobLogService.getById(id);
+            try {
+                emitter.send(SseEmitter.event().name(JobLogLiveHub.EVENT_META).data(log == null ? "日志不存在: id=" + id : "任务未在运行，请查看详情"));
+                emitter.send(SseEmitter.event().name(JobLogLiveHub.EVENT_END).data(log == null || log.getExitCode() == null ? -1 : log.getExitCode()));
+            } catch (IOException ignored) {}
+            emitter.complete();
+        }
+        return emitter;
+    }
+
+    // 实时日志订阅统计
+    @GetMapping("live/stats")
+    public R<Map<String, Object>> liveStats() {
+        return R.ok(jobLogLiveHub.stats());
+    }
+
     // 获取今日定时任务执行失败列表
     @GetMapping("todayFail")
     public R<List<DevCronJobLogResp>> todayFailJobLog() {
         return R.ok(devCronJobLogService.getTodayFail());
     }
 
+    // 执行日志缓冲统计（落库次数、写入字节数等）
+    @GetMapping("buffer/stats")
+    public R<Map<String, Object>> bufferStats() {
+        return R.ok(devCronJobLogBuffer.stats());
+    }
+
     // 中文注释：预览接口，返回 text/html，前端可直接打开看样式
     @GetMapping(value = "/mailPreview/{id}")
     public R<String> mailPreview(@PathVariable("id") Long id) throws Exception {
@@ -3,11 +3,13 @@ package com.kanseiu.devops.controller;
 import com.kanseiu.devops.model.R;
 import com.kanseiu.devops.model.entity.DevDatabase;
 import com.kanseiu.devops.service.business.DevDatabaseService;
+import com.kanseiu.devops.service.db.DevDatabasePool;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import javax.annotation.Resource;
 import java.util.List;
+import java.util.Map;
 
 @RestController
 @RequestMapping("/api/databases")
@@ -16,6 +18,9 @@ public class DevDatabaseController {
     @Resource
     private DevDatabaseService devDatabaseService;
 
+    @Resource
+    private DevDatabasePool devDatabasePool;
+
     @GetMapping("list")
     public R<List<DevDatabase>> list() {
         return R.ok(devDatabaseService.list());
@@ -36,4 +41,10 @@ public class DevDatabaseController {
     public SseEmitter test(@PathVariable Long id) {
         return devDatabaseService.testConnection(id);
     }
-}
\ No newline at end of file
+
+    // 连接池统计
+    @GetMapping("pool/stats")
+    public R<Map<String, Object>> poolStats() {
+        return R.ok(devDatabasePool.stats());
+    }
+}
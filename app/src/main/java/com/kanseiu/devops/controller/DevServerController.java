@@ -5,6 +5,9 @@ import com.kanseiu.devops.model.entity.DevServer;
 import com.kanseiu.devops.model.request.DevServerSaveRequest;
 import com.kanseiu.devops.service.business.DevServerService;
 import com.kanseiu.devops.service.handler.SshExecService;
+import com.kanseiu.devops.service.ssh.RemoteScriptCache;
+import com.kanseiu.devops.service.ssh.SshRunScheduler;
+import com.kanseiu.devops.service.ssh.SshSessionPool;
 import org.springframework.http.MediaType;
 import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.web.bind.annotation.*;
@@ -12,12 +15,16 @@ import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import javax.annotation.Resource;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 
 @RestController
 @RequestMapping("/api/servers")
 public class DevServerController {
 
+    // 中文注释：SSE 在命令超时之外多等的时间（排队、建连、推送结果）
+    private static final long STREAM_EXTRA_MS = 30_000L;
+
     @Resource
     private DevServerService devServerService;
 
@@ -27,6 +34,15 @@ public class DevServerController {
     @Resource
     private ThreadPoolTaskExecutor sshExecPool;
 
+    @Resource
+    private SshSessionPool sshSessionPool;
+
+    @Resource
+    private SshRunScheduler sshRunScheduler;
+
+    @Resource
+    private RemoteScriptCache remoteScriptCache;
+
     // 查询
     @GetMapping("list")
     public R<List<DevServer>> list() {
@@ -46,12 +62,30 @@ public class DevServerController {
         return R.ok();
     }
 
+    // SSH 连接池统计（命中/未命中/建连耗时等）
+    @GetMapping("pool/stats")
+    public R<Map<String, Object>> poolStats() {
+        return R.ok(sshSessionPool.stats());
+    }
+
+    // SHELL 任务运行调度统计（各服务器运行中/排队数）
+    @GetMapping("run/stats")
+    public R<Map<String, Object>> runStats() {
+        return R.ok(sshRunScheduler.stats());
+    }
+
+    // 远端脚本缓存统计（免确认命中/远端确认命中/上传次数）
+    @GetMapping("script-cache/stats")
+    public R<Map<String, Object>> scriptCacheStats() {
+        return R.ok(remoteScriptCache.stats());
+    }
+
     // 中文注释：SSE 实时测试；凭据完全从 DB 读取；前端只需传 id（和可选 command）
     @GetMapping(value = "/{id}/test/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
     public SseEmitter testStream(@PathVariable Long id,
                                  @RequestParam(value = "cmd", required = false) String cmd) {
-        // 中文注释：默认 0L = 不超时（也可以设置一个较大超时）
-        SseEmitter emitter = new SseEmitter(0L);
+        // 中文注释：命令本身有超时，SSE 超时再留出建连时间；浏览器断开/超时由 execFromDb 中断命令
+        SseEmitter emitter = new SseEmitter(sshExecService.getTestTimeoutMs() + STREAM_EXTRA_MS);
 
         sshExecPool.execute(() -> {
             try {
@@ -63,9 +97,8 @@ public class DevServerController {
                 }
                 emitter.send(SseEmitter.event().name("meta").data("开始测试：" + s.getUsername() + "@" + s.getHost()));
 
+                // 中文注释：命令启动后即返回，结束时由 execFromDb 的完成回调关闭 emitter
                 sshExecService.execFromDb(s, cmd, emitter);
-
-                emitter.complete(); // 中文注释：正常结束
             } catch (Exception e) {
                 try {
                     emitter.send(SseEmitter.event().name("error").data(e.getClass().getSimpleName() + ": " + (e.getMessage() == null ? "" : e.getMessage())));
@@ -0,0 +1,184 @@
+package com.kanseiu.devops.cron;
+
+import cn.hutool.cron.CronUtil;
+import cn.hutool.cron.Scheduler;
+import com.kanseiu.devops.mapper.DevCronJobMapper;
+import com.kanseiu.devops.model.entity.DevCronJob;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 调度器与数据库对账（增量）
+ * - 按任务ID + 版本比较 DB 与已注册任务，只新增、移除、原地更新有变化的任务，不清空调度器
+ * - 后台定时对账，直接改库的变更也能生效
+ */
+@Slf4j
+@Component
+public class CronReconciler {
+
+    // 后台对账间隔（毫秒），<= 0 关闭
+    @Value("${devops.cron.reconcile-interval-ms:30000}")
+    private long reconcileIntervalMs;
+
+    @Resource
+    private DevCronJobMapper devCronJobMapper;
+
+    @Resource
+    private CronRegistrar cronRegistrar;
+
+    @Resource
+    private SchedulerShards schedulerShards;
+
+    @Resource
+    private JobDagEngine jobDagEngine;
+
+    @Resource
+    private ThreadPoolTaskScheduler cronMaintTimer;
+
+    private ScheduledFuture<?> reconcileFuture;
+
+    // ===================== 统计 =====================
+    private final AtomicLong reconciles = new AtomicLong();
+    private volatile long lastReconcileAt;
+    private volatile Map<String, Object> lastResult = new LinkedHashMap<>();
+
+    @PostConstruct
+    public void init() {
+        // 分片模式下成员变化立即对账：认领新分到的任务，移除分走的任务
+        schedulerShards.addListener(this::reconcileQuietly);
+        if (reconcileIntervalMs > 0) {
+            // 启动时由 CronScheduler.start 做首次对账，后台对账从一个间隔之后开始
+            reconcileFuture = cronMaintTimer.scheduleWithFixedDelay(this::reconcileQuietly,
+                    Instant.now().plusMillis(reconcileIntervalMs), Duration.ofMillis(reconcileIntervalMs));
+        }
+    }
+
+    @PreDestroy
+    public void destroy() {
+        if (reconcileFuture != null) {
+            reconcileFuture.cancel(false);
+        }
+    }
+
+    /**
+     * 对账一次（分片模式下只注册归本节点的任务）
+     * @return 新增/更新/移除/未变化/失败/归其他节点的任务数
+     */
+    public synchronized Map<String, Object> reconcile() {
+        List<DevCronJob> jobs = devCronJobMapper.selectList(null);
+        Map<Long, String> registered = cronRegistrar.registeredVersions();
+
+        int added = 0, updated = 0, unchanged = 0, failed = 0, foreign = 0;
+        List<Long> removed = new ArrayList<>();
+        Set<Long> wanted = new HashSet<>();
+        for (DevCronJob job : jobs) {
+            if (!Boolean.FALSE.equals(job.getDisabled())) {
+                continue;
+            }
+            if (!schedulerShards.owns(job.getId())) {
+                foreign++;
+                continue;
+            }
+            wanted.add(job.getId());
+            String version = registered.get(job.getId());
+            if (CronRegistrar.versionOf(job).equals(version)) {
+                unchanged++;
+                continue;
+            }
+            try {
+                cronRegistrar.register(job);
+                if (version == null) {
+                    added++;
+                    log.info("[对账] 注册定时任务[{}]", job.getJobName());
+                } else {
+                    updated++;
+                    log.info("[对账] 更新定时任务[{}]", job.getJobName());
+                }
+            } catch (Exception e) {
+                failed++;
+                // 注册失败（如表达式不合法）的任务从调度器移除，避免按旧配置继续执行
+                if (version != null) {
+                    cronRegistrar.unregister(job.getId());
+                }
+                log.error("[对账] 定时任务[{}]注册失败！", job.getJobName(), e);
+            }
+        }
+
+        // 已删除、已禁用或已分给其他节点的任务
+        for (Long id : registered.keySet()) {
+            if (!wanted.contains(id)) {
+                cronRegistrar.unregister(id);
+                removed.add(id);
+            }
+        }
+        // 调度器中残留、但不在注册表中的任务
+        Scheduler scheduler = CronUtil.getScheduler();
+        if (scheduler != null && scheduler.getTaskTable() != null) {
+            Set<Long> known = cronRegistrar.registeredIds();
+            for (String taskId : new ArrayList<>(scheduler.getTaskTable().getIds())) {
+                if (taskId.startsWith(CronRegistrar.TASK_ID_PREFIX) && !isKnown(taskId, known)) {
+                    CronUtil.remove(taskId);
+                    log.info("[对账] 移除残留任务 {}", taskId);
+                }
+            }
+        }
+        if (!removed.isEmpty()) {
+            log.info("[对账] 移除定时任务 {}", removed);
+        }
+        // 任务依赖图一并刷新
+        jobDagEngine.reload();
+
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("added", added);
+        m.put("updated", updated);
+        m.put("removed", removed.size());
+        m.put("unchanged", unchanged);
+        m.put("failed", failed);
+        m.put("foreign", foreign);
+        reconciles.incrementAndGet();
+        lastReconcileAt = System.currentTimeMillis();
+        lastResult = m;
+        return m;
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("reconciles", reconciles.get());
+        m.put("lastReconcileAt", lastReconcileAt == 0 ? null : lastReconcileAt);
+        m.put("lastResult", lastResult);
+        m.put("intervalMs", reconcileIntervalMs);
+        return m;
+    }
+
+    private void reconcileQuietly() {
+        try {
+            reconcile();
+        } catch (Exception e) {
+            log.warn("[对账] 后台对账失败：{}", e.getMessage());
+        }
+    }
+
+    private static boolean isKnown(String taskId, Set<Long> known) {
+        try {
+            return known.contains(Long.parseLong(taskId.substring(CronRegistrar.TASK_ID_PREFIX.length())));
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+}
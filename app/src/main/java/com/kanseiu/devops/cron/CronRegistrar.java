@@ -3,56 +3,261 @@ package com.kanseiu.devops.cron;
 import cn.hutool.cron.CronUtil;
 import cn.hutool.cron.pattern.CronPattern;
 import cn.hutool.cron.task.Task;
+import cn.hutool.crypto.digest.DigestUtil;
 import cn.hutool.extra.spring.SpringUtil;
+import com.kanseiu.devops.constant.JobLogStatus;
 import com.kanseiu.devops.constant.JobTypeEnum;
+import com.kanseiu.devops.constant.OverlapPolicyEnum;
 import com.kanseiu.devops.model.entity.DevCronJob;
+import com.kanseiu.devops.service.callback.CompletionCallback;
 import com.kanseiu.devops.service.handler.DevScriptExecService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Component;
 
+import javax.annotation.PostConstruct;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
 // 调度注册器，将 DB 任务注册到 Hutool Cron 调度器
 @Slf4j
 @Component
 @RequiredArgsConstructor
 public class CronRegistrar {
 
+    // 调度器内任务ID前缀
+    public static final String TASK_ID_PREFIX = "job-";
+
+    private final JobInFlightTracker jobInFlightTracker;
+
+    private final SchedulerLease schedulerLease;
+
+    private final SchedulerShards schedulerShards;
+
+    private final NextFireIndex nextFireIndex;
+
+    private final MisfireHandler misfireHandler;
+
+    private final JobDagEngine jobDagEngine;
+
+    // 任务ID -> 已注册信息
+    private final ConcurrentHashMap<Long, Registration> registrations = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void init() {
+        // 接任主节点时补上交接期间错过的触发
+        schedulerLease.addLeaderListener(this::recoverMisfires);
+        // 上游结束后由依赖引擎触发下游
+        jobDagEngine.setLauncher(this::launchDownstream);
+    }
+
     /** 生成调度器内唯一任务ID（字符串） */
     public static String taskIdOf(Long id) {
-        return "job-" + id;
+        return TASK_ID_PREFIX + id;
+    }
+
+    /**
+     * 任务版本：影响调度/执行的字段摘要，任一变化即需要重新注册
+     * （不用 update_time：直接改库时未必会更新它，且实体内的值与库中精度不同）
+     */
+    public static String versionOf(DevCronJob job) {
+        return DigestUtil.md5Hex(String.join("\u0001",
+                job.getCronExpr(), job.getJobType(), job.getScriptName(),
+                String.valueOf(job.getServerId()), String.valueOf(job.getDatabaseId()), String.valueOf(job.getArgsText()),
+                String.valueOf(job.getTimeoutSec()), String.valueOf(job.getOverlapPolicy()), String.valueOf(job.getMisfirePolicy()), job.getJobName(),
+                String.valueOf(job.getTargetType()), String.valueOf(job.getTargetLabels()), String.valueOf(job.getFanOutWidth()), String.valueOf(job.getBatchSize())));
     }
 
     /**
      * 注册/更新任务
+     * 已注册的任务原地更新：替换任务内容，Cron 变化时只更新表达式，不会出现任务短暂不在调度器中的窗口
      * @param job DB实体
      */
     public void register(DevCronJob job) {
-        final String taskId = taskIdOf(job.getId());
-
-        // 中文注释：先移除旧任务，避免重复
-        CronUtil.remove(taskId);
-
         // 校验 Cron 表达式合法性（Hutool）
         this.checkCronCorrect(job);
+        // 校验任务类型
+        JobTypeEnum.getExecBeanNameByType(job.getJobType());
 
-        // 根据JOB类型，获取bean
-        String execBeanName = JobTypeEnum.getExecBeanNameByType(job.getJobType());
-        DevScriptExecService scriptExecService = SpringUtil.getBean(execBeanName, DevScriptExecService.class);
-
-        // 中文注释：包装 Task，执行时从 execService 调用真实逻辑
-        Task task = () -> {
-            log.info("[Cron] run job#{} jobType={} name={} script={}", job.getId(), job.getJobType(), job.getJobName(), job.getScriptName());
-            // 执行
-            scriptExecService.execute(job, null);
-        };
-
-        // 中文注释：注册到调度器
-        CronUtil.schedule(taskId, job.getCronExpr(), task);
+        final String taskId = taskIdOf(job.getId());
+        final String version = versionOf(job);
+        registrations.compute(job.getId(), (id, reg) -> {
+            if (reg != null && CronUtil.getScheduler().getTask(taskId) != null) {
+                if (!reg.cronExpr.equals(job.getCronExpr())) {
+                    CronUtil.getScheduler().updatePattern(taskId, new CronPattern(job.getCronExpr()));
+                    // 按旧表达式记录的触发时间不能用来推算新表达式错过的触发
+                    misfireHandler.forget(id);
+                }
+                return new Registration(job, version);
+            }
+            Registration fresh = new Registration(job, version);
+            // 中文注释：先移除旧任务（调度器中残留的同名任务），避免重复
+            CronUtil.remove(taskId);
+            // 中文注释：包装 Task，每次触发读取当前注册的任务内容
+            Task task = () -> {
+                nextFireIndex.fired(id);
+                Registration current = registrations.get(id);
+                if (current != null) {
+                    onTick(current.job);
+                }
+            };
+            // 中文注释：注册到调度器
+            CronUtil.schedule(taskId, job.getCronExpr(), task);
+            return fresh;
+        });
+        nextFireIndex.update(job.getId(), job.getCronExpr());
     }
 
     /** 从调度器移除任务（用于禁用/删除） */
     public void unregister(Long id) {
+        registrations.remove(id);
         CronUtil.remove(taskIdOf(id));
+        jobInFlightTracker.remove(id);
+        misfireHandler.evict(id);
+    }
+
+    /**
+     * 计算重启/恢复期间错过的触发，并按各任务的错过触发策略补跑
+     * 在调度器启动前、接任主节点时调用（两者可能同时发生，串行执行避免重复补跑）；非主节点不处理
+     */
+    public synchronized void recoverMisfires() {
+        if (!schedulerLease.isLeader()) {
+            return;
+        }
+        List<DevCronJob> jobs = new ArrayList<>();
+        registrations.forEach((id, reg) -> {
+            if (schedulerShards.owns(id)) {
+                jobs.add(reg.job);
+            }
+        });
+        if (jobs.isEmpty()) {
+            return;
+        }
+        misfireHandler.recover(jobs).forEach((id, missed) -> {
+            Registration reg = registrations.get(id);
+            int n = reg == null ? 0 : misfireHandler.catchUpCount(reg.job, missed, false);
+            if (n > 0) {
+                catchUp(id, n);
+            }
+        });
+    }
+
+    /** 已注册任务ID -> 版本 */
+    public Map<Long, String> registeredVersions() {
+        Map<Long, String> m = new ConcurrentHashMap<>();
+        registrations.forEach((id, reg) -> m.put(id, reg.version));
+        return m;
+    }
+
+    /** 已注册任务ID */
+    public Set<Long> registeredIds() {
+        return registrations.keySet();
+    }
+
+    /** 是否已注册 */
+    public boolean isRegistered(Long id) {
+        return registrations.containsKey(id);
+    }
+
+    // 调度器触发：记录计划触发时间与延迟，卡顿错过的触发按策略在本次执行结束后补跑
+    private void onTick(DevCronJob job) {
+        if (!isActive(job)) {
+            return;
+        }
+        MisfireHandler.Fire fire = misfireHandler.onFire(job);
+        int catchUp = misfireHandler.catchUpCount(job, fire.missed, true);
+        if (!trigger(job, catchUp > 0 ? () -> catchUp(job.getId(), catchUp) : null) && catchUp > 0) {
+            log.info("[Cron] 补跑取消 job#{} name={}，共 {} 次", job.getId(), job.getJobName(), catchUp);
+        }
+    }
+
+    // 补跑：逐次串行，上一次结束后再补下一次；按最新注册的任务内容执行
+    private void catchUp(Long id, int remaining) {
+        Registration current = registrations.get(id);
+        if (current == null || !isActive(current.job)) {
+            log.info("[Cron] 补跑中止 job#{}，任务已移除或不再由本节点执行，剩余 {} 次", id, remaining);
+            return;
+        }
+        DevCronJob job = current.job;
+        log.info("[Cron] 补跑 job#{} name={}，剩余 {} 次", id, job.getJobName(), remaining);
+        misfireHandler.catchUpFired();
+        if (!trigger(job, remaining > 1 ? () -> catchUp(id, remaining - 1) : null) && remaining > 1) {
+            log.info("[Cron] 补跑中止 job#{} name={}，剩余 {} 次", id, job.getJobName(), remaining - 1);
+        }
+    }
+
+    // 依赖触发下游：由认领到这次触发的节点执行（分片模式下即下游所属节点）
+    private boolean launchDownstream(DevCronJob job, Runnable onDone) {
+        if (!schedulerLease.isLeader()) {
+            log.info("[Cron] 已不是主节点，忽略依赖触发 job#{} name={}", job.getId(), job.getJobName());
+            return false;
+        }
+        log.info("[Cron] 依赖满足，触发 job#{} name={}", job.getId(), job.getJobName());
+        return trigger(job, onDone);
+    }
+
+    // 选主模式下只有主节点执行，分片模式下只执行归本节点的任务
+    private boolean isActive(DevCronJob job) {
+        if (!schedulerLease.isLeader()) {
+            log.debug("[Cron] 非主节点，忽略触发 job#{} name={}", job.getId(), job.getJobName());
+            return false;
+        }
+        // 重新分片后、对账移除前的触发；刚分到本节点、原节点可能还在执行的任务等交接期过后再执行
+        if (!schedulerShards.mayRun(job.getId())) {
+            log.debug("[Cron] 任务已分给其他节点或交接中，忽略触发 job#{} name={}", job.getId(), job.getJobName());
+            return false;
+        }
+        return true;
+    }
+
+    // 按重叠策略决定执行/排队/跳过；then 为本次执行结束后要做的事（补跑、释放依赖并行名额），未执行则不会调用
+    private boolean trigger(DevCronJob job, Runnable then) {
+        OverlapPolicyEnum policy = OverlapPolicyEnum.of(job.getOverlapPolicy());
+        JobInFlightTracker.Ticket ticket = jobInFlightTracker.tryStart(job.getId(), policy, job.getTimeoutSec());
+        if (ticket.decision == JobInFlightTracker.Decision.RUN) {
+            fire(job, ticket.token, then);
+            return true;
+        }
+        log.info("[Cron] {} job#{} name={}，上一次执行未结束（{}）", ticket.decision == JobInFlightTracker.Decision.QUEUED ? "排队" : "跳过", job.getId(), job.getJobName(), policy);
+        return false;
+    }
+
+    // 执行一次；结束时释放在途状态，有排队的触发则接着执行，并通知依赖引擎
+    // token：本次执行占门的令牌（ALLOW 为 NO_GATE），结束时凭它释放
+    private void fire(DevCronJob job, long token, Runnable then) {
+        log.info("[Cron] run job#{} jobType={} name={} script={}", job.getId(), job.getJobType(), job.getJobName(), job.getScriptName());
+        // 执行前就抛异常时也要释放，保证只释放一次
+        AtomicBoolean finished = new AtomicBoolean();
+        CompletionCallback.Listener release = (exitCode, status) -> {
+            if (!finished.compareAndSet(false, true)) {
+                return;
+            }
+            long next = jobInFlightTracker.finish(job.getId(), token);
+            if (next != JobInFlightTracker.NO_GATE) {
+                // 排队的触发按最新注册的任务内容执行
+                Registration current = registrations.get(job.getId());
+                log.info("[Cron] 执行排队的触发 job#{} name={}", job.getId(), job.getJobName());
+                fire(current != null ? current.job : job, next, null);
+            }
+            if (then != null) {
+                then.run();
+            }
+            jobDagEngine.onFinished(job.getId(), status);
+        };
+        try {
+            // 根据JOB类型，获取bean
+            String execBeanName = JobTypeEnum.getExecBeanNameByType(job.getJobType());
+            DevScriptExecService scriptExecService = SpringUtil.getBean(execBeanName, DevScriptExecService.class);
+            // 执行
+            scriptExecService.execute(job, new CompletionCallback(release));
+        } catch (Exception e) {
+            log.error("[Cron] 执行失败 job#{} name={}：{}", job.getId(), job.getJobName(), e.getMessage(), e);
+            release.onFinish(-1, JobLogStatus.ERROR);
+        }
     }
 
     // 检查CRON表达式是否正确
@@ -64,4 +269,20 @@ public class CronRegistrar {
             throw new IllegalArgumentException("Cron 表达式不合法：" + req.getCronExpr(), e);
         }
     }
-}
\ No newline at end of file
+
+    // 已注册信息：任务内容（不可变快照）+ 版本
+    private static class Registration {
+
+        final DevCronJob job;
+
+        final String cronExpr;
+
+        final String version;
+
+        Registration(DevCronJob job, String version) {
+            this.job = job;
+            this.cronExpr = job.getCronExpr();
+            this.version = version;
+        }
+    }
+}
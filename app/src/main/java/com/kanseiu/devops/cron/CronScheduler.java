@@ -22,9 +22,36 @@ public class CronScheduler {
     @Resource
     private DevCronJobService devCronJobService;
 
+    @Resource
+    private JobInFlightTracker jobInFlightTracker;
+
+    @Resource
+    private CronReconciler cronReconciler;
+
+    @Resource
+    private SchedulerLease schedulerLease;
+
+    @Resource
+    private SchedulerShards schedulerShards;
+
+    @Resource
+    private NextFireIndex nextFireIndex;
+
+    @Resource
+    private CronRegistrar cronRegistrar;
+
+    @Resource
+    private MisfireHandler misfireHandler;
+
+    @Resource
+    private JobDagEngine jobDagEngine;
+
     public void schedulerInit() {
         // 开启秒级匹配
         CronUtil.setMatchSecond(true);
+        // 多实例部署时先确定主从角色 / 分片
+        schedulerLease.start();
+        schedulerShards.start();
         // 启动
         this.start();
     }
@@ -35,8 +62,10 @@ public class CronScheduler {
         try {
             // 如果调度器没启动，则启动
             if (!isStarted()) {
-                // 启动前，做一次全量重载，确保内存任务与DB一致
+                // 启动前，与DB对账一次，确保内存任务与DB一致
                 devCronJobService.reloadAll();
+                // 重启或停止期间错过的触发，按各任务的错过触发策略补跑
+                cronRegistrar.recoverMisfires();
                 // 启动调度器
                 CronUtil.start();
             }
@@ -64,6 +93,12 @@ public class CronScheduler {
         boolean started = isStarted();
         m.put("started", started);
         m.put("status", started ? "STARTED" : "STOPPED");
+        // 集群角色：STANDALONE / LEADER / FOLLOWER / SHARD，从节点注册任务但不执行
+        m.put("role", schedulerLease.role());
+        m.put("cluster", schedulerLease.status());
+        if (schedulerShards.isEnabled()) {
+            m.put("shards", schedulerShards.status());
+        }
         try {
             Scheduler scheduler = CronUtil.getScheduler();
             int size = (scheduler != null && scheduler.getTaskTable() != null) ? scheduler.getTaskTable().size() : 0;
@@ -71,6 +106,16 @@ public class CronScheduler {
         } catch (Exception ignore) {
             m.put("registeredTasks", 0);
         }
+        // 触发统计：执行、排队、因上一次未结束而跳过
+        m.put("fires", jobInFlightTracker.stats());
+        // 与数据库对账情况
+        m.put("reconcile", cronReconciler.stats());
+        // 下次触发时间索引
+        m.put("nextFire", nextFireIndex.stats());
+        // 触发延迟（实际 - 计划）与错过/补跑的触发
+        m.put("misfire", misfireHandler.stats());
+        // 任务依赖：依赖边、等待/就绪/执行中的下游
+        m.put("dag", jobDagEngine.stats());
         return m;
     }
 
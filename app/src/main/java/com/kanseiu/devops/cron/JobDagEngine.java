@@ -0,0 +1,354 @@
+package com.kanseiu.devops.cron;
+
+import cn.hutool.core.util.StrUtil;
+import com.kanseiu.devops.constant.JobLogStatus;
+import com.kanseiu.devops.mapper.DevCronJobDepMapper;
+import com.kanseiu.devops.mapper.DevCronJobMapper;
+import com.kanseiu.devops.model.entity.DevCronJob;
+import com.kanseiu.devops.model.entity.DevCronJobDep;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 任务依赖（DAG）执行
+ * - 上游任务执行结束（onEnd）时按结束状态判断下游依赖是否满足，满足即立即触发下游，不再靠错开的 Cron 估算间隔
+ * - 下游有多个上游时，所有上游的最近一次结束都满足条件才触发（触发后重新计）
+ * - 各上游是否满足记在依赖表（satisfied）中，重启、切主、上游分在不同节点时都不丢；
+ *   全部满足时在库中原子清除标记来认领这次触发，多个节点只有一个认领成功
+ * - 下游由其所属节点认领执行：上游结束的节点拥有下游时立即认领，否则由下游所属节点定时检查认领
+ * - 就绪的下游排队执行，同时执行的依赖触发任务数不超过并行宽度，互不依赖的分支并行
+ */
+@Slf4j
+@Component
+public class JobDagEngine {
+
+    // 依赖触发的任务最多同时执行数
+    @Value("${devops.cron.dag.max-parallel:4}")
+    private int maxParallel;
+
+    // 检查已满足、待本节点认领的下游的间隔（毫秒），<= 0 关闭（分片模式下上游与下游不在同一节点时靠它触发）
+    @Value("${devops.cron.dag.poll-interval-ms:5000}")
+    private long pollIntervalMs;
+
+    @Resource
+    private DevCronJobDepMapper devCronJobDepMapper;
+
+    @Resource
+    private DevCronJobMapper devCronJobMapper;
+
+    @Resource
+    private SchedulerLease schedulerLease;
+
+    @Resource
+    private SchedulerShards schedulerShards;
+
+    @Resource
+    private ThreadPoolTaskScheduler cronMaintTimer;
+
+    private ScheduledFuture<?> pollFuture;
+
+    // 执行下游任务（由 CronRegistrar 提供，按重叠策略执行）；返回是否已开始执行，开始执行的结束时调用 onDone
+    public interface Launcher {
+        boolean launch(DevCronJob job, Runnable onDone);
+    }
+
+    private volatile Launcher launcher;
+
+    // 依赖图快照，整体替换
+    private volatile Graph graph = Graph.EMPTY;
+
+    // 以下由 this 保护
+    // 已就绪、等待执行的下游（去重，先到先执行）
+    private final LinkedHashSet<Long> pending = new LinkedHashSet<>();
+    private int running;
+
+    // ===================== 统计 =====================
+    private final LongAdder triggered = new LongAdder();
+    private final LongAdder launched = new LongAdder();
+    private final LongAdder notStarted = new LongAdder();
+    private final LongAdder polled = new LongAdder();
+
+    @PostConstruct
+    public void init() {
+        if (pollIntervalMs > 0) {
+            pollFuture = cronMaintTimer.scheduleWithFixedDelay(this::pollQuietly,
+                    Instant.now().plusMillis(pollIntervalMs), Duration.ofMillis(pollIntervalMs));
+        }
+    }
+
+    @PreDestroy
+    public void destroy() {
+        if (pollFuture != null) {
+            pollFuture.cancel(false);
+        }
+    }
+
+    public void setLauncher(Launcher launcher) {
+        this.launcher = launcher;
+    }
+
+    /** 从库中重新加载依赖图（对账、保存依赖后调用） */
+    public void reload() {
+        Graph g = Graph.of(devCronJobDepMapper.listEnabled());
+        graph = g;
+        synchronized (this) {
+            // 依赖已删除/禁用的下游不再等待
+            pending.retainAll(g.upstreamsOf.keySet());
+        }
+    }
+
+    /**
+     * 任务执行结束时调用
+     * @param jobId 结束的任务（作为上游）
+     * @param status 结束状态
+     */
+    public void onFinished(Long jobId, JobLogStatus status) {
+        List<Edge> edges = graph.byUpstream.get(jobId);
+        if (edges == null) {
+            return;
+        }
+        boolean queued = false;
+        for (Edge edge : edges) {
+            // 以上游最近一次结束为准
+            boolean ok = edge.triggerOn.contains(status);
+            try {
+                devCronJobDepMapper.markUpstream(edge.downstream, jobId, status.name(), ok);
+                if (!ok) {
+                    log.info("[依赖] 上游 job#{} 结束状态 {}，不满足下游 job#{} 的条件 {}", jobId, status, edge.downstream, edge.triggerOn);
+                } else if (schedulerShards.owns(edge.downstream)) {
+                    queued |= claim(edge.downstream);
+                } else {
+                    log.info("[依赖] 上游 job#{} 已满足，下游 job#{} 归节点 {}，由其认领触发", jobId, edge.downstream, schedulerShards.ownerOf(edge.downstream));
+                }
+            } catch (Exception e) {
+                log.error("[依赖] 记录上游 job#{} 结束状态失败，下游 job#{}：{}", jobId, edge.downstream, e.getMessage(), e);
+            }
+        }
+        if (queued) {
+            dispatch();
+        }
+    }
+
+    /** 认领已满足、归本节点的下游（上游在其他节点结束、或认领前节点重启时由此触发） */
+    public void poll() {
+        if (graph.upstreamsOf.isEmpty() || !schedulerLease.isLeader()) {
+            return;
+        }
+        polled.increment();
+        boolean queued = false;
+        for (Long id : devCronJobDepMapper.listReady()) {
+            if (graph.upstreamsOf.containsKey(id) && schedulerShards.owns(id)) {
+                queued |= claim(id);
+            }
+        }
+        if (queued) {
+            dispatch();
+        }
+    }
+
+    /**
+     * 新增依赖 upstream -> downstream 后是否仍无环
+     * @param deps 现有启用的依赖（不含本条）
+     */
+    public static void checkAcyclic(List<DevCronJobDep> deps, Long upstream, Long downstream) {
+        if (upstream.equals(downstream)) {
+            throw new IllegalArgumentException("任务不能依赖自身");
+        }
+        Map<Long, List<Long>> next = new HashMap<>();
+        for (DevCronJobDep dep : deps) {
+            next.computeIfAbsent(dep.getUpstreamJobId(), k -> new ArrayList<>()).add(dep.getDevCronJobId());
+        }
+        // 从下游出发能到达上游，则新增这条边会成环
+        Set<Long> seen = new HashSet<>();
+        Deque<Long> stack = new ArrayDeque<>();
+        stack.push(downstream);
+        while (!stack.isEmpty()) {
+            Long id = stack.pop();
+            if (id.equals(upstream)) {
+                throw new IllegalArgumentException("依赖成环：job#" + upstream + " 已直接或间接依赖 job#" + downstream);
+            }
+            if (seen.add(id)) {
+                next.getOrDefault(id, Collections.emptyList()).forEach(stack::push);
+            }
+        }
+    }
+
+    /** 解析触发状态（逗号分隔），为空默认 SUCCESS */
+    public static EnumSet<JobLogStatus> parseTriggerOn(String text) {
+        EnumSet<JobLogStatus> set = EnumSet.noneOf(JobLogStatus.class);
+        for (String s : StrUtil.split(StrUtil.blankToDefault(text, JobLogStatus.SUCCESS.name()), ',', true, true)) {
+            JobLogStatus status;
+            try {
+                status = JobLogStatus.valueOf(s);
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("不支持的触发状态：" + s);
+            }
+            if (status == JobLogStatus.RUNNING) {
+                throw new IllegalArgumentException("不支持的触发状态：" + s);
+            }
+            set.add(status);
+        }
+        if (set.isEmpty()) {
+            set.add(JobLogStatus.SUCCESS);
+        }
+        return set;
+    }
+
+    public synchronized Map<String, Object> stats() {
+        Graph g = graph;
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("edges", g.edges);
+        m.put("downstreamJobs", g.upstreamsOf.size());
+        m.put("polled", polled.sum());
+        m.put("pending", pending.size());
+        m.put("running", running);
+        m.put("maxParallel", maxParallel);
+        m.put("triggered", triggered.sum());
+        m.put("launched", launched.sum());
+        m.put("notStarted", notStarted.sum());
+        return m;
+    }
+
+    // 所有上游都满足时认领一次触发：库中原子清除满足标记，只有一个节点（一次调用）能认领成功
+    private boolean claim(Long downstream) {
+        if (devCronJobDepMapper.claimReady(downstream) == 0) {
+            log.info("[依赖] 下游 job#{} 还有上游未满足（或已被认领）", downstream);
+            return false;
+        }
+        synchronized (this) {
+            pending.add(downstream);
+        }
+        triggered.increment();
+        log.info("[依赖] 下游 job#{} 的上游 {} 均已满足，等待执行", downstream, graph.upstreamsOf.get(downstream));
+        return true;
+    }
+
+    private void pollQuietly() {
+        try {
+            poll();
+        } catch (Exception e) {
+            log.warn("[依赖] 检查待认领的下游失败：{}", e.getMessage());
+        }
+    }
+
+    // 并行宽度内依次执行就绪的下游
+    private void dispatch() {
+        while (true) {
+            Long next;
+            synchronized (this) {
+                if (running >= Math.max(maxParallel, 1) || pending.isEmpty()) {
+                    return;
+                }
+                Iterator<Long> it = pending.iterator();
+                next = it.next();
+                it.remove();
+                running++;
+            }
+            launch(next);
+        }
+    }
+
+    private void launch(Long jobId) {
+        boolean started = false;
+        try {
+            Launcher l = launcher;
+            DevCronJob job = devCronJobMapper.selectById(jobId);
+            if (l == null || job == null) {
+                log.warn("[依赖] 下游 job#{} 不存在，忽略", jobId);
+            } else if (!Boolean.FALSE.equals(job.getDisabled())) {
+                log.info("[依赖] 下游 job#{} name={} 已禁用，忽略", jobId, job.getJobName());
+            } else {
+                started = l.launch(job, this::release);
+            }
+        } catch (Exception e) {
+            log.error("[依赖] 下游 job#{} 触发失败：{}", jobId, e.getMessage(), e);
+        }
+        if (started) {
+            launched.increment();
+        } else {
+            notStarted.increment();
+            release();
+        }
+    }
+
+    private void release() {
+        synchronized (this) {
+            running--;
+        }
+        dispatch();
+    }
+
+    // 依赖边：上游结束状态在 triggerOn 内即视为满足
+    private static class Edge {
+
+        final Long downstream;
+
+        final EnumSet<JobLogStatus> triggerOn;
+
+        Edge(Long downstream, EnumSet<JobLogStatus> triggerOn) {
+            this.downstream = downstream;
+            this.triggerOn = triggerOn;
+        }
+    }
+
+    // 依赖图：上游ID -> 依赖边；下游ID -> 全部上游ID
+    private static class Graph {
+
+        static final Graph EMPTY = new Graph(Collections.emptyMap(), Collections.emptyMap(), 0);
+
+        final Map<Long, List<Edge>> byUpstream;
+
+        final Map<Long, Set<Long>> upstreamsOf;
+
+        final int edges;
+
+        Graph(Map<Long, List<Edge>> byUpstream, Map<Long, Set<Long>> upstreamsOf, int edges) {
+            this.byUpstream = byUpstream;
+            this.upstreamsOf = upstreamsOf;
+            this.edges = edges;
+        }
+
+        static Graph of(List<DevCronJobDep> deps) {
+            Map<Long, List<Edge>> byUpstream = new HashMap<>();
+            Map<Long, Set<Long>> upstreamsOf = new HashMap<>();
+            int edges = 0;
+            for (DevCronJobDep dep : deps) {
+                EnumSet<JobLogStatus> triggerOn;
+                try {
+                    triggerOn = parseTriggerOn(dep.getTriggerOnStatus());
+                } catch (IllegalArgumentException e) {
+                    // 直接改库写入的非法状态，跳过该依赖
+                    log.warn("[依赖] 依赖#{} 触发状态不合法，忽略：{}", dep.getId(), e.getMessage());
+                    continue;
+                }
+                byUpstream.computeIfAbsent(dep.getUpstreamJobId(), k -> new ArrayList<>()).add(new Edge(dep.getDevCronJobId(), triggerOn));
+                upstreamsOf.computeIfAbsent(dep.getDevCronJobId(), k -> new HashSet<>()).add(dep.getUpstreamJobId());
+                edges++;
+            }
+            return new Graph(byUpstream, upstreamsOf, edges);
+        }
+    }
+}
@@ -0,0 +1,254 @@
+package com.kanseiu.devops.cron;
+
+import com.kanseiu.devops.constant.OverlapPolicyEnum;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 定时任务在途跟踪（无锁，CAS）
+ * - SKIP_IF_RUNNING / QUEUE_ONE 共用一个门状态：空闲、运行中、运行中且排队一次；门由占用它的那次执行（令牌）释放
+ * - 门有最长占用时间（任务超时 + 宽限，且不小于 max-hold-ms）：执行丢了结束通知（异常未回调、通道一直不关闭）时，
+ *   超时后的下一次触发强制释放并照常执行，旧执行之后再结束不会影响新的门
+ * - ALLOW 不占门，只计在途数
+ * - 被跳过的触发只在内存计数（不写库），用于观察任务是否饱和；占用超时的门在 stats 中列出
+ */
+@Slf4j
+@Component
+public class JobInFlightTracker {
+
+    public enum Decision { RUN, QUEUED, SKIPPED }
+
+    // 不占门的执行（ALLOW）使用的令牌
+    public static final long NO_GATE = 0L;
+
+    private static final int IDLE = 0;
+    private static final int RUNNING = 1;
+    private static final int RUNNING_QUEUED = 2;
+
+    // 任务超时之外留给收尾（写日志、通知）的时间
+    private static final long HOLD_GRACE_MS = 60_000L;
+
+    private static final Gate IDLE_GATE = new Gate(IDLE, NO_GATE, 0L, 0L);
+
+    // 门的最长占用时间（毫秒）；任务超时更长时按任务超时 + 宽限
+    @Value("${devops.cron.overlap-max-hold-ms:3600000}")
+    private long maxHoldMs;
+
+    // 任务ID -> 状态
+    private final ConcurrentHashMap<Long, State> states = new ConcurrentHashMap<>();
+
+    private final AtomicLong tokens = new AtomicLong();
+
+    // ===================== 统计 =====================
+    private final LongAdder fired = new LongAdder();
+    private final LongAdder queued = new LongAdder();
+    private final LongAdder skipped = new LongAdder();
+    private final LongAdder forcedReleases = new LongAdder();
+
+    // 一次触发的结果：RUN 时 token 为本次执行占门的令牌（ALLOW 为 NO_GATE），结束时交给 finish
+    public static final class Ticket {
+
+        public final Decision decision;
+
+        public final long token;
+
+        Ticket(Decision decision, long token) {
+            this.decision = decision;
+            this.token = token;
+        }
+    }
+
+    /**
+     * 触发时调用
+     * @param timeoutSec 任务超时（秒），用于计算门的最长占用时间，为空或 <= 0 表示不限
+     * @return RUN 立即执行；QUEUED 已排队，上一次结束时 finish 返回新令牌；SKIPPED 跳过
+     */
+    public Ticket tryStart(Long jobId, OverlapPolicyEnum policy, Integer timeoutSec) {
+        State s = states.computeIfAbsent(jobId, k -> new State());
+        if (policy == OverlapPolicyEnum.ALLOW) {
+            started(s);
+            return new Ticket(Decision.RUN, NO_GATE);
+        }
+        long holdMs = holdMsOf(timeoutSec);
+        while (true) {
+            Gate g = s.gate.get();
+            long now = System.currentTimeMillis();
+            if (g.state != IDLE && g.expired(now)) {
+                // 占用超时：视为上一次执行丢了结束通知，强制释放后按空闲处理
+                if (s.gate.compareAndSet(g, IDLE_GATE)) {
+                    s.forced.increment();
+                    forcedReleases.increment();
+                    log.warn("[Cron] job#{} 上一次执行已占用 {}ms 未结束（上限 {}ms），强制释放", jobId, now - g.since, g.holdMs);
+                }
+            } else if (g.state == IDLE) {
+                Gate next = new Gate(RUNNING, tokens.incrementAndGet(), now, holdMs);
+                if (s.gate.compareAndSet(g, next)) {
+                    started(s);
+                    return new Ticket(Decision.RUN, next.token);
+                }
+            } else if (g.state == RUNNING && policy == OverlapPolicyEnum.QUEUE_ONE) {
+                if (s.gate.compareAndSet(g, new Gate(RUNNING_QUEUED, g.token, g.since, g.holdMs))) {
+                    queued.increment();
+                    return new Ticket(Decision.QUEUED, NO_GATE);
+                }
+            } else {
+                s.skipped.increment();
+                s.lastSkippedAt.set(now);
+                skipped.increment();
+                return new Ticket(Decision.SKIPPED, NO_GATE);
+            }
+        }
+    }
+
+    /**
+     * 一次执行结束时调用
+     * @param token 该次执行的令牌（tryStart 或上一次 finish 返回）
+     * @return 有排队的触发需要立即执行时返回其令牌（门保持占用，执行结束后同样要调用 finish），否则返回 NO_GATE
+     */
+    public long finish(Long jobId, long token) {
+        State s = states.get(jobId);
+        if (s == null) {
+            return NO_GATE;
+        }
+        s.inFlight.decrementAndGet();
+        if (token == NO_GATE) {
+            return NO_GATE;
+        }
+        while (true) {
+            Gate g = s.gate.get();
+            if (g.token != token) {
+                // 门已被强制释放并由新的执行占用
+                return NO_GATE;
+            }
+            if (g.state == RUNNING_QUEUED) {
+                Gate next = new Gate(RUNNING, tokens.incrementAndGet(), System.currentTimeMillis(), g.holdMs);
+                if (s.gate.compareAndSet(g, next)) {
+                    started(s);
+                    return next.token;
+                }
+            } else if (s.gate.compareAndSet(g, IDLE_GATE)) {
+                return NO_GATE;
+            }
+        }
+    }
+
+    // 任务删除后清理
+    public void remove(Long jobId) {
+        states.computeIfPresent(jobId, (k, s) -> s.inFlight.get() == 0 ? null : s);
+    }
+
+    // 单个任务在途数
+    public int inFlight(Long jobId) {
+        State s = states.get(jobId);
+        return s == null ? 0 : s.inFlight.get();
+    }
+
+    // 单个任务被跳过的触发次数
+    public long skippedFires(Long jobId) {
+        State s = states.get(jobId);
+        return s == null ? 0L : s.skipped.sum();
+    }
+
+    // 单个任务：在途数、是否排队、门占用时长、跳过/强制释放次数
+    public Map<String, Object> describe(Long jobId) {
+        Map<String, Object> m = new LinkedHashMap<>();
+        State s = states.get(jobId);
+        Gate g = s == null ? IDLE_GATE : s.gate.get();
+        m.put("inFlight", s == null ? 0 : s.inFlight.get());
+        m.put("queued", g.state == RUNNING_QUEUED);
+        m.put("gateHeldMs", g.state == IDLE ? null : System.currentTimeMillis() - g.since);
+        m.put("skippedFires", s == null ? 0L : s.skipped.sum());
+        m.put("lastSkippedAt", s == null || s.lastSkippedAt.get() == 0 ? null : s.lastSkippedAt.get());
+        m.put("forcedReleases", s == null ? 0L : s.forced.sum());
+        return m;
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> m = new LinkedHashMap<>();
+        long now = System.currentTimeMillis();
+        int inFlight = 0;
+        // 占用超过上限、还没有新的触发来强制释放的门
+        List<Map<String, Object>> stuck = new ArrayList<>();
+        for (Map.Entry<Long, State> e : states.entrySet()) {
+            State s = e.getValue();
+            inFlight += s.inFlight.get();
+            Gate g = s.gate.get();
+            if (g.state != IDLE && g.expired(now)) {
+                Map<String, Object> item = new LinkedHashMap<>();
+                item.put("jobId", e.getKey());
+                item.put("heldMs", now - g.since);
+                item.put("maxHoldMs", g.holdMs);
+                stuck.add(item);
+            }
+        }
+        m.put("inFlight", inFlight);
+        m.put("fired", fired.sum());
+        m.put("queued", queued.sum());
+        m.put("skipped", skipped.sum());
+        m.put("forcedReleases", forcedReleases.sum());
+        m.put("stuckGates", stuck);
+        return m;
+    }
+
+    // 门的最长占用时间
+    private long holdMsOf(Integer timeoutSec) {
+        long byTimeout = timeoutSec == null || timeoutSec <= 0 ? 0L : timeoutSec * 1000L + HOLD_GRACE_MS;
+        return Math.max(maxHoldMs, byTimeout);
+    }
+
+    private void started(State s) {
+        s.inFlight.incrementAndGet();
+        fired.increment();
+    }
+
+    // 门状态（不可变，整体 CAS）
+    private static final class Gate {
+
+        final int state;
+
+        // 占门执行的令牌
+        final long token;
+
+        // 占门时间
+        final long since;
+
+        // 最长占用时间，<= 0 表示不限
+        final long holdMs;
+
+        Gate(int state, long token, long since, long holdMs) {
+            this.state = state;
+            this.token = token;
+            this.since = since;
+            this.holdMs = holdMs;
+        }
+
+        boolean expired(long now) {
+            return holdMs > 0 && now - since > holdMs;
+        }
+    }
+
+    // 单个任务的状态
+    private static class State {
+
+        final AtomicReference<Gate> gate = new AtomicReference<>(IDLE_GATE);
+
+        final AtomicInteger inFlight = new AtomicInteger();
+
+        final LongAdder skipped = new LongAdder();
+
+        final AtomicLong lastSkippedAt = new AtomicLong();
+
+        final LongAdder forced = new LongAdder();
+    }
+}
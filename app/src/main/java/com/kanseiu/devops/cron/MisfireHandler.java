@@ -0,0 +1,276 @@
+package com.kanseiu.devops.cron;
+
+import cn.hutool.core.date.DateUtil;
+import cn.hutool.cron.pattern.CronPattern;
+import com.kanseiu.devops.constant.MisfirePolicyEnum;
+import com.kanseiu.devops.mapper.DevCronJobFireMapper;
+import com.kanseiu.devops.model.entity.DevCronJob;
+import com.kanseiu.devops.model.entity.DevCronJobFire;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+import java.util.Calendar;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 错过触发检测
+ * - 每次触发记录计划触发时间（不晚于实际时间的最近一个匹配秒）与实际触发时间，差值即触发延迟
+ * - 与上一次计划触发时间之间还有匹配的时间点，说明调度线程卡顿（GC、线程池满等）漏掉了触发
+ * - 计划触发时间持久化到 dev_cron_job_fire，重启或调度器恢复后据此计算停机期间错过的触发
+ */
+@Slf4j
+@Component
+public class MisfireHandler {
+
+    // 向前查找计划触发时间的最大秒数，超过则按当前整秒计
+    private static final int SCHEDULED_LOOKBACK_SEC = 60;
+
+    // FIRE_ALL 单次最多补跑次数
+    @Value("${devops.cron.misfire.max-catch-up:10}")
+    private int maxCatchUp;
+
+    // 统计错过次数时最多推算的触发次数
+    @Value("${devops.cron.misfire.max-scan:1000}")
+    private int maxScan;
+
+    @Resource
+    private DevCronJobFireMapper devCronJobFireMapper;
+
+    @Resource
+    private NextFireIndex nextFireIndex;
+
+    // 任务ID -> 本节点最近一次计划触发时间（没有时回库读取）
+    private final ConcurrentHashMap<Long, Long> lastScheduled = new ConcurrentHashMap<>();
+
+    // ===================== 统计 =====================
+    private final LongAdder fires = new LongAdder();
+    private final LongAdder lagMsTotal = new LongAdder();
+    private final AtomicLong lagMsMax = new AtomicLong();
+    private volatile long lastLagMs;
+    private final LongAdder missedFires = new LongAdder();
+    private final LongAdder catchUpFires = new LongAdder();
+    private final LongAdder recoveries = new LongAdder();
+
+    /**
+     * 任务触发时调用（调度线程内、执行之前）
+     * @return 本次触发的计划时间、延迟与卡顿错过的次数
+     */
+    public Fire onFire(DevCronJob job) {
+        long now = System.currentTimeMillis();
+        CronPattern pattern = nextFireIndex.pattern(job.getCronExpr());
+        long scheduledAt = pattern == null ? floorSecond(now) : scheduledTimeOf(pattern, now);
+        long lagMs = now - scheduledAt;
+        fires.increment();
+        lagMsTotal.add(lagMs);
+        lagMsMax.accumulateAndGet(lagMs, Math::max);
+        lastLagMs = lagMs;
+
+        Long last = lastScheduled.get(job.getId());
+        if (last == null) {
+            DevCronJobFire state = devCronJobFireMapper.selectById(job.getId());
+            last = state == null || state.getLastScheduledAt() == null || state.getLastScheduledAt() <= 0 ? null : state.getLastScheduledAt();
+        }
+        Missed missed = pattern == null || last == null ? Missed.NONE : countBetween(pattern, last, scheduledAt);
+        if (missed.count > 0) {
+            missedFires.add(missed.count);
+            log.warn("[Cron] job#{} name={} 调度卡顿，错过 {} 次触发（{} ~ {}），本次延迟 {}ms",
+                    job.getId(), job.getJobName(), missed.count, DateUtil.date(missed.firstAt), DateUtil.date(missed.lastAt), lagMs);
+        }
+        record(job.getId(), scheduledAt, now, lagMs, missed.count);
+        return new Fire(scheduledAt, lagMs, missed.count);
+    }
+
+    /**
+     * 重启/恢复时计算错过的触发：上一次计划触发时间之后、当前整秒之前的匹配时间点
+     * 计算后即把计划触发时间推进到最后一个错过的时间点，同一段停机不会重复补跑
+     * @param jobs 本节点负责的任务
+     * @return 任务ID -> 错过的次数（只含有错过的任务）
+     */
+    public Map<Long, Integer> recover(List<DevCronJob> jobs) {
+        long now = System.currentTimeMillis();
+        Map<Long, Long> persisted = new HashMap<>();
+        for (DevCronJobFire state : devCronJobFireMapper.selectList(null)) {
+            if (state.getLastScheduledAt() != null && state.getLastScheduledAt() > 0) {
+                persisted.put(state.getJobId(), state.getLastScheduledAt());
+            }
+        }
+        Map<Long, Integer> result = new LinkedHashMap<>();
+        for (DevCronJob job : jobs) {
+            Long last = persisted.get(job.getId());
+            CronPattern pattern = nextFireIndex.pattern(job.getCronExpr());
+            if (last == null || pattern == null) {
+                // 从未触发过的任务不补跑；库中状态以最新为准
+                lastScheduled.remove(job.getId());
+                continue;
+            }
+            lastScheduled.put(job.getId(), last);
+            Missed missed = countBetween(pattern, last, floorSecond(now));
+            if (missed.count == 0) {
+                continue;
+            }
+            missedFires.add(missed.count);
+            log.warn("[Cron] job#{} name={} 停机期间错过 {} 次触发（{} ~ {}），策略 {}",
+                    job.getId(), job.getJobName(), missed.count, DateUtil.date(missed.firstAt), DateUtil.date(missed.lastAt), MisfirePolicyEnum.of(job.getMisfirePolicy()));
+            record(job.getId(), missed.lastAt, now, now - missed.lastAt, missed.count);
+            result.put(job.getId(), missed.count);
+        }
+        recoveries.increment();
+        return result;
+    }
+
+    /**
+     * 按任务的错过触发策略决定补跑次数
+     * @param missed 错过的次数
+     * @param running 是否由一次正常触发检测到（卡顿），此时 FIRE_ONCE 由本次触发代替
+     */
+    public int catchUpCount(DevCronJob job, int missed, boolean running) {
+        if (missed <= 0) {
+            return 0;
+        }
+        switch (MisfirePolicyEnum.of(job.getMisfirePolicy())) {
+            case FIRE_ONCE:
+                return running ? 0 : 1;
+            case FIRE_ALL:
+                return Math.min(missed, Math.max(maxCatchUp, 0));
+            default:
+                return 0;
+        }
+    }
+
+    /** 补跑一次（统计） */
+    public void catchUpFired() {
+        catchUpFires.increment();
+    }
+
+    /** 任务移出本节点（暂停、禁用、分给其他节点）时丢弃内存中的状态，下次触发从库中读取 */
+    public void evict(Long jobId) {
+        lastScheduled.remove(jobId);
+    }
+
+    /** 暂停/禁用期间、改表达式之前的触发不算错过：清除计划触发时间，从下一次触发重新开始记录 */
+    public void forget(Long jobId) {
+        lastScheduled.remove(jobId);
+        try {
+            devCronJobFireMapper.resetSchedule(jobId);
+        } catch (Exception e) {
+            log.warn("[Cron] job#{} 清除触发状态失败：{}", jobId, e.getMessage());
+        }
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> m = new LinkedHashMap<>();
+        long n = fires.sum();
+        m.put("fires", n);
+        m.put("avgLagMs", n == 0 ? 0L : lagMsTotal.sum() / n);
+        m.put("maxLagMs", lagMsMax.get());
+        m.put("lastLagMs", lastLagMs);
+        m.put("missedFires", missedFires.sum());
+        m.put("catchUpFires", catchUpFires.sum());
+        m.put("recoveries", recoveries.sum());
+        m.put("maxCatchUp", maxCatchUp);
+        return m;
+    }
+
+    // 记录计划触发时间（先更新，不存在再插入）
+    private void record(Long jobId, long scheduledAt, long firedAt, long lagMs, int missed) {
+        lastScheduled.put(jobId, scheduledAt);
+        try {
+            if (devCronJobFireMapper.recordFire(jobId, scheduledAt, firedAt, lagMs, missed) == 0) {
+                DevCronJobFire state = new DevCronJobFire();
+                state.setJobId(jobId);
+                state.setLastScheduledAt(scheduledAt);
+                state.setLastFiredAt(firedAt);
+                state.setLastLagMs(lagMs);
+                state.setMissedTotal((long) missed);
+                try {
+                    devCronJobFireMapper.insert(state);
+                } catch (DuplicateKeyException e) {
+                    devCronJobFireMapper.recordFire(jobId, scheduledAt, firedAt, lagMs, missed);
+                }
+            }
+        } catch (Exception e) {
+            // 记录失败不影响本次执行，只是重启后可能少算/多算错过的触发
+            log.warn("[Cron] job#{} 记录触发状态失败：{}", jobId, e.getMessage());
+        }
+    }
+
+    // 计划触发时间：不晚于 now 的最近一个匹配秒（调度线程按秒匹配，正常情况下就是本秒）
+    private static long scheduledTimeOf(CronPattern pattern, long now) {
+        long second = floorSecond(now);
+        for (int i = 0; i <= SCHEDULED_LOOKBACK_SEC; i++) {
+            long t = second - i * 1000L;
+            if (pattern.match(DateUtil.calendar(t), true)) {
+                return t;
+            }
+        }
+        return second;
+    }
+
+    // (from, to) 之间（均不含）的匹配时间点个数，最多推算 maxScan 次
+    private Missed countBetween(CronPattern pattern, long from, long to) {
+        int count = 0;
+        long first = 0, last = 0;
+        long t = floorSecond(from) + 1000;
+        while (t < to && count < maxScan) {
+            // nextMatchAfter 包含当前秒
+            Calendar next = pattern.nextMatchAfter(DateUtil.calendar(t));
+            if (next == null || next.getTimeInMillis() >= to) {
+                break;
+            }
+            last = next.getTimeInMillis();
+            if (count == 0) {
+                first = last;
+            }
+            count++;
+            t = last + 1000;
+        }
+        return count == 0 ? Missed.NONE : new Missed(count, first, last);
+    }
+
+    private static long floorSecond(long millis) {
+        return millis - Math.floorMod(millis, 1000L);
+    }
+
+    // 一次触发的计划时间、延迟与卡顿错过的次数
+    public static class Fire {
+
+        public final long scheduledAt;
+
+        public final long lagMs;
+
+        public final int missed;
+
+        Fire(long scheduledAt, long lagMs, int missed) {
+            this.scheduledAt = scheduledAt;
+            this.lagMs = lagMs;
+            this.missed = missed;
+        }
+    }
+
+    // 错过的次数与首尾时间点
+    private static class Missed {
+
+        static final Missed NONE = new Missed(0, 0, 0);
+
+        final int count;
+
+        final long firstAt;
+
+        final long lastAt;
+
+        Missed(int count, long firstAt, long lastAt) {
+            this.count = count;
+            this.firstAt = firstAt;
+            this.lastAt = lastAt;
+        }
+    }
+}
@@ -0,0 +1,180 @@
+package com.kanseiu.devops.cron;
+
+import cn.hutool.cache.CacheUtil;
+import cn.hutool.cache.impl.LRUCache;
+import cn.hutool.core.date.DateUtil;
+import cn.hutool.cron.pattern.CronPattern;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.function.Predicate;
+
+/**
+ * 下次触发时间索引
+ * - 编译后的 CronPattern 按表达式缓存（多个任务共用），任务ID + 表达式不变时不重复解析
+ * - 按下次触发时间排序的优先队列：任务触发、注册/更新时推进；读取时把已到期的队首批量推进到下一次
+ * - 任务列表只需按ID取值，不再逐个解析、计算
+ */
+@Slf4j
+@Component
+public class NextFireIndex {
+
+    // 表达式 -> 编译后的 CronPattern
+    private final LRUCache<String, CronPattern> patterns = CacheUtil.newLRUCache(4096);
+
+    // 任务ID -> 当前条目
+    private final Map<Long, Entry> entries = new HashMap<>();
+
+    // 按下次触发时间排序（同一时间按任务ID）
+    private final TreeSet<Entry> queue = new TreeSet<>(Comparator.comparingLong((Entry e) -> e.nextFireAt).thenComparing(e -> e.jobId));
+
+    /**
+     * 任务下次触发时间（毫秒），表达式不合法或不会再触发时返回 null
+     */
+    public synchronized Long nextFire(Long jobId, String cronExpr) {
+        long now = System.currentTimeMillis();
+        advanceDue(now);
+        Entry e = entries.get(jobId);
+        if (e == null || !e.cronExpr.equals(cronExpr)) {
+            e = put(jobId, cronExpr, now);
+        }
+        return e == null ? null : e.nextFireAt;
+    }
+
+    /** 注册/更新任务时调用：表达式变化则重新计算 */
+    public synchronized void update(Long jobId, String cronExpr) {
+        Entry e = entries.get(jobId);
+        if (e == null || !e.cronExpr.equals(cronExpr)) {
+            put(jobId, cronExpr, System.currentTimeMillis());
+        }
+    }
+
+    /** 任务触发时调用：推进到下一次 */
+    public synchronized void fired(Long jobId) {
+        Entry e = entries.get(jobId);
+        if (e != null) {
+            put(jobId, e.cronExpr, Math.max(System.currentTimeMillis(), e.nextFireAt));
+        }
+    }
+
+    /** 编译后的表达式（缓存），不合法时返回 null */
+    public synchronized CronPattern pattern(String cronExpr) {
+        try {
+            return compile(cronExpr);
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    /** 只保留给定任务（列表时清理已删除的任务） */
+    public synchronized void retain(Set<Long> jobIds) {
+        Iterator<Map.Entry<Long, Entry>> it = entries.entrySet().iterator();
+        while (it.hasNext()) {
+            Entry e = it.next().getValue();
+            if (!jobIds.contains(e.jobId)) {
+                queue.remove(e);
+                it.remove();
+            }
+        }
+    }
+
+    /** 即将触发的任务（按时间升序），filter 为空时不过滤 */
+    public synchronized List<Map<String, Object>> upcoming(int limit, Predicate<Long> filter) {
+        advanceDue(System.currentTimeMillis());
+        List<Map<String, Object>> list = new ArrayList<>(Math.min(limit, queue.size()));
+        for (Entry e : queue) {
+            if (list.size() >= limit) {
+                break;
+            }
+            if (filter != null && !filter.test(e.jobId)) {
+                continue;
+            }
+            Map<String, Object> m = new LinkedHashMap<>();
+            m.put("jobId", e.jobId);
+            m.put("cronExpr", e.cronExpr);
+            m.put("nextFireAt", e.nextFireAt);
+            list.add(m);
+        }
+        return list;
+    }
+
+    public synchronized Map<String, Object> stats() {
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("jobs", entries.size());
+        m.put("patterns", patterns.size());
+        Entry head = queue.isEmpty() ? null : queue.first();
+        m.put("nextFireAt", head == null ? null : head.nextFireAt);
+        return m;
+    }
+
+    // 已到期的队首推进到下一次（调度器停止、非主节点等未触发的情况）
+    private void advanceDue(long now) {
+        while (!queue.isEmpty() && queue.first().nextFireAt <= now) {
+            Entry e = queue.first();
+            put(e.jobId, e.cronExpr, now);
+        }
+    }
+
+    // 计算 after 之后（严格晚于）的下次触发时间并替换条目
+    private Entry put(Long jobId, String cronExpr, long after) {
+        Entry old = entries.remove(jobId);
+        if (old != null) {
+            queue.remove(old);
+        }
+        Long next = compute(cronExpr, after);
+        if (next == null) {
+            return null;
+        }
+        Entry e = new Entry(jobId, cronExpr, next);
+        entries.put(jobId, e);
+        queue.add(e);
+        return e;
+    }
+
+    private Long compute(String cronExpr, long after) {
+        try {
+            CronPattern pattern = compile(cronExpr);
+            // nextMatchAfter 包含当前秒（且忽略毫秒），从下一整秒开始算，保证结果严格晚于 after
+            Calendar calendar = pattern.nextMatchAfter(DateUtil.calendar(after - Math.floorMod(after, 1000L) + 1000));
+            return calendar == null ? null : calendar.getTimeInMillis();
+        } catch (Exception e) {
+            log.warn("[Cron] 表达式无法计算下次触发时间：{}，{}", cronExpr, e.getMessage());
+            return null;
+        }
+    }
+
+    private CronPattern compile(String cronExpr) {
+        CronPattern pattern = patterns.get(cronExpr);
+        if (pattern == null) {
+            pattern = new CronPattern(cronExpr);
+            patterns.put(cronExpr, pattern);
+        }
+        return pattern;
+    }
+
+    // 索引条目（不可变，更新即替换）
+    private static class Entry {
+
+        final Long jobId;
+
+        final String cronExpr;
+
+        final long nextFireAt;
+
+        Entry(Long jobId, String cronExpr, long nextFireAt) {
+            this.jobId = jobId;
+            this.cronExpr = cronExpr;
+            this.nextFireAt = nextFireAt;
+        }
+    }
+}
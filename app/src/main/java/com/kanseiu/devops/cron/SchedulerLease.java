@@ -0,0 +1,243 @@
+package com.kanseiu.devops.cron;
+
+import cn.hutool.core.util.IdUtil;
+import cn.hutool.core.util.StrUtil;
+import com.kanseiu.devops.constant.ClusterModeEnum;
+import com.kanseiu.devops.mapper.DevSchedulerLeaseMapper;
+import com.kanseiu.devops.model.entity.DevSchedulerLease;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledFuture;
+
+/**
+ * 调度选主（数据库租约）
+ * - 各节点定时对同一行租约做条件更新：本节点持有或已过期才能更新成功，成功即为主节点
+ * - 主节点只在本地计算的有效期内（续约开始时间 + 租约时长 - 时钟偏差）执行定时任务，续约失败或超时即自动降为从节点
+ * - 主节点宕机后，其他节点最迟在 租约时长 + 续约间隔 内接管；正常停机时主动释放，其他节点下次续约即接管
+ */
+@Slf4j
+@Component
+public class SchedulerLease {
+
+    public static final String CRON_LEASE = "cron";
+
+    public static final String ROLE_STANDALONE = "STANDALONE";
+    public static final String ROLE_LEADER = "LEADER";
+    public static final String ROLE_FOLLOWER = "FOLLOWER";
+    public static final String ROLE_SHARD = "SHARD";
+
+    // 集群模式：standalone / leader / shard
+    @Value("${devops.cluster.mode:standalone}")
+    private String mode;
+
+    // 节点ID，为空时取 主机名-进程号-随机串
+    @Value("${devops.cluster.node-id:}")
+    private String nodeIdConf;
+
+    // 租约时长（毫秒）
+    @Value("${devops.cluster.lease-ttl-ms:15000}")
+    private long leaseTtlMs;
+
+    // 续约间隔（毫秒），需小于租约时长的一半
+    @Value("${devops.cluster.renew-interval-ms:5000}")
+    private long renewIntervalMs;
+
+    // 允许的节点间时钟偏差（毫秒），主节点提前这么久停止执行
+    @Value("${devops.cluster.clock-skew-ms:1000}")
+    private long clockSkewMs;
+
+    @Resource
+    private DevSchedulerLeaseMapper devSchedulerLeaseMapper;
+
+    @Resource
+    private ThreadPoolTaskScheduler clusterTimer;
+
+    @Resource
+    private ThreadPoolTaskScheduler cronMaintTimer;
+
+    // 成为主节点时的回调
+    private final List<Runnable> leaderListeners = new CopyOnWriteArrayList<>();
+
+    private ClusterModeEnum clusterMode;
+
+    private String nodeId;
+
+    private ScheduledFuture<?> renewFuture;
+
+    // 本节点作为主节点的有效期（本地时间），过了即不再执行
+    private volatile long validUntil;
+
+    // 最近一次看到的租约
+    private volatile DevSchedulerLease lastSeen;
+
+    private volatile long lastRenewAt;
+
+    private volatile String lastError;
+
+    @PostConstruct
+    public void init() {
+        clusterMode = ClusterModeEnum.of(mode);
+        nodeId = StrUtil.isNotBlank(nodeIdConf) ? nodeIdConf.trim() : defaultNodeId();
+        if (clusterMode == ClusterModeEnum.LEADER && (renewIntervalMs <= 0 || leaseTtlMs < renewIntervalMs * 2)) {
+            throw new IllegalArgumentException("devops.cluster.lease-ttl-ms 需不小于 renew-interval-ms 的两倍");
+        }
+    }
+
+    // 开始抢占/续约（在库表初始化之后、调度器启动之前调用）
+    public synchronized void start() {
+        if (clusterMode != ClusterModeEnum.LEADER || renewFuture != null) {
+            return;
+        }
+        ensureLeaseRow();
+        // 启动时先续约一次，调度器启动前即可确定角色
+        renew();
+        renewFuture = clusterTimer.scheduleWithFixedDelay(this::renew,
+                Instant.now().plusMillis(renewIntervalMs), Duration.ofMillis(renewIntervalMs));
+        log.info("[选主] 节点 {} 已加入，租约 {}ms，续约间隔 {}ms，当前角色 {}", nodeId, leaseTtlMs, renewIntervalMs, role());
+    }
+
+    @PreDestroy
+    public void destroy() {
+        if (renewFuture != null) {
+            renewFuture.cancel(false);
+        }
+        if (clusterMode == ClusterModeEnum.LEADER && isLeader()) {
+            validUntil = 0;
+            try {
+                devSchedulerLeaseMapper.release(CRON_LEASE, nodeId);
+                log.info("[选主] 节点 {} 停机，已释放租约", nodeId);
+            } catch (Exception e) {
+                log.warn("[选主] 释放租约失败：{}", e.getMessage());
+            }
+        }
+    }
+
+    /** 本节点当前是否可以执行定时任务（单机与分片模式不选主，分片归属由 SchedulerShards 判断） */
+    public boolean isLeader() {
+        return clusterMode != ClusterModeEnum.LEADER || System.currentTimeMillis() < validUntil;
+    }
+
+    /** 成为主节点（首次抢到或接任）时回调 */
+    public void addLeaderListener(Runnable listener) {
+        leaderListeners.add(listener);
+    }
+
+    public String role() {
+        if (clusterMode == ClusterModeEnum.STANDALONE) {
+            return ROLE_STANDALONE;
+        }
+        if (clusterMode == ClusterModeEnum.SHARD) {
+            return ROLE_SHARD;
+        }
+        return isLeader() ? ROLE_LEADER : ROLE_FOLLOWER;
+    }
+
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    public ClusterModeEnum getClusterMode() {
+        return clusterMode;
+    }
+
+    public Map<String, Object> status() {
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("mode", clusterMode.name());
+        m.put("nodeId", nodeId);
+        m.put("role", role());
+        if (clusterMode == ClusterModeEnum.LEADER) {
+            DevSchedulerLease lease = lastSeen;
+            m.put("leaderId", lease == null ? null : lease.getOwnerId());
+            m.put("epoch", lease == null ? null : lease.getEpoch());
+            m.put("leaseExpireAt", lease == null ? null : lease.getExpireAt());
+            m.put("lastRenewAt", lastRenewAt == 0 ? null : lastRenewAt);
+            m.put("leaseTtlMs", leaseTtlMs);
+            m.put("renewIntervalMs", renewIntervalMs);
+            m.put("lastError", lastError);
+        }
+        return m;
+    }
+
+    // 抢占或续约一次
+    private void renew() {
+        boolean wasLeader = isLeader();
+        long start = System.currentTimeMillis();
+        try {
+            boolean acquired = devSchedulerLeaseMapper.tryAcquire(CRON_LEASE, nodeId, start, start + leaseTtlMs) == 1;
+            // 有效期从发起续约的时间算起，续约耗时再长也不会超出数据库里的到期时间
+            validUntil = acquired ? start + leaseTtlMs - clockSkewMs : 0;
+            lastSeen = devSchedulerLeaseMapper.selectById(CRON_LEASE);
+            lastRenewAt = start;
+            lastError = null;
+        } catch (Exception e) {
+            // 续约失败不立即降级，等本地有效期自然过期
+            lastError = e.getMessage();
+            log.warn("[选主] 节点 {} 续约失败：{}", nodeId, e.getMessage());
+        }
+        boolean leader = isLeader();
+        if (leader != wasLeader) {
+            DevSchedulerLease lease = lastSeen;
+            if (leader) {
+                log.info("[选主] 节点 {} 成为主节点，任期 {}", nodeId, lease == null ? null : lease.getEpoch());
+                notifyLeaderListeners();
+            } else {
+                log.warn("[选主] 节点 {} 降为从节点，当前主节点 {}", nodeId, lease == null ? null : lease.getOwnerId());
+            }
+        }
+    }
+
+    // 回调（补跑错过的触发等）在 cronMaintTimer 上执行，不占用续约线程
+    private void notifyLeaderListeners() {
+        for (Runnable listener : leaderListeners) {
+            cronMaintTimer.execute(() -> {
+                try {
+                    listener.run();
+                } catch (Exception e) {
+                    log.warn("[选主] 成为主节点回调失败：{}", e.getMessage());
+                }
+            });
+        }
+    }
+
+    // 租约行不存在时创建（多个节点同时创建时只有一个成功）
+    private void ensureLeaseRow() {
+        if (devSchedulerLeaseMapper.selectById(CRON_LEASE) != null) {
+            return;
+        }
+        DevSchedulerLease lease = new DevSchedulerLease();
+        lease.setLeaseName(CRON_LEASE);
+        lease.setEpoch(0L);
+        lease.setAcquiredAt(0L);
+        lease.setRenewedAt(0L);
+        lease.setExpireAt(0L);
+        try {
+            devSchedulerLeaseMapper.insert(lease);
+        } catch (DuplicateKeyException ignore) {}
+    }
+
+    private static String defaultNodeId() {
+        String host;
+        try {
+            host = InetAddress.getLocalHost().getHostName();
+        } catch (Exception e) {
+            host = "unknown";
+        }
+        String pid = ManagementFactory.getRuntimeMXBean().getName().split("@")[0];
+        return host + "-" + pid + "-" + IdUtil.fastSimpleUUID().substring(0, 6);
+    }
+}
@@ -0,0 +1,319 @@
+package com.kanseiu.devops.cron;
+
+import cn.hutool.core.lang.ConsistentHash;
+import cn.hutool.core.lang.hash.MurmurHash;
+import com.kanseiu.devops.constant.ClusterModeEnum;
+import com.kanseiu.devops.mapper.DevSchedulerNodeMapper;
+import com.kanseiu.devops.model.entity.DevSchedulerNode;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import java.net.InetAddress;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledFuture;
+import java.util.stream.Collectors;
+
+/**
+ * 调度分片（分片模式）
+ * - 各节点定时写心跳；心跳未超时的节点组成一致性哈希环（每个节点若干虚拟节点），任务按ID落到环上的节点
+ * - 节点加入/离开时重建哈希环并通知监听者（对账器据此注册/移除本节点的任务），只有少量任务会换节点
+ * - 本节点心跳连续失败超过节点超时后视为已离开，不再认领任何任务，避免与接管节点重复执行
+ * - 交接：原归属节点仍存活时，它最晚在下一次心跳才得知分片变化并停止执行；因此重新分片（含加入、心跳恢复）后，
+ *   从仍存活节点移过来的任务要等一个心跳间隔 + 时钟偏差后才执行（mayRun），期间宁可少执行也不重复执行；
+ *   从已离开节点移过来的任务（主动离开时已停止，宕机时本地有效期已过）立即执行
+ */
+@Slf4j
+@Component
+public class SchedulerShards {
+
+    // 心跳间隔（毫秒）
+    @Value("${devops.cluster.heartbeat-interval-ms:5000}")
+    private long heartbeatIntervalMs;
+
+    // 节点超时（毫秒），超过未心跳视为离开
+    @Value("${devops.cluster.node-ttl-ms:15000}")
+    private long nodeTtlMs;
+
+    // 每个节点在哈希环上的虚拟节点数
+    @Value("${devops.cluster.virtual-nodes:64}")
+    private int virtualNodes;
+
+    // 允许的节点间时钟偏差（毫秒），本节点提前这么久认为自己已离开
+    @Value("${devops.cluster.clock-skew-ms:1000}")
+    private long clockSkewMs;
+
+    @Resource
+    private DevSchedulerNodeMapper devSchedulerNodeMapper;
+
+    @Resource
+    private SchedulerLease schedulerLease;
+
+    @Resource
+    private ThreadPoolTaskScheduler clusterTimer;
+
+    @Resource
+    private ThreadPoolTaskScheduler cronMaintTimer;
+
+    // 成员变化监听（重建哈希环后调用）
+    private final List<Runnable> listeners = new CopyOnWriteArrayList<>();
+
+    // 进行中的交接（等待期内原归属节点可能仍在执行）
+    private final List<Handover> handovers = new CopyOnWriteArrayList<>();
+
+    private ScheduledFuture<?> heartbeatFuture;
+
+    // 已停机（由 this 保护）：停机后进行中的心跳不能再把本节点加回集群
+    private boolean stopped;
+
+    // 当前成员（按节点ID排序）与哈希环，整体替换
+    private volatile List<String> members = Collections.emptyList();
+    private volatile ConsistentHash<String> ring;
+
+    // 本节点心跳有效期（本地时间），过了即不认领任务
+    private volatile long validUntil;
+
+    private volatile long lastHeartbeatAt;
+
+    // 哈希环最近一次按库中成员刷新的时间（该次心跳的开始时间）
+    private volatile long viewAt;
+    private volatile long rebalances;
+    private volatile String lastError;
+
+    @PostConstruct
+    public void init() {
+        if (isEnabled() && (heartbeatIntervalMs <= 0 || nodeTtlMs < heartbeatIntervalMs * 2)) {
+            throw new IllegalArgumentException("devops.cluster.node-ttl-ms 需不小于 heartbeat-interval-ms 的两倍");
+        }
+    }
+
+    // 加入集群并开始心跳（在库表初始化之后、调度器启动之前调用）
+    public synchronized void start() {
+        if (!isEnabled() || heartbeatFuture != null) {
+            return;
+        }
+        // 启动时先心跳一次，调度器启动前即可确定分片
+        heartbeat();
+        heartbeatFuture = clusterTimer.scheduleWithFixedDelay(this::heartbeat,
+                Instant.now().plusMillis(heartbeatIntervalMs), Duration.ofMillis(heartbeatIntervalMs));
+        log.info("[分片] 节点 {} 已加入，当前成员 {}", schedulerLease.getNodeId(), members);
+    }
+
+    @PreDestroy
+    public synchronized void destroy() {
+        stopped = true;
+        if (heartbeatFuture != null) {
+            heartbeatFuture.cancel(false);
+        }
+        if (isEnabled()) {
+            validUntil = 0;
+            try {
+                // 主动离开，其他节点下次心跳即重新分片
+                devSchedulerNodeMapper.deleteById(schedulerLease.getNodeId());
+                log.info("[分片] 节点 {} 停机，已离开集群", schedulerLease.getNodeId());
+            } catch (Exception e) {
+                log.warn("[分片] 离开集群失败：{}", e.getMessage());
+            }
+        }
+    }
+
+    public boolean isEnabled() {
+        return schedulerLease.getClusterMode() == ClusterModeEnum.SHARD;
+    }
+
+    /** 成员变化（重新分片）时回调 */
+    public void addListener(Runnable listener) {
+        listeners.add(listener);
+    }
+
+    /** 任务是否归本节点（非分片模式恒为 true） */
+    public boolean owns(Long jobId) {
+        if (!isEnabled()) {
+            return true;
+        }
+        return schedulerLease.getNodeId().equals(ownerOf(jobId));
+    }
+
+    /**
+     * 任务此刻能否由本节点执行（触发时判断）：归本节点，且不在从仍存活节点交接过来的等待期内
+     * 成员视图超过一个心跳间隔 + 时钟偏差未刷新（心跳迟到）时不执行，新节点可能已按交接等待期接手
+     * 注册任务按 owns 判断，等待期内已注册但不执行；非分片模式恒为 true
+     */
+    public boolean mayRun(Long jobId) {
+        if (!isEnabled()) {
+            return true;
+        }
+        String nodeId = schedulerLease.getNodeId();
+        if (!nodeId.equals(ownerOf(jobId))) {
+            return false;
+        }
+        long now = System.currentTimeMillis();
+        if (now >= viewAt + heartbeatIntervalMs + clockSkewMs) {
+            return false;
+        }
+        String key = CronRegistrar.taskIdOf(jobId);
+        List<String> alive = members;
+        for (Handover h : handovers) {
+            if (now < h.until) {
+                String prev = h.before.get(key);
+                if (!nodeId.equals(prev) && alive.contains(prev)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /** 任务所属节点；本节点已离开（心跳超时）时只返回其他节点 */
+    public String ownerOf(Long jobId) {
+        ConsistentHash<String> r = ring;
+        if (r == null || System.currentTimeMillis() >= validUntil) {
+            return null;
+        }
+        return r.get(CronRegistrar.taskIdOf(jobId));
+    }
+
+    public Map<String, Object> status() {
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("members", members);
+        m.put("alive", System.currentTimeMillis() < validUntil);
+        m.put("rebalances", rebalances);
+        long handoverUntil = handovers.stream().mapToLong(h -> h.until).max().orElse(0L);
+        m.put("handoverUntil", handoverUntil > System.currentTimeMillis() ? handoverUntil : null);
+        m.put("lastHeartbeatAt", lastHeartbeatAt == 0 ? null : lastHeartbeatAt);
+        m.put("heartbeatIntervalMs", heartbeatIntervalMs);
+        m.put("nodeTtlMs", nodeTtlMs);
+        m.put("virtualNodes", virtualNodes);
+        m.put("lastError", lastError);
+        return m;
+    }
+
+    // 心跳一次，并按存活节点重建哈希环；与停机互斥
+    private synchronized void heartbeat() {
+        if (stopped) {
+            return;
+        }
+        String nodeId = schedulerLease.getNodeId();
+        long start = System.currentTimeMillis();
+        boolean wasAlive = start < validUntil;
+        try {
+            if (devSchedulerNodeMapper.heartbeat(nodeId, start) == 0) {
+                register(nodeId, start);
+            }
+            validUntil = start + nodeTtlMs - clockSkewMs;
+            lastHeartbeatAt = start;
+            List<String> alive = devSchedulerNodeMapper.listAlive(start - nodeTtlMs).stream()
+                    .map(DevSchedulerNode::getNodeId)
+                    .collect(Collectors.toList());
+            if (!alive.contains(nodeId)) {
+                alive.add(nodeId);
+                Collections.sort(alive);
+            }
+            // 顺带清理长期离线的节点行
+            devSchedulerNodeMapper.deleteDead(start - nodeTtlMs * 10);
+            lastError = null;
+            boolean changed = !alive.equals(members);
+            if (changed || !wasAlive) {
+                // 交接前的归属：本节点一直存活时为上一个哈希环；刚加入或心跳恢复时其他节点可能正执行本节点的任务，按不含本节点的环计算
+                List<String> others = new ArrayList<>(alive);
+                others.remove(nodeId);
+                beginHandover(wasAlive && ring != null ? ring : ringOf(others), start);
+            }
+            if (changed) {
+                rebuild(alive);
+            } else if (!wasAlive) {
+                // 心跳中断后恢复：成员未变，但期间已放弃的分片需要重新认领
+                log.info("[分片] 节点 {} 心跳恢复，重新认领分片", nodeId);
+                notifyListeners();
+            }
+            viewAt = start;
+        } catch (Exception e) {
+            // 心跳失败不立即放弃分片，等本地有效期自然过期
+            lastError = e.getMessage();
+            log.warn("[分片] 节点 {} 心跳失败：{}", nodeId, e.getMessage());
+        }
+    }
+
+    private void register(String nodeId, long now) {
+        DevSchedulerNode node = new DevSchedulerNode();
+        node.setNodeId(nodeId);
+        node.setHost(hostName());
+        node.setStartedAt(now);
+        node.setHeartbeatAt(now);
+        try {
+            devSchedulerNodeMapper.insert(node);
+        } catch (DuplicateKeyException e) {
+            devSchedulerNodeMapper.heartbeat(nodeId, now);
+        }
+    }
+
+    private void rebuild(List<String> alive) {
+        List<String> joined = new ArrayList<>(alive);
+        joined.removeAll(members);
+        List<String> left = new ArrayList<>(members);
+        left.removeAll(alive);
+        ring = ringOf(alive);
+        members = Collections.unmodifiableList(alive);
+        rebalances++;
+        log.info("[分片] 成员变化，加入 {}，离开 {}，当前成员 {}", joined, left, alive);
+        notifyListeners();
+    }
+
+    // 原归属节点的成员视图最多沿用一个心跳间隔 + 时钟偏差（见 mayRun），之后要么已得知变化、要么停止执行；再留出两节点间的时钟偏差
+    private void beginHandover(ConsistentHash<String> before, long now) {
+        handovers.removeIf(h -> h.until <= now);
+        if (before != null) {
+            handovers.add(new Handover(before, now + heartbeatIntervalMs + clockSkewMs * 2));
+        }
+    }
+
+    private ConsistentHash<String> ringOf(List<String> nodes) {
+        return nodes.isEmpty() ? null : new ConsistentHash<>(key -> MurmurHash.hash32(key.toString()), virtualNodes, nodes);
+    }
+
+    // 回调（对账）在 cronMaintTimer 上执行，不占用心跳线程
+    private void notifyListeners() {
+        for (Runnable listener : listeners) {
+            cronMaintTimer.execute(() -> {
+                try {
+                    listener.run();
+                } catch (Exception e) {
+                    log.warn("[分片] 重新分片回调失败：{}", e.getMessage());
+                }
+            });
+        }
+    }
+
+    private static String hostName() {
+        try {
+            return InetAddress.getLocalHost().getHostName();
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    // 一次交接：变化前的哈希环与等待期截止时间
+    private static final class Handover {
+
+        final ConsistentHash<String> before;
+
+        final long until;
+
+        Handover(ConsistentHash<String> before, long until) {
+            this.before = before;
+            this.until = until;
+        }
+    }
+}
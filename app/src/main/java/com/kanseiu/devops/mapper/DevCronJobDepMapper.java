@@ -0,0 +1,28 @@
+package com.kanseiu.devops.mapper;
+
+import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import com.kanseiu.devops.model.entity.DevCronJobDep;
+import org.apache.ibatis.annotations.Param;
+
+import java.util.List;
+
+public interface DevCronJobDepMapper extends BaseMapper<DevCronJobDep> {
+
+    // 下游任务的上游依赖（带上游任务名称）
+    List<DevCronJobDep> listByJobId(@Param("jobId") Long jobId);
+
+    // 启用中的依赖（上下游任务都存在）
+    List<DevCronJobDep> listEnabled();
+
+    // 记录上游最近一次结束状态及是否满足
+    int markUpstream(@Param("jobId") Long jobId,
+                     @Param("upstreamJobId") Long upstreamJobId,
+                     @Param("status") String status,
+                     @Param("satisfied") boolean satisfied);
+
+    // 所有启用的上游都满足时清除满足标记，返回 0 表示还有上游未满足或已被其他节点认领
+    int claimReady(@Param("jobId") Long jobId);
+
+    // 所有启用的上游都已满足的下游任务ID
+    List<Long> listReady();
+}
@@ -0,0 +1,19 @@
+package com.kanseiu.devops.mapper;
+
+import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import com.kanseiu.devops.model.entity.DevCronJobFire;
+import org.apache.ibatis.annotations.Param;
+
+public interface DevCronJobFireMapper extends BaseMapper<DevCronJobFire> {
+
+    // 记录一次触发（累加错过次数），返回 0 表示状态行不存在（任务首次触发）
+    int recordFire(@Param("jobId") Long jobId,
+                   @Param("scheduledAt") long scheduledAt,
+                   @Param("firedAt") long firedAt,
+                   @Param("lagMs") long lagMs,
+                   @Param("missed") long missed);
+
+    // 清除计划触发时间（暂停、禁用、改表达式），之前的触发不再算作错过
+    int resetSchedule(@Param("jobId") Long jobId);
+
+}
@@ -0,0 +1,15 @@
+package com.kanseiu.devops.mapper;
+
+import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import com.kanseiu.devops.model.entity.DevCronJobLogChunk;
+import org.apache.ibatis.annotations.Param;
+
+import java.util.Map;
+
+public interface DevCronJobLogChunkMapper extends BaseMapper<DevCronJobLogChunk> {
+
+    // 查询某个输出流的最大序号与已存储原始字节数，返回 MAX_SEQ / TOTAL_LEN
+    Map<String, Object> getStreamStat(@Param("logId") Long logId,
+                                      @Param("stream") String stream);
+
+}
@@ -7,10 +7,23 @@ import org.apache.ibatis.annotations.Param;
 
 import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Map;
 
 public interface DevCronJobLogMapper extends BaseMapper<DevCronJobLog> {
 
     List<DevCronJobLogResp> getFailLogByTime(@Param("start") LocalDateTime start,
                                              @Param("end") LocalDateTime end);
 
+    // 在原有输出后追加增量文本（只传增量，不回读整行），并累加输出行数/字节数
+    int appendText(@Param("id") Long id,
+                   @Param("outText") String outText,
+                   @Param("errText") String errText,
+                   @Param("outLines") long outLines,
+                   @Param("outBytes") long outBytes,
+                   @Param("errLines") long errLines,
+                   @Param("errBytes") long errBytes);
+
+    // 查询当前已存储的预览长度/行数/字节数/是否以换行结尾与累计行数/字节数，返回 OUT_* / ERR_*
+    Map<String, Object> getTextLength(@Param("id") Long id);
+
 }
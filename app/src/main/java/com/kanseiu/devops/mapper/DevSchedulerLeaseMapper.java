@@ -0,0 +1,19 @@
+package com.kanseiu.devops.mapper;
+
+import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import com.kanseiu.devops.model.entity.DevSchedulerLease;
+import org.apache.ibatis.annotations.Param;
+
+public interface DevSchedulerLeaseMapper extends BaseMapper<DevSchedulerLease> {
+
+    // 抢占或续约：本节点持有或租约已过期时才更新，返回 1 表示本节点持有租约
+    int tryAcquire(@Param("leaseName") String leaseName,
+                   @Param("ownerId") String ownerId,
+                   @Param("now") long now,
+                   @Param("expireAt") long expireAt);
+
+    // 主动释放：仅本节点持有时把到期时间置 0，其他节点下次续约即可接管
+    int release(@Param("leaseName") String leaseName,
+                @Param("ownerId") String ownerId);
+
+}
@@ -0,0 +1,21 @@
+package com.kanseiu.devops.mapper;
+
+import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import com.kanseiu.devops.model.entity.DevSchedulerNode;
+import org.apache.ibatis.annotations.Param;
+
+import java.util.List;
+
+public interface DevSchedulerNodeMapper extends BaseMapper<DevSchedulerNode> {
+
+    // 心跳：更新本节点心跳时间，返回 0 表示节点行不存在（首次启动或已被清理）
+    int heartbeat(@Param("nodeId") String nodeId,
+                  @Param("now") long now);
+
+    // 存活节点（心跳时间不早于 since），按节点ID排序
+    List<DevSchedulerNode> listAlive(@Param("since") long since);
+
+    // 清理长期未心跳的节点行
+    int deleteDead(@Param("before") long before);
+
+}
@@ -3,6 +3,9 @@ package com.kanseiu.devops.model.entity;
 import cn.hutool.core.util.StrUtil;
 import com.baomidou.mybatisplus.annotation.*;
 import com.kanseiu.devops.constant.JobTypeEnum;
+import com.kanseiu.devops.constant.MisfirePolicyEnum;
+import com.kanseiu.devops.constant.OverlapPolicyEnum;
+import com.kanseiu.devops.constant.TargetTypeEnum;
 import lombok.Data;
 import lombok.EqualsAndHashCode;
 
@@ -50,6 +53,27 @@ public class DevCronJob extends BaseEntity {
     // 描述
     private String descText;
 
+    // 重叠策略（SKIP_IF_RUNNING、QUEUE_ONE、ALLOW），上一次未结束时新触发的处理方式
+    private String overlapPolicy;
+
+    // 错过触发策略（SKIP、FIRE_ONCE、FIRE_ALL），重启/恢复或调度卡顿后错过的触发的处理方式
+    private String misfirePolicy;
+
+    // 执行目标（SERVER、LABEL），LABEL 时按标签选出一组服务器执行
+    private String targetType;
+
+    // 标签选择器：逗号分隔需全部满足，!label 表示排除（可清空，更新时不忽略空值，下同）
+    @TableField(updateStrategy = FieldStrategy.IGNORED)
+    private String targetLabels;
+
+    // 按标签执行时最多同时执行的服务器数，为空取默认值
+    @TableField(updateStrategy = FieldStrategy.IGNORED)
+    private Integer fanOutWidth;
+
+    // 按标签执行时每批服务器数（滚动执行），为空不分批
+    @TableField(updateStrategy = FieldStrategy.IGNORED)
+    private Integer batchSize;
+
 
 
     // 下次执行时间
@@ -60,6 +84,22 @@ public class DevCronJob extends BaseEntity {
     @TableField(exist = false)
     private String status;
 
+    // 在途执行数
+    @TableField(exist = false)
+    private Integer inFlight;
+
+    // 因上一次未结束而跳过的触发次数（进程内累计）
+    @TableField(exist = false)
+    private Long skippedFires;
+
+    // 分片模式下任务所属节点
+    @TableField(exist = false)
+    private String ownerNode;
+
+    // 按标签执行时，单台服务器子执行所属的汇总日志ID
+    @TableField(exist = false)
+    private Long parentLogId;
+
     // 简单数据校验
     public void check() {
         if (StrUtil.isBlank(jobName)) {
@@ -75,7 +115,14 @@ public class DevCronJob extends BaseEntity {
             throw new IllegalArgumentException("任务类型不能为空");
         } else {
             // 校验任务类型和必填
-            if(JobTypeEnum.SHELL.name().equals(jobType) && Objects.isNull(serverId)) {
+            TargetTypeEnum target = TargetTypeEnum.of(targetType);
+            if (target == TargetTypeEnum.LABEL && !JobTypeEnum.SHELL.name().equals(jobType)) {
+                throw new IllegalArgumentException("只有 SHELL 任务支持按标签执行");
+            }
+            if (target == TargetTypeEnum.LABEL && StrUtil.isBlank(targetLabels)) {
+                throw new IllegalArgumentException("标签选择器不能为空");
+            }
+            if(JobTypeEnum.SHELL.name().equals(jobType) && target == TargetTypeEnum.SERVER && Objects.isNull(serverId)) {
                 throw new IllegalArgumentException("目标服务器不能为空");
             } else if(JobTypeEnum.SQL.name().equals(jobType) && Objects.isNull(databaseId)) {
                 throw new IllegalArgumentException("目标数据库不能为空");
@@ -85,5 +132,13 @@ public class DevCronJob extends BaseEntity {
         if (timeoutSec != null && (timeoutSec <= 0 || timeoutSec > 86400)) {
             throw new IllegalArgumentException("超时需在 1~86400 秒");
         }
+        if (fanOutWidth != null && (fanOutWidth <= 0 || fanOutWidth > 1000)) {
+            throw new IllegalArgumentException("并行宽度需在 1~1000");
+        }
+        if (batchSize != null && (batchSize <= 0 || batchSize > 10000)) {
+            throw new IllegalArgumentException("每批服务器数需在 1~10000");
+        }
+        OverlapPolicyEnum.of(overlapPolicy);
+        MisfirePolicyEnum.of(misfirePolicy);
     }
 }
\ No newline at end of file
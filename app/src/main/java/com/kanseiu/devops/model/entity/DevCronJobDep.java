@@ -0,0 +1,41 @@
+package com.kanseiu.devops.model.entity;
+
+import com.baomidou.mybatisplus.annotation.IdType;
+import com.baomidou.mybatisplus.annotation.TableField;
+import com.baomidou.mybatisplus.annotation.TableId;
+import com.baomidou.mybatisplus.annotation.TableName;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+
+// 定时任务依赖配置表（上游 -> 下游）
+@Data
+@EqualsAndHashCode(callSuper = true)
+@TableName("dev_cron_job_dep")
+public class DevCronJobDep extends BaseEntity {
+
+    /** 主键ID */
+    @TableId(type = IdType.AUTO)
+    private Long id;
+
+    /** 下游定时任务ID */
+    private Long devCronJobId;
+
+    /** 上游定时任务ID */
+    private Long upstreamJobId;
+
+    /** 上游结束状态集合，逗号分隔，例如：SUCCESS 或 SUCCESS,FAIL */
+    private String triggerOnStatus;
+
+    /** 是否禁用：0启用，1禁用 */
+    private Boolean disabled;
+
+    /** 上游最近一次结束状态 */
+    private String lastStatus;
+
+    /** 上游最近一次结束是否满足、且尚未触发下游 */
+    private Boolean satisfied;
+
+    /** 上游任务名称 */
+    @TableField(exist = false)
+    private String upstreamJobName;
+}
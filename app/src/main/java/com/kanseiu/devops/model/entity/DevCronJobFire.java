@@ -0,0 +1,30 @@
+package com.kanseiu.devops.model.entity;
+
+import com.baomidou.mybatisplus.annotation.IdType;
+import com.baomidou.mybatisplus.annotation.TableId;
+import com.baomidou.mybatisplus.annotation.TableName;
+import lombok.Data;
+
+/**
+ * 定时任务触发状态表（时间均为毫秒时间戳）
+ */
+@Data
+@TableName("dev_cron_job_fire")
+public class DevCronJobFire {
+
+    /** 定时任务表ID */
+    @TableId(type = IdType.INPUT)
+    private Long jobId;
+
+    /** 最近一次计划触发时间 */
+    private Long lastScheduledAt;
+
+    /** 最近一次实际触发时间 */
+    private Long lastFiredAt;
+
+    /** 最近一次触发延迟（实际 - 计划） */
+    private Long lastLagMs;
+
+    /** 累计错过的触发次数 */
+    private Long missedTotal;
+}
@@ -59,9 +59,22 @@ public class DevCronJobLog {
     /** 状态：SUCCESS / FAIL / TIMEOUT / ERROR */
     private String status;
 
-    /** 标准输出（可截断） */
+    /** 标准输出（头部 + 尾部预览） */
     private String outputText;
 
-    /** 错误输出（可截断） */
+    /** 错误输出（头部 + 尾部预览） */
     private String errorText;
+
+    // 标准输出总行数、总字节数（随输出落库累加）
+    private Long outputLines;
+
+    private Long outputBytes;
+
+    // 错误输出总行数、总字节数（随输出落库累加）
+    private Long errorLines;
+
+    private Long errorBytes;
+
+    // 按标签执行时的汇总日志ID（本条为单台服务器的子日志），为空表示顶层日志
+    private Long parentLogId;
 }
\ No newline at end of file
@@ -0,0 +1,47 @@
+package com.kanseiu.devops.model.entity;
+
+import cn.hutool.core.date.DatePattern;
+import com.baomidou.mybatisplus.annotation.*;
+import com.fasterxml.jackson.annotation.JsonFormat;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+/**
+ * 定时任务执行日志输出分块表（只追加）
+ */
+@Data
+@TableName("dev_cron_job_log_chunk")
+public class DevCronJobLogChunk {
+
+    public static final String STREAM_OUT = "OUT";
+
+    public static final String STREAM_ERR = "ERR";
+
+    /** 主键ID */
+    @TableId(type = IdType.AUTO)
+    private Long id;
+
+    /** 定时任务执行日志ID */
+    private Long logId;
+
+    /** 输出流：OUT / ERR */
+    private String stream;
+
+    /** 分块序号（按流递增，中间缺号表示被裁剪） */
+    private Integer seq;
+
+    /** 原始字节数（UTF-8，压缩前） */
+    private Integer rawLen;
+
+    /** 是否GZIP压缩 */
+    private Boolean compressed;
+
+    /** 分块内容 */
+    private byte[] content;
+
+    /** 创建时间 */
+    @JsonFormat(pattern = DatePattern.NORM_DATETIME_PATTERN)
+    @TableField(fill = FieldFill.INSERT)
+    private LocalDateTime createTime;
+}
@@ -0,0 +1,33 @@
+package com.kanseiu.devops.model.entity;
+
+import com.baomidou.mybatisplus.annotation.IdType;
+import com.baomidou.mybatisplus.annotation.TableId;
+import com.baomidou.mybatisplus.annotation.TableName;
+import lombok.Data;
+
+/**
+ * 调度租约表（时间均为毫秒时间戳）
+ */
+@Data
+@TableName("dev_scheduler_lease")
+public class DevSchedulerLease {
+
+    /** 租约名称 */
+    @TableId(type = IdType.INPUT)
+    private String leaseName;
+
+    /** 持有节点ID */
+    private String ownerId;
+
+    /** 任期，每次换主加一 */
+    private Long epoch;
+
+    /** 本任期开始时间 */
+    private Long acquiredAt;
+
+    /** 最近续约时间 */
+    private Long renewedAt;
+
+    /** 到期时间，过期后其他节点可抢占 */
+    private Long expireAt;
+}
@@ -0,0 +1,27 @@
+package com.kanseiu.devops.model.entity;
+
+import com.baomidou.mybatisplus.annotation.IdType;
+import com.baomidou.mybatisplus.annotation.TableId;
+import com.baomidou.mybatisplus.annotation.TableName;
+import lombok.Data;
+
+/**
+ * 调度节点表（时间均为毫秒时间戳）
+ */
+@Data
+@TableName("dev_scheduler_node")
+public class DevSchedulerNode {
+
+    /** 节点ID */
+    @TableId(type = IdType.INPUT)
+    private String nodeId;
+
+    /** 主机名 */
+    private String host;
+
+    /** 节点启动时间 */
+    private Long startedAt;
+
+    /** 最近心跳时间，超过节点超时未心跳视为离开 */
+    private Long heartbeatAt;
+}
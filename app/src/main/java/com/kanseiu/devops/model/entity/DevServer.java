@@ -46,6 +46,12 @@ public class DevServer extends BaseEntity {
     // 标签（分组使用）
     private String labels;
 
+    // 最大同时运行任务数（为空取默认值 devops.ssh.run.max-per-server）
+    private Integer maxConcurrentRuns;
+
+    // 远端输出与脚本内容的字符集（为空按 UTF-8）
+    private String outputCharset;
+
     // 是否禁用
     private Boolean disabled = false;
 }
\ No newline at end of file
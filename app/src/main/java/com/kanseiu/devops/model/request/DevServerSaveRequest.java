@@ -41,4 +41,13 @@ public class DevServerSaveRequest implements Serializable {
     // 默认测试命令
     private String defaultTestCmd;
 
+    // 标签（逗号分隔，按标签执行的任务据此选择服务器）
+    private String labels;
+
+    // 最大同时运行任务数（为空取默认值）
+    private Integer maxConcurrentRuns;
+
+    // 远端输出与脚本内容的字符集（为空按 UTF-8）
+    private String outputCharset;
+
 }
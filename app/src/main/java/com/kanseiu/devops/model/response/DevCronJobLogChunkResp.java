@@ -0,0 +1,47 @@
+package com.kanseiu.devops.model.response;
+
+import lombok.Data;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+// 执行日志输出分页结果（按分块序号翻页）
+@Data
+public class DevCronJobLogChunkResp implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    // 定时任务日志表ID
+    private Long logId;
+
+    // 输出流：OUT / ERR
+    private String stream;
+
+    // 本页分块
+    private List<Item> items = new ArrayList<>();
+
+    // 下一页的 afterSeq
+    private Integer nextSeq;
+
+    // 是否还有下一页
+    private Boolean hasMore;
+
+    @Data
+    public static class Item implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        // 分块序号
+        private Integer seq;
+
+        // 原始字节数
+        private Integer rawLen;
+
+        // 该分块之前被裁剪掉的分块数（保留头部+尾部时产生）
+        private Integer omittedBefore;
+
+        // 分块文本
+        private String text;
+    }
+}
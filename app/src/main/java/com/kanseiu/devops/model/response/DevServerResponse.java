@@ -32,6 +32,9 @@ public class DevServerResponse implements Serializable {
     // 标签（分组使用）
     private String labels;
 
+    // 最大同时运行任务数
+    private Integer maxConcurrentRuns;
+
     // 是否禁用
     private Boolean disabled;
 
@@ -0,0 +1,15 @@
+package com.kanseiu.devops.service.business;
+
+import com.baomidou.mybatisplus.extension.service.IService;
+import com.kanseiu.devops.model.entity.DevCronJobDep;
+
+import java.util.List;
+
+public interface DevCronJobDepService extends IService<DevCronJobDep> {
+
+    List<DevCronJobDep> listByJobId(Long jobId);
+
+    void add(DevCronJobDep request);
+
+    void update(DevCronJobDep request);
+}
@@ -0,0 +1,20 @@
+package com.kanseiu.devops.service.business;
+
+import com.baomidou.mybatisplus.extension.service.IService;
+import com.kanseiu.devops.model.entity.DevCronJobLogChunk;
+import com.kanseiu.devops.model.response.DevCronJobLogChunkResp;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Map;
+
+public interface DevCronJobLogChunkService extends IService<DevCronJobLogChunk> {
+
+    DevCronJobLogChunk appendChunk(Long logId, String stream, int seq, String text);
+
+    DevCronJobLogChunkResp page(Long logId, String stream, int afterSeq, int limit);
+
+    void writeTo(Long logId, String stream, OutputStream out) throws IOException;
+
+    Map<String, Object> getStreamStat(Long logId, String stream);
+}
@@ -18,5 +18,9 @@ public interface DevCronJobLogService extends IService<DevCronJobLog> {
 
     void appendErr(Long logId, String line);
 
+    void appendOut(Long logId, List<String> lines);
+
+    void appendErr(Long logId, List<String> lines);
+
     void finish(Long logId, Integer exitCode, JobLogStatus status, LocalDateTime startTime);
 }
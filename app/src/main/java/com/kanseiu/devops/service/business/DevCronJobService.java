@@ -6,6 +6,7 @@ import com.kanseiu.devops.model.request.CronJobSaveRequest;
 import com.kanseiu.devops.model.response.CronJobListResp;
 
 import java.util.List;
+import java.util.Map;
 
 public interface DevCronJobService extends IService<DevCronJob> {
 
@@ -23,5 +24,5 @@ public interface DevCronJobService extends IService<DevCronJob> {
 
     void resume(Long id);
 
-    void reloadAll();
+    Map<String, Object> reloadAll();
 }
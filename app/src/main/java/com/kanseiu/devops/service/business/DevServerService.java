@@ -4,9 +4,17 @@ import com.baomidou.mybatisplus.extension.service.IService;
 import com.kanseiu.devops.model.entity.DevServer;
 import com.kanseiu.devops.model.request.DevServerSaveRequest;
 
+import java.util.List;
+
 public interface DevServerService extends IService<DevServer> {
 
     void add(DevServerSaveRequest request);
 
     void update(DevServerSaveRequest request);
+
+    /**
+     * 按标签选择启用中的服务器（按ID排序）
+     * @param selector 逗号分隔，需全部满足；!label 表示不能带该标签
+     */
+    List<DevServer> listByLabels(String selector);
 }
@@ -0,0 +1,86 @@
+package com.kanseiu.devops.service.business.impl;
+
+import com.baomidou.mybatisplus.core.toolkit.Wrappers;
+import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
+import com.kanseiu.devops.cron.JobDagEngine;
+import com.kanseiu.devops.mapper.DevCronJobDepMapper;
+import com.kanseiu.devops.mapper.DevCronJobMapper;
+import com.kanseiu.devops.model.entity.DevCronJobDep;
+import com.kanseiu.devops.service.business.DevCronJobDepService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.Resource;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+@Slf4j
+@Service
+public class DevCronJobDepServiceImpl extends ServiceImpl<DevCronJobDepMapper, DevCronJobDep> implements DevCronJobDepService {
+
+    @Resource
+    private DevCronJobMapper devCronJobMapper;
+
+    @Resource
+    private JobDagEngine jobDagEngine;
+
+    @Override
+    public List<DevCronJobDep> listByJobId(Long jobId) {
+        return this.baseMapper.listByJobId(jobId);
+    }
+
+    @Override
+    public void add(DevCronJobDep request) {
+        this.check(request);
+        if (this.count(Wrappers.<DevCronJobDep>lambdaQuery()
+                .eq(DevCronJobDep::getDevCronJobId, request.getDevCronJobId())
+                .eq(DevCronJobDep::getUpstreamJobId, request.getUpstreamJobId())) > 0) {
+            throw new IllegalArgumentException("该上游依赖已存在");
+        }
+        request.setSatisfied(false);
+        this.save(request);
+        jobDagEngine.reload();
+    }
+
+    @Override
+    public void update(DevCronJobDep request) {
+        DevCronJobDep exist = Optional.ofNullable(this.getById(request.getId())).orElseThrow(() -> new IllegalArgumentException("依赖不存在，id=" + request.getId()));
+        // 上下游不可修改，只改触发状态与启用
+        request.setDevCronJobId(exist.getDevCronJobId());
+        request.setUpstreamJobId(exist.getUpstreamJobId());
+        this.check(request);
+        exist.setTriggerOnStatus(request.getTriggerOnStatus());
+        exist.setDisabled(request.getDisabled());
+        // 条件变了，之前记录的满足状态不再算数
+        exist.setSatisfied(false);
+        this.updateById(exist);
+        jobDagEngine.reload();
+    }
+
+    // 校验：上下游存在、触发状态合法、启用后不成环
+    private void check(DevCronJobDep request) {
+        if (Objects.isNull(request.getDevCronJobId()) || Objects.isNull(request.getUpstreamJobId())) {
+            throw new IllegalArgumentException("上游、下游任务不能为空");
+        }
+        if (devCronJobMapper.selectById(request.getDevCronJobId()) == null) {
+            throw new IllegalArgumentException("任务不存在，id=" + request.getDevCronJobId());
+        }
+        if (devCronJobMapper.selectById(request.getUpstreamJobId()) == null) {
+            throw new IllegalArgumentException("上游任务不存在，id=" + request.getUpstreamJobId());
+        }
+        // 规范化触发状态，为空默认 SUCCESS
+        request.setTriggerOnStatus(JobDagEngine.parseTriggerOn(request.getTriggerOnStatus()).stream()
+                .map(Enum::name).collect(Collectors.joining(",")));
+        if (request.getDisabled() == null) {
+            request.setDisabled(false);
+        }
+        if (!request.getDisabled()) {
+            List<DevCronJobDep> others = this.baseMapper.listEnabled().stream()
+                    .filter(d -> !d.getId().equals(request.getId()))
+                    .collect(Collectors.toList());
+            JobDagEngine.checkAcyclic(others, request.getUpstreamJobId(), request.getDevCronJobId());
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package com.kanseiu.devops.service.business.impl;
+
+import cn.hutool.core.util.ZipUtil;
+import com.baomidou.mybatisplus.core.toolkit.Wrappers;
+import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
+import com.kanseiu.devops.mapper.DevCronJobLogChunkMapper;
+import com.kanseiu.devops.model.entity.DevCronJobLogChunk;
+import com.kanseiu.devops.model.response.DevCronJobLogChunkResp;
+import com.kanseiu.devops.service.business.DevCronJobLogChunkService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+
+@Slf4j
+@Service
+public class DevCronJobLogChunkServiceImpl extends ServiceImpl<DevCronJobLogChunkMapper, DevCronJobLogChunk> implements DevCronJobLogChunkService {
+
+    // 单页最多分块数
+    private static final int MAX_PAGE_SIZE = 200;
+
+    // 流式读取时每批加载的分块数
+    private static final int STREAM_BATCH = 32;
+
+    private static final String OMITTED_MARK = "\n...[%d chunk(s) omitted]\n";
+
+    // 分块原始字节数达到该值才压缩，<= 0 表示不压缩
+    @Value("${devops.job-log.chunk.compress-min-bytes:4096}")
+    private int compressMinBytes;
+
+    /** 追加一个分块（超过阈值且压缩后更小时以 GZIP 存储） */
+    @Override
+    public DevCronJobLogChunk appendChunk(Long logId, String stream, int seq, String text) {
+        byte[] raw = text.getBytes(StandardCharsets.UTF_8);
+        byte[] content = raw;
+        boolean compressed = false;
+        if (compressMinBytes > 0 && raw.length >= compressMinBytes) {
+            byte[] gz = ZipUtil.gzip(raw);
+            if (gz.length < raw.length) {
+                content = gz;
+                compressed = true;
+            }
+        }
+        DevCronJobLogChunk chunk = new DevCronJobLogChunk();
+        chunk.setLogId(logId);
+        chunk.setStream(stream);
+        chunk.setSeq(seq);
+        chunk.setRawLen(raw.length);
+        chunk.setCompressed(compressed);
+        chunk.setContent(content);
+        this.save(chunk);
+        return chunk;
+    }
+
+    /** 按序号分页读取（afterSeq 之后的 limit 个分块） */
+    @Override
+    public DevCronJobLogChunkResp page(Long logId, String stream, int afterSeq, int limit) {
+        String s = checkStream(stream);
+        int size = Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+        // 多取一条用于判断是否还有下一页
+        List<DevCronJobLogChunk> list = listAfter(logId, s, afterSeq, size + 1);
+
+        DevCronJobLogChunkResp resp = new DevCronJobLogChunkResp();
+        resp.setLogId(logId);
+        resp.setStream(s);
+        resp.setHasMore(list.size() > size);
+        int prevSeq = afterSeq;
+        for (int i = 0; i < Math.min(size, list.size()); i++) {
+            DevCronJobLogChunk c = list.get(i);
+            DevCronJobLogChunkResp.Item item = new DevCronJobLogChunkResp.Item();
+            item.setSeq(c.getSeq());
+            item.setRawLen(c.getRawLen());
+            item.setOmittedBefore(c.getSeq() - prevSeq - 1);
+            item.setText(decode(c));
+            resp.getItems().add(item);
+            prevSeq = c.getSeq();
+        }
+        resp.setNextSeq(prevSeq);
+        return resp;
+    }
+
+    /** 按序号顺序把完整输出写到 out，分批加载，不一次性读入内存；被裁剪处写入标记 */
+    @Override
+    public void writeTo(Long logId, String stream, OutputStream out) throws IOException {
+        String s = checkStream(stream);
+        int prevSeq = 0;
+        while (true) {
+            List<DevCronJobLogChunk> list = listAfter(logId, s, prevSeq, STREAM_BATCH);
+            for (DevCronJobLogChunk c : list) {
+                int omitted = c.getSeq() - prevSeq - 1;
+                if (omitted > 0) {
+                    out.write(String.format(OMITTED_MARK, omitted).getBytes(StandardCharsets.UTF_8));
+                }
+                out.write(Boolean.TRUE.equals(c.getCompressed()) ? ZipUtil.unGzip(c.getContent()) : c.getContent());
+                prevSeq = c.getSeq();
+            }
+            out.flush();
+            if (list.size() < STREAM_BATCH) {
+                return;
+            }
+        }
+    }
+
+    /** 某个输出流的最大序号与已存储原始字节数 */
+    @Override
+    public Map<String, Object> getStreamStat(Long logId, String stream) {
+        return this.baseMapper.getStreamStat(logId, stream);
+    }
+
+    private List<DevCronJobLogChunk> listAfter(Long logId, String stream, int afterSeq, int limit) {
+        return this.list(Wrappers.<DevCronJobLogChunk>lambdaQuery()
+                .eq(DevCronJobLogChunk::getLogId, logId)
+                .eq(DevCronJobLogChunk::getStream, stream)
+                .gt(DevCronJobLogChunk::getSeq, afterSeq)
+                .orderByAsc(DevCronJobLogChunk::getSeq)
+                .last("LIMIT " + limit));
+    }
+
+    private static String decode(DevCronJobLogChunk c) {
+        byte[] raw = Boolean.TRUE.equals(c.getCompressed()) ? ZipUtil.unGzip(c.getContent()) : c.getContent();
+        return new String(raw, StandardCharsets.UTF_8);
+    }
+
+    private static String checkStream(String stream) {
+        if (DevCronJobLogChunk.STREAM_OUT.equalsIgnoreCase(stream)) {
+            return DevCronJobLogChunk.STREAM_OUT;
+        }
+        if (DevCronJobLogChunk.STREAM_ERR.equalsIgnoreCase(stream)) {
+            return DevCronJobLogChunk.STREAM_ERR;
+        }
+        throw new IllegalArgumentException("不支持的输出流：" + stream);
+    }
+}
@@ -9,9 +9,10 @@ import com.kanseiu.devops.model.request.SendEmailRequest;
 import com.kanseiu.devops.model.response.DevCronJobLogResp;
 import com.kanseiu.devops.service.business.DevCronJobLogService;
 import com.kanseiu.devops.service.handler.SendNotifyService;
+import com.kanseiu.devops.service.joblog.DevCronJobLogBuffer;
+import com.kanseiu.devops.service.joblog.JobLogLiveHub;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
 
 import javax.annotation.Resource;
 import java.time.Duration;
@@ -25,12 +26,19 @@ import java.util.Objects;
 @Service
 public class DevCronJobLogServiceImpl extends ServiceImpl<DevCronJobLogMapper, DevCronJobLog> implements DevCronJobLogService {
 
-    // 中文注释：最大存储长度（按需调整）
-    private static final int MAX_TEXT_LEN = 100 * 1024;
+    // 结束时剩余输出的落库尝试次数与退避（毫秒，按次数递增）
+    private static final int FINISH_FLUSH_ATTEMPTS = 3;
+    private static final long FINISH_FLUSH_BACKOFF_MS = 200L;
 
     @Resource
     private SendNotifyService sendNotifyService;
 
+    @Resource
+    private DevCronJobLogBuffer devCronJobLogBuffer;
+
+    @Resource
+    private JobLogLiveHub jobLogLiveHub;
+
     // 获取今日执行失败的定时任务日志
     @Override
     public List<DevCronJobLogResp> getTodayFail() {
@@ -48,83 +56,93 @@ public class DevCronJobLogServiceImpl extends ServiceImpl<DevCronJobLogMapper, D
         log.setScriptName(job.getScriptName());
         log.setScriptContent(Objects.isNull(script) ? "UNKNOWN" : script.getScriptContent());
         log.setArgsText(argsText);
+        log.setParentLogId(job.getParentLogId());
         log.setStartTime(LocalDateTime.now());
         log.setStatus("RUNNING");
         this.save(log);
+        devCronJobLogBuffer.open(log.getId());
+        jobLogLiveHub.open(log.getId());
         return log.getId();
     }
 
 
-    /** 追加 stdout */
+    /** 追加 stdout（先进缓冲，按大小/时间阈值批量落库） */
     @Override
-    @Transactional
     public void appendOut(Long logId, String line) {
-        DevCronJobLog log = this.getById(logId);
-        if (log == null) {
-            return;
-        }
-        log.setOutputText(appendBounded(log.getOutputText(), ensureLine(line)));
-        log.setScriptContent(null);
-        this.updateById(log);
+        jobLogLiveHub.publish(logId, JobLogLiveHub.EVENT_STDOUT, line);
+        devCronJobLogBuffer.appendOut(logId, line);
     }
 
-    /** 追加 stderr */
+    /** 追加 stderr（先进缓冲，按大小/时间阈值批量落库） */
     @Override
-    @Transactional
     public void appendErr(Long logId, String line) {
-        DevCronJobLog log = this.getById(logId);
-        if (log == null) {
-            return;
-        }
-        log.setErrorText(appendBounded(log.getErrorText(), ensureLine(line)));
-        log.setScriptContent(null);
-        this.updateById(log);
+        jobLogLiveHub.publish(logId, JobLogLiveHub.EVENT_STDERR, line);
+        devCronJobLogBuffer.appendErr(logId, line);
+    }
+
+    /** 整批追加 stdout（SSH 一次收到的多行） */
+    @Override
+    public void appendOut(Long logId, List<String> lines) {
+        jobLogLiveHub.publish(logId, JobLogLiveHub.EVENT_STDOUT, lines);
+        devCronJobLogBuffer.appendOut(logId, lines);
+    }
+
+    /** 整批追加 stderr */
+    @Override
+    public void appendErr(Long logId, List<String> lines) {
+        jobLogLiveHub.publish(logId, JobLogLiveHub.EVENT_STDERR, lines);
+        devCronJobLogBuffer.appendErr(logId, lines);
     }
 
     /** 执行结束，设置 exit/status/end/duration */
     @Override
     public void finish(Long logId, Integer exitCode, JobLogStatus status, LocalDateTime startTime) {
+        // 先把缓冲中剩余的输出落库，失败时重试几次，仍失败则在通知中注明
+        boolean flushed = flushRemaining(logId);
+        jobLogLiveHub.close(logId, exitCode == null ? -1 : exitCode);
+
+        LocalDateTime end = LocalDateTime.now();
+        // 只更新结束相关字段，不回写输出大字段
+        DevCronJobLog upd = new DevCronJobLog();
+        upd.setId(logId);
+        upd.setEndTime(end);
+        upd.setExitCode(exitCode);
+        upd.setStatus(status.name());
+        if (startTime != null) {
+            long dur = Duration.between(startTime, end).toMillis();
+            upd.setDurationMs(dur < 0 ? null : dur);
+        }
+        if (!this.updateById(upd)) {
+            return;
+        }
         DevCronJobLog log = this.getById(logId);
         if (log == null) {
             return;
         }
-        LocalDateTime end = LocalDateTime.now();
-        log.setEndTime(end);
-        log.setExitCode(exitCode);
-        log.setStatus(status.name());
-        if (startTime != null) {
-            long dur = Duration.between(startTime, end).toMillis();
-            log.setDurationMs(dur < 0 ? null : dur);
+        if (!flushed) {
+            log.setErrorText(Objects.toString(log.getErrorText(), "") + "\n[日志] 部分输出落库失败，以上内容可能不完整\n");
         }
-        log.setScriptContent(null);
-        this.updateById(log);
 
         // 发送邮件
         sendNotifyService.send(log);
     }
 
-    /** 安全追加文本（带长度上限） */
-    private String appendBounded(String base, String add) {
-        if (add == null || add.isEmpty()) {
-            return base;
-        }
-        String cur = base == null ? "" : base;
-        int remain = MAX_TEXT_LEN - cur.length();
-        if (remain <= 0) {
-            return cur; // 已满
-        }
-        if (add.length() <= remain) {
-            return cur + add;
-        }
-        // 截断并追加标记
-        return cur + add.substring(0, remain - 15) + "\n...[truncated]";
-    }
-
-    private String ensureLine(String s) {
-        if (s == null) {
-            return "";
+    // 结束时落库剩余输出：失败后稍等再试，返回最终是否成功（失败的内容仍留在缓冲中由定时任务重试）
+    private boolean flushRemaining(Long logId) {
+        for (int attempt = 1; ; attempt++) {
+            if (devCronJobLogBuffer.flush(logId, true)) {
+                return true;
+            }
+            if (attempt >= FINISH_FLUSH_ATTEMPTS) {
+                log.error("执行日志#{} 结束时落库失败 {} 次，通知中的输出可能不完整", logId, attempt);
+                return false;
+            }
+            try {
+                Thread.sleep(FINISH_FLUSH_BACKOFF_MS * attempt);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
         }
-        // 统一换行
-        return s.endsWith("\n") ? s : (s + "\n");
     }
 }
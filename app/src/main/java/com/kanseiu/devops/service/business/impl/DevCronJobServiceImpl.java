@@ -5,12 +5,19 @@ import cn.hutool.core.date.DateUtil;
 import cn.hutool.core.util.StrUtil;
 import cn.hutool.cron.CronUtil;
 import cn.hutool.cron.Scheduler;
-import cn.hutool.cron.pattern.CronPattern;
 import com.baomidou.mybatisplus.core.toolkit.Wrappers;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
 import com.kanseiu.devops.constant.JobStatusEnum;
+import com.kanseiu.devops.constant.MisfirePolicyEnum;
+import com.kanseiu.devops.constant.OverlapPolicyEnum;
+import com.kanseiu.devops.constant.TargetTypeEnum;
 import com.kanseiu.devops.constant.ProjectConstant;
+import com.kanseiu.devops.cron.CronReconciler;
 import com.kanseiu.devops.cron.CronRegistrar;
+import com.kanseiu.devops.cron.JobInFlightTracker;
+import com.kanseiu.devops.cron.MisfireHandler;
+import com.kanseiu.devops.cron.NextFireIndex;
+import com.kanseiu.devops.cron.SchedulerShards;
 import com.kanseiu.devops.mapper.DevCronJobMapper;
 import com.kanseiu.devops.model.entity.DevCronJob;
 import com.kanseiu.devops.service.business.DevCronJobService;
@@ -29,25 +36,49 @@ public class DevCronJobServiceImpl extends ServiceImpl<DevCronJobMapper, DevCron
     @Resource
     private CronRegistrar cronRegistrar;
 
+    @Resource
+    private JobInFlightTracker jobInFlightTracker;
+
+    @Resource
+    private CronReconciler cronReconciler;
+
+    @Resource
+    private SchedulerShards schedulerShards;
+
+    @Resource
+    private NextFireIndex nextFireIndex;
+
+    @Resource
+    private MisfireHandler misfireHandler;
+
     // 获取所有定时任务（按更新时间倒序）
     @Override
     public List<DevCronJob> listAll() {
         // 获取任务列表
         List<DevCronJob> jobList = this.list(Wrappers.<DevCronJob>lambdaQuery().orderByAsc(DevCronJob::getId));
-        // 获取调度器与已注册任务表
-        Scheduler scheduler = CronUtil.getScheduler();
-        // 获取已经注册到调度器中的任务ID
-        List<String> registeredIdList = scheduler != null && scheduler.getTaskTable() != null ? scheduler.getTaskTable().getIds() : Collections.emptyList();
         // 判断调度器是否已启动
+        Scheduler scheduler = CronUtil.getScheduler();
         boolean schedulerStarted = (scheduler != null) && scheduler.isStarted();
+        Set<Long> jobIds = new HashSet<>(jobList.size() * 2);
         // 设置JOB的状态
         jobList.forEach(j -> {
-            boolean registered = registeredIdList.contains(CronRegistrar.taskIdOf(j.getId()));
+            jobIds.add(j.getId());
+            // 是否已注册（注册表按任务ID索引）
+            boolean registered = cronRegistrar.isRegistered(j.getId());
             j.setStatus(JobStatusEnum.get(j.getDisabled(), registered, schedulerStarted).name());
-            CronPattern cronPattern = new CronPattern(j.getCronExpr());
-            Calendar calendar = cronPattern.nextMatchAfter(DateUtil.calendar());
-            j.setNextRunTime(DateUtil.format(calendar.getTime(), DatePattern.NORM_DATETIME_PATTERN));
+            // 下次执行时间从索引读取，不再逐个解析表达式
+            Long nextFire = nextFireIndex.nextFire(j.getId(), j.getCronExpr());
+            j.setNextRunTime(nextFire == null ? null : DateUtil.format(new Date(nextFire), DatePattern.NORM_DATETIME_PATTERN));
+            // 在途数与跳过次数，用于观察任务是否饱和
+            j.setInFlight(jobInFlightTracker.inFlight(j.getId()));
+            j.setSkippedFires(jobInFlightTracker.skippedFires(j.getId()));
+            // 分片模式下未注册在本节点的任务可能归其他节点
+            if (schedulerShards.isEnabled()) {
+                j.setOwnerNode(schedulerShards.ownerOf(j.getId()));
+            }
         });
+        // 清理已删除任务的索引
+        nextFireIndex.retain(jobIds);
         // 返回
         return jobList;
     }
@@ -59,6 +90,10 @@ public class DevCronJobServiceImpl extends ServiceImpl<DevCronJobMapper, DevCron
         req.check();
         // 检查任务名称重复
         this.checkJobNameDuplicate(req);
+        // 重叠策略、错过触发策略默认跳过，执行目标默认单台服务器
+        req.setOverlapPolicy(OverlapPolicyEnum.of(req.getOverlapPolicy()).name());
+        req.setMisfirePolicy(MisfirePolicyEnum.of(req.getMisfirePolicy()).name());
+        req.setTargetType(TargetTypeEnum.of(req.getTargetType()).name());
         // 保存
         this.save(req);
         // 注册任务
@@ -81,6 +116,13 @@ public class DevCronJobServiceImpl extends ServiceImpl<DevCronJobMapper, DevCron
         exist.setArgsText(req.getArgsText());
         exist.setTimeoutSec(req.getTimeoutSec());
         exist.setDisabled(req.getDisabled());
+        // 未指定重叠策略时保留原值（升级前的任务为 ALLOW）
+        exist.setOverlapPolicy(OverlapPolicyEnum.of(StrUtil.blankToDefault(req.getOverlapPolicy(), exist.getOverlapPolicy())).name());
+        exist.setMisfirePolicy(MisfirePolicyEnum.of(req.getMisfirePolicy()).name());
+        exist.setTargetType(TargetTypeEnum.of(req.getTargetType()).name());
+        exist.setTargetLabels(StrUtil.trimToNull(req.getTargetLabels()));
+        exist.setFanOutWidth(req.getFanOutWidth());
+        exist.setBatchSize(req.getBatchSize());
         exist.setDescText(StrUtil.trimToNull(req.getDescText()));
         // 更新
         this.updateById(exist);
@@ -112,6 +154,8 @@ public class DevCronJobServiceImpl extends ServiceImpl<DevCronJobMapper, DevCron
         this.updateById(job);
         // 取消注册任务
         cronRegistrar.unregister(id);
+        // 暂停期间的触发不算错过
+        misfireHandler.forget(id);
     }
 
     // 恢复任务
@@ -127,26 +171,10 @@ public class DevCronJobServiceImpl extends ServiceImpl<DevCronJobMapper, DevCron
         cronRegistrar.register(job);
     }
 
-    // 重载数据库中的定时任务
+    // 重载数据库中的定时任务：增量对账，不清空调度器
     @Override
-    public void reloadAll() {
-        // 清空调度器中的所有任务
-        CronUtil.getScheduler().clear();
-        // 获取数据库中的全部任务
-        List<DevCronJob> jobs = this.list(null);
-        // 注册任务
-        for (DevCronJob job : jobs) {
-            if (Boolean.FALSE.equals(job.getDisabled())) {
-                try {
-                    log.info("正在注册定时任务[{}]", job.getJobName());
-                    cronRegistrar.register(job);
-                } catch (Exception e) {
-                    log.error("定时任务[{}]注册失败！", job.getJobName(), e);
-                }
-            } else {
-                log.info("定时任务[{}]已经被禁用，不注册！", job.getJobName());
-            }
-        }
+    public Map<String, Object> reloadAll() {
+        return cronReconciler.reconcile();
     }
 
     // 注册任务
@@ -155,6 +183,7 @@ public class DevCronJobServiceImpl extends ServiceImpl<DevCronJobMapper, DevCron
             cronRegistrar.register(req);
         } else {
             cronRegistrar.unregister(req.getId());
+            misfireHandler.forget(req.getId());
         }
     }
 
@@ -4,6 +4,7 @@ import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
 import com.kanseiu.devops.mapper.DevDatabaseMapper;
 import com.kanseiu.devops.model.entity.DevDatabase;
 import com.kanseiu.devops.service.business.DevDatabaseService;
+import com.kanseiu.devops.service.db.DevDatabasePool;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.stereotype.Service;
@@ -11,10 +12,8 @@ import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import javax.annotation.Resource;
 import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.ResultSet;
 import java.sql.Statement;
-import java.util.Properties;
 
 @Slf4j
 @Service
@@ -23,6 +22,9 @@ public class DevDatabaseServiceImpl extends ServiceImpl<DevDatabaseMapper, DevDa
     @Resource
     private ThreadPoolTaskExecutor dbExecPool;
 
+    @Resource
+    private DevDatabasePool devDatabasePool;
+
 
     @Override
     public void add(DevDatabase database) {
@@ -33,6 +35,8 @@ public class DevDatabaseServiceImpl extends ServiceImpl<DevDatabaseMapper, DevDa
     @Override
     public void update(DevDatabase database) {
         this.updateById(database);
+        // 连接信息可能已变化，关闭旧连接池
+        devDatabasePool.invalidate(database.getId());
     }
 
 
@@ -46,11 +50,7 @@ public class DevDatabaseServiceImpl extends ServiceImpl<DevDatabaseMapper, DevDa
                 DevDatabase db = getById(id);
                 emitter.send(SseEmitter.event().name("meta").data("测试连接 " + db.getJdbcUrl()));
 
-                Properties props = new Properties();
-                props.setProperty("user", db.getUsername());
-                props.setProperty("password", db.getPasswordEnc());
-
-                try (Connection conn = DriverManager.getConnection(db.getJdbcUrl(), props)) {
+                try (Connection conn = devDatabasePool.getConnection(db)) {
                     emitter.send(SseEmitter.event().name("stdout").data("连接成功"));
 
                     // 如果配置了 test_sql，就执行
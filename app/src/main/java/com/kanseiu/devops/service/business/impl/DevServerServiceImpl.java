@@ -1,21 +1,31 @@
 package com.kanseiu.devops.service.business.impl;
 
+import cn.hutool.core.util.StrUtil;
 import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
 import com.kanseiu.devops.mapper.DevServerMapper;
 import com.kanseiu.devops.model.entity.DevServer;
 import com.kanseiu.devops.model.request.DevServerSaveRequest;
 import com.kanseiu.devops.service.business.DevServerService;
+import com.kanseiu.devops.service.ssh.SshSessionPool;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.BeanUtils;
 import org.springframework.stereotype.Service;
 
+import javax.annotation.Resource;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Objects;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 @Slf4j
 @Service
 public class DevServerServiceImpl extends ServiceImpl<DevServerMapper, DevServer> implements DevServerService {
 
+    @Resource
+    private SshSessionPool sshSessionPool;
+
     // 新增服务器信息
     @Override
     public void add(DevServerSaveRequest request) {
@@ -34,6 +44,8 @@ public class DevServerServiceImpl extends ServiceImpl<DevServerMapper, DevServer
         DevServer devServer = new DevServer();
         BeanUtils.copyProperties(request, devServer);
         this.updateById(devServer);
+        // 凭据可能已变更，使池化的 SSH 会话失效
+        sshSessionPool.invalidate(devServer.getId());
     }
 
     private void checkDuplicate(DevServerSaveRequest request) {
@@ -47,4 +59,30 @@ public class DevServerServiceImpl extends ServiceImpl<DevServerMapper, DevServer
         }
     }
 
+    // 按标签选择启用中的服务器
+    @Override
+    public List<DevServer> listByLabels(String selector) {
+        Set<String> required = new HashSet<>();
+        Set<String> excluded = new HashSet<>();
+        for (String term : StrUtil.split(selector, ',', true, true)) {
+            if (term.startsWith("!")) {
+                excluded.add(term.substring(1).trim());
+            } else {
+                required.add(term);
+            }
+        }
+        if (required.isEmpty()) {
+            throw new IllegalArgumentException("标签选择器至少需要一个必须满足的标签：" + selector);
+        }
+        LambdaQueryWrapper<DevServer> query = new LambdaQueryWrapper<DevServer>()
+                .eq(DevServer::getDisabled, false)
+                .isNotNull(DevServer::getLabels)
+                .orderByAsc(DevServer::getId);
+        return this.list(query).stream()
+                .filter(server -> {
+                    Set<String> labels = new HashSet<>(StrUtil.split(server.getLabels(), ',', true, true));
+                    return labels.containsAll(required) && excluded.stream().noneMatch(labels::contains);
+                })
+                .collect(Collectors.toList());
+    }
 }
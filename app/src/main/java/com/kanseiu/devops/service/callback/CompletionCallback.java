@@ -0,0 +1,41 @@
+package com.kanseiu.devops.service.callback;
+
+import com.kanseiu.devops.constant.JobLogStatus;
+
+// 只关心结束的回调：忽略输出行（分发回调不会给它投递输出行），结束或异常时调用 onFinish（异常时退出码为 -1、状态为 ERROR，与执行日志一致）
+public class CompletionCallback extends LiveExecCallback {
+
+    public interface Listener {
+        void onFinish(int exitCode, JobLogStatus status);
+    }
+
+    private final Listener onFinish;
+
+    public CompletionCallback(Listener onFinish) {
+        this.onFinish = onFinish;
+    }
+
+    @Override
+    public void onStdout(String line) {}
+
+    @Override
+    public void onStderr(String line) {}
+
+    @Override
+    public void onMeta(String line) {}
+
+    @Override
+    public void onEnd(int exitCode) {
+        onFinish.onFinish(exitCode, JobLogStatus.fromEnd(exitCode));
+    }
+
+    @Override
+    public void onEnd(int exitCode, JobLogStatus status) {
+        onFinish.onFinish(exitCode, status);
+    }
+
+    @Override
+    public void onError(Throwable t) {
+        onFinish.onFinish(-1, JobLogStatus.ERROR);
+    }
+}
@@ -5,6 +5,7 @@ import com.kanseiu.devops.service.business.DevCronJobLogService;
 import lombok.RequiredArgsConstructor;
 
 import java.time.LocalDateTime;
+import java.util.List;
 
 // 仅写库的回调，不向前端推送 SSE
 @RequiredArgsConstructor
@@ -16,6 +17,10 @@ public class DbLoggingCallback extends LiveExecCallback {
 
     private final LocalDateTime startAt;
 
+    public Long getLogId() {
+        return logId;
+    }
+
     @Override
     public void onStdout(String line) {
         // 中文注释：只写库（内部有截断保护）
@@ -32,12 +37,33 @@ public class DbLoggingCallback extends LiveExecCallback {
         }
     }
 
+    // 整批写入：缓冲只加一次锁、只检查一次刷新阈值
+    @Override
+    public void onStdoutBatch(List<String> lines) {
+        try {
+            logService.appendOut(logId, lines);
+        } catch (Exception ignore) {
+        }
+    }
+
+    @Override
+    public void onStderrBatch(List<String> lines) {
+        try {
+            logService.appendErr(logId, lines);
+        } catch (Exception ignore) {
+        }
+    }
+
     @Override
     public void onMeta(String line) {}
 
     @Override
     public void onEnd(int exitCode) {
-        JobLogStatus status = (exitCode == 124) ? JobLogStatus.TIMEOUT : JobLogStatus.fromExit(exitCode);
+        onEnd(exitCode, JobLogStatus.fromEnd(exitCode));
+    }
+
+    @Override
+    public void onEnd(int exitCode, JobLogStatus status) {
         try {
             logService.finish(logId, exitCode, status, startAt);
         } catch (Exception ignore) {
@@ -0,0 +1,76 @@
+package com.kanseiu.devops.service.callback;
+
+import com.kanseiu.devops.constant.JobLogStatus;
+import com.kanseiu.devops.service.run.JobRun;
+import com.kanseiu.devops.service.run.JobRunRegistry;
+
+import java.util.List;
+
+// 运行登记回调：结束时从登记表移除；已取消的运行以取消退出码、CANCELLED 状态结束（取消只看运行状态，不看退出码）
+public class JobRunCallback extends LiveExecCallback {
+
+    private final JobRunRegistry registry;
+
+    private final JobRun run;
+
+    private final LiveExecCallback delegate;
+
+    public JobRunCallback(JobRunRegistry registry, JobRun run, LiveExecCallback delegate) {
+        this.registry = registry;
+        this.run = run;
+        this.delegate = delegate;
+    }
+
+    public JobRun getRun() {
+        return run;
+    }
+
+    @Override
+    public void onStdout(String line) {
+        delegate.onStdout(line);
+    }
+
+    @Override
+    public void onStderr(String line) {
+        delegate.onStderr(line);
+    }
+
+    @Override
+    public void onStdoutBatch(List<String> lines) {
+        delegate.onStdoutBatch(lines);
+    }
+
+    @Override
+    public void onStderrBatch(List<String> lines) {
+        delegate.onStderrBatch(lines);
+    }
+
+    @Override
+    public void onMeta(String line) {
+        delegate.onMeta(line);
+    }
+
+    @Override
+    public void onEnd(int exitCode) {
+        registry.close(run);
+        // 取消前已经成功结束的，保留真实结果
+        if (run.isCancelled() && exitCode != 0) {
+            delegate.onStderr("[cancel] 任务已取消：" + run.getCancelReason());
+            delegate.onEnd(JobLogStatus.CANCELLED_EXIT_CODE, JobLogStatus.CANCELLED);
+            return;
+        }
+        delegate.onEnd(exitCode);
+    }
+
+    @Override
+    public void onError(Throwable t) {
+        registry.close(run);
+        // 取消导致的异常（通道断开、语句被取消等）按取消结束
+        if (run.isCancelled()) {
+            delegate.onStderr("[cancel] 任务已取消：" + run.getCancelReason());
+            delegate.onEnd(JobLogStatus.CANCELLED_EXIT_CODE, JobLogStatus.CANCELLED);
+            return;
+        }
+        delegate.onError(t);
+    }
+}
@@ -1,5 +1,10 @@
 package com.kanseiu.devops.service.callback;
 
+import com.kanseiu.devops.constant.JobLogStatus;
+import com.kanseiu.devops.service.run.JobRun;
+
+import java.util.List;
+
 // 回调
 public abstract class LiveExecCallback {
 
@@ -9,7 +14,29 @@ public abstract class LiveExecCallback {
 
     public abstract void onMeta(String line);
 
+    // 一批 stdout 行（SSH 每次收到的数据切出的行）；默认逐行调用 onStdout，能整批处理的输出端覆盖它
+    public void onStdoutBatch(List<String> lines) {
+        for (String line : lines) {
+            onStdout(line);
+        }
+    }
+
+    // 一批 stderr 行，同 onStdoutBatch
+    public void onStderrBatch(List<String> lines) {
+        for (String line : lines) {
+            onStderr(line);
+        }
+    }
+
     public abstract void onEnd(int exitCode);
 
+    // 以指定状态结束（取消等不能从退出码推断的状态）；默认忽略状态，按退出码处理
+    public void onEnd(int exitCode, JobLogStatus status) {
+        onEnd(exitCode);
+    }
+
     public abstract void onError(Throwable t);
+
+    // 运行已登记（可用于取消），在任何输出之前调用
+    public void onRunStart(JobRun run) {}
 }
\ No newline at end of file
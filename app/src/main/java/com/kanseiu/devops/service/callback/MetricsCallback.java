@@ -0,0 +1,45 @@
+package com.kanseiu.devops.service.callback;
+
+import com.kanseiu.devops.constant.JobLogStatus;
+import com.kanseiu.devops.service.metrics.ExecMetrics;
+
+// 只做执行指标统计的回调
+public class MetricsCallback extends LiveExecCallback {
+
+    private final ExecMetrics metrics;
+
+    private final long startAt = System.currentTimeMillis();
+
+    public MetricsCallback(ExecMetrics metrics) {
+        this.metrics = metrics;
+        metrics.runStarted();
+    }
+
+    @Override
+    public void onStdout(String line) {
+        metrics.line(true, line);
+    }
+
+    @Override
+    public void onStderr(String line) {
+        metrics.line(false, line);
+    }
+
+    @Override
+    public void onMeta(String line) {}
+
+    @Override
+    public void onEnd(int exitCode) {
+        onEnd(exitCode, JobLogStatus.fromEnd(exitCode));
+    }
+
+    @Override
+    public void onEnd(int exitCode, JobLogStatus status) {
+        metrics.runFinished(status.name(), System.currentTimeMillis() - startAt);
+    }
+
+    @Override
+    public void onError(Throwable t) {
+        metrics.runFinished(JobLogStatus.ERROR.name(), System.currentTimeMillis() - startAt);
+    }
+}
@@ -1,60 +1,67 @@
 package com.kanseiu.devops.service.callback;
 
+import com.kanseiu.devops.service.run.JobRun;
+import com.kanseiu.devops.service.sse.SseBatchWriter;
 import lombok.RequiredArgsConstructor;
-import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
-import java.io.IOException;
+import java.util.List;
 
-// 向前端推送
+// 向前端推送（经 SseBatchWriter 异步合并发送，不阻塞调用线程）
 @RequiredArgsConstructor
 public class SseCallback extends LiveExecCallback {
 
-    private final SseEmitter emitter;
+    private final SseBatchWriter writer;
+
+    private volatile JobRun run;
 
     @Override
-    public void onStdout(String line) {
-        try {
-            emitter.send(SseEmitter.event().name("stdout").data(line));
-        } catch (IOException ignored) {
+    public void onRunStart(JobRun run) {
+        this.run = run;
+        writer.event("meta", "runId=" + run.getRunId());
+    }
+
+    // 浏览器断开等情况下取消对应的运行
+    public void cancelRun(String reason) {
+        JobRun r = run;
+        if (r != null) {
+            r.cancel(reason);
         }
     }
 
+    @Override
+    public void onStdout(String line) {
+        writer.line("stdout", line);
+    }
+
     @Override
     public void onStderr(String line) {
-        try {
-            emitter.send(SseEmitter.event().name("stderr").data(line));
-        } catch (IOException ignored) {
-        }
+        writer.line("stderr", line);
+    }
+
+    @Override
+    public void onStdoutBatch(List<String> lines) {
+        writer.lines("stdout", lines);
+    }
+
+    @Override
+    public void onStderrBatch(List<String> lines) {
+        writer.lines("stderr", lines);
     }
 
     @Override
     public void onMeta(String line) {
-        try {
-            emitter.send(SseEmitter.event().name("meta").data(line));
-        } catch (IOException ignored) {
-        }
+        writer.event("meta", line);
     }
 
     @Override
     public void onEnd(int exitCode) {
-        try {
-            emitter.send(SseEmitter.event().name("end").data(exitCode));
-        } catch (IOException ignored) {
-        }
-        emitter.complete();
+        writer.finish("end", exitCode);
     }
 
     @Override
     public void onError(Throwable t) {
-        try {
-            emitter.send(SseEmitter.event().name("stderr").data("[exception] " + t.getMessage()));
-        } catch (IOException ignored) {
-        }
-        try {
-            emitter.send(SseEmitter.event().name("end").data(-1));
-        } catch (IOException ignored) {
-        }
-        emitter.complete();
+        writer.event("stderr", "[exception] " + t.getMessage());
+        writer.finish("end", -1);
     }
 
 }
@@ -0,0 +1,185 @@
+package com.kanseiu.devops.service.callback;
+
+import com.kanseiu.devops.constant.JobLogStatus;
+import com.kanseiu.devops.service.concurrent.SerialExecutor;
+import com.kanseiu.devops.service.metrics.ExecMetrics;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * 分发回调：把同一次执行的事件同时投递给多个输出端（写库、SSE、指标）
+ * - 可丢弃的输出端（SSE、指标）：一个有界队列，在 executor 上串行消费，调用方（SSH 输出线程）只做入队；
+ *   队列满时丢弃输出行并计数，恢复后补一行丢弃提示
+ * - 不可丢弃的输出端（写库）：输出事件在调用线程上直接交给输出端，不排队、不丢弃；
+ *   这类输出端只能做内存操作（写库由 DevCronJobLogBuffer 在 logFlushPool 上异步进行），调用方任何时候都不会等待
+ * - 成批的输出行作为一个事件原样交给各输出端的 onStdoutBatch/onStderrBatch，不在这里拆成单行
+ * - onEnd/onError 对所有输出端都经串行队列投递（可能写库、发通知），不受队列上限限制，保证每个输出端都能收尾
+ */
+@Slf4j
+public class TeeExecCallback extends LiveExecCallback {
+
+    private final List<Sink> sinks = new ArrayList<>();
+
+    private final AtomicBoolean ended = new AtomicBoolean();
+
+    private final Executor executor;
+
+    private final int queueCapacity;
+
+    private final ExecMetrics metrics;
+
+    public TeeExecCallback(Executor executor, int queueCapacity, ExecMetrics metrics) {
+        this.executor = executor;
+        this.queueCapacity = Math.max(queueCapacity, 1);
+        this.metrics = metrics;
+    }
+
+    /**
+     * 添加输出端，须在投递任何事件之前调用
+     * @param cb    输出端，为空时忽略
+     * @param lossy true：经有界队列异步消费，满了丢弃输出行；false：输出事件在调用线程上直接调用（必须不阻塞），不丢弃
+     */
+    public TeeExecCallback add(LiveExecCallback cb, boolean lossy) {
+        if (cb != null) {
+            sinks.add(new Sink(cb, executor, queueCapacity, metrics, lossy));
+        }
+        return this;
+    }
+
+    @Override
+    public void onStdout(String line) {
+        dispatch(cb -> cb.onStdout(line), 1);
+    }
+
+    @Override
+    public void onStderr(String line) {
+        dispatch(cb -> cb.onStderr(line), 1);
+    }
+
+    @Override
+    public void onStdoutBatch(List<String> lines) {
+        if (!lines.isEmpty()) {
+            dispatch(cb -> cb.onStdoutBatch(lines), lines.size());
+        }
+    }
+
+    @Override
+    public void onStderrBatch(List<String> lines) {
+        if (!lines.isEmpty()) {
+            dispatch(cb -> cb.onStderrBatch(lines), lines.size());
+        }
+    }
+
+    @Override
+    public void onMeta(String line) {
+        dispatch(cb -> cb.onMeta(line), 1);
+    }
+
+    @Override
+    public void onEnd(int exitCode) {
+        if (ended.compareAndSet(false, true)) {
+            dispatch(cb -> cb.onEnd(exitCode), 0);
+        }
+    }
+
+    @Override
+    public void onEnd(int exitCode, JobLogStatus status) {
+        if (ended.compareAndSet(false, true)) {
+            dispatch(cb -> cb.onEnd(exitCode, status), 0);
+        }
+    }
+
+    @Override
+    public void onError(Throwable t) {
+        if (ended.compareAndSet(false, true)) {
+            dispatch(cb -> cb.onError(t), 0);
+        }
+    }
+
+    /**
+     * @param lines 事件包含的输出行数（丢弃时按行计数）；0 表示结束事件，不受队列上限限制
+     */
+    private void dispatch(Consumer<LiveExecCallback> event, int lines) {
+        if (lines > 0 && ended.get()) {
+            return;
+        }
+        for (Sink sink : sinks) {
+            sink.offer(event, lines);
+        }
+    }
+
+    // 单个输出端：有界队列 + 串行消费（SerialExecutor）
+    private static class Sink {
+
+        final LiveExecCallback cb;
+
+        final SerialExecutor serial;
+
+        final int capacity;
+
+        final ExecMetrics metrics;
+
+        // 队列满时丢弃输出行；不可丢弃的输出端在调用线程上直接处理输出事件
+        final boolean lossy;
+
+        // 已入队未执行的事件数（一批输出行算一个事件）
+        final AtomicInteger size = new AtomicInteger();
+
+        // 自上次提示以来丢弃的行数
+        final AtomicInteger dropped = new AtomicInteger();
+
+        Sink(LiveExecCallback cb, Executor executor, int capacity, ExecMetrics metrics, boolean lossy) {
+            this.cb = cb;
+            this.serial = new SerialExecutor(executor);
+            this.capacity = capacity;
+            this.metrics = metrics;
+            this.lossy = lossy;
+        }
+
+        void offer(Consumer<LiveExecCallback> event, int lines) {
+            boolean terminal = lines == 0;
+            // 只关心结束的输出端不投递输出行
+            if (!terminal && cb instanceof CompletionCallback) {
+                return;
+            }
+            if (!terminal && !lossy) {
+                run(event);
+                return;
+            }
+            if (!terminal && size.get() >= capacity) {
+                dropped.addAndGet(lines);
+                if (metrics != null) {
+                    metrics.sinkDropped(lines);
+                }
+                return;
+            }
+            int n = dropped.getAndSet(0);
+            if (n > 0) {
+                enqueue(c -> c.onStderr("[dropped] 输出过快，该输出端丢弃了 " + n + " 行"));
+            }
+            enqueue(event);
+        }
+
+        private void enqueue(Consumer<LiveExecCallback> event) {
+            size.incrementAndGet();
+            serial.execute(() -> {
+                size.decrementAndGet();
+                run(event);
+            });
+        }
+
+        private void run(Consumer<LiveExecCallback> event) {
+            try {
+                event.accept(cb);
+            } catch (Throwable e) {
+                log.warn("[回调分发] {} 处理失败：{}", cb.getClass().getSimpleName(), e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package com.kanseiu.devops.service.concurrent;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 串行执行器：任务按提交顺序逐个执行，只在有任务时才占用底层线程池的线程
+ * - SSH 输出投递（每次执行一个）与回调分发的各输出端共用
+ * - 底层线程池拒绝时退化为调用线程执行，保证不丢任务；任务抛出的异常由任务自己处理，这里忽略
+ */
+public class SerialExecutor implements Executor {
+
+    private final Executor delegate;
+
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+
+    public SerialExecutor(Executor delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        tasks.add(task);
+        schedule();
+    }
+
+    private void schedule() {
+        if (!tasks.isEmpty() && scheduled.compareAndSet(false, true)) {
+            try {
+                delegate.execute(this::drain);
+            } catch (RejectedExecutionException e) {
+                // 线程池已满时退化为调用线程执行，保证不丢任务
+                drain();
+            }
+        }
+    }
+
+    private void drain() {
+        try {
+            Runnable r;
+            while ((r = tasks.poll()) != null) {
+                try {
+                    r.run();
+                } catch (Throwable ignore) {
+                }
+            }
+        } finally {
+            scheduled.set(false);
+            // 释放标记与新任务入队之间可能有竞争，再检查一次
+            schedule();
+        }
+    }
+}
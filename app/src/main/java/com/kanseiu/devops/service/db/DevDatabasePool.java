@@ -0,0 +1,284 @@
+package com.kanseiu.devops.service.db;
+
+import cn.hutool.crypto.digest.DigestUtil;
+import com.alibaba.druid.pool.DruidConnectionHolder;
+import com.alibaba.druid.pool.DruidDataSource;
+import com.alibaba.druid.pool.DruidPooledConnection;
+import com.kanseiu.devops.model.entity.DevDatabase;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 目标数据库连接池
+ * - 按 数据库ID + 连接信息版本 懒创建一个小的 Druid 连接池，SQL 检查任务与连接测试复用物理连接
+ * - 后台巡检：整池长时间未使用则关闭，池内空闲连接由 Druid 自行回收
+ * - 数据库信息修改后调用 invalidate(databaseId) 关闭旧连接池
+ * - 执行任务脚本的连接用 release 归还：会话状态可能被脚本改变（事务、会话变量、切换库等）时丢弃物理连接，不再复用
+ */
+@Slf4j
+@Component
+public class DevDatabasePool {
+
+    // 每个数据库最大连接数
+    @Value("${devops.db.pool.max-active:4}")
+    private int maxActive;
+
+    // 借连接最长等待（毫秒）
+    @Value("${devops.db.pool.max-wait-ms:10000}")
+    private long maxWaitMs;
+
+    // 建连超时（毫秒）
+    @Value("${devops.db.pool.connect-timeout-ms:8000}")
+    private int connectTimeoutMs;
+
+    // 池内连接空闲多久后回收（毫秒）
+    @Value("${devops.db.pool.idle-evict-ms:300000}")
+    private long idleEvictMs;
+
+    // 整个连接池多久未使用后关闭（毫秒）
+    @Value("${devops.db.pool.idle-timeout-ms:1800000}")
+    private long idleTimeoutMs;
+
+    // 空闲连接检测 SQL
+    @Value("${devops.db.pool.validation-query:SELECT 1}")
+    private String validationQuery;
+
+    // 巡检间隔（毫秒）
+    @Value("${devops.db.pool.sweep-interval-ms:60000}")
+    private long sweepIntervalMs;
+
+    @Resource
+    private ThreadPoolTaskScheduler execTimer;
+
+    // 数据库ID -> 连接池
+    private final ConcurrentHashMap<Long, Entry> pools = new ConcurrentHashMap<>();
+
+    // ===================== 统计 =====================
+    private final LongAdder borrows = new LongAdder();
+    private final LongAdder borrowFailures = new LongAdder();
+    private final LongAdder poolsCreated = new LongAdder();
+    private final LongAdder poolsClosed = new LongAdder();
+    private final LongAdder discarded = new LongAdder();
+    // 已关闭连接池累计的物理建连数
+    private final LongAdder closedPhysicalConnects = new LongAdder();
+
+    private ScheduledFuture<?> sweepFuture;
+
+    @PostConstruct
+    public void init() {
+        sweepFuture = execTimer.scheduleWithFixedDelay(this::sweep, Duration.ofMillis(sweepIntervalMs));
+    }
+
+    @PreDestroy
+    public void destroy() {
+        if (sweepFuture != null) {
+            sweepFuture.cancel(false);
+        }
+        pools.values().forEach(e -> e.ds.close());
+        pools.clear();
+    }
+
+    /**
+     * 借出一个连接，用完务必 close() 归还
+     * @param db 数据库信息（含凭据）
+     */
+    public Connection getConnection(DevDatabase db) throws SQLException {
+        Objects.requireNonNull(db, "DevDatabase 不能为空");
+        final String version = connectionVersion(db);
+
+        // 连接信息变化时替换整个连接池
+        Entry[] stale = new Entry[1];
+        Entry entry = pools.compute(db.getId(), (id, e) -> {
+            if (e != null && e.version.equals(version)) {
+                return e;
+            }
+            stale[0] = e;
+            return new Entry(version, createDataSource(db));
+        });
+        if (stale[0] != null) {
+            close(stale[0]);
+        }
+
+        entry.lastUsed = System.currentTimeMillis();
+        long createErrors = entry.ds.getCreateErrorCount();
+        try {
+            Connection conn = entry.ds.getConnection(maxWaitMs);
+            borrows.increment();
+            return conn;
+        } catch (SQLException e) {
+            borrowFailures.increment();
+            // 建连失败后 Druid 不再重试，丢弃整个池，下次重新创建；
+            // 池满等待超时（连接都在被执行中的任务使用）保留连接池
+            boolean createFailed = entry.ds.getCreateErrorCount() > createErrors || entry.ds.getActiveCount() == 0;
+            if (createFailed && pools.remove(db.getId(), entry)) {
+                close(entry);
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * 归还任务脚本使用的连接
+     * @param reusable 会话是否可以交给下一个任务；为 false（取消、超时、出错、脚本改变了会话状态）时丢弃物理连接
+     */
+    public void release(Connection conn, boolean reusable) {
+        if (conn == null) {
+            return;
+        }
+        if (reusable) {
+            try {
+                // 未提交的事务回滚，恢复自动提交
+                if (!conn.getAutoCommit()) {
+                    conn.rollback();
+                    conn.setAutoCommit(true);
+                }
+            } catch (SQLException e) {
+                reusable = false;
+            }
+        }
+        if (!reusable && conn instanceof DruidPooledConnection) {
+            DruidPooledConnection pooled = (DruidPooledConnection) conn;
+            DruidConnectionHolder holder = pooled.getConnectionHolder();
+            if (holder != null) {
+                // 先停用（之后 close 不再归还），再关闭物理连接并释放池内名额
+                pooled.disable();
+                holder.getDataSource().discardConnection(holder);
+                discarded.increment();
+                return;
+            }
+        }
+        try {
+            conn.close();
+        } catch (SQLException e) {
+            log.warn("[DB池] 归还连接失败：{}", e.getMessage());
+        }
+    }
+
+    // 使某个数据库的连接池失效（连接信息修改、删除/禁用时调用）
+    public void invalidate(Long databaseId) {
+        if (databaseId == null) {
+            return;
+        }
+        Entry entry = pools.remove(databaseId);
+        if (entry != null) {
+            close(entry);
+            log.info("[DB池] 数据库#{} 的连接池已关闭", databaseId);
+        }
+    }
+
+    // 连接池统计信息
+    public Map<String, Object> stats() {
+        Map<String, Object> m = new LinkedHashMap<>();
+        long created = closedPhysicalConnects.sum();
+        List<Map<String, Object>> list = new ArrayList<>();
+        for (Map.Entry<Long, Entry> me : pools.entrySet()) {
+            DruidDataSource ds = me.getValue().ds;
+            created += ds.getCreateCount();
+            Map<String, Object> p = new LinkedHashMap<>();
+            p.put("databaseId", me.getKey());
+            p.put("active", ds.getActiveCount());
+            p.put("idle", ds.getPoolingCount());
+            p.put("borrows", ds.getConnectCount());
+            p.put("physicalConnects", ds.getCreateCount());
+            p.put("physicalCloses", ds.getDestroyCount());
+            p.put("waitThreads", ds.getWaitThreadCount());
+            list.add(p);
+        }
+        long borrow = borrows.sum();
+        m.put("pools", pools.size());
+        m.put("borrows", borrow);
+        m.put("borrowFailures", borrowFailures.sum());
+        m.put("physicalConnects", created);
+        m.put("reuseRate", borrow == 0 ? 0D : Math.max(0D, 1D - (double) created / borrow));
+        m.put("poolsCreated", poolsCreated.sum());
+        m.put("poolsClosed", poolsClosed.sum());
+        m.put("discarded", discarded.sum());
+        m.put("detail", list);
+        return m;
+    }
+
+    private DruidDataSource createDataSource(DevDatabase db) {
+        DruidDataSource ds = new DruidDataSource();
+        ds.setName("devdb-" + db.getId());
+        ds.setUrl(db.getJdbcUrl());
+        ds.setUsername(db.getUsername());
+        ds.setPassword(db.getPasswordEnc());
+        ds.setInitialSize(0);
+        ds.setMinIdle(0);
+        ds.setMaxActive(maxActive);
+        ds.setMaxWait(maxWaitMs);
+        ds.setConnectTimeout(connectTimeoutMs);
+        ds.setValidationQuery(validationQuery);
+        ds.setTestWhileIdle(true);
+        ds.setTestOnBorrow(false);
+        ds.setTestOnReturn(false);
+        ds.setTimeBetweenEvictionRunsMillis(Math.min(60_000L, idleEvictMs));
+        ds.setMinEvictableIdleTimeMillis(idleEvictMs);
+        // 建连失败立即返回错误，不在后台无限重试
+        ds.setBreakAfterAcquireFailure(true);
+        ds.setConnectionErrorRetryAttempts(0);
+        ds.setFailFast(true);
+        poolsCreated.increment();
+        log.info("[DB池] 创建数据库#{} 连接池 {}", db.getId(), db.getJdbcUrl());
+        return ds;
+    }
+
+    // 巡检：关闭长时间未使用的连接池
+    private void sweep() {
+        long now = System.currentTimeMillis();
+        pools.forEach((id, e) -> {
+            if (e.ds.getActiveCount() == 0 && now - e.lastUsed > idleTimeoutMs && pools.remove(id, e)) {
+                close(e);
+            }
+        });
+    }
+
+    private void close(Entry entry) {
+        try {
+            entry.ds.close();
+            poolsClosed.increment();
+            closedPhysicalConnects.add(entry.ds.getCreateCount());
+        } catch (Throwable ignore) {
+        }
+    }
+
+    // 连接信息版本：URL/用户名/密码任一变化都会生成新的连接池
+    private static String connectionVersion(DevDatabase db) {
+        return DigestUtil.sha256Hex(String.join("\u0000",
+                String.valueOf(db.getJdbcUrl()),
+                String.valueOf(db.getUsername()),
+                String.valueOf(db.getPasswordEnc())));
+    }
+
+    // 单个数据库的连接池
+    private static class Entry {
+
+        final String version;
+
+        final DruidDataSource ds;
+
+        volatile long lastUsed = System.currentTimeMillis();
+
+        Entry(String version, DruidDataSource ds) {
+            this.version = version;
+            this.ds = ds;
+        }
+    }
+}
@@ -10,8 +10,16 @@ import com.kanseiu.devops.service.business.DevDatabaseService;
 import com.kanseiu.devops.service.business.DevScriptService;
 import com.kanseiu.devops.service.business.DevServerService;
 import com.kanseiu.devops.service.callback.DbLoggingCallback;
+import com.kanseiu.devops.service.callback.JobRunCallback;
 import com.kanseiu.devops.service.callback.LiveExecCallback;
+import com.kanseiu.devops.service.callback.MetricsCallback;
+import com.kanseiu.devops.service.callback.TeeExecCallback;
+import com.kanseiu.devops.service.metrics.ExecMetrics;
+import com.kanseiu.devops.service.run.JobRun;
+import com.kanseiu.devops.service.run.JobRunRegistry;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.stereotype.Service;
 
 import javax.annotation.Resource;
@@ -34,15 +42,27 @@ public class DevCommonScriptExecService {
     @Resource
     private DevServerService devServerService;
 
+    @Resource
+    private ExecMetrics execMetrics;
+
+    @Resource
+    private ThreadPoolTaskExecutor execSinkPool;
+
+    @Resource
+    private JobRunRegistry jobRunRegistry;
+
+    // 分发回调中每个异步输出端（SSE、指标）的队列长度（事件）
+    @Value("${devops.exec.sink-queue:10000}")
+    private int sinkQueue;
+
 
     // 执行前，获取数据库信息
     public DevDatabase getDbBeforeExec(DevCronJob job, LiveExecCallback cb) {
         DevDatabase db = devDatabaseService.getById(job.getDatabaseId());
         if (db == null || Boolean.TRUE.equals(db.getDisabled())) {
-            if(Objects.isNull(cb)) {
-                // 不推 SSE，这里直接记一条 ERROR 日志并返回
-                createAndFinishError(job, "UNKNOWN", null, "数据库不存在或被禁用");
-            } else {
+            // 手动执行与定时执行一样记录一条 ERROR 日志
+            createAndFinishError(job, "UNKNOWN", null, "数据库不存在或被禁用");
+            if (Objects.nonNull(cb)) {
                 cb.onStderr("数据库不存在或被禁用: " + job.getDatabaseId());
                 cb.onEnd(-1);
             }
@@ -55,10 +75,9 @@ public class DevCommonScriptExecService {
     public DevServer getServerBeforeExec(DevCronJob job, LiveExecCallback cb) {
         DevServer server = devServerService.getById(job.getServerId());
         if (server == null || Boolean.TRUE.equals(server.getDisabled())) {
-            if (Objects.isNull(cb)) {
-                // 不推 SSE，这里直接记一条 ERROR 日志并返回
-                createAndFinishError(job, "UNKNOWN", null, "服务器不存在或被禁用");
-            } else {
+            // 手动执行与定时执行一样记录一条 ERROR 日志
+            createAndFinishError(job, "UNKNOWN", null, "服务器不存在或被禁用");
+            if (Objects.nonNull(cb)) {
                 cb.onStderr("服务器不存在或被禁用: " + job.getServerId());
                 cb.onEnd(-1);
             }
@@ -71,9 +90,9 @@ public class DevCommonScriptExecService {
     public DevScript getScriptBeforeExec(DevCronJob job, String connectInfo, LiveExecCallback cb) {
         DevScript script = devScriptService.getByName(job.getScriptName());
         if (script == null || Boolean.TRUE.equals(script.getDisabled())) {
-            if(Objects.isNull(cb)) {
-                createAndFinishError(job, connectInfo, script, "脚本不存在或被禁用");
-            } else {
+            // 手动执行与定时执行一样记录一条 ERROR 日志
+            createAndFinishError(job, connectInfo, script, "脚本不存在或被禁用");
+            if (Objects.nonNull(cb)) {
                 cb.onStderr("脚本不存在或被禁用: " + job.getScriptName());
                 cb.onEnd(-1);
             }
@@ -89,6 +108,24 @@ public class DevCommonScriptExecService {
         return new DbLoggingCallback(devCronJobLogService, logId, startAt);
     }
 
+    /**
+     * 获取执行回调：写库 + 指标 + 调用方回调（如 SSE，可为空），各自异步消费，互不阻塞
+     * 手动执行（runOnce）与定时执行都会落库，并登记为运行中（运行ID 即日志ID），可通过 getRun() 挂取消动作
+     */
+    public JobRunCallback getExecCallback(DevCronJob job, DevScript script, String connectInfo, LiveExecCallback cb) {
+        DbLoggingCallback dbCallback = getDbLoggingCallback(job, script, connectInfo);
+        JobRun run = jobRunRegistry.open(dbCallback.getLogId(), job);
+        if (Objects.nonNull(cb)) {
+            cb.onRunStart(run);
+        }
+        // 写库端只追加到内存缓冲，在调用线程上直接处理、不丢弃；SSE 与指标端异步消费，满了丢弃
+        LiveExecCallback tee = new TeeExecCallback(execSinkPool, sinkQueue, execMetrics)
+                .add(dbCallback, false)
+                .add(new MetricsCallback(execMetrics), true)
+                .add(cb, true);
+        return new JobRunCallback(jobRunRegistry, run, tee);
+    }
+
     // 针对开始阶段就失败的情况，记录日志
     private void createAndFinishError(DevCronJob job, String connectInfo, DevScript script, String errMsg) {
         try {
@@ -0,0 +1,241 @@
+package com.kanseiu.devops.service.handler;
+
+import com.kanseiu.devops.constant.JobLogStatus;
+import com.kanseiu.devops.constant.TargetTypeEnum;
+import com.kanseiu.devops.model.entity.DevCronJob;
+import com.kanseiu.devops.model.entity.DevScript;
+import com.kanseiu.devops.model.entity.DevServer;
+import com.kanseiu.devops.service.business.DevServerService;
+import com.kanseiu.devops.service.callback.CompletionCallback;
+import com.kanseiu.devops.service.callback.JobRunCallback;
+import com.kanseiu.devops.service.callback.LiveExecCallback;
+import com.kanseiu.devops.service.run.JobRun;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.BeanUtils;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.Resource;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+
+/**
+ * 按标签执行 SHELL 任务
+ * - 标签选择器选出的服务器分批滚动执行：每批 batchSize 台，批内最多 fanOutWidth 台同时执行；整批全部成功才开始下一批
+ * - 每台服务器一条子日志（parent_log_id 指向汇总日志），汇总日志记录每台的结果与合计
+ * - 取消汇总运行：不再启动新的服务器，并取消执行中的子运行
+ */
+@Slf4j
+@Service
+public class DevFanOutExecService {
+
+    // 未配置并行宽度时的默认值
+    @Value("${devops.exec.fan-out.default-width:10}")
+    private int defaultWidth;
+
+    @Resource
+    private DevCommonScriptExecService devCommonScriptExecService;
+
+    @Resource
+    private DevServerService devServerService;
+
+    /**
+     * 按标签执行
+     * @param single 单台服务器的执行（由 SHELL 执行服务提供，避免循环依赖）
+     */
+    public void execute(DevCronJob job, LiveExecCallback cb, BiConsumer<DevCronJob, LiveExecCallback> single) {
+        String selector = job.getTargetLabels();
+        String connectInfo = "label:" + selector;
+
+        // 获取脚本
+        DevScript script = devCommonScriptExecService.getScriptBeforeExec(job, connectInfo, cb);
+        if (script == null) {return;}
+
+        List<DevServer> servers;
+        String error = null;
+        try {
+            servers = devServerService.listByLabels(selector);
+        } catch (IllegalArgumentException e) {
+            servers = Collections.emptyList();
+            error = e.getMessage();
+        }
+
+        // 汇总日志（同时登记为运行中，取消汇总运行即取消整组）
+        JobRunCallback runCb = devCommonScriptExecService.getExecCallback(job, script, connectInfo + " (" + servers.size() + "台)", cb);
+        if (servers.isEmpty()) {
+            runCb.onStderr(error != null ? error : "没有匹配标签的启用服务器：" + selector);
+            runCb.onEnd(-1);
+            return;
+        }
+        // 直接改库可能写入 <= 0 的值，至少为 1，否则一台都不会启动、汇总日志永远停在运行中
+        int width = Math.max(job.getFanOutWidth() != null ? job.getFanOutWidth() : defaultWidth, 1);
+        int batchSize = Math.max(job.getBatchSize() != null ? job.getBatchSize() : servers.size(), 1);
+        runCb.onMeta("按标签执行：" + selector + "，共 " + servers.size() + " 台，并行 " + width + "，每批 " + batchSize + " 台");
+        new FanOut(job, runCb, servers, width, batchSize, single).start();
+    }
+
+    // 一次按标签执行的状态
+    private static class FanOut {
+
+        final DevCronJob job;
+
+        final JobRunCallback runCb;
+
+        final JobRun run;
+
+        final List<DevServer> servers;
+
+        final int width;
+
+        final int batchSize;
+
+        final BiConsumer<DevCronJob, LiveExecCallback> single;
+
+        // 服务器ID -> 执行中的子运行
+        final Map<Long, JobRun> children = new ConcurrentHashMap<>();
+
+        // 以下由 this 保护
+        final Map<JobLogStatus, Integer> counts = new EnumMap<>(JobLogStatus.class);
+        int next;
+        int batchEnd;
+        int batchNo = 1;
+        int running;
+        boolean batchFailed;
+        boolean stopped;
+        boolean done;
+
+        FanOut(DevCronJob job, JobRunCallback runCb, List<DevServer> servers, int width, int batchSize, BiConsumer<DevCronJob, LiveExecCallback> single) {
+            this.job = job;
+            this.runCb = runCb;
+            this.run = runCb.getRun();
+            this.servers = servers;
+            this.width = width;
+            this.batchSize = batchSize;
+            this.single = single;
+            this.batchEnd = Math.min(batchSize, servers.size());
+        }
+
+        void start() {
+            Runnable canceller = () -> children.values().forEach(child -> child.cancel(run.getCancelReason()));
+            run.attach(canceller);
+            dispatch();
+        }
+
+        // 并行宽度内启动本批剩余的服务器；本批结束后开始下一批或收尾
+        void dispatch() {
+            while (true) {
+                List<DevServer> launch = new ArrayList<>();
+                boolean last = false;
+                synchronized (this) {
+                    if (done) {
+                        return;
+                    }
+                    if (running == 0 && next >= batchEnd && next < servers.size() && !run.isCancelled()) {
+                        if (batchFailed) {
+                            stopped = true;
+                        } else {
+                            batchEnd = Math.min(batchEnd + batchSize, servers.size());
+                            batchNo++;
+                            runCb.onMeta("开始第 " + batchNo + " 批：第 " + (next + 1) + " ~ " + batchEnd + " 台");
+                        }
+                    }
+                    while (running < width && next < batchEnd && !stopped && !run.isCancelled()) {
+                        launch.add(servers.get(next++));
+                        running++;
+                    }
+                    if (launch.isEmpty()) {
+                        if (running > 0 || (next < servers.size() && !stopped && !run.isCancelled())) {
+                            return;
+                        }
+                        done = true;
+                        last = true;
+                    }
+                }
+                if (last) {
+                    finish();
+                    return;
+                }
+                launch.forEach(this::launch);
+            }
+        }
+
+        // 单台执行：任务内容相同，只换目标服务器，日志挂在汇总日志下
+        void launch(DevServer server) {
+            DevCronJob child = new DevCronJob();
+            BeanUtils.copyProperties(job, child);
+            child.setTargetType(TargetTypeEnum.SERVER.name());
+            child.setServerId(server.getId());
+            child.setParentLogId(run.getRunId());
+            long startAt = System.currentTimeMillis();
+            Long[] childRunId = new Long[1];
+            LiveExecCallback childCb = new CompletionCallback((exitCode, status) -> {
+                children.remove(server.getId());
+                finished(server, exitCode, status, System.currentTimeMillis() - startAt, childRunId[0]);
+            }) {
+                @Override
+                public void onRunStart(JobRun childRun) {
+                    childRunId[0] = childRun.getRunId();
+                    children.put(server.getId(), childRun);
+                    // 登记之前汇总运行已被取消
+                    if (run.isCancelled()) {
+                        childRun.cancel(run.getCancelReason());
+                    }
+                }
+            };
+            try {
+                single.accept(child, childCb);
+            } catch (Exception e) {
+                log.error("[按标签执行] job#{} 服务器 {} 执行失败：{}", job.getId(), server.getHost(), e.getMessage(), e);
+                childCb.onError(e);
+            }
+        }
+
+        void finished(DevServer server, int exitCode, JobLogStatus status, long costMs, Long childRunId) {
+            String line = "[" + status + "] " + server.getName() + " (" + server.getHost() + ") exit=" + exitCode + " " + costMs + "ms"
+                    + (childRunId != null ? " 日志#" + childRunId : "");
+            if (status == JobLogStatus.SUCCESS) {
+                runCb.onStdout(line);
+            } else {
+                runCb.onStderr(line);
+            }
+            synchronized (this) {
+                counts.merge(status, 1, Integer::sum);
+                if (status != JobLogStatus.SUCCESS) {
+                    batchFailed = true;
+                }
+                running--;
+            }
+            dispatch();
+        }
+
+        // 合计：全部成功退出码 0，取消 130，其余 1
+        void finish() {
+            int success, skipped;
+            String summary;
+            synchronized (this) {
+                success = counts.getOrDefault(JobLogStatus.SUCCESS, 0);
+                skipped = servers.size() - next;
+                summary = "合计：共 " + servers.size() + " 台，成功 " + success
+                        + "，失败 " + counts.getOrDefault(JobLogStatus.FAIL, 0)
+                        + "，超时 " + counts.getOrDefault(JobLogStatus.TIMEOUT, 0)
+                        + "，错误 " + counts.getOrDefault(JobLogStatus.ERROR, 0)
+                        + "，取消 " + counts.getOrDefault(JobLogStatus.CANCELLED, 0)
+                        + "，未执行 " + skipped;
+            }
+            if (stopped) {
+                runCb.onStderr("第 " + batchNo + " 批未全部成功，后续 " + skipped + " 台不再执行");
+            }
+            runCb.onMeta(summary);
+            if (success == servers.size()) {
+                runCb.onEnd(0);
+            } else {
+                runCb.onEnd(run.isCancelled() ? JobLogStatus.CANCELLED_EXIT_CODE : 1);
+            }
+        }
+    }
+}
@@ -1,40 +1,100 @@
 package com.kanseiu.devops.service.handler;
 
-import com.jcraft.jsch.ChannelExec;
-import com.jcraft.jsch.JSch;
+import com.jcraft.jsch.JSchException;
 import com.jcraft.jsch.Session;
+import com.kanseiu.devops.constant.JobLogStatus;
+import com.kanseiu.devops.constant.ShellExecModeEnum;
+import com.kanseiu.devops.constant.TargetTypeEnum;
 import com.kanseiu.devops.model.entity.DevCronJob;
 import com.kanseiu.devops.model.entity.DevScript;
 import com.kanseiu.devops.model.entity.DevServer;
+import com.kanseiu.devops.service.callback.JobRunCallback;
 import com.kanseiu.devops.service.callback.LiveExecCallback;
+import com.kanseiu.devops.service.run.JobRun;
+import com.kanseiu.devops.service.ssh.RemoteScriptCache;
+import com.kanseiu.devops.service.ssh.SshChannelRunner;
+import com.kanseiu.devops.service.ssh.SshExecution;
+import com.kanseiu.devops.service.ssh.SshRunScheduler;
+import com.kanseiu.devops.service.ssh.SshSessionLease;
+import com.kanseiu.devops.service.ssh.SshSessionPool;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
 import org.springframework.stereotype.Service;
 
 import javax.annotation.Resource;
-import java.io.*;
-import java.nio.charset.StandardCharsets;
-import java.time.LocalDateTime;
-import java.util.Objects;
+import java.nio.charset.Charset;
+import java.time.Instant;
 import java.util.UUID;
-import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
 
 // 执行SHELL脚本
 @Slf4j
 @Service("shellScriptExecService")
 public class DevShellScriptExecService implements DevScriptExecService {
 
+    // 取消/超时后，远端先 TERM，等待这么久仍未退出再 KILL（秒）
+    private static final int KILL_GRACE_SEC = 5;
+
+    // 发出 TERM 后等待通道自然关闭的最长时间，超过则本地强制断开（毫秒）
+    private static final long ABORT_AFTER_MS = (KILL_GRACE_SEC + 3) * 1000L;
+
+    // 远端 kill 命令本身的超时（毫秒）
+    private static final long KILL_CMD_TIMEOUT_MS = 5_000;
+
+    // bash 找不到要执行的文件时的退出码
+    private static final int COMMAND_NOT_FOUND_EXIT_CODE = 127;
+
+    // 脚本会读 stdin（read、bare cat、ssh 等）或依赖自身路径（$0、BASH_SOURCE）：AUTO 时用文件方式
+    private static final Pattern NEEDS_FILE = Pattern.compile(
+            "(^|[\\s;&|(`])(read|mapfile|readarray|ssh)\\b|/dev/stdin|<&0|\\$\\{?0\\b|BASH_SOURCE|(^|[;&|(`])\\s*cat\\s*($|[;&|)`])",
+            Pattern.MULTILINE);
+
+    // 执行方式：auto / stdin / file
+    @Value("${devops.ssh.exec-mode:auto}")
+    private String execMode;
+
+    // AUTO 时脚本不超过这么多字节才用 stdin 方式
+    @Value("${devops.ssh.stdin-max-bytes:65536}")
+    private int stdinMaxBytes;
+
     @Resource
     private ThreadPoolTaskExecutor sshExecPool;
 
     @Resource
     private DevCommonScriptExecService devCommonScriptExecService;
 
+    @Resource
+    private SshSessionPool sshSessionPool;
+
+    @Resource
+    private SshChannelRunner sshChannelRunner;
+
+    @Resource
+    private SshRunScheduler sshRunScheduler;
+
+    @Resource
+    private ThreadPoolTaskScheduler execTimer;
+
+    @Resource
+    private RemoteScriptCache remoteScriptCache;
+
+    @Resource
+    private DevFanOutExecService devFanOutExecService;
+
     @Override
     public void execute(DevCronJob job, LiveExecCallback cb) {
         log.info("[执行脚本]scriptName = {}, serverId = {}, timeoutSec = {}, args = {}", job.getScriptName(), job.getServerId(), job.getTimeoutSec(), job.getArgsText());
 
+        // 按标签执行：选出的每台服务器各执行一次
+        if (TargetTypeEnum.of(job.getTargetType()) == TargetTypeEnum.LABEL) {
+            devFanOutExecService.execute(job, cb, this::execute);
+            return;
+        }
+
         // 获取服务器
         DevServer server = devCommonScriptExecService.getServerBeforeExec(job, cb);
         if (server == null) {return;}
@@ -43,167 +103,189 @@ public class DevShellScriptExecService implements DevScriptExecService {
         DevScript script = devCommonScriptExecService.getScriptBeforeExec(job, server.getHost(), cb);
         if (script == null) {return;}
 
-        if(Objects.isNull(cb)) {
-            cb = devCommonScriptExecService.getDbLoggingCallback(job, script, server.getHost());
+        // 获取执行回调（写库 + 指标 + 调用方回调），同时登记为运行中
+        JobRunCallback runCb = devCommonScriptExecService.getExecCallback(job, script, server.getHost(), cb);
+        JobRun jobRun = runCb.getRun();
+
+        // 按服务器/全局并发上限调度，超出时排队
+        try {
+            if (!sshRunScheduler.submit(server, permit -> this.execute(job, runCb, jobRun, server, script, permit))) {
+                runCb.onMeta("排队等待：" + sshRunScheduler.describe(server));
+            }
+        } catch (RejectedExecutionException e) {
+            runCb.onError(e);
         }
+    }
 
-        this.execute(job, cb, server, script);
+    // 执行脚本：线程只负责建连、上传、启动命令，命令运行期间不占用线程，结束后由完成回调收尾并归还运行许可
+    private void execute(DevCronJob job, LiveExecCallback cb, JobRun jobRun, DevServer server, DevScript script, SshRunScheduler.Permit permit) {
+        try {
+            sshExecPool.submit(() -> run(job, cb, jobRun, server, script, permit));
+        } catch (RejectedExecutionException e) {
+            permit.release();
+            cb.onError(e);
+        }
     }
 
-    // 执行脚本
-    private void execute(DevCronJob job, LiveExecCallback cb, DevServer server, DevScript script) {
-        sshExecPool.submit(() -> {
-            int exitCode = -1;
-            Session session = null;
-            ChannelExec channel = null;
-            String remotePath = null;
-            try {
+    private void run(DevCronJob job, LiveExecCallback cb, JobRun jobRun, DevServer server, DevScript script, SshRunScheduler.Permit permit) {
+        SshSessionLease lease = null;
+        try {
+            // 排队期间已被取消
+            if (jobRun.isCancelled()) {
+                permit.release();
+                cb.onEnd(JobLogStatus.CANCELLED_EXIT_CODE);
+                return;
+            }
 
-                int timeoutSec = job.getTimeoutSec() != null ? job.getTimeoutSec() : 300;
-                String workDir = (script.getWorkDir() == null || script.getWorkDir().isBlank()) ? null : script.getWorkDir().trim();
-
-                cb.onStdout("host=" + server.getHost() + ":" + (server.getPort() == null ? 22 : server.getPort()));
-                cb.onStdout("user=" + server.getUsername());
-                cb.onStdout("timeoutSec=" + timeoutSec);
-
-                // 2) 建立 SSH 会话
-                JSch jsch = new JSch();
-                if ("privateKey".equalsIgnoreCase(server.getAuthType())) {
-                    byte[] prvKey = server.getPrivateKeyEnc().getBytes(StandardCharsets.UTF_8);
-                    if (server.getPassphraseEnc() != null && !server.getPassphraseEnc().isBlank()) {
-                        jsch.addIdentity("key", prvKey, null, server.getPassphraseEnc().getBytes(StandardCharsets.UTF_8));
-                    } else {
-                        jsch.addIdentity("key", prvKey, null, null);
-                    }
-                }
-                session = jsch.getSession(server.getUsername(), server.getHost(), server.getPort() == null ? 22 : server.getPort());
-                if ("password".equalsIgnoreCase(server.getAuthType())) {
-                    session.setPassword(server.getPasswordEnc());
-                }
-                session.setConfig("StrictHostKeyChecking", "no");
-                session.connect(timeoutSec * 1000);
-
-                // 3) 上传脚本到 /tmp
-                remotePath = "/tmp/devops-" + UUID.randomUUID() + ".sh";
-                uploadFile(session, script.getScriptContent(), remotePath);
-                execSimple(session, "chmod 700 " + remotePath);
-
-                // 4) 构造命令
-                String args = (job.getArgsText() == null ? "" : job.getArgsText().trim());
-                String safeCmd = remotePath + (args.isEmpty() ? "" : (" " + args));
-                String finalCmd = (workDir != null ? ("cd " + workDir + " && ") : "") + "/bin/bash " + safeCmd;
-                cb.onMeta("cmd=" + finalCmd);
-
-                // 5) 执行命令
-                channel = (ChannelExec) session.openChannel("exec");
-                channel.setCommand(finalCmd);
-                channel.setInputStream(null);
-                InputStream stdout = channel.getInputStream();
-                InputStream stderr = channel.getErrStream();
-                channel.connect();
-
-                // 6) 异步读取输出
-                Future<?> outF = sshExecPool.submit(() -> streamLines(stdout, cb::onStdout));
-                Future<?> errF = sshExecPool.submit(() -> streamLines(stderr, cb::onStderr));
-
-                // 7) 等待退出或超时
-                long deadline = System.currentTimeMillis() + timeoutSec * 1000L;
-                while (!channel.isClosed() && System.currentTimeMillis() < deadline) {
-                    Thread.sleep(200);
-                }
-                if (!channel.isClosed()) {
-                    cb.onStderr("[timeout] 任务超时，强制关闭");
-                    channel.disconnect();
-                    exitCode = 124;
-                } else {
-                    exitCode = channel.getExitStatus();
-                }
+            int timeoutSec = job.getTimeoutSec() != null ? job.getTimeoutSec() : 300;
+            String workDir = (script.getWorkDir() == null || script.getWorkDir().isBlank()) ? null : script.getWorkDir().trim();
+
+            cb.onStdout("host=" + server.getHost() + ":" + (server.getPort() == null ? 22 : server.getPort()));
+            cb.onStdout("user=" + server.getUsername());
+            cb.onStdout("timeoutSec=" + timeoutSec);
 
-                outF.get(1, TimeUnit.SECONDS);
-                errF.get(1, TimeUnit.SECONDS);
+            // 2) 从连接池借出 SSH 会话（同一服务器复用已认证的连接）
+            lease = sshSessionPool.acquire(server);
+            Session session = lease.getSession();
 
-            } catch (Exception e) {
-                cb.onError(e);
+            // 3) stdin 方式：脚本随执行命令一起发送；文件方式：脚本按内容缓存在远端，内容未变时不再上传
+            Charset charset = SshChannelRunner.charsetOf(server);
+            byte[] content = script.getScriptContent().getBytes(charset);
+            boolean stdinMode = useStdin(script.getScriptContent(), content.length);
+            String remotePath = stdinMode ? null : remoteScriptCache.ensure(server, lease, script.getScriptContent());
+
+            if (jobRun.isCancelled()) {
+                lease.close();
+                permit.release();
+                cb.onEnd(JobLogStatus.CANCELLED_EXIT_CODE);
                 return;
-            } finally {
-                try {
-                    // 在断开 session 之前清理远端临时文件
-                    if (remotePath != null && session != null && session.isConnected()) {
-                        try { execSimple(session, "rm -f " + remotePath); } catch (Exception ignore) {}
-                    }
-                } finally {
-                    if (channel != null && channel.isConnected()) {
-                        channel.disconnect();
-                    }
-                    if (session != null && session.isConnected()) {
-                        session.disconnect();
-                    }
-                }
             }
-            cb.onEnd(exitCode);
-        });
-    }
 
-    // ========== 工具方法 ==========
-    private void uploadFile(Session session, String content, String remotePath) throws Exception {
-        byte[] data = content.getBytes(StandardCharsets.UTF_8);
-        String command = "scp -t " + remotePath;
-        ChannelExec channel = (ChannelExec) session.openChannel("exec");
-        channel.setCommand(command);
-
-        try (OutputStream out = channel.getOutputStream();
-             InputStream in = channel.getInputStream()) {
-            channel.connect();
-
-            if (checkAck(in) != 0) {
-                throw new IOException("SCP ack failed (init)");
-            }
+            // 4) 构造命令：先记录远端 shell 的 PID（exec 后即外层 bash），取消/超时时据此终止整个进程组
+            //    外层 bash 把脚本作为子进程执行，退出时由它的 EXIT trap 删除 PID 文件：整个运行只用一个通道，
+            //    脚本自己设置的 trap 在子进程里，不会覆盖外层的清理
+            final String pidPath = "/tmp/devops-" + UUID.randomUUID() + ".pid";
+            String args = (job.getArgsText() == null ? "" : job.getArgsText().trim());
+            String scriptCmd = stdinMode
+                    // 先把 stdin 中的脚本整个读入再执行（source），脚本里读 stdin 的命令只会读到 EOF
+                    ? "/bin/bash -c '. /dev/stdin' devops-script"
+                    : "/bin/bash " + remotePath;
+            String bashCmd = "/bin/bash -c 'trap \"rm -f " + pidPath + "\" EXIT; \"$@\"' devops-run " + scriptCmd;
+            String finalCmd = (workDir != null ? ("cd " + workDir + " && ") : "") + "echo $$ > " + pidPath + " && exec " + bashCmd + (args.isEmpty() ? "" : (" " + args));
+            cb.onMeta("mode=" + (stdinMode ? ShellExecModeEnum.STDIN : ShellExecModeEnum.FILE) + " cmd=" + finalCmd);
 
-            String header = "C0700 " + data.length + " script.sh\n";
-            out.write(header.getBytes(StandardCharsets.UTF_8));
-            out.flush();
-            if (checkAck(in) != 0) {
-                throw new IOException("SCP ack failed (header)");
-            }
+            // 5) 执行命令：输出由 JSch 推送，EOF + 退出码到达即完成，超时由共享定时器处理
+            SshExecution execution = sshChannelRunner.exec(session, finalCmd, stdinMode ? content : null, charset, cb::onStdoutBatch, cb::onStderrBatch, timeoutSec * 1000L);
+
+            // 取消：远端 TERM（宽限后 KILL）进程组，进程退出后通道自然关闭；迟迟不关闭则本地强制结束
+            final SshSessionLease finalLease = lease;
+            Runnable canceller = () -> {
+                try {
+                    sshExecPool.execute(() -> {
+                        killRemote(finalLease, server, pidPath);
+                        execTimer.schedule(() -> execution.abort(JobLogStatus.CANCELLED_EXIT_CODE), Instant.now().plusMillis(ABORT_AFTER_MS));
+                    });
+                } catch (RejectedExecutionException e) {
+                    execution.abort(JobLogStatus.CANCELLED_EXIT_CODE);
+                }
+            };
+            jobRun.attach(canceller);
 
-            out.write(data);
-            out.write(0);
-            out.flush();
-            if (checkAck(in) != 0) {
-                throw new IOException("SCP ack failed (data)");
+            // 6) 完成后收尾（完成回调在输出投递线程上，所有输出已投递；要等远端响应的收尾交给 sshExecPool）
+            execution.getCompletion().whenComplete((exitCode, ex) -> {
+                jobRun.detach(canceller);
+                if (ex != null) {
+                    offIo(() -> {
+                        finalLease.close();
+                        permit.release();
+                        cb.onError(ex);
+                    });
+                    return;
+                }
+                // 本地强制结束（超时/取消）由执行状态判断，脚本自己以 124/130 退出时远端进程已结束，不能再按 PID 终止
+                boolean killed = execution.isAborted();
+                if (killed && exitCode == SshExecution.TIMEOUT_EXIT_CODE) {
+                    cb.onStderr("[timeout] 任务超时，强制关闭");
+                }
+                // 127：bash 找不到脚本文件（缓存被清理），下次执行重新确认
+                if (exitCode == COMMAND_NOT_FOUND_EXIT_CODE && remotePath != null) {
+                    remoteScriptCache.invalidate(server, remotePath);
+                }
+                offIo(() -> {
+                    // 本地断开通道不会结束远端进程：被本地强制结束时，再终止一次远端进程组
+                    if (killed) {
+                        killRemote(finalLease, server, pidPath);
+                    }
+                    finalLease.close();
+                    permit.release();
+                    cb.onEnd(exitCode);
+                });
+            });
+        } catch (Exception e) {
+            // 池化会话上开通道失败，多为连接已被服务端断开，归还时直接丢弃
+            if (e instanceof JSchException && lease != null) {
+                lease.markBroken();
             }
-        } finally {
-            channel.disconnect();
+            // 命令未能启动，远端不会留下 PID 文件，只需归还会话
+            if (lease != null) {
+                lease.close();
+            }
+            permit.release();
+            cb.onError(e);
         }
     }
 
-    private void execSimple(Session session, String cmd) throws Exception {
-        ChannelExec channel = (ChannelExec) session.openChannel("exec");
-        channel.setCommand(cmd);
-        channel.connect();
-        channel.disconnect();
+    // 收尾要等远端命令返回，不能占用输出投递线程（sshIoPool）；sshExecPool 满时在当前线程执行
+    private void offIo(Runnable task) {
+        try {
+            sshExecPool.execute(task);
+        } catch (RejectedExecutionException e) {
+            task.run();
+        }
     }
 
-    private static void streamLines(InputStream in, java.util.function.Consumer<String> consumer) {
-        try (BufferedReader br = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
-            String line;
-            while ((line = br.readLine()) != null) {
-                consumer.accept(line);
+    /**
+     * 终止远端脚本：PID 是进程组组长（OpenSSH 会为每个会话 setsid）时 TERM 整个进程组，
+     * 否则 TERM 外层 bash 及其直接子进程（脚本进程）；宽限 KILL_GRACE_SEC 秒后再 KILL，
+     * KILL 时外层 bash 的 trap 来不及删除 PID 文件，由这里删除
+     * 运行自己的通道还开着，终止命令用同一会话上预留的控制通道；预留通道被占用（同一会话上同时终止多个运行）
+     * 或会话已断开时，从连接池另借会话执行
+     */
+    private void killRemote(SshSessionLease lease, DevServer server, String pidPath) {
+        String cmd = "p=$(cat " + pidPath + " 2>/dev/null); [ -n \"$p\" ] || exit 0; "
+                + "if kill -0 -- -$p 2>/dev/null; then g=1; fi; "
+                + "sig() { if [ -n \"$g\" ]; then kill -$1 -- -$p; else pkill -$1 -P $p; kill -$1 $p; fi; } 2>/dev/null; "
+                + "sig TERM; (sleep " + KILL_GRACE_SEC + "; sig KILL; rm -f " + pidPath + ") >/dev/null 2>&1 &";
+        SshSessionLease control = lease.control();
+        try {
+            if (control == null) {
+                control = sshSessionPool.acquire(server);
             }
-        } catch (IOException ignored) {}
+            SshExecution kill = sshChannelRunner.exec(control.getSession(), cmd, lines -> {}, lines -> {}, KILL_CMD_TIMEOUT_MS);
+            try {
+                kill.getCompletion().get(KILL_CMD_TIMEOUT_MS + 1000, TimeUnit.MILLISECONDS);
+            } finally {
+                kill.getChannel().disconnect();
+            }
+        } catch (Exception e) {
+            log.warn("[执行脚本] 终止远端进程失败：{}", e.getMessage());
+        } finally {
+            if (control != null) {
+                control.close();
+            }
+        }
     }
 
-    private static int checkAck(InputStream in) throws IOException {
-        int b = in.read();
-        if (b == 0 || b == -1) {
-            return b;
-        }
-        if (b == 1 || b == 2) {
-            StringBuilder sb = new StringBuilder();
-            int c;
-            do { c = in.read(); sb.append((char) c); } while (c != '\n');
-            throw new IOException("SCP error: " + sb);
+    // ========== 工具方法 ==========
+    // 是否用 stdin 方式执行
+    private boolean useStdin(String content, int bytes) {
+        switch (ShellExecModeEnum.of(execMode)) {
+            case STDIN:
+                return true;
+            case FILE:
+                return false;
+            default:
+                return bytes <= stdinMaxBytes && !NEEDS_FILE.matcher(content).find();
         }
-        return b;
     }
-}
\ No newline at end of file
+}
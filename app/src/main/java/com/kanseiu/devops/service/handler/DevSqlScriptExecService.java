@@ -1,21 +1,21 @@
 package com.kanseiu.devops.service.handler;
 
-import cn.hutool.core.util.StrUtil;
+import com.kanseiu.devops.constant.JobLogStatus;
 import com.kanseiu.devops.model.entity.DevCronJob;
 import com.kanseiu.devops.model.entity.DevDatabase;
 import com.kanseiu.devops.model.entity.DevScript;
+import com.kanseiu.devops.service.callback.JobRunCallback;
 import com.kanseiu.devops.service.callback.LiveExecCallback;
+import com.kanseiu.devops.service.db.DevDatabasePool;
+import com.kanseiu.devops.service.run.JobRun;
+import com.kanseiu.devops.service.sql.SqlJobEngine;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.stereotype.Service;
 
 import javax.annotation.Resource;
 import java.sql.Connection;
-import java.sql.DriverManager;
-import java.sql.ResultSet;
-import java.sql.Statement;
-import java.util.Objects;
-import java.util.Properties;
+import java.util.concurrent.RejectedExecutionException;
 
 // 执行SQL脚本
 @Slf4j
@@ -28,6 +28,12 @@ public class DevSqlScriptExecService implements DevScriptExecService {
     @Resource
     private DevCommonScriptExecService devCommonScriptExecService;
 
+    @Resource
+    private DevDatabasePool devDatabasePool;
+
+    @Resource
+    private SqlJobEngine sqlJobEngine;
+
 
     @Override
     public void execute(DevCronJob job, LiveExecCallback cb) {
@@ -41,68 +47,51 @@ public class DevSqlScriptExecService implements DevScriptExecService {
         DevScript script = devCommonScriptExecService.getScriptBeforeExec(job, db.getJdbcUrl(), cb);
         if (script == null) {return;}
 
-        // 获取 DbLoggingCallback
-        if(Objects.isNull(cb)) {
-            cb = devCommonScriptExecService.getDbLoggingCallback(job, script, db.getJdbcUrl());
-        }
+        // 获取执行回调（写库 + 指标 + 调用方回调），同时登记为运行中
+        JobRunCallback runCb = devCommonScriptExecService.getExecCallback(job, script, db.getJdbcUrl(), cb);
 
         // 执行
-        this.execute(job, cb, db, script);
+        this.execute(job, runCb, runCb.getRun(), db, script);
     }
 
-    private void execute(DevCronJob job, LiveExecCallback cb, DevDatabase db, DevScript script) {
-        dbExecPool.submit(() -> {
+    private void execute(DevCronJob job, LiveExecCallback cb, JobRun jobRun, DevDatabase db, DevScript script) {
+        try {
+            dbExecPool.submit(() -> run(job, cb, jobRun, db, script));
+        } catch (RejectedExecutionException e) {
+            cb.onError(e);
+        }
+    }
+
+    private void run(DevCronJob job, LiveExecCallback cb, JobRun jobRun, DevDatabase db, DevScript script) {
+        // 排队期间已被取消
+        if (jobRun.isCancelled()) {
+            cb.onEnd(JobLogStatus.CANCELLED_EXIT_CODE);
+            return;
+        }
 
+        int exitCode;
+        try {
+            int timeoutSec = job.getTimeoutSec() != null ? job.getTimeoutSec() : 300;
+            cb.onStdout("测试连接 " + db.getJdbcUrl());
+            cb.onStdout("timeoutSec=" + timeoutSec);
+
+            // 从连接池借连接，用完归还；脚本内所有语句在同一个会话中执行
+            Connection conn = devDatabasePool.getConnection(db);
+            boolean reusable = false;
             try {
-                cb.onStdout("测试连接 " + db.getJdbcUrl());
-
-                Properties props = new Properties();
-                props.setProperty("user", db.getUsername());
-                props.setProperty("password", db.getPasswordEnc());
-
-                try (Connection conn = DriverManager.getConnection(db.getJdbcUrl(), props)) {
-                    cb.onStdout("连接成功");
-                    if(StrUtil.isNotBlank(script.getScriptContent())) {
-                        cb.onStdout("开始执行SQL: " + script.getScriptContent());
-                        try (Statement stmt = conn.createStatement();
-                             ResultSet rs = stmt.executeQuery(script.getScriptContent())) {
-
-                            if (rs.next()) {
-                                Object value = rs.getObject(1); // 拿第一列返回值
-                                String resultStr = String.valueOf(value).toLowerCase();
-
-                                cb.onStdout("执行结果: " + resultStr);
-
-                                // 判断结果合法性
-                                if ("true".equals(resultStr) || "1".equals(resultStr)) {
-                                    cb.onStdout("校验成功，结果为真");
-                                } else if ("false".equals(resultStr) || "0".equals(resultStr)) {
-                                    cb.onStderr("SQL 执行失败，结果为假 (false/0)");
-                                    cb.onEnd(-1);
-                                    return;
-                                } else {
-                                    cb.onStderr("SQL 执行失败，结果不合法: " + resultStr);
-                                    cb.onEnd(-1);
-                                    return;
-                                }
-                            } else {
-                                cb.onStderr("SQL 执行失败，没有返回结果");
-                                cb.onEnd(-1);
-                                return;
-                            }
-                        }
-                    } else {
-                        cb.onStderr("没有SQL脚本可以执行");
-                        cb.onEnd(-1);
-                        return;
-                    }
-                }
-            } catch (Exception e) {
-                cb.onError(e);
-                return;
+                cb.onStdout("连接成功");
+                SqlJobEngine.Outcome outcome = sqlJobEngine.execute(conn, script.getScriptContent(), timeoutSec * 1000L, jobRun, cb);
+                exitCode = outcome.getExitCode();
+                // 取消/超时/出错、改变过会话状态、取消过流式查询的连接不放回连接池，丢弃物理连接
+                reusable = outcome.isReusable();
+            } finally {
+                devDatabasePool.release(conn, reusable);
             }
+        } catch (Exception e) {
+            cb.onError(e);
+            return;
+        }
 
-            cb.onEnd(0);
-        });
+        cb.onEnd(exitCode);
     }
 }
@@ -0,0 +1,536 @@
+package com.kanseiu.devops.service.joblog;
+
+import com.kanseiu.devops.mapper.DevCronJobLogMapper;
+import com.kanseiu.devops.model.entity.DevCronJobLogChunk;
+import com.kanseiu.devops.service.business.DevCronJobLogChunkService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 执行日志输出缓冲
+ * - 按日志ID在内存中合并 stdout/stderr 行，达到大小阈值或时间阈值后一次性落库
+ * - 完整输出按流写入 dev_cron_job_log_chunk（只追加、可压缩），超出保留上限时只保留头部+尾部
+ * - 日志表 output_text/error_text 作为预览（列表、邮件使用）：头部增量 CONCAT 追加，头部写满后只在内存中滚动保留尾部，
+ *   结束时一次性追加省略标记 + 尾部（见 HeadTailCapture）；总行数/字节数随每次落库累加
+ * - 执行结束（finish）前必须调用 flush(logId, true) 把剩余内容写完
+ * - 落库失败时未写成功的内容留在缓冲中，下次落库重试
+ * - 追加只做内存操作，从不写库：达到大小阈值或到期时只提交到 logFlushPool，同一缓冲同时最多一个排队/进行中的落库；
+ *   线程池满时不阻塞调用方（SSH 输出线程、定时器），留到下一次追加或定时检查
+ * - 写库跟不上时，每个流待写的分块内容超过 max-pending-chars 即丢弃最旧的整行，落库时补一行省略标记；
+ *   预览（头部+尾部）与行数/字节数不受影响，内存占用有上限，而不是让调用方等待
+ */
+@Slf4j
+@Component
+public class DevCronJobLogBuffer {
+
+    // 长时间没有新输出且已落库的缓冲（任务未正常 finish）直接丢弃，避免泄漏
+    private static final long IDLE_EVICT_MS = 10 * 60 * 1000L;
+
+    // 连续落库失败达到该次数后放弃已缓冲的内容
+    private static final int MAX_FLUSH_RETRIES = 5;
+
+    // 缓冲达到该字符数立即落库
+    @Value("${devops.job-log.flush-size:16384}")
+    private int flushSize;
+
+    // 缓冲最长停留时间（毫秒），到期由定时任务落库
+    @Value("${devops.job-log.flush-interval-ms:1000}")
+    private long flushIntervalMs;
+
+    // 预览每个输出流保留的头部字符数
+    @Value("${devops.job-log.preview-head-chars:65536}")
+    private int previewHeadChars;
+
+    // 预览每个输出流保留的尾部字符数（结束时写入）
+    @Value("${devops.job-log.preview-tail-chars:32768}")
+    private int previewTailChars;
+
+    // 每个输出流待写分块的最大字符数（写库跟不上时丢弃最旧的部分），<= 0 表示不限
+    @Value("${devops.job-log.max-pending-chars:4194304}")
+    private int maxPendingChars;
+
+    // 每个输出流保留的头部字节数（原始字节），<= 0 表示不裁剪
+    @Value("${devops.job-log.retain-head-bytes:1048576}")
+    private long retainHeadBytes;
+
+    // 每个输出流保留的尾部字节数（原始字节），<= 0 表示不裁剪
+    @Value("${devops.job-log.retain-tail-bytes:4194304}")
+    private long retainTailBytes;
+
+    @Resource
+    private DevCronJobLogMapper devCronJobLogMapper;
+
+    @Resource
+    private DevCronJobLogChunkService devCronJobLogChunkService;
+
+    @Resource
+    private ThreadPoolTaskScheduler execTimer;
+
+    @Resource
+    private ThreadPoolTaskExecutor logFlushPool;
+
+    // 日志ID -> 缓冲
+    private final ConcurrentHashMap<Long, Buffer> buffers = new ConcurrentHashMap<>();
+
+    // ===================== 统计 =====================
+    private final LongAdder appendedLines = new LongAdder();
+    private final LongAdder flushCount = new LongAdder();
+    private final LongAdder bytesWritten = new LongAdder();
+    private final LongAdder flushFailures = new LongAdder();
+    private final LongAdder flushRejected = new LongAdder();
+    private final LongAdder pendingSkippedChars = new LongAdder();
+    private final LongAdder chunksWritten = new LongAdder();
+    private final LongAdder chunksTrimmed = new LongAdder();
+    private final LongAdder chunkRawBytes = new LongAdder();
+    private final LongAdder chunkStoredBytes = new LongAdder();
+
+    private ScheduledFuture<?> tickFuture;
+
+    @PostConstruct
+    public void init() {
+        tickFuture = execTimer.scheduleWithFixedDelay(this::flushDue, Duration.ofMillis(Math.max(100L, flushIntervalMs / 2)));
+    }
+
+    @PreDestroy
+    public void destroy() {
+        if (tickFuture != null) {
+            tickFuture.cancel(false);
+        }
+        buffers.keySet().forEach(id -> flush(id, true));
+    }
+
+    // 新建的日志，已存储长度为 0，不需要回查
+    public void open(Long logId) {
+        buffers.putIfAbsent(logId, new Buffer(new StreamState(0, 0), new StreamState(0, 0)));
+    }
+
+    public void appendOut(Long logId, String line) {
+        append(logId, line, true);
+    }
+
+    public void appendErr(Long logId, String line) {
+        append(logId, line, false);
+    }
+
+    public void appendOut(Long logId, List<String> lines) {
+        append(logId, lines, true);
+    }
+
+    public void appendErr(Long logId, List<String> lines) {
+        append(logId, lines, false);
+    }
+
+    /**
+     * 把缓冲内容落库（在调用线程上执行）
+     * @param remove 是否同时移除缓冲（执行结束时为 true，同时写入预览尾部与行数/字节数）
+     * @return 是否全部写成功；失败时内容留在缓冲中由定时任务重试
+     */
+    public boolean flush(Long logId, boolean remove) {
+        Buffer buf = remove ? buffers.remove(logId) : buffers.get(logId);
+        return buf == null || buf.flush(logId, remove);
+    }
+
+    // 统计信息
+    public Map<String, Object> stats() {
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("openBuffers", buffers.size());
+        m.put("appendedLines", appendedLines.sum());
+        m.put("flushCount", flushCount.sum());
+        m.put("bytesWritten", bytesWritten.sum());
+        m.put("flushFailures", flushFailures.sum());
+        m.put("flushRejected", flushRejected.sum());
+        m.put("pendingSkippedChars", pendingSkippedChars.sum());
+        m.put("chunksWritten", chunksWritten.sum());
+        m.put("chunksTrimmed", chunksTrimmed.sum());
+        m.put("chunkRawBytes", chunkRawBytes.sum());
+        m.put("chunkStoredBytes", chunkStoredBytes.sum());
+        return m;
+    }
+
+    private void append(Long logId, String line, boolean out) {
+        Buffer buf = buffers.computeIfAbsent(logId, this::load);
+        appendedLines.increment();
+        if (buf.append(line, out) >= flushSize) {
+            scheduleFlush(logId, buf, false);
+        }
+    }
+
+    // 整批追加：缓冲锁只取一次，刷新阈值只检查一次
+    private void append(Long logId, List<String> lines, boolean out) {
+        if (lines.isEmpty()) {
+            return;
+        }
+        Buffer buf = buffers.computeIfAbsent(logId, this::load);
+        appendedLines.add(lines.size());
+        if (buf.append(lines, out) >= flushSize) {
+            scheduleFlush(logId, buf, false);
+        }
+    }
+
+    // 非本进程新建的日志（或缓冲已被移除），回查一次已存储的预览、计数与分块序号
+    private Buffer load(Long logId) {
+        Map<String, Object> len = devCronJobLogMapper.getTextLength(logId);
+        Buffer buf = new Buffer(loadState(logId, DevCronJobLogChunk.STREAM_OUT), loadState(logId, DevCronJobLogChunk.STREAM_ERR));
+        buf.out.resume(toInt(len, "OUT_LEN"), toLong(len, "OUT_TEXT_LINES"), toLong(len, "OUT_TEXT_BYTES"),
+                toLong(len, "OUT_TEXT_NL") == 1, toLong(len, "OUT_LINES"), toLong(len, "OUT_BYTES"));
+        buf.err.resume(toInt(len, "ERR_LEN"), toLong(len, "ERR_TEXT_LINES"), toLong(len, "ERR_TEXT_BYTES"),
+                toLong(len, "ERR_TEXT_NL") == 1, toLong(len, "ERR_LINES"), toLong(len, "ERR_BYTES"));
+        return buf;
+    }
+
+    // 已有分块全部视为头部，不参与尾部裁剪
+    private StreamState loadState(Long logId, String stream) {
+        Map<String, Object> stat = devCronJobLogChunkService.getStreamStat(logId, stream);
+        return new StreamState(toInt(stat, "MAX_SEQ"), toLong(stat, "TOTAL_LEN"));
+    }
+
+    // 定时刷新：超过时间阈值的缓冲交给 logFlushPool 落库
+    private void flushDue() {
+        long now = System.currentTimeMillis();
+        buffers.forEach((id, buf) -> {
+            if (buf.isDue(now, flushIntervalMs)) {
+                scheduleFlush(id, buf, false);
+            } else if (buf.isIdle(now) && buffers.remove(id, buf) && !scheduleFlush(id, buf, true)) {
+                // 丢弃前要把尾部与统计写上；没提交成功就放回，下次再试
+                buffers.putIfAbsent(id, buf);
+            }
+        });
+    }
+
+    /**
+     * 提交到 logFlushPool 异步落库，不阻塞调用线程
+     * @return 是否已提交；该缓冲已有排队或进行中的落库、或线程池已满时返回 false（缓冲仍到期，下次定时检查再提交）
+     */
+    private boolean scheduleFlush(Long logId, Buffer buf, boolean complete) {
+        if (!buf.flushScheduled.compareAndSet(false, true)) {
+            return false;
+        }
+        try {
+            logFlushPool.execute(() -> {
+                try {
+                    buf.flush(logId, complete);
+                } finally {
+                    buf.flushScheduled.set(false);
+                }
+            });
+            return true;
+        } catch (RejectedExecutionException e) {
+            buf.flushScheduled.set(false);
+            flushRejected.increment();
+            return false;
+        }
+    }
+
+    private static int toInt(Map<String, Object> m, String key) {
+        return (int) toLong(m, key);
+    }
+
+    private static long toLong(Map<String, Object> m, String key) {
+        if (m == null) {
+            return 0;
+        }
+        Object v = m.containsKey(key) ? m.get(key) : m.get(key.toLowerCase());
+        return v instanceof Number ? ((Number) v).longValue() : 0;
+    }
+
+    // 待写分块超过上限时丢弃最旧的整行，降到上限的一半（避免之后每行都搬动整个缓冲），返回丢弃的字符数
+    private int trimPending(StringBuilder chunk) {
+        if (maxPendingChars <= 0 || chunk.length() <= maxPendingChars) {
+            return 0;
+        }
+        int nl = chunk.indexOf("\n", chunk.length() - maxPendingChars / 2 - 1);
+        int cut = nl < 0 ? chunk.length() : nl + 1;
+        chunk.delete(0, cut);
+        pendingSkippedChars.add(cut);
+        return cut;
+    }
+
+    // 省略标记：放在丢弃位置（本次落库内容的开头）
+    private static String skippedMarker(long chars) {
+        return chars == 0 ? "" : "...[写库过慢，省略 " + chars + " 字符]...\n";
+    }
+
+    private static String ensureLine(String s) {
+        // null 与空串一样按一个空行处理
+        if (s == null) {
+            return "\n";
+        }
+        // 统一换行
+        return s.endsWith("\n") ? s : (s + "\n");
+    }
+
+    // 单个日志的缓冲；append 与取快照在缓冲锁下进行，写库在 flushLock 下串行进行，写库期间不阻塞追加
+    private class Buffer {
+
+        // 预览：头部 + 滚动尾部
+        private final HeadTailCapture out;
+        private final HeadTailCapture err;
+
+        // 完整输出：待写入的分块内容
+        private final StringBuilder outChunk = new StringBuilder();
+        private final StringBuilder errChunk = new StringBuilder();
+
+        // 待写分块中被丢弃的字符数（写库跟不上时）
+        private long outSkipped;
+        private long errSkipped;
+
+        // 分块状态只在 flushLock 下读写
+        private final StreamState outState;
+        private final StreamState errState;
+
+        // 同一缓冲的落库串行执行，保证分块顺序
+        private final Object flushLock = new Object();
+
+        // 最早一条未落库内容的时间
+        private long pendingSince;
+
+        // 最后一次追加的时间
+        private long lastAppend = System.currentTimeMillis();
+
+        // 执行已结束：之后的每次落库（含失败重试）都按结束处理
+        private boolean finished;
+
+        // 预览尾部已写入
+        private boolean tailSaved;
+
+        // 连续落库失败次数
+        private int failures;
+
+        // 已提交到 logFlushPool、尚未执行完的落库
+        private final AtomicBoolean flushScheduled = new AtomicBoolean();
+
+        Buffer(StreamState outState, StreamState errState) {
+            this.out = new HeadTailCapture(previewHeadChars, previewTailChars);
+            this.err = new HeadTailCapture(previewHeadChars, previewTailChars);
+            this.outState = outState;
+            this.errState = errState;
+        }
+
+        // 追加一行，返回当前缓冲的字符数
+        synchronized int append(String line, boolean isOut) {
+            String add = ensureLine(line);
+            lastAppend = System.currentTimeMillis();
+            if (isOut) {
+                out.append(add);
+                outChunk.append(add);
+                outSkipped += trimPending(outChunk);
+            } else {
+                err.append(add);
+                errChunk.append(add);
+                errSkipped += trimPending(errChunk);
+            }
+            if (pendingSince == 0 && (outChunk.length() > 0 || errChunk.length() > 0)) {
+                pendingSince = System.currentTimeMillis();
+            }
+            return outChunk.length() + errChunk.length();
+        }
+
+        // 追加一批行，返回当前缓冲的字符数
+        synchronized int append(List<String> lines, boolean isOut) {
+            int size = 0;
+            for (String line : lines) {
+                size = append(line, isOut);
+            }
+            return size;
+        }
+
+        synchronized boolean isDue(long now, long intervalMs) {
+            return pendingSince != 0 && now - pendingSince >= intervalMs;
+        }
+
+        synchronized boolean isIdle(long now) {
+            return pendingSince == 0 && now - lastAppend > IDLE_EVICT_MS;
+        }
+
+        /**
+         * 落库：在缓冲锁下取快照，锁外写库；只有写成功的部分才从缓冲中去掉，失败的内容放回缓冲等下次重试
+         * complete：执行结束，预览补上尾部并写入行数/字节数；结束时落库失败会放回 buffers 由定时任务重试
+         * 返回是否写成功（没有内容也算成功）
+         */
+        boolean flush(Long logId, boolean complete) {
+            synchronized (flushLock) {
+                String outHead, errHead, outTail = "", errTail = "", outData, errData;
+                long outLines, outBytes, errLines, errBytes;
+                boolean last;
+                synchronized (this) {
+                    finished |= complete;
+                    last = finished;
+                    if (outChunk.length() == 0 && errChunk.length() == 0 && !last) {
+                        return true;
+                    }
+                    outHead = out.drainHead();
+                    errHead = err.drainHead();
+                    if (last && !tailSaved) {
+                        outTail = out.finishTail();
+                        errTail = err.finishTail();
+                    }
+                    // 头部写满后只累加行数/字节数
+                    outLines = out.unsavedLines();
+                    outBytes = out.unsavedBytes();
+                    errLines = err.unsavedLines();
+                    errBytes = err.unsavedBytes();
+                    outData = skippedMarker(outSkipped) + outChunk;
+                    errData = skippedMarker(errSkipped) + errChunk;
+                    outChunk.setLength(0);
+                    errChunk.setLength(0);
+                    outSkipped = 0;
+                    errSkipped = 0;
+                    pendingSince = 0;
+                }
+
+                boolean previewSaved = false;
+                boolean outSaved = false;
+                try {
+                    String outText = outHead + outTail;
+                    String errText = errHead + errTail;
+                    if (!outText.isEmpty() || !errText.isEmpty() || outLines != 0 || outBytes != 0 || errLines != 0 || errBytes != 0) {
+                        devCronJobLogMapper.appendText(logId, outText, errText, outLines, outBytes, errLines, errBytes);
+                        bytesWritten.add(outText.getBytes(StandardCharsets.UTF_8).length + errText.getBytes(StandardCharsets.UTF_8).length);
+                    }
+                    synchronized (this) {
+                        out.markSaved(outLines, outBytes);
+                        err.markSaved(errLines, errBytes);
+                        tailSaved |= last;
+                    }
+                    previewSaved = true;
+                    writeChunk(logId, DevCronJobLogChunk.STREAM_OUT, outData, outState);
+                    outSaved = true;
+                    writeChunk(logId, DevCronJobLogChunk.STREAM_ERR, errData, errState);
+                    flushCount.increment();
+                    synchronized (this) {
+                        failures = 0;
+                    }
+                    if (last) {
+                        buffers.remove(logId, this);
+                    }
+                    return true;
+                } catch (Exception e) {
+                    flushFailures.increment();
+                    boolean retry;
+                    synchronized (this) {
+                        retry = ++failures < MAX_FLUSH_RETRIES;
+                        if (retry) {
+                            // 未写成功的内容放回缓冲头部，保持顺序
+                            if (!previewSaved) {
+                                out.restoreHead(outHead);
+                                err.restoreHead(errHead);
+                            }
+                            if (!outSaved) {
+                                outChunk.insert(0, outData);
+                                outSkipped += trimPending(outChunk);
+                            }
+                            errChunk.insert(0, errData);
+                            errSkipped += trimPending(errChunk);
+                            pendingSince = System.currentTimeMillis();
+                        } else {
+                            // 连续失败过多，放弃已缓冲的内容，避免无限堆积
+                            out.drainHead();
+                            err.drainHead();
+                            outChunk.setLength(0);
+                            errChunk.setLength(0);
+                            outSkipped = 0;
+                            errSkipped = 0;
+                            pendingSince = 0;
+                            failures = 0;
+                        }
+                    }
+                    if (retry) {
+                        if (last) {
+                            buffers.putIfAbsent(logId, this);
+                        }
+                        log.warn("执行日志#{} 落库失败，稍后重试：{}", logId, e.getMessage());
+                    } else {
+                        if (last) {
+                            buffers.remove(logId, this);
+                        }
+                        log.error("执行日志#{} 连续 {} 次落库失败，丢弃已缓冲的输出：{}", logId, MAX_FLUSH_RETRIES, e.getMessage());
+                    }
+                    return false;
+                }
+            }
+        }
+
+        // 写入一个分块；进入尾部区后超过保留上限的最旧分块直接删除（删除失败不影响本次写入，下次再删）
+        private void writeChunk(Long logId, String stream, String data, StreamState st) {
+            if (data.isEmpty()) {
+                return;
+            }
+            DevCronJobLogChunk chunk = devCronJobLogChunkService.appendChunk(logId, stream, st.seq + 1, data);
+            st.seq++;
+            chunksWritten.increment();
+            chunkRawBytes.add(chunk.getRawLen());
+            chunkStoredBytes.add(chunk.getContent().length);
+
+            if (retainHeadBytes <= 0 || retainTailBytes <= 0 || st.headBytes < retainHeadBytes) {
+                st.headBytes += chunk.getRawLen();
+                return;
+            }
+            st.tail.addLast(new long[]{chunk.getId(), chunk.getRawLen()});
+            st.tailBytes += chunk.getRawLen();
+            // 至少保留最新的一个分块
+            List<long[]> trim = new ArrayList<>();
+            long remain = st.tailBytes;
+            Iterator<long[]> it = st.tail.iterator();
+            while (remain > retainTailBytes && st.tail.size() - trim.size() > 1) {
+                long[] oldest = it.next();
+                remain -= oldest[1];
+                trim.add(oldest);
+            }
+            if (trim.isEmpty()) {
+                return;
+            }
+            List<Long> trimIds = new ArrayList<>(trim.size());
+            trim.forEach(c -> trimIds.add(c[0]));
+            try {
+                devCronJobLogChunkService.removeByIds(trimIds);
+            } catch (Exception e) {
+                log.warn("执行日志#{} 裁剪分块失败：{}", logId, e.getMessage());
+                return;
+            }
+            trim.forEach(c -> st.tail.pollFirst());
+            st.tailBytes = remain;
+            chunksTrimmed.add(trimIds.size());
+        }
+    }
+
+    // 单个输出流的分块状态（由所属 Buffer 的 flushLock 保护）
+    private static class StreamState {
+
+        // 最后一个分块序号
+        private int seq;
+
+        // 头部已保留的原始字节数
+        private long headBytes;
+
+        // 尾部分块：{分块ID, 原始字节数}
+        private final Deque<long[]> tail = new ArrayDeque<>();
+
+        private long tailBytes;
+
+        StreamState(int seq, long headBytes) {
+            this.seq = seq;
+            this.headBytes = headBytes;
+        }
+    }
+}
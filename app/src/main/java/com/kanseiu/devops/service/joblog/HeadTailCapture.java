@@ -0,0 +1,214 @@
+package com.kanseiu.devops.service.joblog;
+
+/**
+ * 单个输出流的预览截取：头部 + 滚动尾部
+ * - 前 headLimit 个字符作为头部，随缓冲落库增量写入（pending 只保存尚未落库的部分）
+ * - 头部写满后的内容进入固定大小的环形缓冲，只保留最后 tailLimit 个字符；环形缓冲在头部写满后才分配
+ * - 统计总行数与 UTF-8 字节数，增量随头部一起落库；缓冲重建（resume）时从库中接着计数
+ * - 结束时输出省略标记 + 尾部，内存占用与输出总量无关
+ * 非线程安全，由所属缓冲的锁保护
+ */
+class HeadTailCapture {
+
+    private final int headLimit;
+
+    private final int tailLimit;
+
+    // 头部已使用的字符数（含已落库部分）
+    private int headUsed;
+
+    // 头部最后一个字符是否为换行
+    private boolean headEndsWithNewline = true;
+
+    // 头部尚未落库的内容
+    private final StringBuilder pending = new StringBuilder();
+
+    // 尾部环形缓冲
+    private char[] ring;
+
+    // 下一个写入位置
+    private int pos;
+
+    // 环形缓冲中的有效字符数
+    private int size;
+
+    // 被环形缓冲覆盖掉的字符数
+    private long dropped;
+
+    // 头部中的行数、字节数
+    private long headLines;
+    private long headBytes;
+
+    // 总行数、总字节数（含缓冲重建前已落库的部分）
+    private long lines;
+    private long bytes;
+
+    // 已落库的行数、字节数
+    private long savedLines;
+    private long savedBytes;
+
+    HeadTailCapture(int headLimit, int tailLimit) {
+        this.headLimit = Math.max(headLimit, 0);
+        this.tailLimit = Math.max(tailLimit, 0);
+    }
+
+    /**
+     * 缓冲重建：接着库中已存储的预览与计数继续
+     * @param headUsed  已存储的预览字符数
+     * @param headLines 已存储预览中的行数
+     * @param headBytes 已存储预览的 UTF-8 字节数
+     * @param lines     已落库的总行数
+     * @param bytes     已落库的总字节数
+     */
+    void resume(int headUsed, long headLines, long headBytes, boolean headEndsWithNewline, long lines, long bytes) {
+        this.headUsed = headUsed;
+        this.headLines = headLines;
+        this.headBytes = headBytes;
+        this.headEndsWithNewline = headEndsWithNewline;
+        this.lines = this.savedLines = lines;
+        this.bytes = this.savedBytes = bytes;
+    }
+
+    /** 追加一行（已带换行符）；空串不算一行，忽略 */
+    void append(String line) {
+        int n = line.length();
+        if (n == 0) {
+            return;
+        }
+        lines++;
+        bytes += utf8Length(line, 0, n);
+        int from = 0;
+        if (headUsed < headLimit) {
+            int take = Math.min(headLimit - headUsed, n);
+            pending.append(line, 0, take);
+            headUsed += take;
+            headBytes += utf8Length(line, 0, take);
+            headEndsWithNewline = line.charAt(take - 1) == '\n';
+            if (headEndsWithNewline) {
+                headLines++;
+            }
+            from = take;
+        }
+        if (from < n) {
+            appendTail(line, from, n);
+        }
+    }
+
+    /** 取出尚未落库的头部内容 */
+    String drainHead() {
+        if (pending.length() == 0) {
+            return "";
+        }
+        String s = pending.toString();
+        pending.setLength(0);
+        return s;
+    }
+
+    /** 落库失败：把取出的头部内容放回，下次落库重试 */
+    void restoreHead(String head) {
+        if (!head.isEmpty()) {
+            pending.insert(0, head);
+        }
+    }
+
+    /**
+     * 结束时追加到预览的内容：尾部有被覆盖时先输出省略标记，并去掉尾部第一行残缺的部分
+     * 头部未写满（没有尾部）时返回空串
+     */
+    String finishTail() {
+        if (size == 0) {
+            return "";
+        }
+        String tail = tailText();
+        if (dropped == 0) {
+            return tail;
+        }
+        // 尾部从某行中间开始：从下一行开始保留（整段只有一行时原样保留）
+        int nl = tail.indexOf('\n');
+        if (nl >= 0 && nl < tail.length() - 1) {
+            tail = tail.substring(nl + 1);
+        }
+        long tailLines = 0;
+        for (int i = 0; i < tail.length(); i++) {
+            if (tail.charAt(i) == '\n') {
+                tailLines++;
+            }
+        }
+        long omittedLines = Math.max(lines - headLines - tailLines, 0);
+        long omittedBytes = Math.max(bytes - headBytes - utf8Length(tail, 0, tail.length()), 0);
+        return (headEndsWithNewline ? "" : "\n") + "...[省略 " + omittedLines + " 行 / " + omittedBytes + " 字节]...\n" + tail;
+    }
+
+    // 尚未落库的行数、字节数
+    long unsavedLines() {
+        return lines - savedLines;
+    }
+
+    long unsavedBytes() {
+        return bytes - savedBytes;
+    }
+
+    // 已落库的增量（取快照时的 unsavedLines/unsavedBytes），快照之后新追加的部分仍未落库
+    void markSaved(long savedLines, long savedBytes) {
+        this.savedLines += savedLines;
+        this.savedBytes += savedBytes;
+    }
+
+    private void appendTail(String s, int from, int to) {
+        if (tailLimit == 0) {
+            dropped += to - from;
+            return;
+        }
+        if (ring == null) {
+            ring = new char[tailLimit];
+        }
+        // 超过环形缓冲容量的部分直接跳过
+        int n = to - from;
+        if (n > tailLimit) {
+            dropped += n - tailLimit;
+            from = to - tailLimit;
+            n = tailLimit;
+        }
+        int first = Math.min(n, tailLimit - pos);
+        s.getChars(from, from + first, ring, pos);
+        if (first < n) {
+            s.getChars(from + first, to, ring, 0);
+        }
+        pos = (pos + n) % tailLimit;
+        int overflow = size + n - tailLimit;
+        if (overflow > 0) {
+            dropped += overflow;
+            size = tailLimit;
+        } else {
+            size += n;
+        }
+    }
+
+    private String tailText() {
+        int start = (pos - size + tailLimit) % tailLimit;
+        if (start + size <= tailLimit) {
+            return new String(ring, start, size);
+        }
+        int first = tailLimit - start;
+        return new StringBuilder(size).append(ring, start, first).append(ring, 0, size - first).toString();
+    }
+
+    // UTF-8 编码后的字节数（不分配内存）
+    private static long utf8Length(CharSequence s, int from, int to) {
+        long n = 0;
+        for (int i = from; i < to; i++) {
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                n++;
+            } else if (c < 0x800) {
+                n += 2;
+            } else if (Character.isSurrogate(c)) {
+                // 代理对按 4 字节计，每半个 2 字节
+                n += 2;
+            } else {
+                n += 3;
+            }
+        }
+        return n;
+    }
+}
@@ -0,0 +1,278 @@
+package com.kanseiu.devops.service.joblog;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import javax.annotation.Resource;
+import java.io.IOException;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 执行日志实时广播（按日志ID）
+ * - 运行中的任务把输出行写入环形缓冲（只保留最近 ring-size 行），并投递给所有订阅者
+ * - 订阅者先回放环形缓冲，再跟随实时输出；支持 Last-Event-ID 断线续传
+ * - 每个订阅者一个有界队列，由 ssePushPool 发送；队列满说明消费过慢，直接断开该订阅者，不反压执行线程
+ */
+@Slf4j
+@Component
+public class JobLogLiveHub {
+
+    public static final String EVENT_STDOUT = "stdout";
+    public static final String EVENT_STDERR = "stderr";
+    public static final String EVENT_META = "meta";
+    public static final String EVENT_END = "end";
+
+    // 每个日志保留的最近行数
+    @Value("${devops.job-log.live.ring-size:2000}")
+    private int ringSize;
+
+    // 每个订阅者的待发送队列长度，满了即断开
+    @Value("${devops.job-log.live.subscriber-queue:1000}")
+    private int subscriberQueue;
+
+    // 任务结束后保留缓冲的时间（毫秒），便于稍后打开的页面看到结尾
+    @Value("${devops.job-log.live.linger-ms:60000}")
+    private long lingerMs;
+
+    @Resource
+    private ThreadPoolTaskExecutor ssePushPool;
+
+    @Resource
+    private ThreadPoolTaskScheduler execTimer;
+
+    // 日志ID -> 广播主题
+    private final ConcurrentHashMap<Long, Topic> topics = new ConcurrentHashMap<>();
+
+    // ===================== 统计 =====================
+    private final LongAdder published = new LongAdder();
+    private final LongAdder subscribed = new LongAdder();
+    private final LongAdder droppedSubscribers = new LongAdder();
+
+    // 任务开始时创建主题
+    public void open(Long logId) {
+        topics.putIfAbsent(logId, new Topic(logId));
+    }
+
+    public void publish(Long logId, String event, String data) {
+        Topic topic = topics.get(logId);
+        if (topic != null) {
+            topic.publish(event, data);
+            published.increment();
+        }
+    }
+
+    // 一批同类事件，主题锁只取一次
+    public void publish(Long logId, String event, List<String> data) {
+        Topic topic = topics.get(logId);
+        if (topic != null) {
+            topic.publish(event, data);
+            published.add(data.size());
+        }
+    }
+
+    // 任务结束：广播 end 事件，延迟移除主题
+    public void close(Long logId, int exitCode) {
+        Topic topic = topics.get(logId);
+        if (topic == null) {
+            return;
+        }
+        topic.publish(EVENT_END, String.valueOf(exitCode));
+        execTimer.schedule(() -> topics.remove(logId, topic), Instant.now().plusMillis(lingerMs));
+    }
+
+    public boolean isLive(Long logId) {
+        return topics.containsKey(logId);
+    }
+
+    /**
+     * 订阅实时输出
+     * @param lastEventId 浏览器断线重连时带回的最后事件序号，只回放其后的内容；null 表示全部回放
+     * @return 主题不存在（未运行或已过保留期）时返回 false，由调用方自行结束 emitter
+     */
+    public boolean subscribe(Long logId, SseEmitter emitter, Long lastEventId) {
+        Topic topic = topics.get(logId);
+        if (topic == null) {
+            return false;
+        }
+        Subscriber sub = new Subscriber(topic, emitter);
+        emitter.onCompletion(sub::cancel);
+        emitter.onTimeout(sub::cancel);
+        emitter.onError(e -> sub.cancel());
+        topic.attach(sub, lastEventId == null ? 0 : lastEventId);
+        subscribed.increment();
+        return true;
+    }
+
+    // 统计信息
+    public Map<String, Object> stats() {
+        int subs = 0;
+        for (Topic t : topics.values()) {
+            subs += t.subscribers.size();
+        }
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("topics", topics.size());
+        m.put("subscribers", subs);
+        m.put("published", published.sum());
+        m.put("subscribed", subscribed.sum());
+        m.put("droppedSubscribers", droppedSubscribers.sum());
+        return m;
+    }
+
+    // 一条已编号的事件
+    private static class Event {
+
+        final long seq;
+
+        final String name;
+
+        final String data;
+
+        Event(long seq, String name, String data) {
+            this.seq = seq;
+            this.name = name;
+            this.data = data;
+        }
+    }
+
+    // 单个日志的广播主题：环形缓冲 + 订阅者列表，发布与订阅在同一把锁下，保证回放与实时衔接不丢不重
+    private class Topic {
+
+        final Long logId;
+
+        final ArrayDeque<Event> ring = new ArrayDeque<>();
+
+        final List<Subscriber> subscribers = new CopyOnWriteArrayList<>();
+
+        long seq;
+
+        Topic(Long logId) {
+            this.logId = logId;
+        }
+
+        synchronized void publish(String name, String data) {
+            Event ev = new Event(++seq, name, data);
+            if (ring.size() >= ringSize) {
+                ring.pollFirst();
+            }
+            ring.addLast(ev);
+            for (Subscriber sub : subscribers) {
+                sub.offer(ev);
+            }
+        }
+
+        synchronized void publish(String name, List<String> data) {
+            for (String d : data) {
+                publish(name, d);
+            }
+        }
+
+        synchronized void attach(Subscriber sub, long afterSeq) {
+            for (Event ev : ring) {
+                if (ev.seq > afterSeq && !sub.offer(ev)) {
+                    return;
+                }
+            }
+            subscribers.add(sub);
+        }
+    }
+
+    // 订阅者：有界队列 + 单线程串行发送
+    private class Subscriber {
+
+        final Topic topic;
+
+        final SseEmitter emitter;
+
+        final Queue<Event> queue;
+
+        final AtomicBoolean scheduled = new AtomicBoolean();
+
+        volatile boolean closed;
+
+        Subscriber(Topic topic, SseEmitter emitter) {
+            this.topic = topic;
+            this.emitter = emitter;
+            // 回放的行数也要放得下
+            this.queue = new ArrayBlockingQueue<>(Math.max(subscriberQueue, ringSize) + 1);
+        }
+
+        // 非阻塞投递，队列满则断开该订阅者
+        boolean offer(Event ev) {
+            if (closed) {
+                return false;
+            }
+            if (!queue.offer(ev)) {
+                droppedSubscribers.increment();
+                log.info("[实时日志] 日志#{} 订阅者消费过慢，已断开", topic.logId);
+                closed = true;
+                topic.subscribers.remove(this);
+                schedule();
+                return false;
+            }
+            schedule();
+            return true;
+        }
+
+        void cancel() {
+            closed = true;
+            topic.subscribers.remove(this);
+            queue.clear();
+        }
+
+        private void schedule() {
+            if (scheduled.compareAndSet(false, true)) {
+                try {
+                    ssePushPool.execute(this::drain);
+                } catch (RejectedExecutionException e) {
+                    scheduled.set(false);
+                    cancel();
+                    emitter.complete();
+                }
+            }
+        }
+
+        private void drain() {
+            try {
+                Event ev;
+                while (!closed && (ev = queue.poll()) != null) {
+                    emitter.send(SseEmitter.event().id(String.valueOf(ev.seq)).name(ev.name).data(ev.data));
+                    if (EVENT_END.equals(ev.name)) {
+                        cancel();
+                        emitter.complete();
+                        return;
+                    }
+                }
+                if (closed && !queue.isEmpty()) {
+                    // 被判定为过慢：告知原因后结束
+                    queue.clear();
+                    emitter.send(SseEmitter.event().name(EVENT_META).data("[dropped] 消费过慢，已断开，可重新连接"));
+                    emitter.complete();
+                    return;
+                }
+            } catch (IOException | IllegalStateException e) {
+                cancel();
+                return;
+            } finally {
+                scheduled.set(false);
+            }
+            if (!queue.isEmpty()) {
+                schedule();
+            }
+        }
+    }
+}
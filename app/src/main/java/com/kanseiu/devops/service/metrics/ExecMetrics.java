@@ -0,0 +1,84 @@
+package com.kanseiu.devops.service.metrics;
+
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 任务执行指标（进程内累计，重启清零）
+ */
+@Component
+public class ExecMetrics {
+
+    private final LongAdder runsStarted = new LongAdder();
+    private final LongAdder runsFinished = new LongAdder();
+    private final LongAdder stdoutLines = new LongAdder();
+    private final LongAdder stderrLines = new LongAdder();
+    private final LongAdder outputChars = new LongAdder();
+    private final LongAdder durationMsTotal = new LongAdder();
+    private final AtomicLong durationMsMax = new AtomicLong();
+    private final LongAdder sinkDroppedLines = new LongAdder();
+    private final LongAdder sqlTimeouts = new LongAdder();
+    private final LongAdder sqlCancelled = new LongAdder();
+
+    // 结束状态 -> 次数
+    private final ConcurrentHashMap<String, LongAdder> finishedByStatus = new ConcurrentHashMap<>();
+
+    public void runStarted() {
+        runsStarted.increment();
+    }
+
+    public void line(boolean stdout, String line) {
+        (stdout ? stdoutLines : stderrLines).increment();
+        if (line != null) {
+            outputChars.add(line.length());
+        }
+    }
+
+    public void runFinished(String status, long durationMs) {
+        runsFinished.increment();
+        finishedByStatus.computeIfAbsent(status, k -> new LongAdder()).increment();
+        durationMsTotal.add(durationMs);
+        durationMsMax.accumulateAndGet(durationMs, Math::max);
+    }
+
+    // 输出端（DB/SSE 等）处理不过来时丢弃的行数
+    public void sinkDropped(long lines) {
+        sinkDroppedLines.add(lines);
+    }
+
+    // SQL 语句执行超时
+    public void sqlTimeout() {
+        sqlTimeouts.increment();
+    }
+
+    // 看门狗对 SQL 语句调用了 Statement.cancel()
+    public void sqlCancelled() {
+        sqlCancelled.increment();
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> m = new LinkedHashMap<>();
+        long finished = runsFinished.sum();
+        m.put("runsStarted", runsStarted.sum());
+        m.put("runsFinished", finished);
+        m.put("running", runsStarted.sum() - finished);
+        Map<String, Long> byStatus = new TreeMap<>();
+        finishedByStatus.forEach((k, v) -> byStatus.put(k, v.sum()));
+        m.put("finishedByStatus", byStatus);
+        m.put("stdoutLines", stdoutLines.sum());
+        m.put("stderrLines", stderrLines.sum());
+        m.put("outputChars", outputChars.sum());
+        m.put("avgDurationMs", finished == 0 ? 0L : durationMsTotal.sum() / finished);
+        m.put("maxDurationMs", durationMsMax.get());
+        m.put("sinkDroppedLines", sinkDroppedLines.sum());
+        m.put("sqlTimeouts", sqlTimeouts.sum());
+        m.put("sqlCancelled", sqlCancelled.sum());
+        return m;
+    }
+}
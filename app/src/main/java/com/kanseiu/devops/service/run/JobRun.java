@@ -0,0 +1,69 @@
+package com.kanseiu.devops.service.run;
+
+import lombok.Getter;
+
+import java.time.LocalDateTime;
+
+/**
+ * 一次运行中的任务（运行ID 即执行日志ID）
+ * - 执行端在持有可中断资源（SSH 通道、JDBC Statement）期间挂上取消动作，释放资源时摘下
+ * - cancel 只做标记并触发取消动作；执行端在各阶段检查 isCancelled()，最终仍由执行端负责 onEnd
+ */
+@Getter
+public class JobRun {
+
+    private final Long runId;
+
+    private final Long jobId;
+
+    private final String jobName;
+
+    private final String jobType;
+
+    private final LocalDateTime startAt = LocalDateTime.now();
+
+    private volatile boolean cancelled;
+
+    private volatile String cancelReason;
+
+    // 当前的取消动作，由 this 锁保护；必须是非阻塞的（阻塞操作自行投递到线程池）
+    private Runnable canceller;
+
+    public JobRun(Long runId, Long jobId, String jobName, String jobType) {
+        this.runId = runId;
+        this.jobId = jobId;
+        this.jobName = jobName;
+        this.jobType = jobType;
+    }
+
+    /**
+     * 请求取消
+     * @return 是否为首次取消
+     */
+    public synchronized boolean cancel(String reason) {
+        if (cancelled) {
+            return false;
+        }
+        cancelReason = reason;
+        cancelled = true;
+        if (canceller != null) {
+            canceller.run();
+        }
+        return true;
+    }
+
+    // 挂上取消动作；已经取消则立即执行
+    public synchronized void attach(Runnable action) {
+        canceller = action;
+        if (cancelled) {
+            action.run();
+        }
+    }
+
+    // 摘下取消动作（资源已释放）
+    public synchronized void detach(Runnable action) {
+        if (canceller == action) {
+            canceller = null;
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package com.kanseiu.devops.service.run;
+
+import com.kanseiu.devops.model.entity.DevCronJob;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 运行中任务登记（内存，单机）
+ * - 每次执行（手动/定时）开始时登记，onEnd/onError 时移除
+ * - 支持按运行ID取消
+ */
+@Slf4j
+@Component
+public class JobRunRegistry {
+
+    // 运行ID -> 运行
+    private final ConcurrentHashMap<Long, JobRun> runs = new ConcurrentHashMap<>();
+
+    public JobRun open(Long runId, DevCronJob job) {
+        JobRun run = new JobRun(runId, job.getId(), job.getJobName(), job.getJobType());
+        runs.put(runId, run);
+        return run;
+    }
+
+    public void close(JobRun run) {
+        runs.remove(run.getRunId(), run);
+    }
+
+    /**
+     * 取消运行
+     * @return 是否找到运行中的任务
+     */
+    public boolean cancel(Long runId, String reason) {
+        JobRun run = runs.get(runId);
+        if (run == null) {
+            return false;
+        }
+        if (run.cancel(reason)) {
+            log.info("[运行] 取消 run#{} job#{} {}：{}", runId, run.getJobId(), run.getJobName(), reason);
+        }
+        return true;
+    }
+
+    // 运行中的任务，按开始时间排序
+    public List<Map<String, Object>> list() {
+        List<JobRun> sorted = new ArrayList<>(runs.values());
+        sorted.sort(Comparator.comparing(JobRun::getStartAt));
+        List<Map<String, Object>> list = new ArrayList<>(sorted.size());
+        for (JobRun run : sorted) {
+            Map<String, Object> m = new LinkedHashMap<>();
+            m.put("runId", run.getRunId());
+            m.put("jobId", run.getJobId());
+            m.put("jobName", run.getJobName());
+            m.put("jobType", run.getJobType());
+            m.put("startAt", run.getStartAt());
+            m.put("cancelled", run.isCancelled());
+            list.add(m);
+        }
+        return list;
+    }
+}
@@ -0,0 +1,157 @@
+package com.kanseiu.devops.service.sql;
+
+import java.math.BigDecimal;
+import java.util.Locale;
+
+/**
+ * SQL 语句断言，写在语句前的注释中：
+ * <pre>
+ * -- @assert rows > 0          结果集行数
+ * -- @assert value <= 100      第一行第一列（数值）
+ * -- @assert updated = 1       更新行数（非查询语句）
+ * -- @assert true              第一行第一列为 true/1
+ * -- @assert false             第一行第一列为 false/0
+ * </pre>
+ * 比较符支持 = == != <> > >= < <=
+ */
+public class SqlAssertion {
+
+    public enum Subject { ROWS, VALUE, UPDATED, TRUE, FALSE }
+
+    private final String text;
+
+    private final Subject subject;
+
+    private final String op;
+
+    private final BigDecimal expected;
+
+    private SqlAssertion(String text, Subject subject, String op, BigDecimal expected) {
+        this.text = text;
+        this.subject = subject;
+        this.op = op;
+        this.expected = expected;
+    }
+
+    /**
+     * 解析断言表达式（不含 @assert 前缀）
+     * @throws IllegalArgumentException 表达式不合法
+     */
+    public static SqlAssertion parse(String expr) {
+        String text = expr.trim();
+        String lower = text.toLowerCase(Locale.ROOT);
+        if ("true".equals(lower)) {
+            return new SqlAssertion(text, Subject.TRUE, null, null);
+        }
+        if ("false".equals(lower)) {
+            return new SqlAssertion(text, Subject.FALSE, null, null);
+        }
+
+        Subject subject;
+        String rest;
+        if (lower.startsWith("rows")) {
+            subject = Subject.ROWS;
+            rest = text.substring(4);
+        } else if (lower.startsWith("value")) {
+            subject = Subject.VALUE;
+            rest = text.substring(5);
+        } else if (lower.startsWith("updated")) {
+            subject = Subject.UPDATED;
+            rest = text.substring(7);
+        } else {
+            throw new IllegalArgumentException("不支持的断言：" + text);
+        }
+
+        rest = rest.trim();
+        String op = null;
+        for (String candidate : new String[]{">=", "<=", "==", "!=", "<>", "=", ">", "<"}) {
+            if (rest.startsWith(candidate)) {
+                op = candidate;
+                break;
+            }
+        }
+        if (op == null) {
+            throw new IllegalArgumentException("断言缺少比较符：" + text);
+        }
+        try {
+            return new SqlAssertion(text, subject, op, new BigDecimal(rest.substring(op.length()).trim()));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("断言期望值不是数字：" + text);
+        }
+    }
+
+    /**
+     * 校验结果
+     * @param rows       结果集行数（非查询为 -1）
+     * @param firstValue 第一行第一列（无结果为 null）
+     * @param updated    更新行数（查询为 -1）
+     * @return 失败原因，通过返回 null
+     */
+    public String check(long rows, Object firstValue, long updated) {
+        switch (subject) {
+            case TRUE:
+            case FALSE:
+                if (rows <= 0) {
+                    return "没有返回结果";
+                }
+                String s = String.valueOf(firstValue).toLowerCase(Locale.ROOT);
+                boolean expect = subject == Subject.TRUE;
+                if (expect ? ("true".equals(s) || "1".equals(s)) : ("false".equals(s) || "0".equals(s))) {
+                    return null;
+                }
+                return "结果为 " + s + "，期望为 " + (expect ? "真 (true/1)" : "假 (false/0)");
+            case ROWS:
+                if (rows < 0) {
+                    return "不是查询语句";
+                }
+                return compare(BigDecimal.valueOf(rows)) ? null : "行数为 " + rows;
+            case UPDATED:
+                if (updated < 0) {
+                    return "不是更新语句";
+                }
+                return compare(BigDecimal.valueOf(updated)) ? null : "更新行数为 " + updated;
+            case VALUE:
+            default:
+                if (rows <= 0) {
+                    return "没有返回结果";
+                }
+                BigDecimal actual;
+                try {
+                    actual = firstValue instanceof BigDecimal
+                            ? (BigDecimal) firstValue
+                            : new BigDecimal(String.valueOf(firstValue).trim());
+                } catch (NumberFormatException e) {
+                    return "结果不是数字：" + firstValue;
+                }
+                return compare(actual) ? null : "结果为 " + actual.toPlainString();
+        }
+    }
+
+    private boolean compare(BigDecimal actual) {
+        int c = actual.compareTo(expected);
+        switch (op) {
+            case ">":
+                return c > 0;
+            case ">=":
+                return c >= 0;
+            case "<":
+                return c < 0;
+            case "<=":
+                return c <= 0;
+            case "!=":
+            case "<>":
+                return c != 0;
+            default:
+                return c == 0;
+        }
+    }
+
+    public Subject getSubject() {
+        return subject;
+    }
+
+    @Override
+    public String toString() {
+        return text;
+    }
+}
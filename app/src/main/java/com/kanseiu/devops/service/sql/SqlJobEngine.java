@@ -0,0 +1,452 @@
+package com.kanseiu.devops.service.sql;
+
+import com.kanseiu.devops.constant.JobLogStatus;
+import com.kanseiu.devops.service.callback.LiveExecCallback;
+import com.kanseiu.devops.service.metrics.ExecMetrics;
+import com.kanseiu.devops.service.run.JobRun;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.sql.Statement;
+import java.time.Instant;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Pattern;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+
+/**
+ * SQL 任务执行引擎
+ * - 脚本拆成多条语句，在同一个连接（会话）中依次执行
+ * - 结果集按 fetchSize 分批拉取，边读边输出，每条语句的输出行数/字节数有上限，超出只计数不输出
+ * - MySQL 流式结果集提前停止读取时先 cancel 语句再关闭（否则关闭时会把剩余行全部读完丢弃），连接不再复用
+ * - 每条语句可带断言（见 SqlAssertion）；SQL 报错立即停止，断言失败继续执行后续语句，最终返回失败
+ * - 整个脚本没有任何断言时，最后一条查询按旧规则校验：第一行第一列为 true/1
+ * - 超时：每条语句按剩余时间 setQueryTimeout，同时由看门狗在截止时间调用 Statement.cancel()，
+ *   驱动不支持查询超时或卡在拉取结果时也能停下；超时返回 124，与 SHELL 任务一致
+ * - 取消：运行被取消时同样 cancel 当前语句，并不再执行后续语句
+ * - 连接来自连接池，执行结果（Outcome.reusable）告诉调用方连接能否放回连接池
+ */
+@Slf4j
+@Component
+public class SqlJobEngine {
+
+    public static final int EXIT_OK = 0;
+
+    public static final int EXIT_FAILED = -1;
+
+    public static final int EXIT_TIMEOUT = JobLogStatus.TIMEOUT_EXIT_CODE;
+
+    public static final int EXIT_CANCELLED = JobLogStatus.CANCELLED_EXIT_CODE;
+
+    // 会改变会话状态的语句：事务、会话变量、切换库、临时表、锁、存储过程等（无法通用地还原，连接不再复用）
+    private static final Pattern SESSION_STATEMENT = Pattern.compile(
+            "^\\s*(?:(?:--[^\\n]*(?:\\n|$)|/\\*.*?\\*/)\\s*)*"
+                    + "(?:BEGIN|START\\s+TRANSACTION|SET|USE|LOCK|SAVEPOINT|PREPARE|DECLARE|CALL|EXEC|EXECUTE|DO|ALTER\\s+SESSION)\\b"
+                    + "|\\bTEMP(?:ORARY)?\\s+TABLE\\b|\\bINTO\\s+[@#]|:=",
+            Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+
+    // 拉取结果时每多少行检查一次截止时间/取消
+    private static final int DEADLINE_CHECK_ROWS = 64;
+
+    // 结果集每批拉取行数
+    @Value("${devops.sql.fetch-size:500}")
+    private int fetchSize;
+
+    // 每条语句最多输出的结果行数
+    @Value("${devops.sql.max-output-rows:200}")
+    private int maxOutputRows;
+
+    // 每条语句最多输出的结果字节数
+    @Value("${devops.sql.max-output-bytes:262144}")
+    private long maxOutputBytes;
+
+    // 行数断言最多扫描的行数
+    @Value("${devops.sql.max-scan-rows:1000000}")
+    private long maxScanRows;
+
+    @Resource
+    private ThreadPoolTaskScheduler execTimer;
+
+    @Resource
+    private ThreadPoolTaskExecutor dbCancelPool;
+
+    @Resource
+    private ExecMetrics execMetrics;
+
+    /**
+     * 执行脚本
+     * @param conn      连接（调用方负责关闭）
+     * @param script    脚本内容
+     * @param timeoutMs 整个脚本的超时（毫秒），<= 0 表示不限
+     * @param run       运行登记（用于取消），可为空
+     * @param cb        输出回调（不在这里调用 onEnd/onError）
+     * @return 退出码（0 成功，-1 失败，124 超时，130 已取消）及连接能否复用
+     */
+    public Outcome execute(Connection conn, String script, long timeoutMs, JobRun run, LiveExecCallback cb) throws SQLException {
+        Outcome outcome = new Outcome();
+        outcome.exitCode = executeScript(conn, script, timeoutMs, run, cb, outcome);
+        // 只有正常结束、没有丢弃过流式结果集、且脚本没有改变会话状态的连接可以复用
+        outcome.reusable = outcome.exitCode == EXIT_OK && !outcome.abandoned && !changesSession(script);
+        return outcome;
+    }
+
+    private int executeScript(Connection conn, String script, long timeoutMs, JobRun run, LiveExecCallback cb, Outcome outcome) throws SQLException {
+        List<SqlStatement> statements;
+        try {
+            statements = SqlScriptSplitter.split(script);
+        } catch (IllegalArgumentException e) {
+            cb.onStderr("SQL 脚本解析失败：" + e.getMessage());
+            return EXIT_FAILED;
+        }
+        if (statements.isEmpty()) {
+            cb.onStderr("没有SQL脚本可以执行");
+            return EXIT_FAILED;
+        }
+
+        long deadline = timeoutMs > 0 ? System.currentTimeMillis() + timeoutMs : Long.MAX_VALUE;
+        boolean legacy = statements.stream().allMatch(s -> s.getAssertions().isEmpty());
+        boolean streaming = useMysqlStreaming(conn);
+        int failed = 0;
+        for (SqlStatement st : statements) {
+            if (isCancelled(run)) {
+                return EXIT_CANCELLED;
+            }
+            boolean last = st.getIndex() == statements.size();
+            List<SqlAssertion> assertions = st.getAssertions();
+            if (legacy && last) {
+                assertions = Collections.singletonList(SqlAssertion.parse("true"));
+            }
+
+            cb.onStdout("[" + st.getIndex() + "/" + statements.size() + "] 执行SQL（第 " + st.getLine() + " 行）: " + st.getSql());
+            long begin = System.currentTimeMillis();
+            StatementResult r;
+            try {
+                r = executeOne(conn, st, assertions, streaming, deadline, run, cb);
+                outcome.abandoned |= r.abandoned;
+            } catch (SQLException e) {
+                if (isCancelled(run)) {
+                    cb.onStderr("[" + st.getIndex() + "] 查询已取消: " + e.getMessage());
+                    return EXIT_CANCELLED;
+                }
+                if (e instanceof SQLTimeoutException) {
+                    execMetrics.sqlTimeout();
+                    cb.onStderr("[" + st.getIndex() + "] " + e.getMessage());
+                    cb.onStderr("[timeout] SQL 执行超时（" + (timeoutMs / 1000) + " 秒），已取消");
+                    return EXIT_TIMEOUT;
+                }
+                cb.onStderr("[" + st.getIndex() + "] SQL 执行失败: " + e.getMessage());
+                return EXIT_FAILED;
+            }
+            long cost = System.currentTimeMillis() - begin;
+            if (r.rows >= 0) {
+                cb.onStdout("[" + st.getIndex() + "] 返回 " + r.rows + (r.scanTruncated ? "+" : "") + " 行"
+                        + (r.outputRows < r.rows ? "（输出 " + r.outputRows + " 行）" : "") + "，耗时 " + cost + " ms");
+            } else {
+                cb.onStdout("[" + st.getIndex() + "] 执行成功，更新行数: " + r.updated + "，耗时 " + cost + " ms");
+            }
+
+            // 非查询语句上的旧规则不适用
+            if (legacy && last && r.rows < 0) {
+                continue;
+            }
+            for (SqlAssertion a : assertions) {
+                String reason = a.getSubject() == SqlAssertion.Subject.ROWS && r.scanTruncated
+                        ? "结果集超过扫描上限 " + maxScanRows + " 行"
+                        : a.check(r.rows, r.firstValue, r.updated);
+                if (reason == null) {
+                    cb.onStdout("[" + st.getIndex() + "] 断言通过: " + a);
+                } else {
+                    cb.onStderr("[" + st.getIndex() + "] 断言失败: " + a + "（" + reason + "）");
+                    failed++;
+                }
+            }
+        }
+
+        if (failed > 0) {
+            cb.onStderr("共 " + failed + " 个断言失败");
+            return EXIT_FAILED;
+        }
+        return EXIT_OK;
+    }
+
+    /**
+     * @throws SQLTimeoutException 超过截止时间（驱动超时或看门狗取消）
+     */
+    private StatementResult executeOne(Connection conn, SqlStatement st, List<SqlAssertion> assertions,
+                                       boolean streaming, long deadline, JobRun run, LiveExecCallback cb) throws SQLException {
+        long remaining = deadline - System.currentTimeMillis();
+        if (remaining <= 0) {
+            throw new SQLTimeoutException("未执行：已超过任务超时时间");
+        }
+        StatementResult r = new StatementResult();
+        try (Statement stmt = conn.createStatement()) {
+            if (deadline != Long.MAX_VALUE) {
+                // 向上取整到秒，0 在 JDBC 中表示不限
+                stmt.setQueryTimeout((int) Math.min(Integer.MAX_VALUE, Math.max(1L, (remaining + 999) / 1000)));
+            }
+            Watchdog watchdog = new Watchdog(stmt, deadline);
+            Runnable canceller = watchdog::submitCancel;
+            if (run != null) {
+                run.attach(canceller);
+            }
+            try {
+                if (fetchSize > 0) {
+                    stmt.setFetchSize(streaming ? Integer.MIN_VALUE : fetchSize);
+                }
+                if (!stmt.execute(st.getSql())) {
+                    r.updated = stmt.getUpdateCount();
+                    return r;
+                }
+                // 有行数断言才需要读完整个结果集，否则输出够了就停
+                boolean scanAll = assertions.stream().anyMatch(a -> a.getSubject() == SqlAssertion.Subject.ROWS);
+                ResultSet rs = stmt.getResultSet();
+                try {
+                    readRows(st, rs, scanAll, deadline, run, r, cb);
+                    if (streaming && r.scanTruncated) {
+                        // 流式结果集关闭时驱动会读完并丢弃剩余的行：先让服务端停止发送
+                        r.abandoned = true;
+                        cancelQuietly(stmt);
+                    }
+                } finally {
+                    closeResultSet(rs, r.abandoned);
+                }
+            } catch (SQLException e) {
+                // 被取消的语句各驱动报错不一，统一按超时处理
+                if (!(e instanceof SQLTimeoutException) && !isCancelled(run)
+                        && (watchdog.fired || System.currentTimeMillis() >= deadline)) {
+                    throw new SQLTimeoutException("查询已取消：" + e.getMessage(), e);
+                }
+                throw e;
+            } finally {
+                if (run != null) {
+                    run.detach(canceller);
+                }
+                watchdog.disarm();
+            }
+        }
+        return r;
+    }
+
+    private void readRows(SqlStatement st, ResultSet rs, boolean scanAll, long deadline, JobRun run, StatementResult r, LiveExecCallback cb) throws SQLException {
+        ResultSetMetaData md = rs.getMetaData();
+        int cols = md.getColumnCount();
+        StringBuilder row = new StringBuilder();
+        for (int i = 1; i <= cols; i++) {
+            if (i > 1) {
+                row.append(" | ");
+            }
+            row.append(md.getColumnLabel(i));
+        }
+        cb.onStdout(row.toString());
+
+        long bytes = 0;
+        boolean outputFull = false;
+        r.rows = 0;
+        while (rs.next()) {
+            if (r.rows == 0) {
+                r.firstValue = rs.getObject(1);
+            }
+            r.rows++;
+            if (r.rows % DEADLINE_CHECK_ROWS == 0) {
+                if (System.currentTimeMillis() >= deadline) {
+                    throw new SQLTimeoutException("拉取结果超时，已读取 " + r.rows + " 行");
+                }
+                if (isCancelled(run)) {
+                    throw new SQLException("已读取 " + r.rows + " 行");
+                }
+            }
+
+            if (!outputFull) {
+                row.setLength(0);
+                for (int i = 1; i <= cols; i++) {
+                    if (i > 1) {
+                        row.append(" | ");
+                    }
+                    row.append(rs.getString(i));
+                }
+                long len = utf8Length(row);
+                if (r.outputRows < maxOutputRows && bytes + len <= maxOutputBytes) {
+                    cb.onStdout(row.toString());
+                    r.outputRows++;
+                    bytes += len;
+                } else {
+                    outputFull = true;
+                    cb.onStdout("[" + st.getIndex() + "] 输出已达上限（" + maxOutputRows + " 行 / " + maxOutputBytes + " 字节），其余结果不再输出");
+                }
+            }
+
+            if (outputFull && !scanAll) {
+                // 不需要总行数，直接停止拉取
+                r.scanTruncated = true;
+                break;
+            }
+            if (r.rows >= maxScanRows) {
+                r.scanTruncated = rs.next();
+                break;
+            }
+        }
+    }
+
+    private static void cancelQuietly(Statement stmt) {
+        try {
+            stmt.cancel();
+        } catch (SQLException e) {
+            log.warn("[SQL] 取消未读完的流式查询失败，关闭结果集时将读完剩余行：{}", e.getMessage());
+        }
+    }
+
+    // 取消后关闭流式结果集，驱动会读到“查询被中断”的错误包，忽略
+    private static void closeResultSet(ResultSet rs, boolean cancelled) throws SQLException {
+        try {
+            rs.close();
+        } catch (SQLException e) {
+            if (!cancelled) {
+                throw e;
+            }
+            log.debug("[SQL] 关闭已取消的结果集：{}", e.getMessage());
+        }
+    }
+
+    /**
+     * 脚本是否可能改变会话状态（执行后连接不能交给下一个任务）
+     * 解析失败按会改变处理
+     */
+    public static boolean changesSession(String script) {
+        try {
+            for (SqlStatement st : SqlScriptSplitter.split(script)) {
+                if (SESSION_STATEMENT.matcher(st.getSql()).find()) {
+                    return true;
+                }
+            }
+            return false;
+        } catch (IllegalArgumentException e) {
+            return true;
+        }
+    }
+
+    private static boolean isCancelled(JobRun run) {
+        return run != null && run.isCancelled();
+    }
+
+    // MySQL 驱动只有 fetchSize = Integer.MIN_VALUE 才逐行流式读取（未开启 useCursorFetch 时）
+    private static boolean useMysqlStreaming(Connection conn) {
+        try {
+            String url = conn.getMetaData().getURL();
+            return url != null && url.startsWith("jdbc:mysql:") && !url.contains("useCursorFetch=true");
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    private static long utf8Length(CharSequence s) {
+        long len = 0;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                len++;
+            } else if (c < 0x800) {
+                len += 2;
+            } else if (Character.isHighSurrogate(c)) {
+                len += 4;
+                i++;
+            } else {
+                len += 3;
+            }
+        }
+        return len;
+    }
+
+    // 截止时间到达或运行被取消时取消语句；cancel 在 dbCancelPool 上执行，定时器线程只负责投递
+    private class Watchdog {
+
+        private final Statement stmt;
+
+        // 不限时为 null
+        private final ScheduledFuture<?> future;
+
+        // 以下字段由 this 锁保护，保证语句关闭后不再 cancel
+        private boolean closed;
+
+        private volatile boolean fired;
+
+        Watchdog(Statement stmt, long deadline) {
+            this.stmt = stmt;
+            this.future = deadline == Long.MAX_VALUE ? null
+                    : execTimer.schedule(this::submitCancel, Instant.ofEpochMilli(deadline));
+        }
+
+        private void submitCancel() {
+            try {
+                dbCancelPool.execute(this::cancel);
+            } catch (RejectedExecutionException e) {
+                log.warn("[SQL] 取消线程池已满，依赖驱动查询超时");
+            }
+        }
+
+        private synchronized void cancel() {
+            if (closed) {
+                return;
+            }
+            fired = true;
+            execMetrics.sqlCancelled();
+            try {
+                stmt.cancel();
+            } catch (Throwable e) {
+                log.warn("[SQL] 取消超时语句失败：{}", e.getMessage());
+            }
+        }
+
+        synchronized void disarm() {
+            closed = true;
+            if (future != null) {
+                future.cancel(false);
+            }
+        }
+    }
+
+    // 单条语句的执行结果
+    private static class StatementResult {
+
+        // 结果集行数（非查询为 -1）
+        long rows = -1;
+
+        // 更新行数（查询为 -1）
+        long updated = -1;
+
+        // 第一行第一列
+        Object firstValue;
+
+        long outputRows;
+
+        // 结果集没有读完
+        boolean scanTruncated;
+
+        // 流式结果集没有读完就取消了语句
+        boolean abandoned;
+    }
+
+    /** 脚本执行结果 */
+    @Getter
+    public static class Outcome {
+
+        // 退出码
+        private int exitCode;
+
+        // 连接能否放回连接池
+        private boolean reusable;
+
+        // 有流式结果集没读完就取消了语句：连接上可能残留取消状态
+        private boolean abandoned;
+    }
+}
@@ -0,0 +1,150 @@
+package com.kanseiu.devops.service.sql;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 把 SQL 脚本按分号拆成多条语句
+ * - 识别单/双/反引号字符串（含 \ 转义与双写引号）、-- 与 #（行首或空白后）行注释、块注释，其中的分号不拆分
+ * - 行注释中的 "@assert xxx" 作为断言挂到所在（或下一条）语句上
+ * - 不支持 DELIMITER 与存储过程体
+ */
+public final class SqlScriptSplitter {
+
+    private static final String ASSERT_TAG = "@assert";
+
+    private SqlScriptSplitter() {
+    }
+
+    /**
+     * @throws IllegalArgumentException 断言不合法
+     */
+    public static List<SqlStatement> split(String script) {
+        List<SqlStatement> result = new ArrayList<>();
+        if (script == null) {
+            return result;
+        }
+
+        StringBuilder sql = new StringBuilder();
+        List<SqlAssertion> assertions = new ArrayList<>();
+        int line = 1;
+        int startLine = -1;
+        int n = script.length();
+        int i = 0;
+        while (i < n) {
+            char c = script.charAt(i);
+
+            // 行注释
+            if ((c == '-' && i + 1 < n && script.charAt(i + 1) == '-'
+                    && (i + 2 >= n || Character.isWhitespace(script.charAt(i + 2))))
+                    || (c == '#' && (i == 0 || Character.isWhitespace(script.charAt(i - 1))))) {
+                int end = script.indexOf('\n', i);
+                if (end < 0) {
+                    end = n;
+                }
+                String comment = script.substring(i + (c == '#' ? 1 : 2), end).trim();
+                if (comment.startsWith(ASSERT_TAG)) {
+                    try {
+                        assertions.add(SqlAssertion.parse(comment.substring(ASSERT_TAG.length())));
+                    } catch (IllegalArgumentException e) {
+                        throw new IllegalArgumentException("第 " + line + " 行：" + e.getMessage());
+                    }
+                }
+                i = end;
+                continue;
+            }
+
+            // 块注释（MySQL 的 /*! ... */ 可执行注释原样保留）
+            if (c == '/' && i + 1 < n && script.charAt(i + 1) == '*') {
+                int end = script.indexOf("*/", i + 2);
+                end = end < 0 ? n : end + 2;
+                boolean executable = i + 2 < n && script.charAt(i + 2) == '!';
+                String block = script.substring(i, end);
+                if (executable) {
+                    if (startLine < 0) {
+                        startLine = line;
+                    }
+                    sql.append(block);
+                } else {
+                    sql.append(' ');
+                }
+                line += countLines(block);
+                i = end;
+                continue;
+            }
+
+            // 字符串与带引号的标识符
+            if (c == '\'' || c == '"' || c == '`') {
+                if (startLine < 0) {
+                    startLine = line;
+                }
+                int j = i + 1;
+                while (j < n) {
+                    char d = script.charAt(j);
+                    if (d == '\\' && c != '`' && j + 1 < n) {
+                        j += 2;
+                        continue;
+                    }
+                    if (d == c) {
+                        if (j + 1 < n && script.charAt(j + 1) == c) {
+                            j += 2;
+                            continue;
+                        }
+                        break;
+                    }
+                    j++;
+                }
+                int end = Math.min(j + 1, n);
+                String quoted = script.substring(i, end);
+                sql.append(quoted);
+                line += countLines(quoted);
+                i = end;
+                continue;
+            }
+
+            if (c == ';') {
+                emit(result, sql, assertions, startLine);
+                startLine = -1;
+                i++;
+                continue;
+            }
+
+            if (c == '\n') {
+                line++;
+            }
+            if (startLine < 0 && !Character.isWhitespace(c)) {
+                startLine = line;
+            }
+            sql.append(c);
+            i++;
+        }
+        emit(result, sql, assertions, startLine);
+
+        // 末尾只有断言没有语句
+        if (!assertions.isEmpty()) {
+            throw new IllegalArgumentException("断言后没有 SQL 语句：" + assertions);
+        }
+        return result;
+    }
+
+    private static void emit(List<SqlStatement> result, StringBuilder sql, List<SqlAssertion> assertions, int startLine) {
+        String text = sql.toString().trim();
+        sql.setLength(0);
+        if (text.isEmpty()) {
+            // 空语句：断言留给下一条语句
+            return;
+        }
+        result.add(new SqlStatement(result.size() + 1, startLine, text, new ArrayList<>(assertions)));
+        assertions.clear();
+    }
+
+    private static int countLines(String s) {
+        int count = 0;
+        for (int i = 0; i < s.length(); i++) {
+            if (s.charAt(i) == '\n') {
+                count++;
+            }
+        }
+        return count;
+    }
+}
@@ -0,0 +1,29 @@
+package com.kanseiu.devops.service.sql;
+
+import lombok.Getter;
+
+import java.util.List;
+
+// 脚本中的一条 SQL 语句及其断言
+@Getter
+public class SqlStatement {
+
+    /** 序号，从 1 开始 */
+    private final int index;
+
+    /** 语句起始行号 */
+    private final int line;
+
+    /** 语句文本（不含结尾分号） */
+    private final String sql;
+
+    /** 断言，可为空 */
+    private final List<SqlAssertion> assertions;
+
+    public SqlStatement(int index, int line, String sql, List<SqlAssertion> assertions) {
+        this.index = index;
+        this.line = line;
+        this.sql = sql;
+        this.assertions = assertions;
+    }
+}
@@ -0,0 +1,223 @@
+package com.kanseiu.devops.service.sse;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * 非阻塞的 SSE 发送器
+ * - 调用方只把事件放进待发送缓冲，真正的 emitter.send 在 sender 线程池上执行，慢浏览器不会拖住 SSH 输出线程
+ * - 输出行按时间窗口合并：窗口内连续的同类行合并为一个多行 data 事件（浏览器端按 \n 拼接）
+ * - 待发送的输出行超过上限时直接丢弃并计数，恢复后补一条提示；结束时在最后的 meta 事件中报告丢弃总数
+ * - 非输出行事件（meta/end 等）不丢弃
+ */
+@Slf4j
+public class SseBatchWriter {
+
+    private final SseEmitter emitter;
+
+    private final Executor sender;
+
+    private final TaskScheduler timer;
+
+    private final long windowMs;
+
+    private final int maxPendingLines;
+
+    private final Object lock = new Object();
+
+    // 以下字段均由 lock 保护
+    private List<Item> pending = new ArrayList<>();
+    private int pendingLines;
+    private long dropped;
+    private long droppedSinceNotice;
+    // 已安排刷新（定时中或发送中）
+    private boolean flushArmed;
+    private boolean finished;
+
+    // 发送失败（浏览器已断开），之后的事件全部忽略
+    private volatile boolean broken;
+
+    public SseBatchWriter(SseEmitter emitter, Executor sender, TaskScheduler timer, long windowMs, int maxPendingLines) {
+        this.emitter = emitter;
+        this.sender = sender;
+        this.timer = timer;
+        this.windowMs = windowMs;
+        this.maxPendingLines = maxPendingLines;
+    }
+
+    // 输出行（stdout/stderr），超过上限会被丢弃
+    public void line(String event, String text) {
+        synchronized (lock) {
+            if (finished || broken) {
+                return;
+            }
+            if (pendingLines >= maxPendingLines) {
+                dropped++;
+                droppedSinceNotice++;
+                return;
+            }
+            if (droppedSinceNotice > 0) {
+                pending.add(new Item("meta", "[dropped] 浏览器接收过慢，已丢弃 " + droppedSinceNotice + " 行", false));
+                droppedSinceNotice = 0;
+            }
+            pending.add(new Item(event, text, true));
+            pendingLines++;
+            arm();
+        }
+    }
+
+    // 一批同类输出行，只取一次锁；超过上限的部分被丢弃
+    public void lines(String event, List<String> texts) {
+        synchronized (lock) {
+            for (String text : texts) {
+                line(event, text);
+            }
+        }
+    }
+
+    // 普通事件，不丢弃
+    public void event(String event, Object data) {
+        synchronized (lock) {
+            if (finished || broken) {
+                return;
+            }
+            pending.add(new Item(event, data, false));
+            arm();
+        }
+    }
+
+    /**
+     * 发送最后一个事件并关闭 emitter；有丢弃时先发一条 meta 报告丢弃行数
+     */
+    public void finish(String event, Object data) {
+        synchronized (lock) {
+            if (finished) {
+                return;
+            }
+            finished = true;
+            if (broken) {
+                completeQuietly();
+                return;
+            }
+            if (dropped > 0) {
+                pending.add(new Item("meta", "dropped=" + dropped, false));
+            }
+            if (event != null) {
+                pending.add(new Item(event, data, false));
+            }
+            pending.add(Item.COMPLETE);
+            arm();
+        }
+    }
+
+    public long getDropped() {
+        synchronized (lock) {
+            return dropped;
+        }
+    }
+
+    // 必须持有 lock
+    private void arm() {
+        if (flushArmed) {
+            return;
+        }
+        flushArmed = true;
+        timer.schedule(this::submitFlush, Instant.now().plusMillis(windowMs));
+    }
+
+    private void submitFlush() {
+        try {
+            sender.execute(this::flush);
+        } catch (RejectedExecutionException e) {
+            // 发送线程池已满，下个窗口再试
+            timer.schedule(this::submitFlush, Instant.now().plusMillis(windowMs));
+        }
+    }
+
+    private void flush() {
+        List<Item> batch;
+        synchronized (lock) {
+            batch = pending;
+            pending = new ArrayList<>();
+            pendingLines = 0;
+        }
+        try {
+            send(batch);
+        } finally {
+            synchronized (lock) {
+                flushArmed = false;
+                if (!pending.isEmpty()) {
+                    arm();
+                }
+            }
+        }
+    }
+
+    private void send(List<Item> batch) {
+        int i = 0;
+        while (i < batch.size()) {
+            Item item = batch.get(i);
+            if (item == Item.COMPLETE) {
+                completeQuietly();
+                return;
+            }
+            if (broken) {
+                i++;
+                continue;
+            }
+            SseEmitter.SseEventBuilder builder = SseEmitter.event().name(item.event);
+            if (item.line) {
+                // 连续的同类输出行合并为一个事件，每行一个 data: 字段
+                int j = i;
+                while (j < batch.size() && batch.get(j).line && batch.get(j).event.equals(item.event)) {
+                    builder.data(batch.get(j).data);
+                    j++;
+                }
+                i = j;
+            } else {
+                builder.data(item.data);
+                i++;
+            }
+            try {
+                emitter.send(builder);
+            } catch (IOException | IllegalStateException e) {
+                broken = true;
+            }
+        }
+    }
+
+    private void completeQuietly() {
+        try {
+            emitter.complete();
+        } catch (Throwable ignore) {
+        }
+    }
+
+    // 待发送事件
+    private static class Item {
+
+        // 结束标记：发送完前面的事件后关闭 emitter
+        static final Item COMPLETE = new Item(null, null, false);
+
+        final String event;
+
+        final Object data;
+
+        // 是否为输出行（可合并、可丢弃）
+        final boolean line;
+
+        Item(String event, Object data, boolean line) {
+            this.event = event;
+            this.data = data;
+            this.line = line;
+        }
+    }
+}
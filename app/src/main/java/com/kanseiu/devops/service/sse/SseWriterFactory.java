@@ -0,0 +1,32 @@
+package com.kanseiu.devops.service.sse;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import javax.annotation.Resource;
+
+// 创建 SseBatchWriter（发送走 ssePushPool，合并窗口走 execTimer）
+@Component
+public class SseWriterFactory {
+
+    // 输出行合并窗口（毫秒）
+    @Value("${devops.sse.batch-window-ms:50}")
+    private long batchWindowMs;
+
+    // 每个连接最多缓冲的待发送输出行，超过即丢弃
+    @Value("${devops.sse.max-pending-lines:5000}")
+    private int maxPendingLines;
+
+    @Resource
+    private ThreadPoolTaskExecutor ssePushPool;
+
+    @Resource
+    private ThreadPoolTaskScheduler execTimer;
+
+    public SseBatchWriter create(SseEmitter emitter) {
+        return new SseBatchWriter(emitter, ssePushPool, execTimer, batchWindowMs, maxPendingLines);
+    }
+}
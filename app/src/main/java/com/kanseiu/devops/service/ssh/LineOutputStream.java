@@ -0,0 +1,163 @@
+package com.kanseiu.devops.service.ssh;
+
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
+/**
+ * 由 JSch 会话线程直接写入的输出流：按字节切行，一次写入切出的行合成一批交给 consumer，关闭即表示该流已到 EOF
+ * - 行缓冲复用，直接从缓冲解码成字符串；单行超过 maxLineBytes 时在上限处切开输出（UTF-8 不切断多字节字符）
+ * - 单独的 \r（进度条刷新）按终端语义回到行首，只保留最后一次刷新的内容；\r\n 视为换行
+ * - 非法字节按字符集的替换字符解码，不会抛异常；NUL 替换为 U+FFFD
+ */
+class LineOutputStream extends OutputStream {
+
+    private final Consumer<List<String>> consumer;
+
+    private final Charset charset;
+
+    private final boolean utf8;
+
+    private final int maxLineBytes;
+
+    // 当前行（复用，最多增长到 maxLineBytes）
+    private byte[] buf = new byte[256];
+
+    private int len;
+
+    // 上一个字节是 \r：下一个字节是 \n 则换行，否则回到行首
+    private boolean pendingCr;
+
+    // 本次写入切出的行
+    private List<String> batch;
+
+    // 流到达 EOF（JSch 在收到 EOF/CLOSE 时调用 close）
+    final CompletableFuture<Void> eof = new CompletableFuture<>();
+
+    LineOutputStream(Consumer<List<String>> consumer, Charset charset, int maxLineBytes) {
+        this.consumer = consumer;
+        this.charset = charset;
+        this.utf8 = StandardCharsets.UTF_8.equals(charset);
+        // 至少能放下一个完整的多字节字符
+        this.maxLineBytes = Math.max(maxLineBytes, 16);
+    }
+
+    @Override
+    public synchronized void write(int b) {
+        write(new byte[]{(byte) b}, 0, 1);
+    }
+
+    @Override
+    public synchronized void write(byte[] b, int off, int n) {
+        int start = off;
+        int end = off + n;
+        for (int i = off; i < end; i++) {
+            byte c = b[i];
+            if (pendingCr) {
+                if (c == '\r') {
+                    start = i + 1;
+                    continue;
+                }
+                pendingCr = false;
+                if (c == '\n') {
+                    emitLine();
+                    start = i + 1;
+                    continue;
+                }
+                len = 0;
+            }
+            if (c == '\n') {
+                append(b, start, i);
+                emitLine();
+                start = i + 1;
+            } else if (c == '\r') {
+                append(b, start, i);
+                pendingCr = true;
+                start = i + 1;
+            }
+        }
+        append(b, start, end);
+        flushBatch();
+    }
+
+    @Override
+    public synchronized void close() {
+        if (eof.isDone()) {
+            return;
+        }
+        // 最后一行没有换行符（或以 \r 结尾）时也要输出
+        if (len > 0) {
+            emitLine();
+        }
+        pendingCr = false;
+        flushBatch();
+        eof.complete(null);
+    }
+
+    private void append(byte[] b, int from, int to) {
+        while (from < to) {
+            int n = Math.min(maxLineBytes - len, to - from);
+            if (len + n > buf.length) {
+                buf = Arrays.copyOf(buf, Math.min(Math.max(buf.length * 2, len + n), maxLineBytes));
+            }
+            System.arraycopy(b, from, buf, len, n);
+            len += n;
+            from += n;
+            if (len >= maxLineBytes) {
+                emitPartial();
+            }
+        }
+    }
+
+    // 超长行：在上限处切开输出，被切断的多字节字符留到下一段
+    private void emitPartial() {
+        int cut = utf8 ? utf8Boundary() : len;
+        add(new String(buf, 0, cut, charset));
+        len -= cut;
+        System.arraycopy(buf, cut, buf, 0, len);
+    }
+
+    private void emitLine() {
+        add(new String(buf, 0, len, charset));
+        len = 0;
+    }
+
+    // 末尾不完整的 UTF-8 字符的起始位置（完整时返回 len）
+    private int utf8Boundary() {
+        int k = len;
+        while (k > 0 && len - k < 3 && (buf[k - 1] & 0xC0) == 0x80) {
+            k--;
+        }
+        if (k == 0) {
+            return len;
+        }
+        int lead = buf[k - 1] & 0xFF;
+        int need = lead >= 0xF0 ? 4 : lead >= 0xE0 ? 3 : lead >= 0xC0 ? 2 : 1;
+        int cut = (k - 1) + need > len ? k - 1 : len;
+        return cut == 0 ? len : cut;
+    }
+
+    private void add(String line) {
+        // 二进制输出中的 NUL 写库/推送都会出问题，按替换字符处理
+        if (line.indexOf('\0') >= 0) {
+            line = line.replace('\0', '\uFFFD');
+        }
+        if (batch == null) {
+            batch = new ArrayList<>();
+        }
+        batch.add(line);
+    }
+
+    private void flushBatch() {
+        if (batch != null) {
+            List<String> lines = batch;
+            batch = null;
+            consumer.accept(lines);
+        }
+    }
+}
@@ -0,0 +1,186 @@
+package com.kanseiu.devops.service.ssh;
+
+import cn.hutool.crypto.digest.DigestUtil;
+import com.jcraft.jsch.ChannelExec;
+import com.jcraft.jsch.Session;
+import com.kanseiu.devops.model.entity.DevServer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 远端脚本缓存
+ * - 脚本按内容哈希存放在远端缓存目录（devops-<sha256>.sh），内容不变就不再上传，脚本修改后自然换成新文件
+ * - 用一条命令确认缓存文件存在且大小一致（同时刷新修改时间）；确认过的在 verify-ttl-ms 内不再确认，执行只需一个通道
+ * - 先上传到临时文件再改名，同一脚本并发上传也不会执行到写了一半的文件
+ * - 上传新版本时顺带清理超过 retain-days 未使用的旧版本
+ */
+@Slf4j
+@Component
+public class RemoteScriptCache {
+
+    // 缓存确认/改名等辅助命令的超时（毫秒）
+    private static final long CMD_TIMEOUT_MS = 10_000;
+
+    // 远端缓存目录（由远端 shell 展开，默认在登录用户的家目录下）
+    @Value("${devops.ssh.script-cache.dir:$HOME/.cache/devops/scripts}")
+    private String dir;
+
+    // 确认过的缓存文件在这段时间内直接使用（毫秒）
+    @Value("${devops.ssh.script-cache.verify-ttl-ms:600000}")
+    private long verifyTtlMs;
+
+    // 超过这么多天未使用的缓存文件在上传新版本时清理
+    @Value("${devops.ssh.script-cache.retain-days:7}")
+    private int retainDays;
+
+    @Resource
+    private SshChannelRunner sshChannelRunner;
+
+    // 服务器 + 远端路径 -> 最近确认时间
+    private final ConcurrentHashMap<String, Long> verified = new ConcurrentHashMap<>();
+
+    // ===================== 统计 =====================
+    private final LongAdder memoHits = new LongAdder();
+    private final LongAdder remoteHits = new LongAdder();
+    private final LongAdder uploads = new LongAdder();
+    private final LongAdder uploadedBytes = new LongAdder();
+
+    /**
+     * 确保脚本已缓存在远端
+     * 确认/上传的通道在租约自己的通道名额内依次打开、用完即关，调用时该租约上不能有其他通道
+     * @return 远端脚本路径
+     */
+    public String ensure(DevServer server, SshSessionLease lease, String content) throws Exception {
+        Session session = lease.getSession();
+        byte[] data = content.getBytes(SshChannelRunner.charsetOf(server));
+        String path = dir + "/devops-" + DigestUtil.sha256Hex(data) + ".sh";
+        String key = keyOf(server, path);
+        long now = System.currentTimeMillis();
+        Long at = verified.get(key);
+        if (at != null && now - at < verifyTtlMs) {
+            memoHits.increment();
+            return path;
+        }
+
+        // 确认远端文件：存在且大小一致即可用（内容由文件名中的哈希保证），顺便刷新修改时间避免被清理
+        String check = "mkdir -p " + dir + " && chmod 700 " + dir + " && "
+                + "if [ -f " + path + " ] && [ \"$(wc -c < " + path + ")\" -eq " + data.length + " ]; then touch " + path + " && echo ok; fi";
+        if ("ok".equals(run(session, check))) {
+            remoteHits.increment();
+            verified.put(key, now);
+            return path;
+        }
+
+        // 上传到临时文件后改名，并清理长期未使用的旧版本
+        String tmpPath = dir + "/.devops-" + UUID.randomUUID() + ".tmp";
+        upload(session, data, tmpPath);
+        run(session, "mv -f " + tmpPath + " " + path
+                + " && find " + dir + " -maxdepth 1 \\( -name 'devops-*.sh' -o -name '.devops-*.tmp' \\) -mtime +" + Math.max(retainDays, 1) + " -delete; true");
+        uploads.increment();
+        uploadedBytes.add(data.length);
+        log.info("[脚本缓存] 上传 {} -> {}:{}（{} 字节）", server.getName(), server.getHost(), path, data.length);
+        verified.values().removeIf(t -> now - t >= verifyTtlMs);
+        verified.put(key, now);
+        return path;
+    }
+
+    /** 执行时发现缓存文件不可用（被清理、被改动），下次执行重新确认 */
+    public void invalidate(DevServer server, String path) {
+        verified.remove(keyOf(server, path));
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("dir", dir);
+        m.put("verified", verified.size());
+        m.put("memoHits", memoHits.sum());
+        m.put("remoteHits", remoteHits.sum());
+        m.put("uploads", uploads.sum());
+        m.put("uploadedBytes", uploadedBytes.sum());
+        m.put("verifyTtlMs", verifyTtlMs);
+        m.put("retainDays", retainDays);
+        return m;
+    }
+
+    // 同一服务器ID改了地址/账号即视为另一台机器
+    private static String keyOf(DevServer server, String path) {
+        return server.getId() + "|" + server.getUsername() + "@" + server.getHost() + ":" + server.getPort() + "|" + path;
+    }
+
+    // 执行辅助命令，返回 stdout（去掉首尾空白）；退出码非 0 时抛异常
+    private String run(Session session, String cmd) throws Exception {
+        StringBuilder out = new StringBuilder();
+        StringBuilder err = new StringBuilder();
+        SshExecution execution = sshChannelRunner.exec(session, cmd, lines -> lines.forEach(out::append), lines -> lines.forEach(err::append), CMD_TIMEOUT_MS);
+        int exitCode;
+        try {
+            exitCode = execution.getCompletion().get(CMD_TIMEOUT_MS + 1000, TimeUnit.MILLISECONDS);
+        } finally {
+            // 确保通道已关闭再开下一个，不超出租约的通道名额
+            execution.getChannel().disconnect();
+        }
+        if (exitCode != 0) {
+            throw new IOException("远端命令失败（exit=" + exitCode + "）：" + err);
+        }
+        return out.toString().trim();
+    }
+
+    // scp 上传（远端 scp -t 模式）
+    private void upload(Session session, byte[] data, String remotePath) throws Exception {
+        String command = "scp -t " + remotePath;
+        ChannelExec channel = (ChannelExec) session.openChannel("exec");
+        channel.setCommand(command);
+
+        try (OutputStream out = channel.getOutputStream();
+             InputStream in = channel.getInputStream()) {
+            channel.connect();
+
+            if (checkAck(in) != 0) {
+                throw new IOException("SCP ack failed (init)");
+            }
+
+            String header = "C0700 " + data.length + " script.sh\n";
+            out.write(header.getBytes(StandardCharsets.UTF_8));
+            out.flush();
+            if (checkAck(in) != 0) {
+                throw new IOException("SCP ack failed (header)");
+            }
+
+            out.write(data);
+            out.write(0);
+            out.flush();
+            if (checkAck(in) != 0) {
+                throw new IOException("SCP ack failed (data)");
+            }
+        } finally {
+            channel.disconnect();
+        }
+    }
+
+    private static int checkAck(InputStream in) throws IOException {
+        int b = in.read();
+        if (b == 0 || b == -1) {
+            return b;
+        }
+        if (b == 1 || b == 2) {
+            StringBuilder sb = new StringBuilder();
+            int c;
+            do { c = in.read(); sb.append((char) c); } while (c != '\n');
+            throw new IOException("SCP error: " + sb);
+        }
+        return b;
+    }
+}
@@ -0,0 +1,121 @@
+package com.kanseiu.devops.service.ssh;
+
+import com.jcraft.jsch.ChannelExec;
+import com.jcraft.jsch.JSchException;
+import com.jcraft.jsch.Session;
+import com.kanseiu.devops.model.entity.DevServer;
+import com.kanseiu.devops.service.concurrent.SerialExecutor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+import java.io.ByteArrayInputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledFuture;
+import java.util.function.Consumer;
+
+/**
+ * 事件驱动的远程命令执行
+ * - stdout/stderr 由 JSch 会话线程推送，按服务器字符集切行后成批串行投递到 sshIoPool，没有输出时不占用任何线程
+ * - 两个流都到 EOF（通道关闭，退出码已到达）即完成，不再轮询 channel.isClosed()
+ * - 超时由共享定时器 execTimer 触发，到期强制断开通道并以 124 完成
+ */
+@Slf4j
+@Component
+public class SshChannelRunner {
+
+    // 通道连接超时（毫秒）
+    private static final int CHANNEL_CONNECT_TIMEOUT_MS = 8_000;
+
+    // 单行输出最大字节数，超过即切开（没有换行的超长输出不会无限占用内存）
+    @Value("${devops.exec.max-line-bytes:65536}")
+    private int maxLineBytes;
+
+    @Resource
+    private ThreadPoolTaskExecutor sshIoPool;
+
+    @Resource
+    private ThreadPoolTaskScheduler execTimer;
+
+    /**
+     * 打开 exec 通道并异步执行命令
+     * @param session   已连接的会话
+     * @param command   命令
+     * @param onStdout  stdout 回调，每次收到的数据切出的行作为一批（串行调用）
+     * @param onStderr  stderr 回调，同上
+     * @param timeoutMs 超时（毫秒），<= 0 表示不限
+     */
+    public SshExecution exec(Session session, String command, Consumer<List<String>> onStdout, Consumer<List<String>> onStderr, long timeoutMs) throws JSchException {
+        return exec(session, command, null, StandardCharsets.UTF_8, onStdout, onStderr, timeoutMs);
+    }
+
+    /**
+     * 打开 exec 通道并异步执行命令，同时把 stdin 写给远端命令（写完即发送 EOF）
+     * @param stdin   远端命令的标准输入，为空表示不提供
+     * @param charset 远端输出的字符集
+     */
+    public SshExecution exec(Session session, String command, byte[] stdin, Charset charset, Consumer<List<String>> onStdout, Consumer<List<String>> onStderr, long timeoutMs) throws JSchException {
+        CompletableFuture<Integer> completion = new CompletableFuture<>();
+        // 行回调与完成通知共用一个串行执行器，保证 onEnd 之前所有行都已投递
+        SerialExecutor serial = new SerialExecutor(sshIoPool);
+
+        // 每次收到的数据切出的行作为一批投递，一直到回调都不拆开
+        LineOutputStream out = new LineOutputStream(lines -> serial.execute(() -> deliver(lines, onStdout, completion)), charset, maxLineBytes);
+        LineOutputStream err = new LineOutputStream(lines -> serial.execute(() -> deliver(lines, onStderr, completion)), charset, maxLineBytes);
+
+        ChannelExec channel = (ChannelExec) session.openChannel("exec");
+        channel.setCommand(command);
+        channel.setInputStream(stdin == null ? null : new ByteArrayInputStream(stdin));
+        channel.setOutputStream(out);
+        channel.setErrStream(err);
+
+        // stdout 在 EOF 时关闭，stderr 在通道 CLOSE 时关闭，此时退出码已经到达
+        CompletableFuture.allOf(out.eof, err.eof).thenRun(() -> serial.execute(() -> completion.complete(channel.getExitStatus())));
+
+        SshExecution execution = new SshExecution(channel, completion, serial);
+        try {
+            channel.connect(CHANNEL_CONNECT_TIMEOUT_MS);
+        } catch (JSchException e) {
+            // 未连接的通道不会到达 EOF，这里直接以异常结束 completion，异常仍由调用方处理
+            channel.disconnect();
+            completion.completeExceptionally(e);
+            throw e;
+        }
+
+        // 连接成功后才计时：连接失败时不会留下一个对着死通道的定时任务
+        if (timeoutMs > 0) {
+            ScheduledFuture<?> timer = execTimer.schedule(() -> execution.abort(SshExecution.TIMEOUT_EXIT_CODE),
+                    Instant.now().plusMillis(timeoutMs));
+            completion.whenComplete((code, ex) -> timer.cancel(false));
+        }
+        return execution;
+    }
+
+    /** 服务器输出字符集：未配置或不支持时按 UTF-8 */
+    public static Charset charsetOf(DevServer server) {
+        String name = server == null ? null : server.getOutputCharset();
+        if (name == null || name.isBlank()) {
+            return StandardCharsets.UTF_8;
+        }
+        try {
+            return Charset.forName(name.trim());
+        } catch (Exception e) {
+            log.warn("[SSH] 服务器 {} 输出字符集不支持：{}，按 UTF-8 处理", server.getHost(), name);
+            return StandardCharsets.UTF_8;
+        }
+    }
+
+    // 结束之后（超时/取消）到达的行不再投递
+    private static void deliver(List<String> lines, Consumer<List<String>> consumer, CompletableFuture<Integer> completion) {
+        if (!completion.isDone()) {
+            consumer.accept(lines);
+        }
+    }
+}
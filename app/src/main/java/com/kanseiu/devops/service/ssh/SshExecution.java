@@ -0,0 +1,58 @@
+package com.kanseiu.devops.service.ssh;
+
+import com.jcraft.jsch.ChannelExec;
+import com.kanseiu.devops.constant.JobLogStatus;
+import com.kanseiu.devops.service.concurrent.SerialExecutor;
+
+import java.util.concurrent.CompletableFuture;
+
+// 一次远程命令执行：completion 在 stdout/stderr 全部输出完、拿到退出码后完成（超时为 124）
+public class SshExecution {
+
+    // 超时退出码，与 coreutils timeout 保持一致
+    public static final int TIMEOUT_EXIT_CODE = JobLogStatus.TIMEOUT_EXIT_CODE;
+
+    private final ChannelExec channel;
+
+    private final CompletableFuture<Integer> completion;
+
+    private final SerialExecutor serial;
+
+    // 是否被 abort 强制结束（超时/取消），与退出码无关：脚本自己也可能以 124/130 退出
+    private volatile boolean aborted;
+
+    SshExecution(ChannelExec channel, CompletableFuture<Integer> completion, SerialExecutor serial) {
+        this.channel = channel;
+        this.completion = completion;
+        this.serial = serial;
+    }
+
+    /**
+     * 强制结束：以指定退出码完成（排在已收到的输出之后）并断开通道；已完成则忽略
+     * 注意只断开本地通道，远端进程需调用方另行处理
+     */
+    public void abort(int exitCode) {
+        if (!completion.isDone()) {
+            // 正常完成也在 serial 上进行，这里判断 isDone 不会与之竞争；先置标记，完成回调中即可读到
+            serial.execute(() -> {
+                if (!completion.isDone()) {
+                    aborted = true;
+                    completion.complete(exitCode);
+                }
+            });
+            channel.disconnect();
+        }
+    }
+
+    public boolean isAborted() {
+        return aborted;
+    }
+
+    public ChannelExec getChannel() {
+        return channel;
+    }
+
+    public CompletableFuture<Integer> getCompletion() {
+        return completion;
+    }
+}
@@ -0,0 +1,209 @@
+package com.kanseiu.devops.service.ssh;
+
+import com.kanseiu.devops.model.entity.DevServer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * SHELL 任务运行调度
+ * - 限制每台服务器同时运行的任务数（DevServer.maxConcurrentRuns，为空取默认值）和全局同时运行数
+ * - 超出的任务按服务器排队，多台服务器之间轮询出队，避免某台服务器的大量任务饿死其他服务器
+ * - 运行许可在任务真正结束（完成回调）时归还，而不是在提交线程返回时
+ */
+@Slf4j
+@Component
+public class SshRunScheduler {
+
+    // 每台服务器默认最大同时运行数
+    @Value("${devops.ssh.run.max-per-server:4}")
+    private int maxPerServer;
+
+    // 全局最大同时运行数
+    @Value("${devops.ssh.run.max-global:32}")
+    private int maxGlobal;
+
+    // 全局最大排队数，超过直接拒绝
+    @Value("${devops.ssh.run.max-queued:1000}")
+    private int maxQueued;
+
+    // 以下字段均由 this 锁保护
+    // 服务器ID -> 排队任务（按提交顺序）
+    private final Map<Long, ArrayDeque<Pending>> queues = new HashMap<>();
+    // 有排队任务的服务器，按轮询顺序
+    private final ArrayDeque<Long> rotation = new ArrayDeque<>();
+    // 服务器ID -> 运行中数量
+    private final Map<Long, Integer> running = new HashMap<>();
+    private int runningTotal;
+    private int queuedTotal;
+
+    // ===================== 统计 =====================
+    private final LongAdder started = new LongAdder();
+    private final LongAdder queuedCount = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+
+    /**
+     * 提交一次运行；有空闲许可时立即在调用线程启动，否则排队
+     * @param server 目标服务器
+     * @param run    启动动作，参数为许可，任务结束时必须调用 Permit.release()（可重复调用）
+     * @return 是否立即启动（false 表示已排队）
+     * @throws RejectedExecutionException 排队已满
+     */
+    public boolean submit(DevServer server, Consumer<Permit> run) {
+        Pending p = new Pending(server.getId(), limitOf(server), run);
+        synchronized (this) {
+            if (canStart(p.serverId, p.limit)) {
+                acquire(p.serverId);
+            } else {
+                if (queuedTotal >= maxQueued) {
+                    rejected.increment();
+                    throw new RejectedExecutionException("运行排队已满（" + maxQueued + "）");
+                }
+                ArrayDeque<Pending> q = queues.computeIfAbsent(p.serverId, k -> new ArrayDeque<>());
+                if (q.isEmpty()) {
+                    rotation.addLast(p.serverId);
+                }
+                q.addLast(p);
+                queuedTotal++;
+                queuedCount.increment();
+                return false;
+            }
+        }
+        start(p);
+        return true;
+    }
+
+    // 服务器当前运行数/上限，用于排队提示
+    public synchronized String describe(DevServer server) {
+        return "服务器#" + server.getId() + " 运行中 " + running.getOrDefault(server.getId(), 0) + "/" + limitOf(server)
+                + "，全局运行中 " + runningTotal + "/" + maxGlobal + "，排队 " + queuedTotal;
+    }
+
+    // 统计信息
+    public synchronized Map<String, Object> stats() {
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("maxPerServer", maxPerServer);
+        m.put("maxGlobal", maxGlobal);
+        m.put("running", runningTotal);
+        m.put("queued", queuedTotal);
+        m.put("runningByServer", new HashMap<>(running));
+        Map<Long, Integer> queuedByServer = new HashMap<>();
+        queues.forEach((id, q) -> queuedByServer.put(id, q.size()));
+        m.put("queuedByServer", queuedByServer);
+        m.put("started", started.sum());
+        m.put("queuedTotal", queuedCount.sum());
+        m.put("rejected", rejected.sum());
+        return m;
+    }
+
+    private int limitOf(DevServer server) {
+        Integer n = server.getMaxConcurrentRuns();
+        return (n == null || n <= 0) ? maxPerServer : n;
+    }
+
+    // 必须持有锁
+    private boolean canStart(Long serverId, int limit) {
+        return runningTotal < maxGlobal && running.getOrDefault(serverId, 0) < limit;
+    }
+
+    // 必须持有锁
+    private void acquire(Long serverId) {
+        running.merge(serverId, 1, Integer::sum);
+        runningTotal++;
+    }
+
+    private void release(Long serverId) {
+        List<Pending> ready;
+        synchronized (this) {
+            running.computeIfPresent(serverId, (k, v) -> v <= 1 ? null : v - 1);
+            runningTotal--;
+            ready = pollReady();
+        }
+        ready.forEach(this::start);
+    }
+
+    // 轮询各服务器队列，取出所有可以启动的任务；必须持有锁
+    private List<Pending> pollReady() {
+        List<Pending> ready = new ArrayList<>();
+        boolean progress = true;
+        while (progress && runningTotal < maxGlobal && !rotation.isEmpty()) {
+            progress = false;
+            int n = rotation.size();
+            for (int i = 0; i < n && runningTotal < maxGlobal; i++) {
+                Long serverId = rotation.pollFirst();
+                ArrayDeque<Pending> q = queues.get(serverId);
+                Pending head = q.peekFirst();
+                if (canStart(serverId, head.limit)) {
+                    q.pollFirst();
+                    queuedTotal--;
+                    acquire(serverId);
+                    ready.add(head);
+                    progress = true;
+                }
+                if (q.isEmpty()) {
+                    queues.remove(serverId);
+                } else {
+                    // 每轮每台服务器最多出队一个，然后排到队尾
+                    rotation.addLast(serverId);
+                }
+            }
+        }
+        return ready;
+    }
+
+    private void start(Pending p) {
+        started.increment();
+        Permit permit = new Permit(p.serverId);
+        try {
+            p.run.accept(permit);
+        } catch (Throwable e) {
+            log.warn("[运行调度] 服务器#{} 任务启动失败：{}", p.serverId, e.getMessage());
+            permit.release();
+        }
+    }
+
+    // 排队中的运行
+    private static class Pending {
+
+        final Long serverId;
+
+        final int limit;
+
+        final Consumer<Permit> run;
+
+        Pending(Long serverId, int limit, Consumer<Permit> run) {
+            this.serverId = serverId;
+            this.limit = limit;
+            this.run = run;
+        }
+    }
+
+    // 运行许可：任务结束时归还，重复归还无效
+    public class Permit {
+
+        private final Long serverId;
+
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        Permit(Long serverId) {
+            this.serverId = serverId;
+        }
+
+        public void release() {
+            if (released.compareAndSet(false, true)) {
+                SshRunScheduler.this.release(serverId);
+            }
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package com.kanseiu.devops.service.ssh;
+
+import com.jcraft.jsch.Session;
+
+// 从连接池借出的 SSH 会话，用完必须 close() 归还（不会真正断开连接）
+public class SshSessionLease implements AutoCloseable {
+
+    private final SshSessionPool pool;
+
+    private final SshSessionPool.PooledSession pooled;
+
+    // 是否命中池中已有连接
+    private final boolean reused;
+
+    private boolean closed;
+
+    SshSessionLease(SshSessionPool pool, SshSessionPool.PooledSession pooled, boolean reused) {
+        this.pool = pool;
+        this.pooled = pooled;
+        this.reused = reused;
+    }
+
+    public Session getSession() {
+        return pooled.session;
+    }
+
+    public boolean isReused() {
+        return reused;
+    }
+
+    /**
+     * 在同一会话上借一个预留的控制通道（运行中另开通道执行控制命令，如终止远端进程），用完 close() 归还
+     * @return 预留通道已被占用或会话已断开时返回 null，调用方可改为从连接池另借会话
+     */
+    public SshSessionLease control() {
+        return pool.borrowControl(pooled) ? new SshSessionLease(pool, pooled, true) : null;
+    }
+
+    // 标记会话已损坏（如开通道失败），归还时直接断开，不再复用
+    public void markBroken() {
+        pooled.retired = true;
+    }
+
+    // 归还
+    @Override
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        pool.release(pooled);
+    }
+}
@@ -0,0 +1,466 @@
+package com.kanseiu.devops.service.ssh;
+
+import cn.hutool.crypto.digest.DigestUtil;
+import com.jcraft.jsch.*;
+import com.kanseiu.devops.model.entity.DevServer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * SSH 会话池
+ * - 按 服务器ID + 凭据版本 复用已认证的 Session，避免每次执行都做 TCP + 密钥交换 + 认证
+ * - 同一个 Session 上复用多个 exec 通道，单个 Session 的并发通道数有上限，其中预留一个给控制命令（终止远端进程等，见 SshSessionLease.control）
+ * - 后台巡检：剔除断开的会话、回收空闲超时的会话
+ * - 服务器凭据修改后调用 invalidate(serverId) 使旧会话失效
+ */
+@Slf4j
+@Component
+public class SshSessionPool {
+
+    // 每个 Session 预留给控制命令的通道数：借出时不占用，运行中需要另开通道（如终止远端进程）时使用
+    private static final int CONTROL_CHANNELS = 1;
+
+    // 单个 Session 上同时打开的通道数上限（含预留的控制通道，需不大于服务端 sshd 的 MaxSessions，默认 10）
+    @Value("${devops.ssh.pool.max-channels-per-session:8}")
+    private int maxChannelsPerSession;
+
+    // 每台服务器最多缓存的 Session 数，超出后临时建连、用完即断
+    @Value("${devops.ssh.pool.max-sessions-per-server:4}")
+    private int maxSessionsPerServer;
+
+    // 空闲超时（毫秒），超过后由巡检断开
+    @Value("${devops.ssh.pool.idle-timeout-ms:300000}")
+    private long idleTimeoutMs;
+
+    // SSH 心跳间隔（毫秒），防止被防火墙/NAT 断开空闲连接
+    @Value("${devops.ssh.pool.keep-alive-ms:30000}")
+    private int keepAliveMs;
+
+    // SSH 连接超时（毫秒）
+    @Value("${devops.ssh.pool.connect-timeout-ms:8000}")
+    private int connectTimeoutMs;
+
+    // 巡检间隔（毫秒）
+    @Value("${devops.ssh.pool.sweep-interval-ms:30000}")
+    private long sweepIntervalMs;
+
+    @Resource
+    private ThreadPoolTaskScheduler execTimer;
+
+    // 服务器ID -> 会话桶
+    private final ConcurrentHashMap<Long, Bucket> buckets = new ConcurrentHashMap<>();
+
+    // ===================== 统计 =====================
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder connects = new LongAdder();
+    private final LongAdder connectFailures = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder connectNanosTotal = new LongAdder();
+    private final AtomicLong connectNanosMax = new AtomicLong();
+
+    private ScheduledFuture<?> sweepFuture;
+
+    @PostConstruct
+    public void init() {
+        if (maxChannelsPerSession <= CONTROL_CHANNELS) {
+            throw new IllegalArgumentException("devops.ssh.pool.max-channels-per-session 需大于 " + CONTROL_CHANNELS + "（预留给控制命令）");
+        }
+        sweepFuture = execTimer.scheduleWithFixedDelay(this::sweep, Duration.ofMillis(sweepIntervalMs));
+    }
+
+    @PreDestroy
+    public void destroy() {
+        if (sweepFuture != null) {
+            sweepFuture.cancel(false);
+        }
+        buckets.values().forEach(Bucket::retireAll);
+        buckets.clear();
+    }
+
+    /**
+     * 借出一个已连接的 Session，用完务必 close() 归还
+     * @param server 服务器信息（含凭据）
+     */
+    public SshSessionLease acquire(DevServer server) throws JSchException {
+        Objects.requireNonNull(server, "DevServer 不能为空");
+        final String version = credentialVersion(server);
+
+        // 凭据版本变化时替换整个桶，旧桶中的会话全部退役
+        Bucket[] stale = new Bucket[1];
+        Bucket bucket = buckets.compute(server.getId(), (id, b) -> {
+            if (b != null && b.version.equals(version)) {
+                return b;
+            }
+            stale[0] = b;
+            return new Bucket(version);
+        });
+        if (stale[0] != null) {
+            stale[0].retireAll();
+        }
+
+        PooledSession pooled = bucket.borrow();
+        if (pooled != null) {
+            hits.increment();
+            return new SshSessionLease(this, pooled, true);
+        }
+
+        // 未命中：新建连接（在桶锁之外，避免慢连接阻塞其他借出）
+        misses.increment();
+        Session session = connect(server);
+        pooled = new PooledSession(session);
+        bucket.add(pooled);
+        return new SshSessionLease(this, pooled, false);
+    }
+
+    // 使某台服务器的池化会话失效（凭据修改、服务器删除/禁用时调用）
+    public void invalidate(Long serverId) {
+        if (serverId == null) {
+            return;
+        }
+        Bucket bucket = buckets.remove(serverId);
+        if (bucket != null) {
+            bucket.retireAll();
+            log.info("[SSH池] 服务器#{} 的池化会话已失效", serverId);
+        }
+    }
+
+    // 连接池统计信息
+    public Map<String, Object> stats() {
+        Map<String, Object> m = new LinkedHashMap<>();
+        long hit = hits.sum();
+        long miss = misses.sum();
+        int sessions = 0;
+        int activeChannels = 0;
+        for (Bucket b : buckets.values()) {
+            synchronized (b) {
+                sessions += b.sessions.size();
+                for (PooledSession ps : b.sessions) {
+                    // active 由 borrow/release 在会话锁内修改，这里同样在会话锁内读取
+                    synchronized (ps) {
+                        activeChannels += ps.active;
+                    }
+                }
+            }
+        }
+        m.put("servers", buckets.size());
+        m.put("sessions", sessions);
+        m.put("activeChannels", activeChannels);
+        m.put("hits", hit);
+        m.put("misses", miss);
+        m.put("hitRate", (hit + miss) == 0 ? 0D : (double) hit / (hit + miss));
+        m.put("connectFailures", connectFailures.sum());
+        m.put("evictions", evictions.sum());
+        long connected = connects.sum();
+        m.put("avgConnectMs", connected == 0 ? 0L : connectNanosTotal.sum() / connected / 1_000_000L);
+        m.put("maxConnectMs", connectNanosMax.get() / 1_000_000L);
+        return m;
+    }
+
+    // 在租约所在会话上占用一个预留的控制通道，已占满返回 false（由 SshSessionLease 调用）
+    boolean borrowControl(PooledSession pooled) {
+        synchronized (pooled) {
+            if (pooled.active >= maxChannelsPerSession || !pooled.session.isConnected()) {
+                return false;
+            }
+            pooled.active++;
+            pooled.lastUsed = System.currentTimeMillis();
+            return true;
+        }
+    }
+
+    // 归还（由 SshSessionLease 调用）
+    void release(PooledSession pooled) {
+        boolean disconnect;
+        synchronized (pooled) {
+            pooled.active--;
+            pooled.lastUsed = System.currentTimeMillis();
+            disconnect = pooled.active <= 0 && (pooled.retired || !pooled.session.isConnected());
+        }
+        if (disconnect) {
+            evict(pooled);
+        }
+    }
+
+    // 巡检：剔除断开/空闲超时的会话
+    private void sweep() {
+        long now = System.currentTimeMillis();
+        for (Bucket bucket : buckets.values()) {
+            List<PooledSession> dead = new ArrayList<>();
+            synchronized (bucket) {
+                Iterator<PooledSession> it = bucket.sessions.iterator();
+                while (it.hasNext()) {
+                    PooledSession ps = it.next();
+                    synchronized (ps) {
+                        boolean broken = ps.retired || !ps.session.isConnected();
+                        boolean idle = ps.active <= 0 && now - ps.lastUsed > idleTimeoutMs;
+                        if (broken || idle) {
+                            // 仍有通道在用的损坏会话，只标记退役，归还时断开
+                            ps.retired = true;
+                            if (ps.active <= 0) {
+                                it.remove();
+                                dead.add(ps);
+                            }
+                        }
+                    }
+                }
+            }
+            dead.forEach(this::evict);
+        }
+    }
+
+    private void evict(PooledSession pooled) {
+        try {
+            if (pooled.session.isConnected()) {
+                evictions.increment();
+                pooled.session.disconnect();
+            }
+        } catch (Throwable ignore) {
+        }
+    }
+
+    // ===================== Session 构建（密码/私钥） =====================
+
+    private Session connect(DevServer s) throws JSchException {
+        long t0 = System.nanoTime();
+        Session session = "privateKey".equalsIgnoreCase(s.getAuthType()) ? buildSessionWithKey(s) : buildSessionWithPassword(s);
+        session.setServerAliveInterval(keepAliveMs);
+        session.setServerAliveCountMax(3);
+        try {
+            session.connect(connectTimeoutMs);
+        } catch (JSchException e) {
+            connectFailures.increment();
+            throw e;
+        }
+        long cost = System.nanoTime() - t0;
+        connects.increment();
+        connectNanosTotal.add(cost);
+        connectNanosMax.accumulateAndGet(cost, Math::max);
+        log.info("[SSH池] 新建连接 {}@{}，耗时 {}ms", s.getUsername(), s.getHost(), cost / 1_000_000L);
+        return session;
+    }
+
+    /**
+     * 使用“密码/keyboard-interactive”认证方式建立 Session（尚未 connect）
+     */
+    private Session buildSessionWithPassword(DevServer s) throws JSchException {
+        JSch jsch = new JSch();
+        Session session = jsch.getSession(s.getUsername(), s.getHost(), portOf(s));
+
+        // 基础配置（开发阶段关闭 HostKey 校验；生产建议开启并配置 known_hosts）
+        session.setConfig(defaultSessionProps());
+        // 同时兼容 password 与 keyboard-interactive（有的服务端只开后者）
+        session.setUserInfo(new SimpleUserInfo(s.getPasswordEnc()));
+        session.setPassword(s.getPasswordEnc());
+        return session;
+    }
+
+    /**
+     * 使用“私钥”认证方式建立 Session（尚未 connect）
+     * 注意：会对 DB 中的私钥 PEM 做换行/BOM 规范化，避免 invalid privatekey
+     */
+    private Session buildSessionWithKey(DevServer s) throws JSchException {
+        String pem = normalizePem(s.getPrivateKeyEnc());
+        byte[] keyBytes = pem.getBytes(StandardCharsets.UTF_8);
+        byte[] passphraseBytes = (s.getPassphraseEnc() == null || s.getPassphraseEnc().isEmpty()) ? null : s.getPassphraseEnc().getBytes(StandardCharsets.UTF_8);
+
+        JSch jsch = new JSch();
+        jsch.addIdentity("db-key", keyBytes, null, passphraseBytes);
+
+        Session session = jsch.getSession(s.getUsername(), s.getHost(), portOf(s));
+        session.setConfig(defaultSessionProps());
+        return session;
+    }
+
+    /**
+     * Session 的默认配置（可按需收紧算法/HostKey 等）
+     */
+    private Properties defaultSessionProps() {
+        Properties p = new Properties();
+        // 开发阶段关闭；生产建议设置为 "yes" 并配 known_hosts
+        p.put("StrictHostKeyChecking", "no");
+        // 首选认证方式（公钥优先，其次密码与 keyboard-interactive）
+        p.put("PreferredAuthentications", "publickey,password,keyboard-interactive");
+        // Host Key 算法偏好（视服务端版本可调）
+        p.put("server_host_key", "rsa-sha2-512,rsa-sha2-256,ssh-ed25519,ecdsa-sha2-nistp256,ssh-rsa");
+        return p;
+    }
+
+    /**
+     * 规范化 PEM（换行/BOM），避免 JSch 报 invalid privatekey
+     */
+    private String normalizePem(String pem) {
+        if (pem == null) {
+            return "";
+        }
+        String s = pem.replace("\r\n", "\n").replace("\r", "\n").replace("\uFEFF", ""); // 去 BOM
+        if (!s.endsWith("\n")) {
+            s = s + "\n";
+        }
+        return s;
+    }
+
+    private static int portOf(DevServer s) {
+        return (s.getPort() == null || s.getPort() == 0) ? 22 : s.getPort();
+    }
+
+    // 凭据版本：连接相关字段的摘要，任一字段变化即视为新版本
+    private static String credentialVersion(DevServer s) {
+        String raw = String.join("\u0000",
+                String.valueOf(s.getHost()), String.valueOf(portOf(s)), String.valueOf(s.getUsername()),
+                String.valueOf(s.getAuthType()), String.valueOf(s.getPasswordEnc()),
+                String.valueOf(s.getPrivateKeyEnc()), String.valueOf(s.getPassphraseEnc()));
+        return DigestUtil.sha256Hex(raw);
+    }
+
+    // ===================== 内部结构 =====================
+
+    // 池化的会话
+    static class PooledSession {
+
+        final Session session;
+
+        // 正在使用的通道数
+        int active = 1;
+
+        long lastUsed = System.currentTimeMillis();
+
+        // 已退役：不再借出，归还后断开
+        volatile boolean retired;
+
+        PooledSession(Session session) {
+            this.session = session;
+        }
+    }
+
+    // 同一服务器、同一凭据版本下的会话集合
+    private class Bucket {
+
+        final String version;
+
+        final List<PooledSession> sessions = new ArrayList<>();
+
+        boolean retired;
+
+        Bucket(String version) {
+            this.version = version;
+        }
+
+        // 借出负载最低的可用会话，没有则返回 null
+        synchronized PooledSession borrow() {
+            PooledSession best = null;
+            for (PooledSession ps : sessions) {
+                synchronized (ps) {
+                    if (ps.retired || !ps.session.isConnected() || ps.active >= maxChannelsPerSession - CONTROL_CHANNELS) {
+                        continue;
+                    }
+                    if (best == null || ps.active < best.active) {
+                        best = ps;
+                    }
+                }
+            }
+            if (best != null) {
+                synchronized (best) {
+                    best.active++;
+                    best.lastUsed = System.currentTimeMillis();
+                }
+            }
+            return best;
+        }
+
+        // 放入新建的会话；桶已退役或已满时，该会话只用一次
+        synchronized void add(PooledSession ps) {
+            if (retired || sessions.size() >= maxSessionsPerServer) {
+                ps.retired = true;
+                return;
+            }
+            sessions.add(ps);
+        }
+
+        // 退役全部会话：空闲的立即断开，在用的归还时断开
+        void retireAll() {
+            List<PooledSession> idle = new ArrayList<>();
+            synchronized (this) {
+                retired = true;
+                for (PooledSession ps : sessions) {
+                    synchronized (ps) {
+                        ps.retired = true;
+                        if (ps.active <= 0) {
+                            idle.add(ps);
+                        }
+                    }
+                }
+                sessions.clear();
+            }
+            idle.forEach(SshSessionPool.this::evict);
+        }
+    }
+
+    // ===================== 兼容 keyboard-interactive 的 UserInfo =====================
+
+    /**
+     * - 某些服务器仅开启 keyboard-interactive（PAM）而非纯 password；
+     * - 该实现会在 keyboard-interactive 提示时返回同一份密码，提升兼容性；
+     * - 同时允许 StrictHostKeyChecking=no 时自动接受主机指纹。
+     */
+    static class SimpleUserInfo implements UserInfo, UIKeyboardInteractive {
+        private final String password;
+
+        SimpleUserInfo(String password) {
+            this.password = password == null ? "" : password;
+        }
+
+        @Override
+        public String getPassword() {
+            return password;
+        }
+
+        @Override
+        public boolean promptYesNo(String str) {
+            return true;
+        }    // 接受 host key（仅开发便捷）
+
+        @Override
+        public String getPassphrase() {
+            return null;
+        }
+
+        @Override
+        public boolean promptPassphrase(String message) {
+            return false;
+        }
+
+        @Override
+        public boolean promptPassword(String message) {
+            return true;
+        }
+
+        @Override
+        public void showMessage(String message) { /* no-op */ }
+
+        @Override
+        public String[] promptKeyboardInteractive(String destination, String name, String instruction, String[] prompt, boolean[] echo) {
+            if (prompt != null && prompt.length > 0) {
+                String[] ans = new String[prompt.length];
+                for (int i = 0; i < prompt.length; i++) {
+                    ans[i] = password;
+                }
+                return ans;
+            }
+            return null;
+        }
+    }
+}
@@ -14,8 +14,12 @@ CREATE TABLE IF NOT EXISTS dev_server (
     disabled TINYINT NOT NULL DEFAULT 0,            -- 是否禁用
     create_time TIMESTAMP DEFAULT CURRENT_TIMESTAMP, -- 创建时间
     update_time TIMESTAMP DEFAULT CURRENT_TIMESTAMP,  -- 更新时间
-    default_test_cmd VARCHAR(255)                    -- 默认测试命令
+    default_test_cmd VARCHAR(255),                   -- 默认测试命令
+    max_concurrent_runs INT,                         -- 最大同时运行任务数（为空取默认值）
+    output_charset VARCHAR(32)                       -- 远端输出与脚本内容的字符集（为空按 UTF-8，如 GBK）
 );
+ALTER TABLE dev_server ADD COLUMN IF NOT EXISTS max_concurrent_runs INT;
+ALTER TABLE dev_server ADD COLUMN IF NOT EXISTS output_charset VARCHAR(32);
 -- 避免同一主机同一用户重复录入
 CREATE UNIQUE INDEX IF NOT EXISTS uk_host_user_port ON dev_server(host, username, port);
 
@@ -47,9 +51,31 @@ CREATE TABLE IF NOT EXISTS dev_cron_job (
     create_time     TIMESTAMP    DEFAULT CURRENT_TIMESTAMP,
     update_time     TIMESTAMP    DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP,
     job_type        VARCHAR(50)   DEFAULT 'SHELL' COMMENT '任务类型，SHELL、SQL等',
-    database_id     BIGINT       DEFAULT NULL COMMENT '目标数据库ID'
+    database_id     BIGINT       DEFAULT NULL COMMENT '目标数据库ID',
+    overlap_policy  VARCHAR(32)  DEFAULT 'SKIP_IF_RUNNING' COMMENT '重叠策略：SKIP_IF_RUNNING / QUEUE_ONE / ALLOW',
+    misfire_policy  VARCHAR(32)  DEFAULT 'SKIP' COMMENT '错过触发的处理策略：SKIP / FIRE_ONCE / FIRE_ALL',
+    target_type     VARCHAR(16)  DEFAULT 'SERVER' COMMENT '执行目标：SERVER（server_id 指定的一台）/ LABEL（按标签选出的一组服务器）',
+    target_labels   VARCHAR(255) DEFAULT NULL COMMENT '标签选择器，逗号分隔需全部满足，!label 表示排除',
+    fan_out_width   INT          DEFAULT NULL COMMENT '按标签执行时最多同时执行的服务器数',
+    batch_size      INT          DEFAULT NULL COMMENT '按标签执行时每批服务器数（滚动执行，上一批全部成功才执行下一批），为空不分批'
 );
 CREATE UNIQUE INDEX IF NOT EXISTS uk_job_name ON dev_cron_job(job_name);
+-- 已有任务补列时保持原来的并发执行行为（ALLOW），新建任务由服务端默认 SKIP_IF_RUNNING
+ALTER TABLE dev_cron_job ADD COLUMN IF NOT EXISTS overlap_policy VARCHAR(32) DEFAULT 'ALLOW';
+ALTER TABLE dev_cron_job ADD COLUMN IF NOT EXISTS misfire_policy VARCHAR(32) DEFAULT 'SKIP';
+ALTER TABLE dev_cron_job ADD COLUMN IF NOT EXISTS target_type VARCHAR(16) DEFAULT 'SERVER';
+ALTER TABLE dev_cron_job ADD COLUMN IF NOT EXISTS target_labels VARCHAR(255);
+ALTER TABLE dev_cron_job ADD COLUMN IF NOT EXISTS fan_out_width INT;
+ALTER TABLE dev_cron_job ADD COLUMN IF NOT EXISTS batch_size INT;
+
+-- 定时任务触发状态（每次触发更新，用于重启/恢复后计算错过的触发；时间均为毫秒时间戳）
+CREATE TABLE IF NOT EXISTS dev_cron_job_fire (
+    job_id              BIGINT       PRIMARY KEY                            COMMENT '定时任务表ID',
+    last_scheduled_at   BIGINT       NOT NULL   DEFAULT 0                   COMMENT '最近一次计划触发时间',
+    last_fired_at       BIGINT       NOT NULL   DEFAULT 0                   COMMENT '最近一次实际触发时间',
+    last_lag_ms         BIGINT       NOT NULL   DEFAULT 0                   COMMENT '最近一次触发延迟（实际 - 计划）',
+    missed_total        BIGINT       NOT NULL   DEFAULT 0                   COMMENT '累计错过的触发次数'
+);
 
 -- 定时任务执行日志
 CREATE TABLE IF NOT EXISTS dev_cron_job_log (
@@ -65,9 +91,33 @@ CREATE TABLE IF NOT EXISTS dev_cron_job_log (
     duration_ms         BIGINT                                              COMMENT '耗时(毫秒)',
     exit_code           INT                                                 COMMENT '退出码',
     status              VARCHAR(32)                                         COMMENT '状态：SUCCESS / FAIL / TIMEOUT / ERROR',
-    output_text         CLOB                                                COMMENT '标准输出（可截断）',
-    error_text          CLOB                                                COMMENT '错误输出（可截断）'
+    output_text         CLOB                                                COMMENT '标准输出（头部 + 尾部预览）',
+    error_text          CLOB                                                COMMENT '错误输出（头部 + 尾部预览）',
+    parent_log_id       BIGINT                  DEFAULT NULL                COMMENT '按标签执行时，汇总日志ID（本条为单台服务器的子日志）',
+    output_lines        BIGINT                                              COMMENT '标准输出总行数',
+    output_bytes        BIGINT                                              COMMENT '标准输出总字节数',
+    error_lines         BIGINT                                              COMMENT '错误输出总行数',
+    error_bytes         BIGINT                                              COMMENT '错误输出总字节数'
+);
+ALTER TABLE dev_cron_job_log ADD COLUMN IF NOT EXISTS parent_log_id BIGINT;
+ALTER TABLE dev_cron_job_log ADD COLUMN IF NOT EXISTS output_lines BIGINT;
+ALTER TABLE dev_cron_job_log ADD COLUMN IF NOT EXISTS output_bytes BIGINT;
+ALTER TABLE dev_cron_job_log ADD COLUMN IF NOT EXISTS error_lines BIGINT;
+ALTER TABLE dev_cron_job_log ADD COLUMN IF NOT EXISTS error_bytes BIGINT;
+CREATE INDEX IF NOT EXISTS idx_job_log__parent ON dev_cron_job_log(parent_log_id);
+
+-- 定时任务执行日志输出分块（只追加，超出保留上限时保留头部+尾部）
+CREATE TABLE IF NOT EXISTS dev_cron_job_log_chunk (
+    id                  BIGINT PRIMARY KEY AUTO_INCREMENT                   COMMENT '主键ID',
+    log_id              BIGINT       NOT NULL                               COMMENT '定时任务执行日志ID',
+    stream              VARCHAR(8)   NOT NULL                               COMMENT '输出流：OUT / ERR',
+    seq                 INT          NOT NULL                               COMMENT '分块序号（按流递增，中间缺号表示被裁剪）',
+    raw_len             INT          NOT NULL                               COMMENT '原始字节数（UTF-8，压缩前）',
+    compressed          TINYINT      NOT NULL   DEFAULT 0                   COMMENT '是否GZIP压缩：0否 1是',
+    content             BLOB         NOT NULL                               COMMENT '分块内容',
+    create_time         TIMESTAMP               DEFAULT CURRENT_TIMESTAMP
 );
+CREATE UNIQUE INDEX IF NOT EXISTS uk_log_chunk_seq ON dev_cron_job_log_chunk(log_id, stream, seq);
 
 -- 数据库信息表
 CREATE TABLE IF NOT EXISTS dev_database (
@@ -115,6 +165,21 @@ CREATE TABLE IF NOT EXISTS dev_cron_job_notify (
 CREATE INDEX IF NOT EXISTS idx_job_notify__job ON dev_cron_job_notify(dev_cron_job_id);
 CREATE INDEX IF NOT EXISTS idx_job_notify__target ON dev_cron_job_notify(dev_notify_target_id);
 
+-- 定时任务依赖（上游执行结束且状态满足条件后立即触发下游；一个任务有多个上游时，全部满足才触发）
+CREATE TABLE IF NOT EXISTS dev_cron_job_dep (
+    id                      BIGINT PRIMARY KEY AUTO_INCREMENT COMMENT '主键ID',
+    dev_cron_job_id         BIGINT NOT NULL COMMENT '下游定时任务ID',
+    upstream_job_id         BIGINT NOT NULL COMMENT '上游定时任务ID',
+    trigger_on_status       VARCHAR(64) DEFAULT 'SUCCESS' COMMENT '上游结束状态满足其一即视为满足，逗号分隔',
+    disabled                TINYINT(1) DEFAULT 0 COMMENT '0启用 1禁用',
+    create_time             TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    update_time             TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP,
+    UNIQUE (dev_cron_job_id, upstream_job_id)
+);
+CREATE INDEX IF NOT EXISTS idx_job_dep__upstream ON dev_cron_job_dep(upstream_job_id);
+ALTER TABLE dev_cron_job_dep ADD COLUMN IF NOT EXISTS last_status VARCHAR(32);
+ALTER TABLE dev_cron_job_dep ADD COLUMN IF NOT EXISTS satisfied TINYINT(1) DEFAULT 0;
+
 -- 定时任务执行通知日志表
 CREATE TABLE IF NOT EXISTS dev_cron_job_notify_log (
     id                              BIGINT PRIMARY KEY AUTO_INCREMENT COMMENT '主键ID',
@@ -130,4 +195,22 @@ CREATE TABLE IF NOT EXISTS dev_cron_job_notify_log (
     create_time                     TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
     update_time                     TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP
 );
-CREATE UNIQUE INDEX IF NOT EXISTS uk_notify_id_job_log_id ON dev_cron_job_notify_log(dev_cron_job_notify_id, dev_cron_job_log_id);
\ No newline at end of file
+CREATE UNIQUE INDEX IF NOT EXISTS uk_notify_id_job_log_id ON dev_cron_job_notify_log(dev_cron_job_notify_id, dev_cron_job_log_id);
+
+-- 调度租约（多实例部署时选主：只有持有租约的节点执行定时任务；时间均为毫秒时间戳）
+CREATE TABLE IF NOT EXISTS dev_scheduler_lease (
+    lease_name      VARCHAR(64)  PRIMARY KEY COMMENT '租约名称',
+    owner_id        VARCHAR(128) DEFAULT NULL COMMENT '持有节点ID',
+    epoch           BIGINT       NOT NULL DEFAULT 0 COMMENT '任期，每次换主加一',
+    acquired_at     BIGINT       NOT NULL DEFAULT 0 COMMENT '本任期开始时间',
+    renewed_at      BIGINT       NOT NULL DEFAULT 0 COMMENT '最近续约时间',
+    expire_at       BIGINT       NOT NULL DEFAULT 0 COMMENT '到期时间，过期后其他节点可抢占'
+);
+
+-- 调度节点（分片模式下各节点定时心跳，按存活节点对任务ID做一致性哈希分片；时间均为毫秒时间戳）
+CREATE TABLE IF NOT EXISTS dev_scheduler_node (
+    node_id         VARCHAR(128) PRIMARY KEY COMMENT '节点ID',
+    host            VARCHAR(128) DEFAULT NULL COMMENT '主机名',
+    started_at      BIGINT       NOT NULL DEFAULT 0 COMMENT '节点启动时间',
+    heartbeat_at    BIGINT       NOT NULL DEFAULT 0 COMMENT '最近心跳时间，超过节点超时未心跳视为离开'
+);
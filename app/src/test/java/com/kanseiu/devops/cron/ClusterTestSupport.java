@@ -0,0 +1,69 @@
+package com.kanseiu.devops.cron;
+
+import com.baomidou.mybatisplus.extension.spring.MybatisSqlSessionFactoryBean;
+import org.h2.jdbcx.JdbcDataSource;
+import org.mybatis.spring.SqlSessionTemplate;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
+import org.springframework.jdbc.datasource.init.DatabasePopulatorUtils;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.BooleanSupplier;
+
+/**
+ * 集群测试支持：同一进程内的多个调度节点共用一个内嵌 H2 库（与生产一样按 db/schema.sql 建表、按 mapper XML 执行）
+ * 每个节点有自己的定时器，关闭定时器即模拟节点宕机（不释放租约/不离开集群）
+ */
+class ClusterTestSupport implements AutoCloseable {
+
+    private final SqlSessionTemplate sqlSession;
+
+    private final List<ThreadPoolTaskScheduler> timers = new ArrayList<>();
+
+    ClusterTestSupport() throws Exception {
+        JdbcDataSource ds = new JdbcDataSource();
+        ds.setURL("jdbc:h2:mem:cluster-" + UUID.randomUUID() + ";MODE=MySQL;DB_CLOSE_DELAY=-1");
+        ds.setUser("sa");
+        DatabasePopulatorUtils.execute(new ResourceDatabasePopulator(new ClassPathResource("db/schema.sql")), ds);
+
+        MybatisSqlSessionFactoryBean factory = new MybatisSqlSessionFactoryBean();
+        factory.setDataSource(ds);
+        factory.setMapperLocations(new PathMatchingResourcePatternResolver().getResources("classpath:mapper/*.xml"));
+        sqlSession = new SqlSessionTemplate(factory.getObject());
+    }
+
+    <T> T mapper(Class<T> type) {
+        return sqlSession.getMapper(type);
+    }
+
+    ThreadPoolTaskScheduler newTimer(String name) {
+        ThreadPoolTaskScheduler timer = new ThreadPoolTaskScheduler();
+        timer.setPoolSize(1);
+        timer.setThreadNamePrefix(name + "-");
+        timer.setDaemon(true);
+        timer.initialize();
+        timers.add(timer);
+        return timer;
+    }
+
+    // 等待条件成立，超时返回 false
+    static boolean await(BooleanSupplier condition, long timeoutMs) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMs;
+        while (System.currentTimeMillis() < deadline) {
+            if (condition.getAsBoolean()) {
+                return true;
+            }
+            Thread.sleep(20L);
+        }
+        return condition.getAsBoolean();
+    }
+
+    @Override
+    public void close() {
+        timers.forEach(ThreadPoolTaskScheduler::shutdown);
+    }
+}
@@ -0,0 +1,214 @@
+package com.kanseiu.devops.cron;
+
+import com.kanseiu.devops.constant.JobLogStatus;
+import com.kanseiu.devops.mapper.DevCronJobDepMapper;
+import com.kanseiu.devops.mapper.DevCronJobMapper;
+import com.kanseiu.devops.mapper.DevSchedulerNodeMapper;
+import com.kanseiu.devops.model.entity.DevCronJob;
+import com.kanseiu.devops.model.entity.DevCronJobDep;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 任务依赖：分片模式下两个节点共用一个 H2 库，下游 C 依赖上游 A、B
+ * - 上游在不同节点结束时，下游只由其所属节点触发，且只触发一次
+ * - 上游满足状态存在库中，下游所属节点重启（新的引擎实例）后不丢
+ * - 上游最近一次结束不满足时撤销之前的满足
+ * - 同一次触发被并发认领时只有一个成功
+ */
+class JobDagEngineTest {
+
+    private static final long HEARTBEAT_INTERVAL_MS = 200;
+    private static final long NODE_TTL_MS = 1500;
+
+    private ClusterTestSupport cluster;
+
+    private Long upstreamA;
+    private Long upstreamB;
+    private Long downstream;
+
+    // 下游所属节点、另一个节点
+    private SchedulerShards ownerShards;
+    private SchedulerShards otherShards;
+
+    // 各引擎触发的下游
+    private final List<Long> ownerLaunched = new CopyOnWriteArrayList<>();
+    private final List<Long> otherLaunched = new CopyOnWriteArrayList<>();
+
+    @BeforeEach
+    void setUp() throws Exception {
+        cluster = new ClusterTestSupport();
+        upstreamA = insertJob("upstream-a");
+        upstreamB = insertJob("upstream-b");
+        downstream = insertJob("downstream-c");
+        insertDep(upstreamA, downstream);
+        insertDep(upstreamB, downstream);
+
+        SchedulerShards a = startShards("node-a");
+        SchedulerShards b = startShards("node-b");
+        assertTrue(ClusterTestSupport.await(() -> a.ownerOf(downstream) != null
+                && a.ownerOf(downstream).equals(b.ownerOf(downstream))
+                && a.status().get("members").toString().contains("node-b"), NODE_TTL_MS * 2), "两个节点应看到相同的成员");
+        ownerShards = a.owns(downstream) ? a : b;
+        otherShards = ownerShards == a ? b : a;
+    }
+
+    @AfterEach
+    void tearDown() {
+        cluster.close();
+    }
+
+    @Test
+    void downstreamFiresOnceOnOwnerWhenUpstreamsFinishOnDifferentNodes() {
+        JobDagEngine owner = newEngine(ownerShards, ownerLaunched);
+        JobDagEngine other = newEngine(otherShards, otherLaunched);
+
+        other.onFinished(upstreamA, JobLogStatus.SUCCESS);
+        assertEquals(0, ownerLaunched.size() + otherLaunched.size(), "只有一个上游满足，不应触发");
+
+        owner.onFinished(upstreamB, JobLogStatus.SUCCESS);
+        assertEquals(List.of(downstream), ownerLaunched, "下游应在所属节点触发一次");
+        assertTrue(otherLaunched.isEmpty());
+
+        // 两个上游都在非所属节点结束：由所属节点检查认领
+        other.onFinished(upstreamA, JobLogStatus.SUCCESS);
+        other.onFinished(upstreamB, JobLogStatus.SUCCESS);
+        assertTrue(otherLaunched.isEmpty(), "非所属节点不应触发下游");
+        owner.poll();
+        owner.poll();
+        other.poll();
+        assertEquals(List.of(downstream, downstream), ownerLaunched, "检查认领应只触发一次");
+        assertTrue(otherLaunched.isEmpty());
+    }
+
+    @Test
+    void satisfiedUpstreamSurvivesRestart() {
+        newEngine(ownerShards, ownerLaunched).onFinished(upstreamA, JobLogStatus.SUCCESS);
+
+        // 重启：内存状态全部丢失
+        JobDagEngine restarted = newEngine(ownerShards, ownerLaunched);
+        restarted.onFinished(upstreamB, JobLogStatus.SUCCESS);
+        assertEquals(List.of(downstream), ownerLaunched);
+    }
+
+    @Test
+    void latestUpstreamFailureRevokesSatisfaction() {
+        JobDagEngine owner = newEngine(ownerShards, ownerLaunched);
+        owner.onFinished(upstreamA, JobLogStatus.SUCCESS);
+        owner.onFinished(upstreamA, JobLogStatus.FAIL);
+        owner.onFinished(upstreamB, JobLogStatus.SUCCESS);
+        owner.poll();
+        assertTrue(ownerLaunched.isEmpty(), "上游 A 最近一次失败，不应触发");
+
+        owner.onFinished(upstreamA, JobLogStatus.SUCCESS);
+        assertEquals(List.of(downstream), ownerLaunched);
+    }
+
+    @Test
+    void concurrentClaimsLaunchOnce() throws Exception {
+        DevCronJobDepMapper depMapper = cluster.mapper(DevCronJobDepMapper.class);
+        depMapper.markUpstream(downstream, upstreamA, JobLogStatus.SUCCESS.name(), true);
+        depMapper.markUpstream(downstream, upstreamB, JobLogStatus.SUCCESS.name(), true);
+
+        // 多个引擎实例（模拟交接期内新旧两个所属节点）同时认领
+        List<JobDagEngine> engines = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            engines.add(newEngine(ownerShards, ownerLaunched));
+        }
+        ExecutorService pool = Executors.newFixedThreadPool(engines.size());
+        CountDownLatch start = new CountDownLatch(1);
+        try {
+            for (JobDagEngine engine : engines) {
+                pool.execute(() -> {
+                    try {
+                        start.await();
+                        engine.poll();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                });
+            }
+            start.countDown();
+        } finally {
+            pool.shutdown();
+        }
+        assertTrue(pool.awaitTermination(10, TimeUnit.SECONDS));
+        assertEquals(List.of(downstream), ownerLaunched, "同一次触发只应认领一次");
+    }
+
+    private JobDagEngine newEngine(SchedulerShards shards, List<Long> launched) {
+        JobDagEngine engine = new JobDagEngine();
+        ReflectionTestUtils.setField(engine, "maxParallel", 4);
+        ReflectionTestUtils.setField(engine, "devCronJobDepMapper", cluster.mapper(DevCronJobDepMapper.class));
+        ReflectionTestUtils.setField(engine, "devCronJobMapper", cluster.mapper(DevCronJobMapper.class));
+        ReflectionTestUtils.setField(engine, "schedulerLease", ReflectionTestUtils.getField(shards, "schedulerLease"));
+        ReflectionTestUtils.setField(engine, "schedulerShards", shards);
+        engine.setLauncher((job, onDone) -> {
+            launched.add(job.getId());
+            onDone.run();
+            return true;
+        });
+        engine.reload();
+        return engine;
+    }
+
+    private SchedulerShards startShards(String nodeId) {
+        ThreadPoolTaskScheduler timer = cluster.newTimer(nodeId);
+
+        SchedulerLease lease = new SchedulerLease();
+        ReflectionTestUtils.setField(lease, "mode", "shard");
+        ReflectionTestUtils.setField(lease, "nodeIdConf", nodeId);
+        lease.init();
+
+        SchedulerShards shards = new SchedulerShards();
+        ReflectionTestUtils.setField(shards, "heartbeatIntervalMs", HEARTBEAT_INTERVAL_MS);
+        ReflectionTestUtils.setField(shards, "nodeTtlMs", NODE_TTL_MS);
+        ReflectionTestUtils.setField(shards, "virtualNodes", 64);
+        ReflectionTestUtils.setField(shards, "clockSkewMs", 100L);
+        ReflectionTestUtils.setField(shards, "devSchedulerNodeMapper", cluster.mapper(DevSchedulerNodeMapper.class));
+        ReflectionTestUtils.setField(shards, "schedulerLease", lease);
+        ReflectionTestUtils.setField(shards, "clusterTimer", timer);
+        ReflectionTestUtils.setField(shards, "cronMaintTimer", timer);
+        shards.init();
+        shards.start();
+        return shards;
+    }
+
+    private Long insertJob(String name) {
+        DevCronJob job = new DevCronJob();
+        job.setJobName(name);
+        job.setCronExpr("0 0 * * * *");
+        job.setScriptName(name + ".sh");
+        job.setDisabled(false);
+        cluster.mapper(DevCronJobMapper.class).insert(job);
+        return job.getId();
+    }
+
+    private void insertDep(Long upstream, Long down) {
+        DevCronJobDep dep = new DevCronJobDep();
+        dep.setUpstreamJobId(upstream);
+        dep.setDevCronJobId(down);
+        dep.setTriggerOnStatus(JobLogStatus.SUCCESS.name());
+        dep.setDisabled(false);
+        dep.setSatisfied(false);
+        // 没有 Spring 的自动填充
+        dep.setCreateTime(LocalDateTime.now());
+        dep.setUpdateTime(LocalDateTime.now());
+        cluster.mapper(DevCronJobDepMapper.class).insert(dep);
+    }
+}
@@ -0,0 +1,132 @@
+package com.kanseiu.devops.cron;
+
+import com.kanseiu.devops.mapper.DevSchedulerLeaseMapper;
+import com.kanseiu.devops.model.entity.DevSchedulerLease;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 选主：两个节点共用一个 H2 库
+ * - 同一时刻最多一个主节点
+ * - 主节点宕机（不释放）后，另一节点在 租约时长 + 续约间隔 内接管，期间不会出现两个主节点
+ * - 主节点正常停机（destroy）时主动释放，另一节点在一个续约间隔内接管，不用等租约过期
+ */
+class SchedulerLeaseTest {
+
+    private static final long LEASE_TTL_MS = 2000;
+    private static final long RENEW_INTERVAL_MS = 200;
+    private static final long CLOCK_SKEW_MS = 100;
+
+    private ClusterTestSupport cluster;
+
+    // 节点 -> 定时器（关闭即模拟宕机）
+    private final Map<SchedulerLease, ThreadPoolTaskScheduler> timers = new HashMap<>();
+
+    @BeforeEach
+    void setUp() throws Exception {
+        cluster = new ClusterTestSupport();
+    }
+
+    @AfterEach
+    void tearDown() {
+        cluster.close();
+    }
+
+    @Test
+    void onlyOneNodeLeads() throws Exception {
+        SchedulerLease a = startNode("node-a");
+        SchedulerLease b = startNode("node-b");
+
+        assertTrue(a.isLeader() ^ b.isLeader(), "启动后应恰好一个主节点");
+        SchedulerLease leader = a.isLeader() ? a : b;
+
+        // 多个续约周期内保持同一个主节点
+        for (int i = 0; i < 10; i++) {
+            Thread.sleep(RENEW_INTERVAL_MS / 2);
+            assertTrue(leader.isLeader(), "主节点不应丢失租约");
+            assertFalse((leader == a ? b : a).isLeader(), "从节点不应成为主节点");
+        }
+        DevSchedulerLease row = cluster.mapper(DevSchedulerLeaseMapper.class).selectById(SchedulerLease.CRON_LEASE);
+        assertEquals(leader.getNodeId(), row.getOwnerId());
+        assertEquals(SchedulerLease.ROLE_LEADER, leader.role());
+        assertEquals(SchedulerLease.ROLE_FOLLOWER, (leader == a ? b : a).role());
+    }
+
+    @Test
+    void followerTakesOverAfterTtlWhenLeaderDies() throws Exception {
+        SchedulerLease a = startNode("node-a");
+        SchedulerLease b = startNode("node-b");
+        SchedulerLease leader = a.isLeader() ? a : b;
+        SchedulerLease follower = leader == a ? b : a;
+        long epoch = leaseRow().getEpoch();
+
+        // 宕机：停止续约，不释放租约
+        long crashedAt = System.currentTimeMillis();
+        timers.get(leader).shutdown();
+
+        boolean overlapped = false;
+        long deadline = crashedAt + LEASE_TTL_MS + RENEW_INTERVAL_MS + 1000;
+        while (!follower.isLeader() && System.currentTimeMillis() < deadline) {
+            overlapped |= leader.isLeader() && follower.isLeader();
+            Thread.sleep(20L);
+        }
+        long tookMs = System.currentTimeMillis() - crashedAt;
+
+        assertTrue(follower.isLeader(), "从节点应在租约过期后接管");
+        assertFalse(leader.isLeader(), "宕机节点的本地有效期应已过");
+        assertFalse(overlapped, "交接期间不应出现两个主节点");
+        // 最后一次续约最早在宕机前一个续约间隔
+        assertTrue(tookMs >= LEASE_TTL_MS - RENEW_INTERVAL_MS * 2, "租约过期前不应被接管，实际 " + tookMs + "ms");
+        assertEquals(follower.getNodeId(), leaseRow().getOwnerId());
+        assertEquals(epoch + 1, leaseRow().getEpoch());
+    }
+
+    @Test
+    void leaderHandsOverOnDestroy() throws Exception {
+        SchedulerLease a = startNode("node-a");
+        SchedulerLease b = startNode("node-b");
+        SchedulerLease leader = a.isLeader() ? a : b;
+        SchedulerLease follower = leader == a ? b : a;
+
+        long stoppedAt = System.currentTimeMillis();
+        leader.destroy();
+        assertFalse(leader.isLeader(), "停机后应立即不再执行");
+
+        assertTrue(ClusterTestSupport.await(follower::isLeader, LEASE_TTL_MS), "从节点应接管");
+        long tookMs = System.currentTimeMillis() - stoppedAt;
+        assertTrue(tookMs < LEASE_TTL_MS, "主动释放后不用等租约过期，实际 " + tookMs + "ms");
+        assertNotEquals(leader.getNodeId(), leaseRow().getOwnerId());
+    }
+
+    private DevSchedulerLease leaseRow() {
+        return cluster.mapper(DevSchedulerLeaseMapper.class).selectById(SchedulerLease.CRON_LEASE);
+    }
+
+    private SchedulerLease startNode(String nodeId) {
+        SchedulerLease lease = new SchedulerLease();
+        ReflectionTestUtils.setField(lease, "mode", "leader");
+        ReflectionTestUtils.setField(lease, "nodeIdConf", nodeId);
+        ReflectionTestUtils.setField(lease, "leaseTtlMs", LEASE_TTL_MS);
+        ReflectionTestUtils.setField(lease, "renewIntervalMs", RENEW_INTERVAL_MS);
+        ReflectionTestUtils.setField(lease, "clockSkewMs", CLOCK_SKEW_MS);
+        ReflectionTestUtils.setField(lease, "devSchedulerLeaseMapper", cluster.mapper(DevSchedulerLeaseMapper.class));
+        ThreadPoolTaskScheduler timer = cluster.newTimer(nodeId);
+        ReflectionTestUtils.setField(lease, "clusterTimer", timer);
+        ReflectionTestUtils.setField(lease, "cronMaintTimer", timer);
+        lease.init();
+        lease.start();
+        timers.put(lease, timer);
+        return lease;
+    }
+}
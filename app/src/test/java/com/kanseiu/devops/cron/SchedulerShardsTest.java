@@ -0,0 +1,203 @@
+package com.kanseiu.devops.cron;
+
+import com.kanseiu.devops.mapper.DevSchedulerNodeMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 分片：多个节点共用一个 H2 库
+ * - 所有节点看到相同的成员与哈希环，每个任务恰好归一个节点，分布大致均匀
+ * - 节点离开（destroy）后只有它的任务换节点，其余任务归属不变
+ * - 节点加入后只有移到新节点的任务换节点
+ * - 加入、重启期间任何时刻每个任务最多一个节点可执行（mayRun），交接完成后恰好一个
+ */
+class SchedulerShardsTest {
+
+    private static final long HEARTBEAT_INTERVAL_MS = 200;
+    private static final long NODE_TTL_MS = 1500;
+    private static final long CLOCK_SKEW_MS = 100;
+    private static final int VIRTUAL_NODES = 64;
+
+    private static final int JOBS = 1000;
+
+    private ClusterTestSupport cluster;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        cluster = new ClusterTestSupport();
+    }
+
+    @AfterEach
+    void tearDown() {
+        cluster.close();
+    }
+
+    @Test
+    void everyJobHasExactlyOneOwner() throws Exception {
+        List<SchedulerShards> nodes = startNodes("node-a", "node-b", "node-c");
+        awaitMembers(nodes, 3);
+
+        Map<String, Integer> perNode = new HashMap<>();
+        for (long jobId = 1; jobId <= JOBS; jobId++) {
+            String owner = nodes.get(0).ownerOf(jobId);
+            int owners = 0;
+            for (SchedulerShards node : nodes) {
+                assertEquals(owner, node.ownerOf(jobId), "各节点对任务#" + jobId + " 的归属应一致");
+                owners += node.owns(jobId) ? 1 : 0;
+            }
+            assertEquals(1, owners, "任务#" + jobId + " 应恰好归一个节点");
+            perNode.merge(owner, 1, Integer::sum);
+        }
+        assertEquals(3, perNode.size());
+        // 64 个虚拟节点下每个节点的份额不会偏离 1/3 太多
+        perNode.forEach((node, n) -> assertTrue(n > JOBS / 6, node + " 只分到 " + n + " 个任务"));
+    }
+
+    @Test
+    void onlyLeavingNodesJobsMoveOnDestroy() throws Exception {
+        List<SchedulerShards> nodes = startNodes("node-a", "node-b", "node-c");
+        awaitMembers(nodes, 3);
+        Map<Long, String> before = owners(nodes.get(0));
+        SchedulerShards leaving = nodes.get(2);
+        List<SchedulerShards> remaining = nodes.subList(0, 2);
+        AtomicInteger rebalanced = new AtomicInteger();
+        remaining.forEach(n -> n.addListener(rebalanced::incrementAndGet));
+
+        leaving.destroy();
+        assertNull(leaving.ownerOf(1L), "离开的节点不再认领任何任务");
+        awaitMembers(remaining, 2);
+        assertTrue(ClusterTestSupport.await(() -> rebalanced.get() >= remaining.size(), 2000), "重新分片应通知监听者");
+
+        Map<Long, String> after = owners(remaining.get(0));
+        for (long jobId = 1; jobId <= JOBS; jobId++) {
+            assertEquals(after.get(jobId), remaining.get(1).ownerOf(jobId));
+            if (!"node-c".equals(before.get(jobId))) {
+                assertEquals(before.get(jobId), after.get(jobId), "任务#" + jobId + " 不属于离开的节点，不应换节点");
+            } else {
+                assertNotEquals("node-c", after.get(jobId), "任务#" + jobId + " 应转给剩余节点");
+            }
+        }
+    }
+
+    @Test
+    void onlyJobsMovingToNewNodeChangeOnJoin() throws Exception {
+        List<SchedulerShards> nodes = startNodes("node-a", "node-b");
+        awaitMembers(nodes, 2);
+        Map<Long, String> before = owners(nodes.get(0));
+
+        nodes.addAll(startNodes("node-c"));
+        awaitMembers(nodes, 3);
+
+        Map<Long, String> after = owners(nodes.get(0));
+        int moved = 0;
+        for (long jobId = 1; jobId <= JOBS; jobId++) {
+            if (!before.get(jobId).equals(after.get(jobId))) {
+                assertEquals("node-c", after.get(jobId), "任务#" + jobId + " 只应移到新节点");
+                moved++;
+            }
+        }
+        assertTrue(moved > 0 && moved < JOBS / 2, "加入一个节点应只移动约 1/3 的任务，实际 " + moved);
+    }
+
+    @Test
+    void noJobRunnableOnTwoNodesWhileJoining() throws Exception {
+        List<SchedulerShards> nodes = startNodes("node-a", "node-b");
+        awaitMembers(nodes, 2);
+
+        nodes.addAll(startNodes("node-c"));
+        assertNoOverlapUntilSettled(nodes, 3);
+    }
+
+    @Test
+    void noJobRunnableOnTwoNodesWhenRestarted() throws Exception {
+        List<SchedulerShards> nodes = startNodes("node-a", "node-b", "node-c");
+        awaitMembers(nodes, 3);
+        assertNoOverlapUntilSettled(nodes, 3);
+
+        // 停机后立即以同一节点ID重新加入：其他节点可能已接管、也可能还没发现它离开
+        nodes.remove(2).destroy();
+        nodes.addAll(startNodes("node-c"));
+        assertNoOverlapUntilSettled(nodes, 3);
+    }
+
+    // 每一轮检查所有任务：可执行的节点不超过一个；直到各节点看到 size 个成员且每个任务恰好一个节点可执行
+    @SuppressWarnings("unchecked")
+    private void assertNoOverlapUntilSettled(List<SchedulerShards> nodes, int size) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + NODE_TTL_MS * 2;
+        while (true) {
+            boolean settled = nodes.stream().allMatch(n -> ((List<String>) n.status().get("members")).size() == size);
+            for (long jobId = 1; jobId <= JOBS; jobId++) {
+                int runners = 0;
+                for (SchedulerShards node : nodes) {
+                    runners += node.mayRun(jobId) ? 1 : 0;
+                }
+                assertTrue(runners <= 1, "任务#" + jobId + " 同时可在 " + runners + " 个节点执行");
+                settled &= runners == 1;
+            }
+            if (settled) {
+                return;
+            }
+            assertTrue(System.currentTimeMillis() < deadline, "交接应在节点超时内完成");
+            Thread.sleep(5L);
+        }
+    }
+
+    private Map<Long, String> owners(SchedulerShards node) {
+        Map<Long, String> m = new HashMap<>();
+        for (long jobId = 1; jobId <= JOBS; jobId++) {
+            m.put(jobId, node.ownerOf(jobId));
+        }
+        return m;
+    }
+
+    // 等到每个节点都看到 size 个成员
+    @SuppressWarnings("unchecked")
+    private void awaitMembers(List<SchedulerShards> nodes, int size) throws InterruptedException {
+        boolean ok = ClusterTestSupport.await(() -> nodes.stream()
+                .allMatch(n -> ((List<String>) n.status().get("members")).size() == size), NODE_TTL_MS * 2);
+        assertTrue(ok, "各节点应看到 " + size + " 个成员");
+    }
+
+    private List<SchedulerShards> startNodes(String... nodeIds) {
+        List<SchedulerShards> nodes = new ArrayList<>();
+        Arrays.stream(nodeIds).forEach(id -> nodes.add(startNode(id)));
+        return nodes;
+    }
+
+    private SchedulerShards startNode(String nodeId) {
+        ThreadPoolTaskScheduler timer = cluster.newTimer(nodeId);
+
+        SchedulerLease lease = new SchedulerLease();
+        ReflectionTestUtils.setField(lease, "mode", "shard");
+        ReflectionTestUtils.setField(lease, "nodeIdConf", nodeId);
+        lease.init();
+
+        SchedulerShards shards = new SchedulerShards();
+        ReflectionTestUtils.setField(shards, "heartbeatIntervalMs", HEARTBEAT_INTERVAL_MS);
+        ReflectionTestUtils.setField(shards, "nodeTtlMs", NODE_TTL_MS);
+        ReflectionTestUtils.setField(shards, "virtualNodes", VIRTUAL_NODES);
+        ReflectionTestUtils.setField(shards, "clockSkewMs", CLOCK_SKEW_MS);
+        ReflectionTestUtils.setField(shards, "devSchedulerNodeMapper", cluster.mapper(DevSchedulerNodeMapper.class));
+        ReflectionTestUtils.setField(shards, "schedulerLease", lease);
+        ReflectionTestUtils.setField(shards, "clusterTimer", timer);
+        ReflectionTestUtils.setField(shards, "cronMaintTimer", timer);
+        shards.init();
+        shards.start();
+        return shards;
+    }
+}
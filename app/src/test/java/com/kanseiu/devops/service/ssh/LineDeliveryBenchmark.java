@@ -0,0 +1,128 @@
+package com.kanseiu.devops.service.ssh;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * SSH 输出切行与投递：旧方式 BufferedReader.readLine 逐行投递 vs LineOutputStream 按批投递
+ * - 同一份输出（约 4 MiB UTF-8，中英文混排）：旧方式从流中逐行读出；新方式按 JSch 每次写入的包大小喂给 LineOutputStream
+ * - sink 每次调用加一次锁（与 tee 中各回调、SSE 写入一样）：逐行投递每行一次，按批投递每批一次
+ * - lineOutputStreamPerLine 切行方式不变、只改成逐行投递，用来区分切行与批量投递各自的收益
+ * - 旧方式直接读内存中的字节，不含管道与读线程的开销，结果对旧方式偏有利
+ * 运行：mvn -Pbench test（项目根目录）
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LineDeliveryBenchmark {
+
+    // 与 devops.exec.max-line-bytes 默认值一致
+    private static final int MAX_LINE_BYTES = 65536;
+
+    private static final int PAYLOAD_BYTES = 4 << 20;
+
+    // 每行字符数（大致）
+    @Param({"80", "400"})
+    private int lineLength;
+
+    // JSch 每次写入输出流的字节数
+    @Param({"1024", "32768"})
+    private int packetBytes;
+
+    private byte[] payload;
+
+    @Setup
+    public void setUp() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(PAYLOAD_BYTES + 1024);
+        StringBuilder line = new StringBuilder();
+        for (int n = 0; out.size() < PAYLOAD_BYTES; n++) {
+            line.setLength(0);
+            line.append("2026-10-18 12:00:00 INFO [job-").append(n % 97).append("] 第 ").append(n).append(" 行 ");
+            while (line.length() < lineLength) {
+                line.append(n % 5 == 0 ? "同步完成 " : "rows=").append(n);
+            }
+            byte[] bytes = line.append('\n').toString().getBytes(StandardCharsets.UTF_8);
+            out.write(bytes, 0, bytes.length);
+        }
+        payload = out.toByteArray();
+    }
+
+    @Benchmark
+    public long readLinePerLine(Blackhole bh) throws IOException {
+        Sink sink = new Sink(bh);
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new ByteArrayInputStream(payload), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                sink.line(line);
+            }
+        }
+        return sink.lines;
+    }
+
+    @Benchmark
+    public long lineOutputStreamPerLine(Blackhole bh) {
+        Sink sink = new Sink(bh);
+        return feed(new LineOutputStream(lines -> lines.forEach(sink::line), StandardCharsets.UTF_8, MAX_LINE_BYTES), sink);
+    }
+
+    @Benchmark
+    public long lineOutputStreamBatches(Blackhole bh) {
+        Sink sink = new Sink(bh);
+        return feed(new LineOutputStream(sink::batch, StandardCharsets.UTF_8, MAX_LINE_BYTES), sink);
+    }
+
+    // 按包大小写入，模拟 JSch 会话线程
+    private long feed(LineOutputStream out, Sink sink) {
+        for (int off = 0; off < payload.length; off += packetBytes) {
+            out.write(payload, off, Math.min(packetBytes, payload.length - off));
+        }
+        out.close();
+        return sink.lines;
+    }
+
+    // 下游回调：每次调用加一次锁
+    private static final class Sink {
+
+        private final Blackhole bh;
+
+        private long lines;
+
+        Sink(Blackhole bh) {
+            this.bh = bh;
+        }
+
+        synchronized void line(String line) {
+            bh.consume(line);
+            lines++;
+        }
+
+        synchronized void batch(List<String> batch) {
+            for (String line : batch) {
+                bh.consume(line);
+            }
+            lines += batch.size();
+        }
+    }
+}